@@ -21,13 +21,15 @@
 
 package com.polyvi.xface;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
-import java.net.URLConnection;
 
-import com.polyvi.xface.util.XConstant;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.util.EntityUtils;
+
+import com.polyvi.xface.http.XHttpEngine;
+import com.polyvi.xface.http.XHttpWorker;
+import com.polyvi.xface.http.XSynHttpResponse;
 import com.polyvi.xface.util.XLog;
 
 import android.app.AlertDialog;
@@ -129,30 +131,45 @@ public class XApkUpdater  extends AsyncTask<String, Void, Boolean>{
      */
     private String checkNewVersion(String serverAddress, int currentVersionCode) {
         serverAddress = serverAddress + "?platform=android&currentVersionCode=" + currentVersionCode;
-        String downloadAddress = null;
+        // 检查更新是后台请求，不占用应用ajax请求的并发数
+        XHttpWorker worker = new XHttpWorker();
+        worker.setPriority(XHttpEngine.Priority.BACKGROUND);
+        XSynHttpResponse result;
+        try {
+            result = worker.get(serverAddress, null);
+        } catch (IllegalArgumentException e) {
+            XLog.e(CLASS_NAME, "Invalid update address: " + serverAddress);
+            return null;
+        }
+        if (null != result.getException()) {
+            XLog.e(CLASS_NAME, "Error when check new version: "
+                    + result.getException().getMessage());
+            return null;
+        }
+        HttpResponse response = result.getResponse();
+        if (null == response) {
+            return null;
+        }
+        HttpEntity entity = response.getEntity();
         try {
-            URL myURL = new URL(serverAddress);
-            URLConnection urlConnection = myURL.openConnection();
-            // 设定连接超时30秒
-            urlConnection.setConnectTimeout(30 * XConstant.MILLISECONDS_PER_SECOND);
-            // 使用InputStream，从URLConnection读取数据
-            InputStream iStream = urlConnection.getInputStream();
-
-            byte buffer[] = new byte[64];
-            ByteArrayOutputStream oStream = new ByteArrayOutputStream();
-            int len = BUFFER_INVALID_LEN;
-            while ((len  = iStream.read(buffer)) != BUFFER_INVALID_LEN) {
-                oStream.write(buffer, 0, len);
+            if (response.getStatusLine().getStatusCode() >= 300) {
+                XLog.e(CLASS_NAME, "Error when check new version: "
+                        + response.getStatusLine());
+                return null;
             }
-            downloadAddress = oStream.toString();
-
-            iStream.close();
-            oStream.close();
-        } catch (IOException  e) {
+            return null == entity ? null : EntityUtils.toString(entity, "UTF-8");
+        } catch (IOException e) {
             XLog.e(CLASS_NAME, "Error when check new version: " + e.getMessage(), e);
-            e.printStackTrace();
+            return null;
+        } finally {
+            if (null != entity) {
+                try {
+                    entity.consumeContent();
+                } catch (IOException e) {
+                    XLog.e(CLASS_NAME, e.getMessage());
+                }
+            }
         }
-        return downloadAddress;
     }
 
     /**
@@ -21,6 +21,7 @@
 
 package com.polyvi.xface;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
@@ -45,6 +46,7 @@ import android.widget.RelativeLayout.LayoutParams;
 import android.widget.TextView;
 
 import com.polyvi.xface.configXml.XTagNotFoundException;
+import com.polyvi.xface.core.XBridgeMetrics;
 import com.polyvi.xface.core.XConfiguration;
 import com.polyvi.xface.core.XISystemContext;
 import com.polyvi.xface.core.XRuntime;
@@ -52,9 +54,14 @@ import com.polyvi.xface.event.XEvent;
 import com.polyvi.xface.event.XEventType;
 import com.polyvi.xface.event.XSystemEventCenter;
 import com.polyvi.xface.extension.XActivityResultListener;
+import com.polyvi.xface.extension.XProgressThrottle;
+import com.polyvi.xface.http.XHttpEngine;
 import com.polyvi.xface.ssl.XSSLManager;
 import com.polyvi.xface.util.XConstant;
+import com.polyvi.xface.util.XFileLogSink;
 import com.polyvi.xface.util.XLog;
+import com.polyvi.xface.util.XLogController;
+import com.polyvi.xface.util.XLogStore;
 import com.polyvi.xface.util.XNotification;
 import com.polyvi.xface.util.XStrings;
 import com.polyvi.xface.util.XUtils;
@@ -76,6 +83,16 @@ public class XFaceMainActivity extends Activity implements XISystemContext{
     private static final String CLASS_NAME = XFaceMainActivity.class.getName();
 
     private static final int ANDROID4_2_API_LEVEL = 17;
+
+    /** 工作目录下存放log文件的目录名 */
+    private static final String LOG_DIR_NAME = "log";
+
+    /** log目录下持久化log存储的目录名 */
+    private static final String LOG_STORE_DIR_NAME = "store";
+
+    /** 合并的http请求缓冲响应体的临时目录名，位于应用的cache目录 */
+    private static final String HTTP_SPILL_DIR_NAME = "xface_http";
+
     /** The content view of activity */
     private ViewGroup mContentView = null;
 
@@ -186,9 +203,31 @@ public class XFaceMainActivity extends Activity implements XISystemContext{
         }
         // 配置系统LOG等级
         XLog.setLogLevel(XConfiguration.getInstance().readLogLevel());
+        // 配置是否开启js桥接的性能统计
+        XBridgeMetrics.getInstance().setEnabled(
+                XConfiguration.getInstance().readBridgeMetricsEnabled());
+        // 配置文件传输进度事件的发送策略
+        XProgressThrottle.setDefaultPolicy(
+                XConfiguration.getInstance().readProgressInterval(),
+                XConfiguration.getInstance().readProgressStep());
+        // 配置共享的http连接池
+        XHttpEngine.configure(
+                XConfiguration.getInstance().readHttpMaxConnections(),
+                XConfiguration.getInstance().readHttpMaxConnectionsPerRoute(),
+                new File(getCacheDir(), HTTP_SPILL_DIR_NAME));
         // 配置系统的工作目录
         XConfiguration.getInstance()
                 .configWorkDirectory(this, getWorkDirName());
+        // 根据平台配置决定是否将log写入工作目录下的文件以及持久化的log存储
+        File logDir = new File(XConfiguration.getInstance().getWorkDirectory(),
+                LOG_DIR_NAME);
+        if (XConfiguration.getInstance().readLogFileEnabled()) {
+            XLogController.addSink(new XFileLogSink(logDir.getAbsolutePath()));
+        }
+        if (XConfiguration.getInstance().readLogStoreEnabled()) {
+            XLogController.setLogStore(new XLogStore(new File(logDir,
+                    LOG_STORE_DIR_NAME).getAbsolutePath()));
+        }
         // 设置window的样式
         setWindowStyle();
         // 创建view容器
@@ -427,6 +466,9 @@ public class XFaceMainActivity extends Activity implements XISystemContext{
         super.onDestroy();
         XEvent evt = XEvent.createEvent(XEventType.DESTROY);
         XSystemEventCenter.getInstance().sendEventSync(evt);
+        XHttpEngine.shutdown();
+        // 退出前输出缓冲区中剩余的log
+        XLog.close();
         System.exit(0);
     }
 
@@ -37,6 +37,8 @@ public class XAppInstallListener implements XInstallListener {
     private final static String TAG_INSTALL_PROGRESS = "progress";
     private final static String TAG_ERROR_CODE = "errorcode";
     private final static String TAG_OPERATION_TYPE = "type";
+    private final static String TAG_LOADED = "loaded";
+    private final static String TAG_TOTAL = "total";
 
     /** js回调上下文环境 */
     private XCallbackContext mCallbackCtx;
@@ -62,6 +64,25 @@ public class XAppInstallListener implements XInstallListener {
         mCallbackCtx.sendExtensionResult(result);
     }
 
+    @Override
+    public void onUnzipProgress(AMS_OPERATION_TYPE type, long extracted,
+            long total) {
+        JSONObject jsonObj = new JSONObject();
+        try {
+            jsonObj.put(TAG_INSTALL_PROGRESS,
+                    InstallStatus.INSTALL_UNZIP_PACKAGE.ordinal());
+            jsonObj.put(TAG_OPERATION_TYPE, type.ordinal());
+            jsonObj.put(TAG_LOADED, extracted);
+            jsonObj.put(TAG_TOTAL, total);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        XExtensionResult result = new XExtensionResult(
+                XExtensionResult.Status.PROGRESS_CHANGING, jsonObj);
+        result.setKeepCallback(true);
+        mCallbackCtx.sendExtensionResult(result);
+    }
+
     @Override
     public void onError(AMS_OPERATION_TYPE type, String appId,
             AMS_ERROR errorState) {
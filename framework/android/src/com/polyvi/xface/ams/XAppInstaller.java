@@ -26,6 +26,11 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import android.content.Context;
 
@@ -39,13 +44,18 @@ import com.polyvi.xface.app.XIApplication;
 import com.polyvi.xface.configXml.XAbstractAppConfigParser;
 import com.polyvi.xface.configXml.XXmlOperatorFactory;
 import com.polyvi.xface.core.XConfiguration;
+import com.polyvi.xface.extension.XProgressThrottle;
 import com.polyvi.xface.util.XAppUtils;
 import com.polyvi.xface.util.XConstant;
 import com.polyvi.xface.util.XFileUtils;
 import com.polyvi.xface.util.XLog;
+import com.polyvi.xface.util.XZipper;
 
 /**
  * 负责应用安装，将安装进度发送给({@link XAppInstallListener})
+ * 不同应用的安装、更新可以同时进行，同一个应用的操作依次执行；解压安装包时并行解压并通知解压进度，
+ * 应用列表的修改在安装器的锁中进行
+ * 安装时根据安装包生成文件清单({@link XAppManifest})，更新时只解压新增和修改的文件，并删除已经不在安装包中的文件
  */
 public class XAppInstaller {
 
@@ -61,6 +71,9 @@ public class XAppInstaller {
     /** application的创建者 */
     XApplicationCreator mCreator;
 
+    /** 每个应用的安装锁 appId -> 锁 */
+    private final HashMap<String, Object> mAppLocks = new HashMap<String, Object>();
+
     public XAppInstaller(Context context, XApplicationCreator creator) {
         this.mContext = context;
         mCreator = creator;
@@ -88,16 +101,21 @@ public class XAppInstaller {
     private void doInstall(String packagePath, XAppInfo appInfo,
             XInstallListener listener) {
         String appId = appInfo.getAppId();
+        XIApplication app = null;
+        synchronized (this) {
+            if (mAppList.getAppById(appId) == null) {
+                appInfo.setSrcRoot(XConstant.FILE_SCHEME
+                        + XConfiguration.getInstance().getAppInstallDir() + appId);
+                // 创建相关的数据结构
+                app = (XIApplication) mCreator.create(appInfo);
+                mAppList.add(app);
+            }
+        }
         // 如果appInfo已经存在 则更新程序
-        if (mAppList.getAppById(appId) != null) {
+        if (null == app) {
             doUpdate(packagePath, listener, appInfo);
             return;
         }
-        appInfo.setSrcRoot(XConstant.FILE_SCHEME
-                + XConfiguration.getInstance().getAppInstallDir() + appId);
-        // 创建相关的数据结构
-        XIApplication app = (XIApplication) mCreator.create(appInfo);
-        mAppList.add(app);
         // 处理icon以及内嵌的js文件
         // 移动应用的icon到workdir目录下的XApplication#APPS_ICON_DIR_NAME/$appId目录中，便于defaultApp
         // 访问所有应用的icon
@@ -128,7 +146,14 @@ public class XAppInstaller {
      * @param listener
      *            安装监听器
      */
-    public synchronized String install(String packagePath, String appId,
+    public String install(String packagePath, String appId,
+            XInstallListener listener) {
+        synchronized (getAppLock(appId)) {
+            return installWithId(packagePath, appId, listener);
+        }
+    }
+
+    private String installWithId(String packagePath, String appId,
             XInstallListener listener) {
         String ret = null;
         // 1. 安装初始化
@@ -141,7 +166,9 @@ public class XAppInstaller {
                 InstallStatus.INSTALL_UNZIP_PACKAGE);
         String appDirPath = getAppInstallDir(appId);
 
-        boolean successed = XFileUtils.unzipFile(appDirPath, packagePath);
+        boolean successed = XFileUtils.unzipFile(appDirPath, packagePath,
+                new UnzipProgress(AMS_OPERATION_TYPE.OPERATION_TYPE_INSTALL,
+                        listener));
         if (!successed) {
             // 如果解压失败 则删除中间文件
             XFileUtils.deleteFileRecursively(appDirPath);
@@ -150,6 +177,7 @@ public class XAppInstaller {
             XLog.e(CLASS_NAME, "unzip package failure!");
             return ret;
         }
+        saveManifest(packagePath, appId);
 
         // 3.解析app的配置信息
         XAppInfo appInfo = parseAppXml(appId, ret);
@@ -220,7 +248,7 @@ public class XAppInstaller {
      * @param listener
      *            安装监听器
      */
-    public synchronized String install(String packagePath,
+    public String install(String packagePath,
             XInstallListener listener) {
         assert (null != listener);
         String ret = null;
@@ -243,18 +271,23 @@ public class XAppInstaller {
 
         // 3.解压app的文件到安装目录
         String appId = appInfo.getAppId();
-        String appDirPath = getAppInstallDir(appId);
-        boolean successed = XFileUtils.unzipFile(appDirPath, packagePath);
-        if (!successed) {
-            // 如果解压失败 则删除中间文件
-            XFileUtils.deleteFileRecursively(appDirPath);
-            listener.onError(AMS_OPERATION_TYPE.OPERATION_TYPE_INSTALL, appId,
-                    AMS_ERROR.IO_ERROR);
-            XLog.e(CLASS_NAME, "unzip package failure!");
-            return ret;
+        synchronized (getAppLock(appId)) {
+            String appDirPath = getAppInstallDir(appId);
+            boolean successed = XFileUtils.unzipFile(appDirPath, packagePath,
+                    new UnzipProgress(AMS_OPERATION_TYPE.OPERATION_TYPE_INSTALL,
+                            listener));
+            if (!successed) {
+                // 如果解压失败 则删除中间文件
+                XFileUtils.deleteFileRecursively(appDirPath);
+                listener.onError(AMS_OPERATION_TYPE.OPERATION_TYPE_INSTALL, appId,
+                        AMS_ERROR.IO_ERROR);
+                XLog.e(CLASS_NAME, "unzip package failure!");
+                return ret;
+            }
+            saveManifest(packagePath, appId);
+
+            doInstall(packagePath, appInfo, listener);
         }
-
-        doInstall(packagePath, appInfo, listener);
         return appInfo.getAppId();
     }
 
@@ -304,6 +337,64 @@ public class XAppInstaller {
         }
     }
 
+    /**
+     * 获取应用的文件清单的路径，清单保存在应用的data目录中
+     */
+    private File getManifestFile(String appId) {
+        return new File(XConfiguration.getInstance().getAppInstallDir()
+                + appId + File.separator + XConstant.APP_DATA_DIR_NAME,
+                XAppManifest.MANIFEST_FILE_NAME);
+    }
+
+    /**
+     * 根据安装包生成应用的文件清单，用于之后更新时跳过没有变化的文件
+     */
+    private void saveManifest(String packagePath, String appId) {
+        ZipFile zipFile = null;
+        try {
+            zipFile = new ZipFile(packagePath);
+            XAppManifest manifest = new XAppManifest();
+            manifest.putAll(zipFile, new File(getAppInstallDir(appId)));
+            manifest.save(getManifestFile(appId));
+        } catch (IOException e) {
+            XLog.w(CLASS_NAME, "save manifest of app " + appId + " failure: "
+                    + e.getMessage());
+        } finally {
+            closeZipFile(zipFile);
+        }
+    }
+
+    private void closeZipFile(ZipFile zipFile) {
+        if (null == zipFile) {
+            return;
+        }
+        try {
+            zipFile.close();
+        } catch (IOException e) {
+            XLog.w(CLASS_NAME, "close package failure!");
+        }
+    }
+
+    /** 将源目录中的文件移动到目标目录，覆盖已经存在的文件，不能重命名时拷贝文件 */
+    private void moveTree(File srcDir, File destDir) throws IOException {
+        File[] children = srcDir.listFiles();
+        if (null == children) {
+            return;
+        }
+        for (File child : children) {
+            File target = new File(destDir, child.getName());
+            if (child.isDirectory()) {
+                target.mkdirs();
+                moveTree(child, target);
+            } else {
+                target.delete();
+                if (!child.renameTo(target)) {
+                    XFileUtils.copy(child, target);
+                }
+            }
+        }
+    }
+
     // TODO:以后考虑将安装和更新合并成一个接口，由实现内部进行处理应该进行安装还是更新，这样会减少一些错误处理逻辑，使用也更简单
     /**
      * 更新一个应用
@@ -315,7 +406,7 @@ public class XAppInstaller {
      * @param listener
      *            安装监听器
      */
-    public synchronized void update(String packagePath,
+    public void update(String packagePath,
             XInstallListener listener) {
         assert (null != listener);
 
@@ -333,9 +424,24 @@ public class XAppInstaller {
             return;
         }
 
+        String appId = appInfo.getAppId();
+        synchronized (getAppLock(appId)) {
+            updateFromPackage(packagePath, appInfo, listener);
+        }
+    }
+
+    /**
+     * 从安装包更新一个应用，调用者需要持有该应用的安装锁
+     * 安装包可以是完整安装包，也可以是只包含变化文件的差分安装包
+     */
+    private void updateFromPackage(String packagePath, XAppInfo appInfo,
+            XInstallListener listener) {
         // 3.判断更新是否合理
         String appId = appInfo.getAppId();
-        XIApplication oldApp = mAppList.getAppById(appId);
+        XIApplication oldApp;
+        synchronized (this) {
+            oldApp = mAppList.getAppById(appId);
+        }
         if (null == oldApp) {
             listener.onError(AMS_OPERATION_TYPE.OPERATION_TYPE_UPDATE, appId,
                     AMS_ERROR.NO_TARGET_APP);
@@ -344,7 +450,7 @@ public class XAppInstaller {
 
         listener.onProgressUpdated(AMS_OPERATION_TYPE.OPERATION_TYPE_UPDATE,
                 InstallStatus.INSTALL_UNZIP_PACKAGE);
-        // 解压文件到临时目录
+        // 解压文件到临时目录，只解压新增和修改的文件
         String tempFileDir = XFileUtils.createTempDir(XConfiguration
                 .getInstance().getAppInstallDir());
         if (null == tempFileDir) {
@@ -352,26 +458,61 @@ public class XAppInstaller {
                     AMS_ERROR.IO_ERROR);
             return;
         }
-
-        boolean successed = XFileUtils.unzipFile(tempFileDir, packagePath);
-
-        if (!successed) {
-            XFileUtils.deleteFileRecursively(tempFileDir);
-            listener.onError(AMS_OPERATION_TYPE.OPERATION_TYPE_UPDATE, appId,
-                    AMS_ERROR.IO_ERROR);
-            XLog.e(CLASS_NAME, "unzip package failure!");
-            return;
-        }
-        // 将临时目录的文件 拷贝到安装目录
         String appDirPath = getAppInstallDir(appId);
+        final File appDir = new File(appDirPath);
+        File manifestFile = getManifestFile(appId);
+        final XAppManifest oldManifest = XAppManifest.load(manifestFile);
+        ZipFile zipFile = null;
         try {
-            XFileUtils.copy(new File(tempFileDir), new File(appDirPath));
-            XFileUtils.deleteFileRecursively(tempFileDir);
+            zipFile = new ZipFile(packagePath);
+            // 差分安装包中列出了被删除的文件，完整安装包中没有的文件即被删除的文件
+            List<String> removed = XAppManifest.readDeltaRemovedFiles(zipFile);
+            boolean isDelta = null != removed;
+            if (!isDelta) {
+                removed = null == oldManifest ? new ArrayList<String>()
+                        : oldManifest.getRemovedFiles(zipFile);
+            }
+            XZipper.XEntryFilter filter = new XZipper.XEntryFilter() {
+                @Override
+                public boolean accept(ZipEntry entry) {
+                    String name = entry.getName();
+                    if (entry.isDirectory()
+                            || XAppManifest.DELTA_FILE_NAME.equals(name)) {
+                        return false;
+                    }
+                    return null == oldManifest
+                            || !oldManifest.isUnchanged(entry, new File(appDir,
+                                    name));
+                }
+            };
+            if (!XFileUtils.unzipFile(tempFileDir, packagePath, filter,
+                    new UnzipProgress(AMS_OPERATION_TYPE.OPERATION_TYPE_UPDATE,
+                            listener))) {
+                throw new IOException("unzip package failure!");
+            }
+            // 将临时目录的文件移动到安装目录，删除已经不在安装包中的文件
+            moveTree(new File(tempFileDir), appDir);
+            XAppManifest manifest = isDelta && null != oldManifest ? oldManifest
+                    : new XAppManifest();
+            for (String path : removed) {
+                manifest.remove(path);
+                if (path.startsWith("/") || path.contains("..")) {
+                    XLog.w(CLASS_NAME, "Invalid removed file: " + path);
+                    continue;
+                }
+                new File(appDir, path).delete();
+            }
+            manifest.putAll(zipFile, appDir);
+            manifest.save(manifestFile);
         } catch (IOException e) {
             listener.onError(AMS_OPERATION_TYPE.OPERATION_TYPE_UPDATE, appId,
                     AMS_ERROR.IO_ERROR);
-            e.printStackTrace();
+            XLog.e(CLASS_NAME, "update app " + appId + " failure: "
+                    + e.getMessage());
             return;
+        } finally {
+            XFileUtils.deleteFileRecursively(tempFileDir);
+            closeZipFile(zipFile);
         }
         appInfo.setSrcRoot(XConstant.FILE_SCHEME
                 + XConfiguration.getInstance().getAppInstallDir()
@@ -390,7 +531,10 @@ public class XAppInstaller {
             XAppInfo appInfo) {
         String appId = appInfo.getAppId();
         String appsDirPath = getAppInstallDir(appId);
-        XIApplication oldApp = mAppList.getAppById(appId);
+        XIApplication oldApp;
+        synchronized (this) {
+            oldApp = mAppList.getAppById(appId);
+        }
         updateAppInfo(packagePath, listener, appInfo, appsDirPath, oldApp);
     }
 
@@ -412,7 +556,9 @@ public class XAppInstaller {
         listener.onProgressUpdated(AMS_OPERATION_TYPE.OPERATION_TYPE_UPDATE,
                 InstallStatus.INSTALL_WRITE_CONFIGURATION);
         // 更新XApplication对象中的应用配置信息
-        mAppList.updateApp(appInfo, oldApp);
+        synchronized (this) {
+            mAppList.updateApp(appInfo, oldApp);
+        }
         // 移动应用的icon到workdir目录下的XApplication#APPS_ICON_DIR_NAME/$appId目录中，便于defaultApp
         // 访问所有应用的icon
         File iconFile = new File(appsDirPath, appInfo.getIcon());
@@ -436,9 +582,18 @@ public class XAppInstaller {
      * @param listener
      *            卸载监听器
      */
-    public synchronized void uninstall(String appId, XInstallListener listener) {
+    public void uninstall(String appId, XInstallListener listener) {
+        synchronized (getAppLock(appId)) {
+            doUninstall(appId, listener);
+        }
+    }
+
+    private void doUninstall(String appId, XInstallListener listener) {
         assert (null != listener);
-        XIApplication app = mAppList.getAppById(appId);
+        XIApplication app;
+        synchronized (this) {
+            app = mAppList.getAppById(appId);
+        }
         if (null == app) {
             listener.onError(AMS_OPERATION_TYPE.OPERATION_TYPE_UNINSTALL,
                     appId, AMS_ERROR.NO_TARGET_APP);
@@ -457,7 +612,9 @@ public class XAppInstaller {
         }
 
         XFileUtils.deleteFileRecursively(appDir.getAbsolutePath());
-        mAppList.removeAppById(appId);
+        synchronized (this) {
+            mAppList.removeAppById(appId);
+        }
 
         // 删除XApplication#APPS_ICON_DIR_NAME下的appId目录
         XFileUtils.deleteFileRecursively(XAppUtils.generateAppIconPath(appId, ""));
@@ -507,4 +664,39 @@ public class XAppInstaller {
             XLog.e(CLASS_NAME, "install error page exception!");
         }
     }
+
+    /**
+     * 获取应用的安装锁，同一个应用的安装、更新和卸载依次执行
+     */
+    private Object getAppLock(String appId) {
+        synchronized (mAppLocks) {
+            Object lock = mAppLocks.get(appId);
+            if (null == lock) {
+                lock = new Object();
+                mAppLocks.put(appId, lock);
+            }
+            return lock;
+        }
+    }
+
+    /**
+     * 将解压进度按照进度通知的频率限制转发给安装监听器
+     */
+    private static class UnzipProgress implements XZipper.XUnzipListener {
+        private final AMS_OPERATION_TYPE mType;
+        private final XInstallListener mListener;
+        private final XProgressThrottle mThrottle = new XProgressThrottle();
+
+        UnzipProgress(AMS_OPERATION_TYPE type, XInstallListener listener) {
+            mType = type;
+            mListener = listener;
+        }
+
+        @Override
+        public void onProgress(long extracted, long total) {
+            if (mThrottle.shouldNotify(extracted, total)) {
+                mListener.onUnzipProgress(mType, extracted, total);
+            }
+        }
+    }
 }
@@ -63,6 +63,11 @@ public class XAppManagement {
                 InstallStatus progressState) {
         }
 
+        @Override
+        public void onUnzipProgress(AMS_OPERATION_TYPE type, long extracted,
+                long total) {
+        }
+
         @Override
         public void onError(AMS_OPERATION_TYPE type, String appId,
                 AMS_ERROR errorState) {
@@ -0,0 +1,226 @@
+
+/*
+ Copyright 2012-2013, Polyvi Inc. (http://polyvi.github.io/openxface)
+ This program is distributed under the terms of the GNU General Public License.
+
+ This file is part of xFace.
+
+ xFace is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ xFace is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with xFace.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.polyvi.xface.ams;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.polyvi.xface.util.XFileUtils;
+import com.polyvi.xface.util.XLog;
+import com.polyvi.xface.util.XStringUtils;
+
+/**
+ * 已安装应用的文件清单，记录每个来自安装包的文件的大小、CRC32和安装后的修改时间
+ * 文件的CRC32直接取自安装包的中央目录，不需要读取文件内容；
+ * 更新时安装包中大小、CRC32与清单一致且本地文件未被修改的文件不需要重新解压
+ * 清单保存在应用的data目录中，格式为{"version":1,"files":{"路径":[大小,crc32,修改时间]}}
+ */
+class XAppManifest {
+
+    private static final String CLASS_NAME = XAppManifest.class.getSimpleName();
+
+    /** 清单的文件名 */
+    static final String MANIFEST_FILE_NAME = "manifest.json";
+
+    /**
+     * 差分安装包中描述删除文件的文件名，格式为{"removed":["路径",...]}，
+     * 包含该文件的安装包只包含新增和修改的文件
+     */
+    static final String DELTA_FILE_NAME = "xface_delta.json";
+
+    private static final int VERSION = 1;
+    private static final String TAG_VERSION = "version";
+    private static final String TAG_FILES = "files";
+    private static final String TAG_REMOVED = "removed";
+
+    /** 路径 -> 文件记录 */
+    private final HashMap<String, Record> mFiles = new HashMap<String, Record>();
+
+    /**
+     * 读取清单
+     *
+     * @return 清单不存在或者格式错误时返回null
+     */
+    static XAppManifest load(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        String content = XFileUtils.readFileContent(file.getAbsolutePath());
+        if (null == content) {
+            return null;
+        }
+        try {
+            JSONObject json = new JSONObject(content);
+            if (json.optInt(TAG_VERSION) != VERSION) {
+                return null;
+            }
+            XAppManifest manifest = new XAppManifest();
+            JSONObject files = json.getJSONObject(TAG_FILES);
+            Iterator<?> keys = files.keys();
+            while (keys.hasNext()) {
+                String path = (String) keys.next();
+                JSONArray record = files.getJSONArray(path);
+                manifest.mFiles.put(path, new Record(record.getLong(0),
+                        record.getLong(1), record.getLong(2)));
+            }
+            return manifest;
+        } catch (JSONException e) {
+            XLog.w(CLASS_NAME, "Invalid manifest: " + file.getAbsolutePath());
+            return null;
+        }
+    }
+
+    /**
+     * 保存清单
+     */
+    boolean save(File file) {
+        try {
+            JSONObject files = new JSONObject();
+            for (Map.Entry<String, Record> entry : mFiles.entrySet()) {
+                Record record = entry.getValue();
+                JSONArray array = new JSONArray();
+                array.put(record.mSize);
+                array.put(record.mCrc);
+                array.put(record.mLastModified);
+                files.put(entry.getKey(), array);
+            }
+            JSONObject json = new JSONObject();
+            json.put(TAG_VERSION, VERSION);
+            json.put(TAG_FILES, files);
+            file.getParentFile().mkdirs();
+            return XFileUtils.writeFileByString(file.getAbsolutePath(),
+                    json.toString());
+        } catch (JSONException e) {
+            XLog.e(CLASS_NAME, "Failed to save manifest: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 安装包中的文件与已安装的文件是否相同
+     *
+     * @param entry
+     *            安装包中的条目
+     * @param installed
+     *            已安装的文件
+     */
+    boolean isUnchanged(ZipEntry entry, File installed) {
+        Record record = mFiles.get(entry.getName());
+        if (null == record || entry.getCrc() == -1) {
+            return false;
+        }
+        return record.mCrc == entry.getCrc() && record.mSize == entry.getSize()
+                && installed.length() == record.mSize
+                && installed.lastModified() == record.mLastModified;
+    }
+
+    /**
+     * 记录安装包中的所有文件，记录已安装文件当前的修改时间
+     *
+     * @param zipFile
+     *            安装包
+     * @param appDir
+     *            应用的安装目录
+     */
+    void putAll(ZipFile zipFile, File appDir) {
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            String name = entry.getName();
+            if (entry.isDirectory() || DELTA_FILE_NAME.equals(name)) {
+                continue;
+            }
+            mFiles.put(name, new Record(entry.getSize(), entry.getCrc(),
+                    new File(appDir, name).lastModified()));
+        }
+    }
+
+    /**
+     * 获取清单中有、安装包中没有的文件，即完整安装包中被删除的文件
+     */
+    List<String> getRemovedFiles(ZipFile zipFile) {
+        List<String> removed = new ArrayList<String>();
+        for (String path : mFiles.keySet()) {
+            if (null == zipFile.getEntry(path)) {
+                removed.add(path);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 从清单中删除文件的记录
+     */
+    void remove(String path) {
+        mFiles.remove(path);
+    }
+
+    /**
+     * 读取差分安装包中被删除的文件列表
+     *
+     * @return 不是差分安装包时返回null
+     */
+    static List<String> readDeltaRemovedFiles(ZipFile zipFile)
+            throws IOException {
+        ZipEntry entry = zipFile.getEntry(DELTA_FILE_NAME);
+        if (null == entry) {
+            return null;
+        }
+        List<String> removed = new ArrayList<String>();
+        try {
+            JSONObject json = new JSONObject(XStringUtils
+                    .convertStreamToString(zipFile.getInputStream(entry)));
+            JSONArray array = json.optJSONArray(TAG_REMOVED);
+            for (int i = 0; null != array && i < array.length(); i++) {
+                removed.add(array.getString(i));
+            }
+        } catch (JSONException e) {
+            throw new IOException("Invalid " + DELTA_FILE_NAME + ": "
+                    + e.getMessage());
+        }
+        return removed;
+    }
+
+    private static class Record {
+        final long mSize;
+        final long mCrc;
+        final long mLastModified;
+
+        Record(long size, long crc, long lastModified) {
+            mSize = size;
+            mCrc = crc;
+            mLastModified = lastModified;
+        }
+    }
+}
@@ -60,6 +60,19 @@ public interface XInstallListener {
     public void onProgressUpdated(AMS_OPERATION_TYPE type,
             InstallStatus progressState);
 
+    /**
+     * 更新解压安装包的进度，在INSTALL_UNZIP_PACKAGE状态中回调，回调频率已经过限制
+     *
+     * @param type
+     *            类型标识：安装/更新
+     * @param extracted
+     *            已经解压的字节数
+     * @param total
+     *            解压后的总字节数
+     */
+    public void onUnzipProgress(AMS_OPERATION_TYPE type, long extracted,
+            long total);
+
     /**
      * 安装错误回调
      *
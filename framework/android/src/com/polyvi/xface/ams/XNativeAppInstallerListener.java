@@ -52,6 +52,12 @@ public class XNativeAppInstallerListener implements XInstallListener {
         mListener.onProgressUpdated(type, progressState);
     }
 
+    @Override
+    public void onUnzipProgress(AMS_OPERATION_TYPE type, long extracted,
+            long total) {
+        mListener.onUnzipProgress(type, extracted, total);
+    }
+
     @Override
     public void onError(AMS_OPERATION_TYPE type, String appId,
             AMS_ERROR errorState) {
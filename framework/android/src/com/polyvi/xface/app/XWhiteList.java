@@ -23,13 +23,20 @@ package com.polyvi.xface.app;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.regex.Matcher;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 import com.polyvi.xface.util.XLog;
 import com.polyvi.xface.util.XStringUtils;
 
+/**
+ * 应用访问白名单
+ * 普通的origin（可选的http/https协议、主机名、端口和路径）在添加时解析，按照主机名的域名段倒序建立索引，
+ * 检查url时只需要沿着主机名查找一次；主机名中带有通配符等特殊字符的origin仍然使用正则表达式匹配
+ * 检查结果按照url的origin（协议、主机名和端口）缓存在有限大小的LRU缓存中
+ */
 public class XWhiteList {
     private static final String CLASS_NAME = XWhiteList.class.getSimpleName();
     /**用来白名单匹配的正则表达式*/
@@ -37,12 +44,40 @@ public class XWhiteList {
     private static final String HTTPS_SCHEME       = "https?://";
     private static final String HTTPS_SCHEME_START = "^https?://";
     private static final String HTTP_SUBDOMAINS    = "^https?://(.*\\\\.)?";//匹配子域名
-    /**应用访问白名单匹配数组 **/
-    private ArrayList<Pattern> mWhiteList = new ArrayList<Pattern>();
-    /**应用访问白名单的历史缓存，用于提高检查速度*/
-    private HashMap<String, Boolean> mWhiteListCache = new HashMap<String, Boolean>();
+    private static final String SCHEME_SEPARATOR   = "://";
+    private static final String HTTPS              = "https";
+    private static final int DEFAULT_HTTP_PORT     = 80;
+    private static final int DEFAULT_HTTPS_PORT    = 443;
+    private static final int ANY_PORT              = -1;
+
+    /**可以建立索引的origin：可选的http/https协议、主机名、可选的端口和路径*/
+    private static final Pattern SIMPLE_ORIGIN = Pattern
+            .compile("^(https?://)?[A-Za-z0-9_-]+(\\.[A-Za-z0-9_-]+)*(:\\d{1,5})?(/[^*?#]*)?$");
+
+    /**检查结果缓存的最大条目数*/
+    private static final int MAX_CACHE_SIZE = 128;
+
+    /**主机名索引的根节点，子节点为主机名倒序的域名段*/
+    private final HostNode mRoot = new HostNode();
+    /**无法建立索引的origin对应的正则表达式*/
+    private final ArrayList<Pattern> mPatterns = new ArrayList<Pattern>();
+    /**是否存在带路径的origin，带路径的origin不能只按照url的origin缓存*/
+    private boolean mHasPathRules;
+    /**origin为"*"，允许访问所有的url*/
+    private boolean mAllowAll;
+
+    /**应用访问白名单的检查缓存，key为url的origin，只缓存不带路径的origin的检查结果*/
+    private final Map<String, Boolean> mWhiteListCache = new LinkedHashMap<String, Boolean>(
+            16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_CACHE_SIZE;
+        }
+    };
     /**标示访问url是否无限制*/
-    private boolean mAccessNoLimit = true;
+    private volatile boolean mAccessNoLimit = true;
 
     /**
      * 添加允许访问的URL (白名单)
@@ -50,14 +85,24 @@ public class XWhiteList {
      * @param origin        允许访问的URL正则表达式
      * @param subdomains    true:允许访问origin下所有子域名
      */
-    public void addWhiteListEntry(String origin, String subdomains) {
+    public synchronized void addWhiteListEntry(String origin, String subdomains) {
         if(XStringUtils.isEmptyString(origin)){
             XLog.w(CLASS_NAME, "origin attribute is absent in access");
             return;
         }
+        boolean allowSubdomains = (subdomains != null) && (subdomains.compareToIgnoreCase("true") == 0);
+        if (origin.compareTo("*") == 0) {
+            XLog.d(CLASS_NAME, "Unlimited access to network resources");
+            mAllowAll = true;
+        } else if (SIMPLE_ORIGIN.matcher(origin).matches()) {
+            addHostRule(origin, allowSubdomains);
+        } else {
+            mPatterns.add(Pattern.compile(getRexPattern(origin, allowSubdomains)));
+        }
+        synchronized (mWhiteListCache) {
+            mWhiteListCache.clear();
+        }
         mAccessNoLimit = false;
-        mWhiteList.add(Pattern.compile(getRexPattern(origin,
-                (subdomains != null) && (subdomains.compareToIgnoreCase("true") == 0))));
     }
 
     /**
@@ -68,21 +113,115 @@ public class XWhiteList {
      */
     public boolean isUrlWhiteListed(String url) {
         /** 如果对访问无限制，则直接返回true */
-        if(mAccessNoLimit) {
+        if(mAccessNoLimit || mAllowAll) {
             return true;
         }
-        /** 首先在白名单缓存中检查是否存在url，如果有就直接返回true */
-         if (mWhiteListCache.get(url) != null) {
-            return true;
+        if (null == url) {
+            return false;
+        }
+        ParsedUrl parsed = ParsedUrl.parse(url);
+        if (null != parsed) {
+            /** 首先按照url的origin查找缓存 */
+            String key = parsed.getOrigin();
+            Boolean cached;
+            synchronized (mWhiteListCache) {
+                cached = mWhiteListCache.get(key);
+            }
+            if (null == cached) {
+                cached = Boolean.valueOf(matchHost(parsed, false));
+                synchronized (mWhiteListCache) {
+                    mWhiteListCache.put(key, cached);
+                }
+            }
+            if (cached.booleanValue()
+                    || (mHasPathRules && matchHost(parsed, true))) {
+                return true;
+            }
+        }
+        /** 最后检查无法建立索引的origin */
+        for (Pattern p : mPatterns) {
+            if (p.matcher(url).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 解析origin并加入主机名索引
+     */
+    private void addHostRule(String origin, boolean subdomains) {
+        XLog.d(CLASS_NAME, subdomains ? "Origin to allow with subdomains: %s"
+                : "Origin to allow: %s", origin);
+        String rest = origin;
+        int schemeEnd = rest.indexOf(SCHEME_SEPARATOR);
+        if (schemeEnd >= 0) {
+            rest = rest.substring(schemeEnd + SCHEME_SEPARATOR.length());
+        }
+        String path = null;
+        int pathStart = rest.indexOf('/');
+        if (pathStart >= 0) {
+            path = rest.substring(pathStart);
+            rest = rest.substring(0, pathStart);
+            if (path.equals("/")) {
+                path = null;
+            }
+        }
+        int port = ANY_PORT;
+        int portStart = rest.indexOf(':');
+        if (portStart >= 0) {
+            port = Integer.parseInt(rest.substring(portStart + 1));
+            rest = rest.substring(0, portStart);
+        }
+        HostNode node = mRoot;
+        String[] labels = rest.toLowerCase().split("\\.");
+        for (int i = labels.length - 1; i >= 0; i--) {
+            node = node.getOrCreateChild(labels[i]);
+        }
+        HostRule rule = new HostRule(port, path);
+        if (subdomains) {
+            node.mSubdomainRules.add(rule);
+        } else {
+            node.mExactRules.add(rule);
+        }
+        if (null != path) {
+            mHasPathRules = true;
+        }
+    }
+
+    /**
+     * 沿着主机名倒序的域名段查找匹配的规则
+     *
+     * @param url       已解析的url
+     * @param withPath  false:只检查不带路径的规则，true:只检查带路径的规则
+     */
+    private boolean matchHost(ParsedUrl url, boolean withPath) {
+        String host = url.mHost;
+        HostNode node = mRoot;
+        int end = host.length();
+        while (null != node) {
+            int start = host.lastIndexOf('.', end - 1) + 1;
+            node = node.getChild(host.substring(start, end));
+            if (null == node) {
+                return false;
+            }
+            boolean last = start == 0;
+            if (matchRules(node.mSubdomainRules, url, withPath)
+                    || (last && matchRules(node.mExactRules, url, withPath))) {
+                return true;
+            }
+            if (last) {
+                return false;
+            }
+            end = start - 1;
         }
-        /** 检查白名单 */
-        Iterator<Pattern> pit = mWhiteList.iterator();
-        while (pit.hasNext()) {
-            Pattern p = pit.next();
-            Matcher m = p.matcher(url);
-            /** 如果找到就在白名单缓存中放入url，这有助于加快查找速度 */
-            if (m.find()) {
-                mWhiteListCache.put(url, true);
+        return false;
+    }
+
+    private static boolean matchRules(List<HostRule> rules, ParsedUrl url,
+            boolean withPath) {
+        for (HostRule rule : rules) {
+            if ((null != rule.mPath) == withPath && rule.matches(url)) {
                 return true;
             }
         }
@@ -96,25 +235,135 @@ public class XWhiteList {
      * @return 要编译的正则表达式
      */
     private String getRexPattern(String origin, boolean subdomains) {
-        /**如果origin为"*",则表示对访问的URL没有限制*/
-        if (origin.compareTo("*") == 0) {
-            XLog.d(CLASS_NAME, "Unlimited access to network resources");
-            return ".*";
+        /**检查是否子域名也允许访问*/
+        if (subdomains) {
+            XLog.d(CLASS_NAME, "Origin to allow with subdomains: %s", origin);
+            /**如果URL协议开头没有加上http,则自动加上*/
+            return origin.startsWith(HTTP_SCHEME) ?
+                    origin.replaceFirst(HTTPS_SCHEME, HTTP_SUBDOMAINS) :
+                        HTTP_SUBDOMAINS + origin;
         } else {
-            /**检查是否子域名也允许访问*/
-            if (subdomains) {
-                XLog.d(CLASS_NAME, "Origin to allow with subdomains: %s", origin);
-                /**如果URL协议开头没有加上http,则自动加上*/
-                return origin.startsWith(HTTP_SCHEME) ?
-                        origin.replaceFirst(HTTPS_SCHEME, HTTP_SUBDOMAINS) :
-                            HTTP_SUBDOMAINS + origin;
-            } else {
-                XLog.d(CLASS_NAME, "Origin to allow: %s", origin);
-                /**如果URL协议开头没有加上http,则自动加上*/
-                return origin.startsWith(HTTP_SCHEME) ?
-                        origin.replaceFirst(HTTPS_SCHEME, HTTPS_SCHEME_START) :
-                            HTTPS_SCHEME_START + origin;
+            XLog.d(CLASS_NAME, "Origin to allow: %s", origin);
+            /**如果URL协议开头没有加上http,则自动加上*/
+            return origin.startsWith(HTTP_SCHEME) ?
+                    origin.replaceFirst(HTTPS_SCHEME, HTTPS_SCHEME_START) :
+                        HTTPS_SCHEME_START + origin;
+        }
+    }
+
+    /**
+     * 主机名索引的节点，对应主机名的一个域名段
+     */
+    private static class HostNode {
+        /**只允许该主机名的规则*/
+        final List<HostRule> mExactRules = new ArrayList<HostRule>(1);
+        /**允许该主机名及其子域名的规则*/
+        final List<HostRule> mSubdomainRules = new ArrayList<HostRule>(1);
+        private HashMap<String, HostNode> mChildren;
+
+        HostNode getChild(String label) {
+            return null == mChildren ? null : mChildren.get(label);
+        }
+
+        HostNode getOrCreateChild(String label) {
+            if (null == mChildren) {
+                mChildren = new HashMap<String, HostNode>();
+            }
+            HostNode child = mChildren.get(label);
+            if (null == child) {
+                child = new HostNode();
+                mChildren.put(label, child);
+            }
+            return child;
+        }
+    }
+
+    /**
+     * 已解析的origin中主机名以外的限制
+     */
+    private static class HostRule {
+        /**端口，ANY_PORT表示不限制端口*/
+        final int mPort;
+        /**路径前缀，为null表示不限制路径*/
+        final String mPath;
+
+        HostRule(int port, String path) {
+            mPort = port;
+            mPath = path;
+        }
+
+        boolean matches(ParsedUrl url) {
+            if (ANY_PORT != mPort && mPort != url.mPort) {
+                return false;
+            }
+            return null == mPath || url.mPath.startsWith(mPath);
+        }
+    }
+
+    /**
+     * 从url中解析出的协议、主机名、端口和路径
+     */
+    private static class ParsedUrl {
+        String mScheme;
+        String mHost;
+        int mPort;
+        String mPath;
+
+        /**
+         * 解析http/https的url，其它协议或者无法解析时返回null
+         */
+        static ParsedUrl parse(String url) {
+            int schemeEnd = url.indexOf(SCHEME_SEPARATOR);
+            if (schemeEnd <= 0) {
+                return null;
+            }
+            String scheme = url.substring(0, schemeEnd).toLowerCase();
+            if (!scheme.equals(HTTP_SCHEME) && !scheme.equals(HTTPS)) {
+                return null;
+            }
+            int hostStart = schemeEnd + SCHEME_SEPARATOR.length();
+            int authorityEnd = url.length();
+            for (int i = hostStart; i < url.length(); i++) {
+                char c = url.charAt(i);
+                if (c == '/' || c == '?' || c == '#') {
+                    authorityEnd = i;
+                    break;
+                }
             }
+            int userInfoEnd = url.lastIndexOf('@', authorityEnd - 1);
+            if (userInfoEnd >= hostStart) {
+                hostStart = userInfoEnd + 1;
+            }
+            String authority = url.substring(hostStart, authorityEnd);
+            if (authority.length() == 0 || authority.charAt(0) == '[') {
+                // IPv6地址交给正则表达式处理
+                return null;
+            }
+            ParsedUrl parsed = new ParsedUrl();
+            parsed.mScheme = scheme;
+            parsed.mPort = scheme.equals(HTTPS) ? DEFAULT_HTTPS_PORT
+                    : DEFAULT_HTTP_PORT;
+            int portStart = authority.indexOf(':');
+            if (portStart >= 0) {
+                try {
+                    if (portStart + 1 < authority.length()) {
+                        parsed.mPort = Integer.parseInt(authority
+                                .substring(portStart + 1));
+                    }
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                authority = authority.substring(0, portStart);
+            }
+            parsed.mHost = authority.toLowerCase();
+            parsed.mPath = authorityEnd < url.length()
+                    && url.charAt(authorityEnd) == '/' ? url
+                    .substring(authorityEnd) : "/";
+            return parsed;
+        }
+
+        String getOrigin() {
+            return mScheme + SCHEME_SEPARATOR + mHost + ":" + mPort;
         }
     }
 }
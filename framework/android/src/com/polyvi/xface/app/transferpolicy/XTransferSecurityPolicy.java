@@ -22,8 +22,7 @@
 package com.polyvi.xface.app.transferpolicy;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.ArrayList;
 
 import android.content.Context;
@@ -38,32 +37,33 @@ import com.polyvi.xface.event.XEventType;
 import com.polyvi.xface.event.XSystemEventCenter;
 import com.polyvi.xface.util.XConstant;
 import com.polyvi.xface.util.XCryptor;
+import com.polyvi.xface.util.XFileDigester;
 import com.polyvi.xface.util.XFileUtils;
 import com.polyvi.xface.util.XFileVisitor;
 import com.polyvi.xface.util.XLog;
 
 /**
  * app转移的安全策略
+ * 应用中.html、.js、.htm文件的md5值并行计算；用于防篡改校验，每次都重新计算，不使用缓存
  */
 public class XTransferSecurityPolicy implements XSecurityPolicy, XFileVisitor {
     private static final String CLASS_NAME = XTransferSecurityPolicy.class
             .getSimpleName();
+
     private XISystemContext mSysCtx;
-    private ArrayList<String> mMd5Array;
-    private boolean mIsContinueTraverse;
+    /** 需要计算md5值的文件 */
+    private ArrayList<File> mFiles;
     private XCryptor mCryptor;
 
     public XTransferSecurityPolicy(XISystemContext sysCtx) {
-        mIsContinueTraverse = true;
         mSysCtx = sysCtx;
-        mMd5Array = new ArrayList<String>();
+        mFiles = new ArrayList<File>();
         mCryptor = new XCryptor();
     }
 
     @Override
     public boolean checkAppStart(XApplication app, XAppCheckListener listener) {
-        String transferedAppMd5 = calTransferedAppMd5(app.getAppInfo()
-                .getSrcRoot());
+        String transferedAppMd5 = calTransferedAppMd5(app);
         if (null != transferedAppMd5) {
             String prefMd5 = readPrefMd5(app.getAppId());
             if (transferedAppMd5.equals(prefMd5)) {
@@ -105,10 +105,11 @@ public class XTransferSecurityPolicy implements XSecurityPolicy, XFileVisitor {
     /**
      * 计算转移后的app的md5值
      *
-     * @param appSrcRoot
+     * @param app
      * @return
      */
-    private String calTransferedAppMd5(String appSrcRoot) {
+    private String calTransferedAppMd5(XApplication app) {
+        String appSrcRoot = app.getAppInfo().getSrcRoot();
         if (null == appSrcRoot) {
             XLog.w(CLASS_NAME, "calTransferedAppMd5 app src_Root is null!");
             return null;
@@ -116,9 +117,15 @@ public class XTransferSecurityPolicy implements XSecurityPolicy, XFileVisitor {
         // src前面有file协议会无法找到相应路径，所以需要去掉file协议头
         appSrcRoot = appSrcRoot.split(XConstant.FILE_SCHEME)[1];
         XFileUtils.walkDirectory(appSrcRoot, this);
-        String md5 = XTransferPolicyUtils.calAppMd5(mMd5Array, mCryptor);
-        mMd5Array.clear();
-        return md5;
+        XFileDigester digester = new XFileDigester(XFileDigester.MD5);
+        ArrayList<String> md5Array = null;
+        try {
+            md5Array = new ArrayList<String>(digester.digest(mFiles).values());
+        } catch (IOException e) {
+            XLog.e(CLASS_NAME, "calTransferedAppMd5 failed: " + e.getMessage());
+        }
+        mFiles.clear();
+        return XTransferPolicyUtils.calAppMd5(md5Array, mCryptor);
     }
 
     /**
@@ -133,24 +140,16 @@ public class XTransferSecurityPolicy implements XSecurityPolicy, XFileVisitor {
 
     @Override
     public void visit(String filePath) {
-        // 计算md5值
-        try {
-            if (filePath.endsWith(".html") || filePath.endsWith(".js")
-                    || filePath.endsWith(".htm")) {
-                FileInputStream is = new FileInputStream(new File(filePath));
-                String md5 = mCryptor.calMD5Value(is);
-                mMd5Array.add(md5);
-            }
-        } catch (FileNotFoundException e) {
-            XLog.e(CLASS_NAME, filePath + " Not Found!");
-            mMd5Array = null;
-            mIsContinueTraverse = false;
+        // 收集需要计算md5值的文件，遍历完成后统一计算
+        if (filePath.endsWith(".html") || filePath.endsWith(".js")
+                || filePath.endsWith(".htm")) {
+            mFiles.add(new File(filePath));
         }
     }
 
     @Override
     public boolean isContinueTraverse() {
-        return mIsContinueTraverse;
+        return true;
     }
 
 }
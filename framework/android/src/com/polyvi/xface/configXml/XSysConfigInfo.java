@@ -74,6 +74,27 @@ public class XSysConfigInfo {
     /**加载应用时等待xface.js是否加载完成的时间 */
     private String mLoadUrlTimeout;
 
+    /**是否开启js桥接的性能统计 */
+    private boolean mBridgeMetricsEnabled = false;
+
+    /**文件传输发送进度的最小时间间隔(毫秒) */
+    private String mProgressInterval;
+
+    /**文件传输发送进度的最小进度增量(百分比) */
+    private String mProgressStep;
+
+    /**http连接池的最大连接数 */
+    private String mHttpMaxConnections;
+
+    /**http连接池中每个主机的最大连接数 */
+    private String mHttpMaxConnectionsPerRoute;
+
+    /**是否将log写入工作目录下的文件 */
+    private boolean mLogFileEnabled;
+
+    /**是否将log持久化到可以按时间和tag查询的存储中 */
+    private boolean mLogStoreEnabled;
+
     /**从xml文件中加载的插件配置 */
     private HashMap<String, String> mPluginsConfig;
 
@@ -157,6 +178,66 @@ public class XSysConfigInfo {
         return mAutoHideSplash;
     }
 
+    public void setBridgeMetricsEnabled(String bridgeMetricsEnabled) {
+        if(null == bridgeMetricsEnabled) {
+            this.mBridgeMetricsEnabled = false;
+            return;
+        }
+        this.mBridgeMetricsEnabled = bridgeMetricsEnabled.equals("true");
+    }
+
+    public boolean getBridgeMetricsEnabled() {
+        return mBridgeMetricsEnabled;
+    }
+
+    public void setProgressInterval(String progressInterval) {
+        this.mProgressInterval = progressInterval;
+    }
+
+    public String getProgressInterval() {
+        return mProgressInterval;
+    }
+
+    public void setProgressStep(String progressStep) {
+        this.mProgressStep = progressStep;
+    }
+
+    public String getProgressStep() {
+        return mProgressStep;
+    }
+
+    public void setHttpMaxConnections(String httpMaxConnections) {
+        this.mHttpMaxConnections = httpMaxConnections;
+    }
+
+    public String getHttpMaxConnections() {
+        return mHttpMaxConnections;
+    }
+
+    public void setHttpMaxConnectionsPerRoute(String httpMaxConnectionsPerRoute) {
+        this.mHttpMaxConnectionsPerRoute = httpMaxConnectionsPerRoute;
+    }
+
+    public String getHttpMaxConnectionsPerRoute() {
+        return mHttpMaxConnectionsPerRoute;
+    }
+
+    public void setLogFileEnabled(String logFileEnabled) {
+        this.mLogFileEnabled = "true".equals(logFileEnabled);
+    }
+
+    public boolean getLogFileEnabled() {
+        return mLogFileEnabled;
+    }
+
+    public void setLogStoreEnabled(String logStoreEnabled) {
+        this.mLogStoreEnabled = "true".equals(logStoreEnabled);
+    }
+
+    public boolean getLogStoreEnabled() {
+        return mLogStoreEnabled;
+    }
+
     public void setWorkDir(String workDir) {
         this.mWorkDir = workDir;
     }
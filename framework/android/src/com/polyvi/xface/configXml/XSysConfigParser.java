@@ -49,6 +49,10 @@ public class XSysConfigParser {
     protected static final String ATTR_NAME = "name";
     protected static final String ATTR_VALUE = "value";
     protected static final String ATTR_ID = "id";
+    protected static final String ATTR_PRIORITY = "priority";
+    protected static final String ATTR_MAX_CONCURRENT = "maxConcurrent";
+    protected static final String ATTR_MAX_QUEUED = "maxQueued";
+    protected static final String ATTR_PRELOAD = "preload";
     protected static final String ATTR_LOG_LEVEL = "LogLevel";
     protected static final String ATTR_FULLSCREEN = "FullScreen";
     protected static final String ATTR_WORK_DIR = "WorkDir";
@@ -60,6 +64,13 @@ public class XSysConfigParser {
     protected static final String ATTR_UPDATE_ADDRESS = "UpdateAddress";
     protected static final String ATTR_CHECK_UPDATE = "CheckUpdate";
     protected static final String ATTR_LOADURL_TIMEOUT = "LoadUrlTimeout";
+    protected static final String ATTR_BRIDGE_METRICS = "BridgeMetrics";
+    protected static final String ATTR_PROGRESS_INTERVAL = "ProgressInterval";
+    protected static final String ATTR_PROGRESS_STEP = "ProgressStep";
+    protected static final String ATTR_HTTP_MAX_CONNECTIONS = "HttpMaxConnections";
+    protected static final String ATTR_HTTP_MAX_CONNECTIONS_PER_ROUTE = "HttpMaxConnectionsPerRoute";
+    protected static final String ATTR_LOG_FILE = "LogFile";
+    protected static final String ATTR_LOG_STORE = "LogStore";
 
     protected Document mDoc;
 
@@ -130,6 +141,13 @@ public class XSysConfigParser {
         sysConfigInfo.setUpdateAddress(XXmlUtils.parsePrefValue(mDoc, ATTR_UPDATE_ADDRESS));
         sysConfigInfo.setUpdateCheck(XXmlUtils.parsePrefValue(mDoc, ATTR_CHECK_UPDATE));
         sysConfigInfo.setLoadUrlTimeout(XXmlUtils.parsePrefValue(mDoc, ATTR_LOADURL_TIMEOUT));
+        sysConfigInfo.setBridgeMetricsEnabled(XXmlUtils.parsePrefValue(mDoc, ATTR_BRIDGE_METRICS));
+        sysConfigInfo.setProgressInterval(XXmlUtils.parsePrefValue(mDoc, ATTR_PROGRESS_INTERVAL));
+        sysConfigInfo.setProgressStep(XXmlUtils.parsePrefValue(mDoc, ATTR_PROGRESS_STEP));
+        sysConfigInfo.setHttpMaxConnections(XXmlUtils.parsePrefValue(mDoc, ATTR_HTTP_MAX_CONNECTIONS));
+        sysConfigInfo.setHttpMaxConnectionsPerRoute(XXmlUtils.parsePrefValue(mDoc, ATTR_HTTP_MAX_CONNECTIONS_PER_ROUTE));
+        sysConfigInfo.setLogFileEnabled(XXmlUtils.parsePrefValue(mDoc, ATTR_LOG_FILE));
+        sysConfigInfo.setLogStoreEnabled(XXmlUtils.parsePrefValue(mDoc, ATTR_LOG_STORE));
         sysConfigInfo.setPluginsConfig(parsePluginsConfig());
         sysConfigInfo.setPluginDesciptions(parsePluginDesciptions());
         return sysConfigInfo;
@@ -191,7 +209,11 @@ public class XSysConfigParser {
      * <extensions>
      *     <extension name="Accelerometer" value="XAccelerometerExt" />
      *     <extension name="App" value="XAppExt" />
+     *     <extension name="File" value="XFileExt" priority="low" maxConcurrent="2" maxQueued="64" />
+     *     <extension name="Telephony" value="XTelephonyExt" preload="true" />
      * </extension>
+     * priority、maxConcurrent、maxQueued为可选属性，用于控制扩展异步执行的优先级和并发数
+     * preload为可选属性，为true时扩展在应用启动时加载，否则在第一次调用时加载
      * @return 扩展集合
      */
     private HashMap<String, XExtensionEntry> parseExtensionTag() {
@@ -203,13 +225,39 @@ public class XSysConfigParser {
             if(null != textChild) {
                 String name = ((Element) textChild).getAttribute(ATTR_NAME);
                 String className = ((Element) textChild).getAttribute(ATTR_VALUE);
-                XExtensionEntry entry = new XExtensionEntry(name, className);
+                XExtensionEntry.Priority priority = XExtensionEntry.Priority
+                        .parse(((Element) textChild).getAttribute(ATTR_PRIORITY));
+                int maxConcurrent = parseIntAttribute((Element) textChild,
+                        ATTR_MAX_CONCURRENT, XExtensionEntry.UNLIMITED);
+                int maxQueued = parseIntAttribute((Element) textChild,
+                        ATTR_MAX_QUEUED, XExtensionEntry.DEFAULT_MAX_QUEUED);
+                boolean preload = Boolean.parseBoolean(((Element) textChild)
+                        .getAttribute(ATTR_PRELOAD));
+                XExtensionEntry entry = new XExtensionEntry(name, className,
+                        priority, maxConcurrent, maxQueued, preload);
                 extensions.put(name, entry);
             }
         }
         return extensions;
     }
 
+    /**
+     * 解析元素的整数属性，属性不存在或格式错误时返回默认值
+     */
+    private int parseIntAttribute(Element element, String attrName,
+            int defaultValue) {
+        String value = element.getAttribute(attrName);
+        if (null == value || value.length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            XLog.w(CLASS_NAME, "Invalid value of " + attrName + ": " + value);
+            return defaultValue;
+        }
+    }
+
     /**
      * 解析加载的插件配置
      * <plugins>
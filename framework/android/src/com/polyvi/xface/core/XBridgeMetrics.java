@@ -0,0 +1,322 @@
+/*
+ Copyright 2012-2013, Polyvi Inc. (http://polyvi.github.io/openxface)
+ This program is distributed under the terms of the GNU General Public License.
+
+ This file is part of xFace.
+
+ xFace is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ xFace is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with xFace.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.polyvi.xface.core;
+
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.polyvi.xface.util.XFileUtils;
+
+/**
+ * js桥接的性能统计，单例
+ * 统计每个扩展每个行为的分发耗时、执行耗时、同步/异步调用次数，
+ * 以及每个扩展的结果在js消息队列中的停留时间和编码后的消息长度
+ * 时间的单位为微秒，消息长度的单位为字符
+ */
+public class XBridgeMetrics {
+
+    /** 不带callbackId的js语句统计时使用的名称 */
+    private static final String JAVASCRIPT_STATEMENT = "javascript";
+
+    private static final String TAG_CALLS = "calls";
+    private static final String TAG_MESSAGES = "messages";
+    private static final String TAG_SYNC = "sync";
+    private static final String TAG_ASYNC = "async";
+    private static final String TAG_DISPATCH = "dispatchTime";
+    private static final String TAG_EXEC = "execTime";
+    private static final String TAG_RESIDENCY = "queueResidency";
+    private static final String TAG_PAYLOAD_SIZE = "payloadSize";
+
+    private static XBridgeMetrics sInstance;
+
+    private volatile boolean mEnabled = false;
+
+    /** 扩展调用的统计 service -> action -> 统计数据 */
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, CallStats>> mCallStats = new ConcurrentHashMap<String, ConcurrentHashMap<String, CallStats>>();
+
+    /** js消息的统计 service -> 统计数据 */
+    private final ConcurrentHashMap<String, MessageStats> mMessageStats = new ConcurrentHashMap<String, MessageStats>();
+
+    private XBridgeMetrics() {
+    }
+
+    public static synchronized XBridgeMetrics getInstance() {
+        if (null == sInstance) {
+            sInstance = new XBridgeMetrics();
+        }
+        return sInstance;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * 设置是否开启统计，关闭后所有的记录操作都直接返回
+     */
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    /**
+     * 记录一次扩展调用
+     *
+     * @param service
+     *            扩展名
+     * @param action
+     *            扩展的行为
+     * @param async
+     *            是否异步执行
+     * @param dispatchNanos
+     *            从js调用到达本地到扩展开始执行的耗时（纳秒）
+     * @param execNanos
+     *            扩展执行的耗时（纳秒）
+     */
+    public void recordCall(String service, String action, boolean async,
+            long dispatchNanos, long execNanos) {
+        if (!mEnabled) {
+            return;
+        }
+        CallStats stats = getCallStats(service, action);
+        (async ? stats.mAsyncCalls : stats.mSyncCalls).incrementAndGet();
+        stats.mDispatchTime.record(dispatchNanos / 1000);
+        stats.mExecTime.record(execNanos / 1000);
+    }
+
+    /**
+     * 记录一条js消息的出队
+     *
+     * @param callbackId
+     *            回调id，js端生成的回调id由扩展名和序号组成，为null表示js语句
+     * @param residencyNanos
+     *            消息在队列中的停留时间（纳秒）
+     * @param payloadSize
+     *            消息编码后的长度
+     */
+    public void recordMessage(String callbackId, long residencyNanos,
+            int payloadSize) {
+        if (!mEnabled) {
+            return;
+        }
+        String service = null == callbackId ? JAVASCRIPT_STATEMENT
+                : serviceOf(callbackId);
+        MessageStats stats = mMessageStats.get(service);
+        if (null == stats) {
+            stats = new MessageStats();
+            MessageStats old = mMessageStats.putIfAbsent(service, stats);
+            if (null != old) {
+                stats = old;
+            }
+        }
+        stats.mResidency.record(residencyNanos / 1000);
+        stats.mPayloadSize.record(payloadSize);
+    }
+
+    /**
+     * 清空所有的统计数据
+     */
+    public void reset() {
+        mCallStats.clear();
+        mMessageStats.clear();
+    }
+
+    /**
+     * 将统计数据转换为json对象，格式为：
+     * {"calls":{"File":{"readAsText":{"sync":0,"async":3,"dispatchTime":{...},"execTime":{...}}}},
+     *  "messages":{"File":{"queueResidency":{...},"payloadSize":{...}}}}
+     * 其中分布数据的格式为{"count":n,"mean":x,"p50":x,"p95":x,"p99":x,"max":x}
+     */
+    public JSONObject toJSON() throws JSONException {
+        JSONObject calls = new JSONObject();
+        for (Entry<String, ConcurrentHashMap<String, CallStats>> service : mCallStats
+                .entrySet()) {
+            JSONObject actions = new JSONObject();
+            for (Entry<String, CallStats> action : service.getValue()
+                    .entrySet()) {
+                CallStats stats = action.getValue();
+                JSONObject obj = new JSONObject();
+                obj.put(TAG_SYNC, stats.mSyncCalls.get());
+                obj.put(TAG_ASYNC, stats.mAsyncCalls.get());
+                obj.put(TAG_DISPATCH, stats.mDispatchTime.toJSON());
+                obj.put(TAG_EXEC, stats.mExecTime.toJSON());
+                actions.put(action.getKey(), obj);
+            }
+            calls.put(service.getKey(), actions);
+        }
+        JSONObject messages = new JSONObject();
+        for (Entry<String, MessageStats> service : mMessageStats.entrySet()) {
+            MessageStats stats = service.getValue();
+            JSONObject obj = new JSONObject();
+            obj.put(TAG_RESIDENCY, stats.mResidency.toJSON());
+            obj.put(TAG_PAYLOAD_SIZE, stats.mPayloadSize.toJSON());
+            messages.put(service.getKey(), obj);
+        }
+        JSONObject ret = new JSONObject();
+        ret.put(TAG_CALLS, calls);
+        ret.put(TAG_MESSAGES, messages);
+        return ret;
+    }
+
+    /**
+     * 将统计数据以json格式写入文件
+     *
+     * @param filePath
+     *            文件的绝对路径
+     * @return 成功返回true，失败返回false
+     */
+    public boolean dump(String filePath) throws JSONException {
+        return XFileUtils.writeFileByString(filePath, toJSON().toString());
+    }
+
+    private CallStats getCallStats(String service, String action) {
+        ConcurrentHashMap<String, CallStats> actions = mCallStats.get(service);
+        if (null == actions) {
+            actions = new ConcurrentHashMap<String, CallStats>();
+            ConcurrentHashMap<String, CallStats> old = mCallStats.putIfAbsent(
+                    service, actions);
+            if (null != old) {
+                actions = old;
+            }
+        }
+        CallStats stats = actions.get(action);
+        if (null == stats) {
+            stats = new CallStats();
+            CallStats old = actions.putIfAbsent(action, stats);
+            if (null != old) {
+                stats = old;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * 从回调id中取出扩展名，js端的回调id为扩展名加上序号，例如"File12"
+     */
+    private static String serviceOf(String callbackId) {
+        int end = callbackId.length();
+        while (end > 0 && Character.isDigit(callbackId.charAt(end - 1))) {
+            end--;
+        }
+        return end == callbackId.length() ? callbackId : callbackId.substring(
+                0, end);
+    }
+
+    private static class CallStats {
+        final AtomicLong mSyncCalls = new AtomicLong();
+        final AtomicLong mAsyncCalls = new AtomicLong();
+        final Histogram mDispatchTime = new Histogram();
+        final Histogram mExecTime = new Histogram();
+    }
+
+    private static class MessageStats {
+        final Histogram mResidency = new Histogram();
+        final Histogram mPayloadSize = new Histogram();
+    }
+
+    /**
+     * 无锁的对数分布直方图，每个2的幂区间再细分为4个子区间，百分位数的相对误差不超过25%
+     */
+    static class Histogram {
+        private static final int SUB_BUCKET_BITS = 2;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKET_COUNT = 64 * SUB_BUCKETS;
+
+        private final AtomicLongArray mCounts = new AtomicLongArray(
+                BUCKET_COUNT);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mSum = new AtomicLong();
+        private final AtomicLong mMax = new AtomicLong();
+
+        void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            mCounts.incrementAndGet(indexOf(value));
+            mCount.incrementAndGet();
+            mSum.addAndGet(value);
+            long max;
+            while (value > (max = mMax.get())) {
+                if (mMax.compareAndSet(max, value)) {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * 计算百分位数，返回所在区间的上界
+         *
+         * @param percent
+         *            百分比，取值范围(0, 100]
+         */
+        long percentile(double percent) {
+            long count = mCount.get();
+            if (count == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(count * percent / 100);
+            long cumulative = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                cumulative += mCounts.get(i);
+                if (cumulative >= target) {
+                    return Math.min(upperBoundOf(i), mMax.get());
+                }
+            }
+            return mMax.get();
+        }
+
+        JSONObject toJSON() throws JSONException {
+            long count = mCount.get();
+            JSONObject obj = new JSONObject();
+            obj.put("count", count);
+            obj.put("mean", count == 0 ? 0 : mSum.get() / count);
+            obj.put("p50", percentile(50));
+            obj.put("p95", percentile(95));
+            obj.put("p99", percentile(99));
+            obj.put("max", mMax.get());
+            return obj;
+        }
+
+        static int indexOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exp = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) ((value >>> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+            return (exp - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        static long upperBoundOf(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int exp = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            int sub = index % SUB_BUCKETS;
+            long bound = ((long) (SUB_BUCKETS + sub + 1) << (exp - SUB_BUCKET_BITS)) - 1;
+            // 最后一个区间的上界会溢出
+            return bound < 0 ? Long.MAX_VALUE : bound;
+        }
+    }
+}
@@ -43,6 +43,8 @@ import com.polyvi.xface.configXml.XSysConfigParser;
 import com.polyvi.xface.configXml.XTagNotFoundException;
 import com.polyvi.xface.extension.XExtensionContext;
 import com.polyvi.xface.extension.XExtensionEntry;
+import com.polyvi.xface.extension.XProgressThrottle;
+import com.polyvi.xface.http.XHttpEngine;
 import com.polyvi.xface.util.XConstant;
 import com.polyvi.xface.util.XFileUtils;
 import com.polyvi.xface.util.XLog;
@@ -293,6 +295,88 @@ public class XConfiguration {
                 .getLoadUrlTimeout();
     }
 
+    /**
+     * 从config.xml配置文件中读取是否开启js桥接的性能统计
+     *
+     * @return
+     */
+    public boolean readBridgeMetricsEnabled() {
+        return (null == mSysConfigInfo) ? false : mSysConfigInfo
+                .getBridgeMetricsEnabled();
+    }
+
+    /**
+     * 从config.xml配置文件中读取文件传输发送进度的最小时间间隔(毫秒)
+     *
+     * @return
+     */
+    public int readProgressInterval() {
+        return parseInt((null == mSysConfigInfo) ? null : mSysConfigInfo
+                .getProgressInterval(), XProgressThrottle.DEFAULT_INTERVAL);
+    }
+
+    /**
+     * 从config.xml配置文件中读取文件传输发送进度的最小进度增量(百分比)
+     *
+     * @return
+     */
+    public int readProgressStep() {
+        return parseInt((null == mSysConfigInfo) ? null : mSysConfigInfo
+                .getProgressStep(), XProgressThrottle.DEFAULT_STEP);
+    }
+
+    /**
+     * 从config.xml配置文件中读取http连接池的最大连接数
+     *
+     * @return
+     */
+    public int readHttpMaxConnections() {
+        return parseInt((null == mSysConfigInfo) ? null : mSysConfigInfo
+                .getHttpMaxConnections(), XHttpEngine.DEFAULT_MAX_CONNECTIONS);
+    }
+
+    /**
+     * 从config.xml配置文件中读取http连接池中每个主机的最大连接数
+     *
+     * @return
+     */
+    public int readHttpMaxConnectionsPerRoute() {
+        return parseInt((null == mSysConfigInfo) ? null : mSysConfigInfo
+                .getHttpMaxConnectionsPerRoute(),
+                XHttpEngine.DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+    }
+
+    /**
+     * 从config.xml配置文件中读取是否将log写入工作目录下的文件
+     *
+     * @return
+     */
+    public boolean readLogFileEnabled() {
+        return (null == mSysConfigInfo) ? false : mSysConfigInfo
+                .getLogFileEnabled();
+    }
+
+    /**
+     * 从config.xml配置文件中读取是否将log持久化到可以按时间和tag查询的存储中
+     *
+     * @return
+     */
+    public boolean readLogStoreEnabled() {
+        return (null == mSysConfigInfo) ? false : mSysConfigInfo
+                .getLogStoreEnabled();
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (null == value) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
     /**
      * 从config.xml配置文件中读取插件配置信息
      *
@@ -0,0 +1,247 @@
+/*
+ Copyright 2012-2013, Polyvi Inc. (http://polyvi.github.io/openxface)
+ This program is distributed under the terms of the GNU General Public License.
+
+ This file is part of xFace.
+
+ xFace is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ xFace is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with xFace.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.polyvi.xface.core;
+
+/**
+ * js消息编码器，将js消息直接写入可复用的字符缓冲区，避免编码过程中产生中间字符串
+ * 该类不是线程安全的，由{@link XNativeToJsMessageQueue}在出队锁内使用
+ */
+class XJsMessageEncoder {
+
+    // 缓冲区的初始大小
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // 编码完成后缓冲区超过该大小则释放，避免长期占用大块内存
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    // Base64编码表，与XBase64的默认编码表一致
+    private static final char[] BASE64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+            .toCharArray();
+
+    private char[] mBuffer = new char[INITIAL_CAPACITY];
+
+    private int mLength;
+
+    /**
+     * 开始一次新的编码
+     *
+     * @param expectedLength
+     *            预计的编码长度，用于预先分配缓冲区
+     */
+    void begin(int expectedLength) {
+        mLength = 0;
+        ensureCapacity(expectedLength);
+    }
+
+    XJsMessageEncoder append(char c) {
+        ensureCapacity(mLength + 1);
+        mBuffer[mLength++] = c;
+        return this;
+    }
+
+    XJsMessageEncoder append(String str) {
+        int len = str.length();
+        ensureCapacity(mLength + len);
+        str.getChars(0, len, mBuffer, mLength);
+        mLength += len;
+        return this;
+    }
+
+    XJsMessageEncoder append(boolean b) {
+        return append(b ? "true" : "false");
+    }
+
+    /**
+     * 写入非负整数，不产生临时字符串
+     */
+    XJsMessageEncoder append(int value) {
+        if (value < 0) {
+            return append(String.valueOf(value));
+        }
+        int digits = digitCount(value);
+        ensureCapacity(mLength + digits);
+        int pos = mLength + digits;
+        do {
+            mBuffer[--pos] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        mLength += digits;
+        return this;
+    }
+
+    /**
+     * 按照JSONObject.quote的规则将字符串加上引号并转义后写入
+     */
+    XJsMessageEncoder appendQuoted(String str) {
+        if (null == str) {
+            return append("\"\"");
+        }
+        int len = str.length();
+        ensureCapacity(mLength + quotedLength(str));
+        char[] buf = mBuffer;
+        int pos = mLength;
+        buf[pos++] = '"';
+        for (int i = 0; i < len; i++) {
+            char c = str.charAt(i);
+            switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                buf[pos++] = '\\';
+                buf[pos++] = c;
+                break;
+            case '\t':
+                buf[pos++] = '\\';
+                buf[pos++] = 't';
+                break;
+            case '\b':
+                buf[pos++] = '\\';
+                buf[pos++] = 'b';
+                break;
+            case '\n':
+                buf[pos++] = '\\';
+                buf[pos++] = 'n';
+                break;
+            case '\r':
+                buf[pos++] = '\\';
+                buf[pos++] = 'r';
+                break;
+            case '\f':
+                buf[pos++] = '\\';
+                buf[pos++] = 'f';
+                break;
+            default:
+                if (c <= 0x1F) {
+                    buf[pos++] = '\\';
+                    buf[pos++] = 'u';
+                    buf[pos++] = '0';
+                    buf[pos++] = '0';
+                    buf[pos++] = Character.forDigit(c >> 4, 16);
+                    buf[pos++] = Character.forDigit(c & 0xF, 16);
+                } else {
+                    buf[pos++] = c;
+                }
+            }
+        }
+        buf[pos++] = '"';
+        mLength = pos;
+        return this;
+    }
+
+    /**
+     * 将二进制数据按照Base64(NO_WRAP)编码直接写入缓冲区，不产生中间的Base64字符串
+     */
+    XJsMessageEncoder appendBase64(byte[] data, int offset, int len) {
+        ensureCapacity(mLength + base64Length(len));
+        final char[] alphabet = BASE64_ALPHABET;
+        char[] buf = mBuffer;
+        int pos = mLength;
+        int p = offset;
+        int end = offset + len;
+        while (p + 3 <= end) {
+            int v = ((data[p] & 0xff) << 16) | ((data[p + 1] & 0xff) << 8)
+                    | (data[p + 2] & 0xff);
+            buf[pos] = alphabet[(v >> 18) & 0x3f];
+            buf[pos + 1] = alphabet[(v >> 12) & 0x3f];
+            buf[pos + 2] = alphabet[(v >> 6) & 0x3f];
+            buf[pos + 3] = alphabet[v & 0x3f];
+            p += 3;
+            pos += 4;
+        }
+        int remain = end - p;
+        if (remain == 1) {
+            int v = (data[p] & 0xff) << 4;
+            buf[pos++] = alphabet[(v >> 6) & 0x3f];
+            buf[pos++] = alphabet[v & 0x3f];
+            buf[pos++] = '=';
+            buf[pos++] = '=';
+        } else if (remain == 2) {
+            int v = ((data[p] & 0xff) << 10) | ((data[p + 1] & 0xff) << 2);
+            buf[pos++] = alphabet[(v >> 12) & 0x3f];
+            buf[pos++] = alphabet[(v >> 6) & 0x3f];
+            buf[pos++] = alphabet[v & 0x3f];
+            buf[pos++] = '=';
+        }
+        mLength = pos;
+        return this;
+    }
+
+    /**
+     * 结束本次编码并返回编码结果
+     */
+    String finish() {
+        String ret = new String(mBuffer, 0, mLength);
+        mLength = 0;
+        if (mBuffer.length > MAX_RETAINED_CAPACITY) {
+            mBuffer = new char[INITIAL_CAPACITY];
+        }
+        return ret;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mBuffer.length) {
+            int newCapacity = Math.max(capacity, mBuffer.length * 2);
+            char[] newBuffer = new char[newCapacity];
+            System.arraycopy(mBuffer, 0, newBuffer, 0, mLength);
+            mBuffer = newBuffer;
+        }
+    }
+
+    /**
+     * 计算非负整数的十进制位数
+     */
+    static int digitCount(int value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    /**
+     * 计算len个字节经过Base64(NO_WRAP)编码后的长度
+     */
+    static int base64Length(int len) {
+        return (len + 2) / 3 * 4;
+    }
+
+    /**
+     * 计算字符串经过{@link #appendQuoted(String)}编码后的长度
+     */
+    static int quotedLength(String str) {
+        if (null == str) {
+            return 2;
+        }
+        int len = str.length();
+        int ret = len + 2;
+        for (int i = 0; i < len; i++) {
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\' || c == '/' || c == '\t' || c == '\b'
+                    || c == '\n' || c == '\r' || c == '\f') {
+                ret += 1;
+            } else if (c <= 0x1F) {
+                ret += 5;
+            }
+        }
+        return ret;
+    }
+}
@@ -24,7 +24,8 @@ package com.polyvi.xface.core;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.util.LinkedList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import android.os.Message;
 import android.util.Log;
@@ -56,14 +57,23 @@ public class XNativeToJsMessageQueue {
     // js执行时 默认最大的负载长度
     private static int MAX_PAYLOAD_SIZE = 50 * 1024 * 10240;
 
+    // 二进制结果超过该字节数时分块发送，每次出队最多编码一个分块，限制单次编码占用的内存
+    private static final int BINARY_CHUNK_SIZE = 256 * 1024;
+
     // 桥接模式索引
-    private int mActiveListenerIndex;
+    private volatile int mActiveListenerIndex;
 
     // 当js消息进入队列的时候，如果该标志位true 则不触发js的执行
-    private boolean mPaused;
+    private volatile boolean mPaused;
+
+    // js消息列表 多个扩展线程可以无锁地并发入队
+    private final ConcurrentLinkedQueue<JsMessage> mJsQueue = new ConcurrentLinkedQueue<JsMessage>();
+
+    // 出队锁 只用于串行化消息的取出，入队不需要获取该锁
+    private final Object mPopLock = new Object();
 
-    // js消息列表
-    private final LinkedList<JsMessage> mJsQueue = new LinkedList<JsMessage>();
+    // 出队时使用的编码器 其缓冲区在多次出队之间复用 只能在出队锁内使用
+    private final XJsMessageEncoder mEncoder = new XJsMessageEncoder();
 
     // native到js 桥接模式列表
     private final BridgeMode[] mRegisteredListeners;
@@ -94,12 +104,9 @@ public class XNativeToJsMessageQueue {
         } else {
             if (value != mActiveListenerIndex) {
                 XLog.d(LOG_TAG, "Set native->JS mode to " + value);
-                synchronized (this) {
-                    mActiveListenerIndex = value;
-                    BridgeMode activeListener = mRegisteredListeners[value];
-                    if (!mPaused && !mJsQueue.isEmpty() && activeListener != null) {
-                        activeListener.onNativeToJsMessageAvailable();
-                    }
+                mActiveListenerIndex = value;
+                if (!mJsQueue.isEmpty()) {
+                    notifyMessageAvailable();
                 }
             }
         }
@@ -109,22 +116,10 @@ public class XNativeToJsMessageQueue {
      * 清空队列 恢复默认的桥接模式
      */
     public void reset() {
-        synchronized (this) {
+        synchronized (mPopLock) {
             mJsQueue.clear();
-            setBridgeMode(DEFAULT_BRIDGE_MODE);
         }
-    }
-
-    private int calculatePackedMessageLength(JsMessage message) {
-        int messageLen = message.calculateEncodedLength();
-        String messageLenStr = String.valueOf(messageLen);
-        return messageLenStr.length() + messageLen + 1;
-    }
-
-    private void packMessage(JsMessage message, StringBuilder sb) {
-        int len = message.calculateEncodedLength();
-        sb.append(len).append(' ');
-        message.encodeAsMessage(sb);
+        setBridgeMode(DEFAULT_BRIDGE_MODE);
     }
 
     /**
@@ -133,82 +128,92 @@ public class XNativeToJsMessageQueue {
      * @return
      */
     public String popAndEncode() {
-        synchronized (this) {
-            if (mJsQueue.isEmpty()) {
+        synchronized (mPopLock) {
+            JsMessage message = mJsQueue.peek();
+            if (null == message) {
                 return null;
             }
+            XJsMessageEncoder encoder = mEncoder;
+            encoder.begin(message.mPackedLength);
+            XBridgeMetrics metrics = XBridgeMetrics.getInstance();
+            long popTime = System.nanoTime();
             int totalPayloadLen = 0;
-            int numMessagesToSend = 0;
-            for (JsMessage message : mJsQueue) {
-                int messageSize = calculatePackedMessageLength(message);
-                if (numMessagesToSend > 0
+            do {
+                int messageSize = message.mPackedLength;
+                if (totalPayloadLen > 0
                         && totalPayloadLen + messageSize > MAX_PAYLOAD_SIZE
                         && MAX_PAYLOAD_SIZE > 0) {
                     break;
                 }
                 totalPayloadLen += messageSize;
-                numMessagesToSend += 1;
-            }
-
-            StringBuilder sb = new StringBuilder(totalPayloadLen);
-            for (int i = 0; i < numMessagesToSend; ++i) {
-                JsMessage message = mJsQueue.removeFirst();
-                packMessage(message, sb);
-            }
+                mJsQueue.poll();
+                encoder.append(message.mEncodedLength).append(' ');
+                message.encodeAsMessage(encoder);
+                message.recordMetrics(metrics, popTime, message.mPackedLength);
+                if (message.mIsBinaryChunk) {
+                    // 剩余的分块留到下一次出队
+                    break;
+                }
+            } while ((message = mJsQueue.peek()) != null);
 
             if (!mJsQueue.isEmpty()) {
                 // 表示队列有还有没有处理的消息 js层会用到这个标志
-                sb.append('*');
+                encoder.append('*');
             }
-            String ret = sb.toString();
-            return ret;
+            return encoder.finish();
         }
     }
 
     /**
      * 功能和popAndEncode类似，但是返回的js消息可以直接被执行 没有被用户编码
      *
+     * @param prefix
+     *            加在返回结果前面的字符串，例如"javascript:"，可以避免调用者再次拼接字符串
      * @return
      */
-    private String popAndEncodeAsJs() {
-        synchronized (this) {
-            int length = mJsQueue.size();
-            if (length == 0) {
+    private String popAndEncodeAsJs(String prefix) {
+        synchronized (mPopLock) {
+            JsMessage message = mJsQueue.poll();
+            if (null == message) {
                 return null;
             }
+            // 一次取出当前队列中所有可发送的消息 边取边编码
+            XJsMessageEncoder encoder = mEncoder;
+            encoder.begin(prefix.length() + message.mJsEncodedLength);
+            encoder.append(prefix);
+            XBridgeMetrics metrics = XBridgeMetrics.getInstance();
+            long popTime = System.nanoTime();
             int totalPayloadLen = 0;
             int numMessagesToSend = 0;
-            for (JsMessage message : mJsQueue) {
-                int messageSize = message.calculateEncodedLength() + 50; // overestimate.
-                if (numMessagesToSend > 0
-                        && totalPayloadLen + messageSize > MAX_PAYLOAD_SIZE
-                        && MAX_PAYLOAD_SIZE > 0) {
+            boolean willSendAllMessages;
+            while (true) {
+                totalPayloadLen += message.mJsEncodedLength;
+                numMessagesToSend += 1;
+                message.recordMetrics(metrics, popTime, message.mJsEncodedLength);
+                JsMessage next = mJsQueue.peek();
+                if (null == next) {
+                    message.encodeAsJsMessage(encoder);
+                    willSendAllMessages = true;
                     break;
                 }
-                totalPayloadLen += messageSize;
-                numMessagesToSend += 1;
-            }
-            boolean willSendAllMessages = numMessagesToSend == mJsQueue.size();
-            StringBuilder sb = new StringBuilder(totalPayloadLen
-                    + (willSendAllMessages ? 0 : 100));
-            for (int i = 0; i < numMessagesToSend; ++i) {
-                JsMessage message = mJsQueue.removeFirst();
-                if (willSendAllMessages && (i + 1 == numMessagesToSend)) {
-                    message.encodeAsJsMessage(sb);
-                } else {
-                    sb.append("try{");
-                    message.encodeAsJsMessage(sb);
-                    sb.append("}finally{");
+                encoder.append("try{");
+                message.encodeAsJsMessage(encoder);
+                encoder.append("}finally{");
+                if (message.mIsBinaryChunk
+                        || (totalPayloadLen + next.mJsEncodedLength > MAX_PAYLOAD_SIZE
+                        && MAX_PAYLOAD_SIZE > 0)) {
+                    willSendAllMessages = false;
+                    break;
                 }
+                message = mJsQueue.poll();
             }
             if (!willSendAllMessages) {
-                sb.append("window.setTimeout(function(){xFace.require('xFace/exec').pollOnce();},0);");
+                encoder.append("window.setTimeout(function(){xFace.require('xFace/exec').pollOnce();},0);");
             }
             for (int i = willSendAllMessages ? 1 : 0; i < numMessagesToSend; ++i) {
-                sb.append('}');
+                encoder.append('}');
             }
-            String ret = sb.toString();
-            return ret;
+            return encoder.finish();
         }
     }
 
@@ -235,24 +240,52 @@ public class XNativeToJsMessageQueue {
         if (noResult && keepCallback) {
             return;
         }
+        byte[] binaryData = result.getBinaryData();
+        if (!FORCE_ENCODE_USING_EVAL && null != binaryData
+                && binaryData.length > BINARY_CHUNK_SIZE) {
+            enqueueBinaryChunks(result, callbackId, binaryData.length);
+            return;
+        }
         JsMessage message = new JsMessage(result, callbackId);
         if (FORCE_ENCODE_USING_EVAL) {
-            StringBuilder sb = new StringBuilder(
-                    message.calculateEncodedLength() + 50);
-            message.encodeAsJsMessage(sb);
-            message = new JsMessage(sb.toString());
+            XJsMessageEncoder encoder = new XJsMessageEncoder();
+            encoder.begin(message.mJsEncodedLength);
+            message.encodeAsJsMessage(encoder);
+            message = new JsMessage(encoder.finish());
         }
 
         enqueueMessage(message);
     }
 
+    /**
+     * 将较大的二进制结果拆分成多个分块消息入队，所有分块共享同一个字节数组，不产生拷贝
+     * js端收到最后一个分块后再拼接并回调
+     */
+    private void enqueueBinaryChunks(XExtensionResult result,
+            String callbackId, int dataLength) {
+        int offset = 0;
+        while (dataLength - offset > BINARY_CHUNK_SIZE) {
+            mJsQueue.offer(new JsMessage(result, callbackId, offset,
+                    BINARY_CHUNK_SIZE, true));
+            offset += BINARY_CHUNK_SIZE;
+        }
+        mJsQueue.offer(new JsMessage(result, callbackId, offset, dataLength
+                - offset, false));
+        notifyMessageAvailable();
+    }
+
     private void enqueueMessage(JsMessage message) {
-        synchronized (this) {
-            mJsQueue.add(message);
-            if (!mPaused && mRegisteredListeners[mActiveListenerIndex] != null) {
-                mRegisteredListeners[mActiveListenerIndex]
-                        .onNativeToJsMessageAvailable();
-            }
+        mJsQueue.offer(message);
+        notifyMessageAvailable();
+    }
+
+    /**
+     * 通知当前的桥接模式有js消息需要执行
+     */
+    private void notifyMessageAvailable() {
+        BridgeMode activeListener = mRegisteredListeners[mActiveListenerIndex];
+        if (!mPaused && activeListener != null) {
+            activeListener.onNativeToJsMessageAvailable();
         }
     }
 
@@ -262,14 +295,8 @@ public class XNativeToJsMessageQueue {
                     new Throwable());
         }
         mPaused = value;
-        if (!value) {
-            synchronized (this) {
-                if (!mJsQueue.isEmpty()
-                        && mRegisteredListeners[mActiveListenerIndex] != null) {
-                    mRegisteredListeners[mActiveListenerIndex]
-                            .onNativeToJsMessageAvailable();
-                }
-            }
+        if (!value && !mJsQueue.isEmpty()) {
+            notifyMessageAvailable();
         }
     }
 
@@ -281,40 +308,58 @@ public class XNativeToJsMessageQueue {
         void onNativeToJsMessageAvailable();
     }
 
-    /** 通过webview的loadurl执行js消息 */
-    private class LoadUrlBridgeMode implements BridgeMode {
-        final Runnable runnable = new Runnable() {
+    /**
+     * 需要切换到UI线程执行的桥接模式，在UI线程处理之前，多次消息通知只会合并为一次UI线程投递
+     */
+    private abstract class UiThreadBridgeMode implements BridgeMode {
+        // 是否已经有等待执行的UI线程任务
+        private final AtomicBoolean mFlushPending = new AtomicBoolean(false);
+
+        private final Runnable mRunnable = new Runnable() {
             public void run() {
-                String js = popAndEncodeAsJs();
-                if (js != null) {
-                    mWebView.loadUrl("javascript:" + js);
-                }
+                // 先清除标志再取消息，保证之后入队的消息能够再次触发投递
+                mFlushPending.set(false);
+                flush();
             }
         };
 
         public void onNativeToJsMessageAvailable() {
-            mSysContext.runOnUiThread(runnable);
+            if (mFlushPending.compareAndSet(false, true)) {
+                mSysContext.runOnUiThread(mRunnable);
+            }
+        }
+
+        /**
+         * 在UI线程中执行 将队列中的js消息发送给webview
+         */
+        abstract void flush();
+    }
+
+    /** 通过webview的loadurl执行js消息 */
+    private class LoadUrlBridgeMode extends UiThreadBridgeMode {
+        @Override
+        void flush() {
+            String js = popAndEncodeAsJs("javascript:");
+            if (js != null) {
+                mWebView.loadUrl(js);
+            }
         }
     }
 
     /** 通过online/line事件 通知js 获取本地js消息 */
-    private class OnlineEventsBridgeMode implements BridgeMode {
+    private class OnlineEventsBridgeMode extends UiThreadBridgeMode {
         boolean online = true;
-        final Runnable runnable = new Runnable() {
-            public void run() {
-                if (!mJsQueue.isEmpty()) {
-                    online = !online;
-                    mWebView.setNetworkAvailable(online);
-                }
-            }
-        };
 
         OnlineEventsBridgeMode() {
             mWebView.setNetworkAvailable(true);
         }
 
-        public void onNativeToJsMessageAvailable() {
-            mSysContext.runOnUiThread(runnable);
+        @Override
+        void flush() {
+            if (!mJsQueue.isEmpty()) {
+                online = !online;
+                mWebView.setNetworkAvailable(online);
+            }
         }
     }
 
@@ -364,7 +409,7 @@ public class XNativeToJsMessageQueue {
                 initReflection();
             }
             if (sendMessageMethod != null) {
-                String js = popAndEncodeAsJs();
+                String js = popAndEncodeAsJs("");
                 Message execJsMessage = Message.obtain(null, EXECUTE_JS, js);
                 try {
                     sendMessageMethod.invoke(webViewCore, execJsMessage);
@@ -376,30 +421,88 @@ public class XNativeToJsMessageQueue {
     }
 
     private static class JsMessage {
+        private static final String CALLBACK_PREFIX = "xFace.callbackFromNative('";
+        private static final String APPEND_CHUNK_PREFIX = "xFace.require('xFace/exec').appendBinaryChunk('";
+        private static final String TAKE_BINARY_PREFIX = "xFace.require('xFace/exec').takeBinary('";
+
         final String mJsPayloadOrCallbackId;
         final XExtensionResult mPluginResult;
 
+        // 二进制结果在字节数组中的范围 只对二进制类型的结果有效
+        final int mBinaryOffset;
+        final int mBinaryLength;
+
+        // 是否为二进制结果中非最后的一个分块
+        final boolean mIsBinaryChunk;
+
+        // 入队的时间 用于统计消息在队列中的停留时间
+        final long mEnqueueTime = System.nanoTime();
+
+        // 入队时计算好的编码长度，出队时不需要再次计算
+        final int mEncodedLength;
+        final int mPackedLength;
+        final int mJsEncodedLength;
+
         JsMessage(String js) {
             if (js == null) {
                 throw new NullPointerException();
             }
             mJsPayloadOrCallbackId = js;
             mPluginResult = null;
+            mBinaryOffset = 0;
+            mBinaryLength = 0;
+            mIsBinaryChunk = false;
+            mEncodedLength = calculateEncodedLength();
+            mPackedLength = XJsMessageEncoder.digitCount(mEncodedLength) + 1
+                    + mEncodedLength;
+            mJsEncodedLength = calculateJsEncodedLength();
         }
 
         JsMessage(XExtensionResult pluginResult, String callbackId) {
+            this(pluginResult, callbackId, 0,
+                    null == pluginResult || null == pluginResult.getBinaryData() ? 0
+                            : pluginResult.getBinaryData().length, false);
+        }
+
+        JsMessage(XExtensionResult pluginResult, String callbackId,
+                int binaryOffset, int binaryLength, boolean isBinaryChunk) {
             if (callbackId == null || pluginResult == null) {
                 throw new NullPointerException();
             }
             mJsPayloadOrCallbackId = callbackId;
             this.mPluginResult = pluginResult;
+            mBinaryOffset = binaryOffset;
+            mBinaryLength = binaryLength;
+            mIsBinaryChunk = isBinaryChunk;
+            mEncodedLength = calculateEncodedLength();
+            mPackedLength = XJsMessageEncoder.digitCount(mEncodedLength) + 1
+                    + mEncodedLength;
+            mJsEncodedLength = calculateJsEncodedLength();
+        }
+
+        /**
+         * 出队时记录消息在队列中的停留时间和编码后的长度
+         */
+        void recordMetrics(XBridgeMetrics metrics, long popTime, int payloadSize) {
+            if (metrics.isEnabled()) {
+                metrics.recordMessage(mPluginResult == null ? null
+                        : mJsPayloadOrCallbackId, popTime - mEnqueueTime,
+                        payloadSize);
+            }
         }
 
-        int calculateEncodedLength() {
+        private boolean isBinary() {
+            int type = mPluginResult.getMessageType();
+            return type == XExtensionResult.MESSAGE_TYPE_ARRAYBUFFER
+                    || type == XExtensionResult.MESSAGE_TYPE_BINARYSTRING;
+        }
+
+        private int calculateEncodedLength() {
             if (mPluginResult == null) {
                 return mJsPayloadOrCallbackId.length() + 1;
             }
-            int statusLen = String.valueOf(mPluginResult.getStatus()).length();
+            int statusLen = XJsMessageEncoder.digitCount(mPluginResult
+                    .getStatus());
             int ret = 2 + statusLen + 1 + mJsPayloadOrCallbackId.length() + 1;
             switch (mPluginResult.getMessageType()) {
             case XExtensionResult.MESSAGE_TYPE_BOOLEAN: // f or t
@@ -413,10 +516,8 @@ public class XNativeToJsMessageQueue {
                 ret += 1 + mPluginResult.getStrMessage().length();
                 break;
             case XExtensionResult.MESSAGE_TYPE_BINARYSTRING:
-                ret += 1 + mPluginResult.getMessage().length();
-                break;
             case XExtensionResult.MESSAGE_TYPE_ARRAYBUFFER:
-                ret += 1 + mPluginResult.getMessage().length();
+                ret += 1 + XJsMessageEncoder.base64Length(mBinaryLength);
                 break;
             case XExtensionResult.MESSAGE_TYPE_JSON:
             default:
@@ -425,9 +526,57 @@ public class XNativeToJsMessageQueue {
             return ret;
         }
 
-        void encodeAsMessage(StringBuilder sb) {
+        /**
+         * 计算{@link #encodeAsJsMessage(XJsMessageEncoder)}编码后的准确长度
+         */
+        private int calculateJsEncodedLength() {
+            if (mPluginResult == null) {
+                return mJsPayloadOrCallbackId.length();
+            }
+            int idLen = mJsPayloadOrCallbackId.length();
+            if (mIsBinaryChunk) {
+                // 格式为: prefix + id + "','" + base64 + "');"
+                return APPEND_CHUNK_PREFIX.length() + idLen + 3
+                        + XJsMessageEncoder.base64Length(mBinaryLength) + 3;
+            }
+            int status = mPluginResult.getStatus();
+            int payloadLen;
+            if (isBinary()) {
+                // 格式为: prefix + id + "','" + base64 + "'," + isArrayBuffer + ")"
+                boolean arrayBuffer = mPluginResult.getMessageType() == XExtensionResult.MESSAGE_TYPE_ARRAYBUFFER;
+                payloadLen = TAKE_BINARY_PREFIX.length() + idLen + 3
+                        + XJsMessageEncoder.base64Length(mBinaryLength) + 2
+                        + (arrayBuffer ? 4 : 5) + 1;
+            } else if (mPluginResult.getMessageType() == XExtensionResult.MESSAGE_TYPE_STRING) {
+                payloadLen = XJsMessageEncoder.quotedLength(mPluginResult
+                        .getStrMessage());
+            } else {
+                payloadLen = mPluginResult.getMessage().length();
+            }
+            // 格式为: prefix + id + "'," + success + "," + status + ",[" + payload + "]," + keepCallback + ");"
+            return CALLBACK_PREFIX.length() + idLen + 2
+                    + (isSuccess(status) ? 4 : 5) + 1
+                    + XJsMessageEncoder.digitCount(status) + 2 + payloadLen
+                    + 2 + (mPluginResult.getKeepCallback() ? 4 : 5) + 2;
+        }
+
+        private static boolean isSuccess(int status) {
+            return status == XExtensionResult.Status.PROGRESS_CHANGING
+                    .ordinal()
+                    || status == XExtensionResult.Status.OK.ordinal()
+                    || status == XExtensionResult.Status.NO_RESULT.ordinal();
+        }
+
+        private void appendBinary(XJsMessageEncoder out) {
+            byte[] data = mPluginResult.getBinaryData();
+            if (null != data) {
+                out.appendBase64(data, mBinaryOffset, mBinaryLength);
+            }
+        }
+
+        void encodeAsMessage(XJsMessageEncoder out) {
             if (mPluginResult == null) {
-                sb.append('J').append(mJsPayloadOrCallbackId);
+                out.append('J').append(mJsPayloadOrCallbackId);
                 return;
             }
             int status = mPluginResult.getStatus();
@@ -438,52 +587,70 @@ public class XNativeToJsMessageQueue {
                             .ordinal();
             boolean keepCallback = mPluginResult.getKeepCallback();
 
-            sb.append((noResult || resultOk) ? 'S' : 'F')
+            out.append((noResult || resultOk) ? 'S' : 'F')
                     .append(keepCallback ? '1' : '0').append(status)
                     .append(' ').append(mJsPayloadOrCallbackId).append(' ');
+            if (mIsBinaryChunk) {
+                // C 表示二进制数据的中间分块 js端只缓存不回调
+                out.append('C');
+                appendBinary(out);
+                return;
+            }
             switch (mPluginResult.getMessageType()) {
             case XExtensionResult.MESSAGE_TYPE_BOOLEAN:
-                sb.append(mPluginResult.getMessage().charAt(0)); // t or f.
+                out.append(mPluginResult.getMessage().charAt(0)); // t or f.
                 break;
             case XExtensionResult.MESSAGE_TYPE_NULL: // N
-                sb.append('N');
+                out.append('N');
                 break;
             case XExtensionResult.MESSAGE_TYPE_NUMBER: // n
-                sb.append('n').append(mPluginResult.getMessage());
+                out.append('n').append(mPluginResult.getMessage());
                 break;
             case XExtensionResult.MESSAGE_TYPE_STRING: // s
-                sb.append('s');
-                sb.append(mPluginResult.getStrMessage());
+                out.append('s');
+                out.append(mPluginResult.getStrMessage());
                 break;
             case XExtensionResult.MESSAGE_TYPE_BINARYSTRING: // S
-                sb.append('S');
-                sb.append(mPluginResult.getMessage());
+                out.append('S');
+                appendBinary(out);
                 break;
             case XExtensionResult.MESSAGE_TYPE_ARRAYBUFFER: // A
-                sb.append('A');
-                sb.append(mPluginResult.getMessage());
+                out.append('A');
+                appendBinary(out);
                 break;
             case XExtensionResult.MESSAGE_TYPE_JSON:
             default:
-                sb.append(mPluginResult.getMessage()); // [ or {
+                out.append(mPluginResult.getMessage()); // [ or {
             }
         }
 
-        void encodeAsJsMessage(StringBuilder sb) {
+        void encodeAsJsMessage(XJsMessageEncoder out) {
             if (mPluginResult == null) {
-                sb.append(mJsPayloadOrCallbackId);
+                out.append(mJsPayloadOrCallbackId);
+            } else if (mIsBinaryChunk) {
+                out.append(APPEND_CHUNK_PREFIX).append(mJsPayloadOrCallbackId)
+                        .append("','");
+                appendBinary(out);
+                out.append("');");
             } else {
                 int status = mPluginResult.getStatus();
-                boolean success = (status == XExtensionResult.Status.PROGRESS_CHANGING
-                        .ordinal() || status == XExtensionResult.Status.OK
-                        .ordinal())
-                        || (status == XExtensionResult.Status.NO_RESULT
-                                .ordinal());
-                sb.append("xFace.callbackFromNative('")
-                        .append(mJsPayloadOrCallbackId).append("',")
-                        .append(success).append(",").append(status)
-                        .append(",[").append(mPluginResult.getMessage())
-                        .append("],").append(mPluginResult.getKeepCallback())
+                out.append(CALLBACK_PREFIX).append(mJsPayloadOrCallbackId)
+                        .append("',").append(isSuccess(status)).append(",")
+                        .append(status).append(",[");
+                if (isBinary()) {
+                    out.append(TAKE_BINARY_PREFIX)
+                            .append(mJsPayloadOrCallbackId).append("','");
+                    appendBinary(out);
+                    out.append("',")
+                            .append(mPluginResult.getMessageType() == XExtensionResult.MESSAGE_TYPE_ARRAYBUFFER)
+                            .append(')');
+                } else if (mPluginResult.getMessageType() == XExtensionResult.MESSAGE_TYPE_STRING) {
+                    // 直接转义写入 不生成带引号的中间字符串
+                    out.appendQuoted(mPluginResult.getStrMessage());
+                } else {
+                    out.append(mPluginResult.getMessage());
+                }
+                out.append("],").append(mPluginResult.getKeepCallback())
                         .append(");");
             }
         }
@@ -23,11 +23,15 @@ package com.polyvi.xface.exceptionReporter;
 
 import android.content.Context;
 
+import com.polyvi.xface.util.XLog;
+
 /**
  * 负责异常信息的处理
  *
  */
 public class XExceptionReporter implements Thread.UncaughtExceptionHandler {
+    private static final String CLASS_NAME = XExceptionReporter.class
+            .getSimpleName();
     /**Application的context,在获取设备信息的时候要用到*/
     private Context mContext;
     /**崩溃信息处理类*/
@@ -57,5 +61,8 @@ public class XExceptionReporter implements Thread.UncaughtExceptionHandler {
         XCrashInfo crashInfo = new XCrashInfo(ex, mContext);
         mReportHandler = new XExceptionReportHandler();
         mReportHandler.saveCrashReportLocal(crashInfo);
+        // 崩溃信息同时写入log，退出前输出缓冲区中的log，避免持久化的log丢失崩溃前的记录
+        XLog.e(CLASS_NAME, "uncaught exception", ex);
+        XLog.close();
     }
 }
@@ -0,0 +1,71 @@
+/*
+ Copyright 2012-2013, Polyvi Inc. (http://polyvi.github.io/openxface)
+ This program is distributed under the terms of the GNU General Public License.
+
+ This file is part of xFace.
+
+ xFace is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ xFace is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with xFace.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.polyvi.xface.extension;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import com.polyvi.xface.core.XBridgeMetrics;
+import com.polyvi.xface.extension.XExtensionResult.Status;
+import com.polyvi.xface.util.XPathResolver;
+
+/**
+ * 查询js桥接性能统计数据的扩展
+ * getMetrics: 返回统计数据的json对象
+ * dump: 将统计数据写入应用工作空间下的文件，参数为文件路径
+ * reset: 清空统计数据
+ */
+public class XBridgeMetricsExt extends XExtension {
+
+    private static final String COMMAND_GET_METRICS = "getMetrics";
+    private static final String COMMAND_DUMP = "dump";
+    private static final String COMMAND_RESET = "reset";
+
+    @Override
+    public void sendAsyncResult(String result) {
+    }
+
+    @Override
+    public boolean isAsync(String action) {
+        return COMMAND_DUMP.equals(action);
+    }
+
+    @Override
+    public XExtensionResult exec(String action, JSONArray args,
+            XCallbackContext callbackCtx) throws JSONException {
+        XBridgeMetrics metrics = XBridgeMetrics.getInstance();
+        if (COMMAND_GET_METRICS.equals(action)) {
+            return new XExtensionResult(Status.OK, metrics.toJSON());
+        } else if (COMMAND_DUMP.equals(action)) {
+            XPathResolver pathResolver = new XPathResolver(args.getString(0),
+                    mWebContext.getWorkSpace());
+            String filePath = pathResolver.resolve();
+            if (null == filePath || !metrics.dump(filePath)) {
+                return new XExtensionResult(Status.IO_EXCEPTION);
+            }
+            return new XExtensionResult(Status.OK, filePath);
+        } else if (COMMAND_RESET.equals(action)) {
+            metrics.reset();
+            return new XExtensionResult(Status.OK);
+        }
+        return new XExtensionResult(Status.INVALID_ACTION);
+    }
+}
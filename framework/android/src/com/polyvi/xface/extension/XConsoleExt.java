@@ -22,18 +22,28 @@
 
 package com.polyvi.xface.extension;
 
+import java.util.List;
+
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 
+import com.polyvi.xface.app.XApplication;
+import com.polyvi.xface.event.XPortalEventHandler;
 import com.polyvi.xface.extension.XExtensionResult.Status;
 import com.polyvi.xface.util.XLog;
+import com.polyvi.xface.util.XLogController;
+import com.polyvi.xface.util.XLogStore;
 
 /**
- * 负责向控制台打印log调试信息
+ * 负责向控制台打印log调试信息，以及从持久化的log存储中查询log
+ * js的log以"xface-js/应用id"作为类名输出，可以按应用查询；
+ * 只有portal应用可以查询所有的log，其它应用只能查询自己的js log
  */
 public class XConsoleExt extends XExtension {
 
     private static final String COMMAND_LOG = "log";
+    private static final String COMMAND_GET_LOGS = "getLogs";
 
     private static final String JS_LOG_TAG = "xface-js";
 
@@ -42,13 +52,28 @@ public class XConsoleExt extends XExtension {
     private static final String LOG_LEVEL_WARN = "WARN";
     private static final String LOG_LEVEL_INFO = "INFO";
 
+    private static final String TAG_SINCE = "since";
+    private static final String TAG_UNTIL = "until";
+    private static final String TAG_LEVEL = "level";
+    private static final String TAG_TAG = "tag";
+    private static final String TAG_LIMIT = "limit";
+    private static final String TAG_TIME = "time";
+    private static final String TAG_MESSAGE = "message";
+
+    /** getLogs默认最多返回的条数 */
+    private static final int DEFAULT_LOG_LIMIT = 500;
+
+    /** 按照log等级索引的等级名，与android.util.Log的取值对应 */
+    private static final String[] LEVEL_NAMES = { "", "", "VERBOSE", "DEBUG",
+            "INFO", "WARN", "ERROR" };
+
     @Override
     public void sendAsyncResult(String result) {
     }
 
     @Override
     public boolean isAsync(String action) {
-        return false;
+        return COMMAND_GET_LOGS.equals(action);
     }
 
     @Override
@@ -56,10 +81,83 @@ public class XConsoleExt extends XExtension {
             JSONArray args, XCallbackContext callbackCtx) throws JSONException {
         if (COMMAND_LOG.equals(action)) {
             log(args.getString(0), args.getJSONObject(1).getString(LOG_LEVEL));
+        } else if (COMMAND_GET_LOGS.equals(action)) {
+            return getLogs(args.optJSONObject(0));
         }
         return new XExtensionResult(Status.NO_RESULT);
     }
 
+    /**
+     * 从持久化的log存储中查询log，返回满足条件的最近若干条，按时间从旧到新排列
+     *
+     * @param options
+     *            查询条件{since:起始时间(毫秒), until:结束时间(毫秒), level:最低等级,
+     *            tag:打印log的类名, limit:最多返回的条数}，都可以省略；
+     *            非portal应用的tag固定为自己的js log类名
+     * @return 结果为[{time:n, level:"ERROR", tag:"...", message:"..."}]
+     */
+    private XExtensionResult getLogs(JSONObject options) throws JSONException {
+        XLogStore store = XLogController.getLogStore();
+        if (null == store) {
+            return new XExtensionResult(Status.ERROR, "log store is disabled");
+        }
+        if (null == options) {
+            options = new JSONObject();
+        }
+        String tag = isPortal() ? options.optString(TAG_TAG, null)
+                : getJsLogTag();
+        List<XLogStore.Entry> entries = store.query(
+                options.optLong(TAG_SINCE, 0),
+                options.optLong(TAG_UNTIL, Long.MAX_VALUE),
+                levelOf(options.optString(TAG_LEVEL, null)),
+                null == tag || tag.length() == 0 ? null : tag,
+                options.optInt(TAG_LIMIT, DEFAULT_LOG_LIMIT));
+        JSONArray result = new JSONArray();
+        for (XLogStore.Entry entry : entries) {
+            JSONObject obj = new JSONObject();
+            obj.put(TAG_TIME, entry.getTime());
+            int level = entry.getLevel();
+            obj.put(TAG_LEVEL, level >= 0 && level < LEVEL_NAMES.length
+                    ? LEVEL_NAMES[level] : String.valueOf(level));
+            obj.put(TAG_TAG, entry.getTag());
+            obj.put(TAG_MESSAGE, entry.getMessage());
+            result.put(obj);
+        }
+        return new XExtensionResult(Status.OK, result);
+    }
+
+    /**
+     * 将等级名转换为log等级，不能识别时不限等级
+     */
+    private static int levelOf(String name) {
+        for (int i = 0; null != name && i < LEVEL_NAMES.length; i++) {
+            if (LEVEL_NAMES[i].length() > 0
+                    && LEVEL_NAMES[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return XLog.VERBOSE;
+    }
+
+    /**
+     * 调用者是否为portal应用
+     */
+    private boolean isPortal() {
+        XApplication app = null == mWebContext ? null : mWebContext
+                .getApplication();
+        return null != app
+                && app.getEventHandler() instanceof XPortalEventHandler;
+    }
+
+    /**
+     * js的log使用的类名，带上应用id以便按应用查询
+     */
+    private String getJsLogTag() {
+        XApplication app = null == mWebContext ? null : mWebContext
+                .getApplication();
+        return null == app ? JS_LOG_TAG : JS_LOG_TAG + "/" + app.getAppId();
+    }
+
     /**
      * 向控制台输出log信息
      *
@@ -70,11 +168,11 @@ public class XConsoleExt extends XExtension {
      */
     private void log(String message, String logLevel) {
         if (LOG_LEVEL_ERROR.equals(logLevel)) {
-            XLog.e(JS_LOG_TAG, message);
+            XLog.e(getJsLogTag(), message);
         } else if (LOG_LEVEL_WARN.equals(logLevel)) {
-            XLog.w(JS_LOG_TAG, message);
+            XLog.w(getJsLogTag(), message);
         } else if (LOG_LEVEL_INFO.equals(logLevel)) {
-            XLog.i(JS_LOG_TAG, message);
+            XLog.i(getJsLogTag(), message);
         }
     }
 }
@@ -22,6 +22,8 @@
 
 package com.polyvi.xface.extension;
 
+import java.util.HashMap;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 
@@ -38,6 +40,26 @@ public abstract class XExtension {
 
     protected XIWebContext mWebContext;
 
+    /** 行为分发表，key为行为名，在初始化时由{@link #registerActions()}建立 */
+    private HashMap<String, XActionHandler> mActionHandlers;
+
+    /**
+     * 扩展行为的处理器，子类为每个行为注册一个处理器，执行时按行为名查表分发，
+     * 避免每次调用都逐个比较行为名
+     */
+    protected interface XActionHandler {
+        /**
+         * 执行扩展行为
+         *
+         * @param args
+         *            执行行为需要的参数
+         * @param callbackCtx
+         *            回调上下文环境
+         */
+        XExtensionResult handle(JSONArray args, XCallbackContext callbackCtx)
+                throws Exception;
+    }
+
     /**
      * 扩展的初始化方法，所有的XExtension子类的构造函数都不能带参数，相关初始化操作在该方法中完成， 子类如果有自己的初始化操作，需要覆写该方法
      *
@@ -47,6 +69,40 @@ public abstract class XExtension {
     public void init(XExtensionContext extensionContext, XIWebContext webContext) {
         this.mExtensionContext = extensionContext;
         this.mWebContext = webContext;
+        registerActions();
+    }
+
+    /**
+     * 注册扩展的行为处理器，在扩展初始化时调用一次，使用分发表的子类需要覆写该方法，
+     * 并通过{@link #registerAction(String, XActionHandler)}注册每个行为
+     */
+    protected void registerActions() {
+    }
+
+    /**
+     * 注册一个行为的处理器
+     *
+     * @param action
+     *            行为名
+     * @param handler
+     *            行为的处理器
+     */
+    protected final void registerAction(String action, XActionHandler handler) {
+        if (null == mActionHandlers) {
+            mActionHandlers = new HashMap<String, XActionHandler>();
+        }
+        mActionHandlers.put(action, handler);
+    }
+
+    /**
+     * 查找行为对应的处理器
+     *
+     * @param action
+     *            行为名
+     * @return 行为的处理器，没有注册时返回null
+     */
+    protected final XActionHandler getActionHandler(String action) {
+        return null == mActionHandlers ? null : mActionHandlers.get(action);
     }
 
     /**
@@ -73,6 +129,18 @@ public abstract class XExtension {
      */
     public abstract boolean isAsync(String action);
 
+    /**
+     * 判断指定的异步行为是否受扩展配置的并发数限制
+     * 执行很快的查询类行为可以返回false，不排在耗时的调用之后，默认都受限制
+     *
+     * @param action
+     *            需要执行的行为
+     * @return 受限制 true， 不受限制 false
+     */
+    public boolean isLaneLimited(String action) {
+        return true;
+    }
+
     /**
      * 执行js扩展
      *
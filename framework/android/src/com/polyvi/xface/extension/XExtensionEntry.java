@@ -26,16 +26,80 @@ package com.polyvi.xface.extension;
  * 用于存储扩展相关信息的数据结构
  */
 public class XExtensionEntry {
+
+    /**
+     * 扩展异步执行的优先级，数值越小越优先执行
+     */
+    public enum Priority {
+        /** 界面可见的调用，例如对话框、通知 */
+        HIGH,
+        /** 默认优先级 */
+        NORMAL,
+        /** 批量的IO操作，例如文件读写、传输 */
+        LOW;
+
+        /**
+         * 从配置的字符串解析优先级，无法识别时返回NORMAL
+         */
+        public static Priority parse(String value) {
+            if (null != value) {
+                for (Priority p : values()) {
+                    if (p.name().equalsIgnoreCase(value.trim())) {
+                        return p;
+                    }
+                }
+            }
+            return NORMAL;
+        }
+    };
+
+    /** 不限制扩展的并发数，只受执行线程池大小的限制 */
+    public static final int UNLIMITED = 0;
+
+    /** 默认每个扩展最多等待执行的异步调用数 */
+    public static final int DEFAULT_MAX_QUEUED = 128;
+
     /** 扩展名称*/
     private String mExtName = null;
     /** 扩展的类名*/
     private String mExtClassName = null;
+    /** 异步执行的优先级*/
+    private Priority mPriority = Priority.NORMAL;
+    /** 同时执行的最大异步调用数*/
+    private int mMaxConcurrent = UNLIMITED;
+    /** 最多等待执行的异步调用数，超过后新的调用会被拒绝*/
+    private int mMaxQueued = DEFAULT_MAX_QUEUED;
+    /** 是否在应用启动时加载，否则在第一次调用时才加载*/
+    private boolean mPreload = false;
 
     public XExtensionEntry(String extName, String extClassName) {
         this.mExtName = extName;
         this.mExtClassName = extClassName;
     }
 
+    public XExtensionEntry(String extName, String extClassName,
+            Priority priority, int maxConcurrent, int maxQueued) {
+        this(extName, extClassName);
+        this.mPriority = priority;
+        this.mMaxConcurrent = maxConcurrent;
+        this.mMaxQueued = maxQueued;
+    }
+
+    public XExtensionEntry(String extName, String extClassName,
+            Priority priority, int maxConcurrent, int maxQueued,
+            boolean preload) {
+        this(extName, extClassName, priority, maxConcurrent, maxQueued);
+        this.mPreload = preload;
+    }
+
+    /**
+     * 获取扩展名称
+     * @return
+     */
+    public String getExtName() {
+        return this.mExtName;
+    }
+
     /**
      * 获取扩展的类名
      * @return
@@ -43,4 +107,36 @@ public class XExtensionEntry {
     public String getExtClassName() {
         return this.mExtClassName;
     }
+
+    /**
+     * 获取扩展异步执行的优先级
+     * @return
+     */
+    public Priority getPriority() {
+        return this.mPriority;
+    }
+
+    /**
+     * 获取扩展同时执行的最大异步调用数，{@link #UNLIMITED}表示不限制
+     * @return
+     */
+    public int getMaxConcurrent() {
+        return this.mMaxConcurrent;
+    }
+
+    /**
+     * 获取扩展最多等待执行的异步调用数
+     * @return
+     */
+    public int getMaxQueued() {
+        return this.mMaxQueued;
+    }
+
+    /**
+     * 获取扩展是否在应用启动时加载
+     * @return
+     */
+    public boolean isPreload() {
+        return this.mPreload;
+    }
 }
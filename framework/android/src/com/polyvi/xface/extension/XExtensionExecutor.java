@@ -0,0 +1,213 @@
+/*
+ Copyright 2012-2013, Polyvi Inc. (http://polyvi.github.io/openxface)
+ This program is distributed under the terms of the GNU General Public License.
+
+ This file is part of xFace.
+
+ xFace is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ xFace is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with xFace.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.polyvi.xface.extension;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.polyvi.xface.util.XLog;
+
+/**
+ * 扩展异步调用的执行器
+ * 所有应用的扩展共享一个按cpu核数确定大小的有界线程池，线程池按照扩展配置的优先级调度任务；
+ * 每个扩展有独立的并发数限制和等待队列，等待队列满时拒绝新的调用；
+ * 不受限制的调用只使用扩展的优先级，不占用并发数也不进入等待队列
+ */
+public class XExtensionExecutor {
+
+    private static final String CLASS_NAME = XExtensionExecutor.class
+            .getSimpleName();
+
+    /** 共享线程池的线程数，扩展调用多为IO操作，线程数取cpu核数的两倍且不少于4个 */
+    private static final int POOL_SIZE = Math.max(4, Runtime.getRuntime()
+            .availableProcessors() * 2);
+
+    private static ThreadPoolExecutor sSharedPool;
+
+    /** 用于保证同一优先级的任务按照提交顺序执行 */
+    private static final AtomicLong sSequence = new AtomicLong();
+
+    /** 每个扩展对应的执行通道，key为扩展名 */
+    private final HashMap<String, Lane> mLanes = new HashMap<String, Lane>();
+
+    private boolean mShutdown;
+
+    /**
+     * 获取所有应用共享的扩展线程池
+     */
+    private static synchronized ThreadPoolExecutor getSharedPool() {
+        if (null == sSharedPool) {
+            sSharedPool = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 0L,
+                    TimeUnit.MILLISECONDS,
+                    new PriorityBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private final AtomicInteger mCount = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            return new Thread(r, "xface-ext-"
+                                    + mCount.incrementAndGet());
+                        }
+                    });
+        }
+        return sSharedPool;
+    }
+
+    /**
+     * 提交扩展的异步调用
+     *
+     * @param entry
+     *            扩展的配置信息，决定调用的优先级和并发限制
+     * @param limited
+     *            是否受该扩展的并发数限制
+     * @param task
+     *            需要执行的任务
+     * @return 提交成功返回true，执行器已关闭或者该扩展等待执行的调用过多时返回false
+     */
+    public boolean execute(XExtensionEntry entry, boolean limited,
+            Runnable task) {
+        Task wrapped;
+        synchronized (this) {
+            if (mShutdown) {
+                return false;
+            }
+            Lane lane = getLane(entry);
+            wrapped = new Task(lane, limited, task);
+            if (!limited) {
+                getSharedPool().execute(wrapped);
+                return true;
+            }
+            if (lane.mRunning >= lane.mMaxConcurrent) {
+                if (lane.mWaiting.size() >= lane.mMaxQueued) {
+                    XLog.w(CLASS_NAME, "Too many pending calls of extension "
+                            + entry.getExtName());
+                    return false;
+                }
+                lane.mWaiting.add(wrapped);
+                return true;
+            }
+            lane.mRunning++;
+        }
+        getSharedPool().execute(wrapped);
+        return true;
+    }
+
+    /**
+     * 关闭执行器，丢弃还没有开始执行的任务，正在执行的任务不受影响
+     */
+    public synchronized void shutdown() {
+        mShutdown = true;
+        for (Lane lane : mLanes.values()) {
+            lane.mWaiting.clear();
+        }
+    }
+
+    private Lane getLane(XExtensionEntry entry) {
+        Lane lane = mLanes.get(entry.getExtName());
+        if (null == lane) {
+            lane = new Lane(entry);
+            mLanes.put(entry.getExtName(), lane);
+        }
+        return lane;
+    }
+
+    /**
+     * 任务执行完成后，从对应扩展的等待队列中取出下一个任务提交到线程池
+     */
+    private void onTaskFinished(Lane lane) {
+        Task next;
+        synchronized (this) {
+            next = mShutdown ? null : lane.mWaiting.poll();
+            if (null == next) {
+                lane.mRunning--;
+                return;
+            }
+        }
+        getSharedPool().execute(next);
+    }
+
+    /**
+     * 单个扩展的执行通道
+     */
+    private static class Lane {
+        final int mPriority;
+        final int mMaxConcurrent;
+        final int mMaxQueued;
+        final LinkedList<Task> mWaiting = new LinkedList<Task>();
+        int mRunning;
+
+        Lane(XExtensionEntry entry) {
+            mPriority = entry.getPriority().ordinal();
+            mMaxConcurrent = entry.getMaxConcurrent() > 0 ? entry
+                    .getMaxConcurrent() : Integer.MAX_VALUE;
+            mMaxQueued = Math.max(0, entry.getMaxQueued());
+        }
+    }
+
+    /**
+     * 带优先级的任务，优先级相同时按照提交顺序执行
+     */
+    private class Task implements Runnable, Comparable<Task> {
+        private final Lane mLane;
+        /** 是否占用了通道的并发数 */
+        private final boolean mLimited;
+        private final Runnable mRunnable;
+        private final long mSequence = sSequence.getAndIncrement();
+
+        Task(Lane lane, boolean limited, Runnable runnable) {
+            mLane = lane;
+            mLimited = limited;
+            mRunnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            try {
+                boolean shutdown;
+                synchronized (XExtensionExecutor.this) {
+                    shutdown = mShutdown;
+                }
+                if (!shutdown) {
+                    mRunnable.run();
+                }
+            } finally {
+                if (mLimited) {
+                    onTaskFinished(mLane);
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(Task another) {
+            if (mLane.mPriority != another.mLane.mPriority) {
+                return mLane.mPriority < another.mLane.mPriority ? -1 : 1;
+            }
+            return mSequence < another.mSequence ? -1
+                    : (mSequence == another.mSequence ? 0 : 1);
+        }
+    }
+}
@@ -29,13 +29,12 @@ import java.io.Writer;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map.Entry;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 
+import com.polyvi.xface.core.XBridgeMetrics;
 import com.polyvi.xface.core.XConfiguration;
 import com.polyvi.xface.core.XRuntime;
 import com.polyvi.xface.extension.XExtensionResult.Status;
@@ -52,20 +51,31 @@ public class XExtensionManager {
     private static final String CLASS_NAME = XExtensionManager.class
             .getSimpleName();
     private static final String EMPTY_STRING = "";
-    private static final int THREAD_POOL_TERMINATION_TIMEOUT = 500;
 
-    private final ExecutorService mExecThreadPool = Executors
-            .newCachedThreadPool();
     /**
-     * 存放所有扩展的列表
+     * 执行扩展异步调用的执行器
      */
-    private HashMap<String, XExtension> mExtensionMap;
+    private final XExtensionExecutor mExecutor = new XExtensionExecutor();
+    /**
+     * 存放已经加载的扩展的列表，扩展在第一次调用时加载，所以需要支持并发访问
+     */
+    private ConcurrentHashMap<String, XExtension> mExtensionMap;
+    /**
+     * 存放所有扩展的配置信息
+     */
+    private ConcurrentHashMap<String, XExtensionEntry> mExtensionEntries;
+    /**
+     * 加载扩展时使用的锁，保证每个扩展只被创建一次
+     */
+    private final Object mLoadLock = new Object();
+    private boolean mDestroyed;
     private XExtensionContext mExtensionContext;
     private XIWebContext mWebContext;
 
     public XExtensionManager(XIWebContext webContext,
             XExtensionContext extensionContext) {
-        mExtensionMap = new HashMap<String, XExtension>();
+        mExtensionMap = new ConcurrentHashMap<String, XExtension>();
+        mExtensionEntries = new ConcurrentHashMap<String, XExtensionEntry>();
         mExtensionContext = extensionContext;
         mWebContext = webContext;
     }
@@ -80,7 +90,8 @@ public class XExtensionManager {
      */
     public boolean exec(String service, final String action, String callbackId,
             String arguments) {
-        final XExtension extension = mExtensionMap.get(service);
+        long startTime = System.nanoTime();
+        final XExtension extension = getExtension(service);
         if (null == extension) {
             XLog.e(CLASS_NAME, "%s not registered!", service);
             XExtensionResult er = new XExtensionResult(
@@ -89,10 +100,12 @@ public class XExtensionManager {
             return true;
         }
         try {
-            JSONArray args = new JSONArray(arguments);
+            // 参数在扩展读取时才解析，扩展没有用到的参数不会被解析
+            JSONArray args = new XLazyJSONArray(arguments);
             final XCallbackContext callbackCtx = new XCallbackContext(
                     mWebContext, callbackId);
-            exec(extension, action, args, callbackCtx);
+            exec(mExtensionEntries.get(service), extension, action, args,
+                    callbackCtx, startTime);
             return callbackCtx.isFinished();
         } catch (JSONException e) {
             XExtensionResult er = new XExtensionResult(
@@ -103,15 +116,19 @@ public class XExtensionManager {
 
     }
 
-    private String exec(final XExtension extension, final String action,
-            final JSONArray args, final XCallbackContext ctx) {
+    private String exec(final XExtensionEntry entry,
+            final XExtension extension, final String action,
+            final JSONArray args, final XCallbackContext ctx,
+            final long startTime) {
         XExtensionResult result = null;
         try {
             boolean runAync = extension.isAsync(action);
             if (runAync) {
-                mExecThreadPool.execute(new Runnable() {
+                boolean accepted = mExecutor.execute(entry,
+                        extension.isLaneLimited(action), new Runnable() {
                     public void run() {
                         XExtensionResult result;
+                        long execStartTime = System.nanoTime();
                         try {
                             result = extension.exec(action, args, ctx);
                         } catch (JSONException e) {
@@ -128,16 +145,32 @@ public class XExtensionManager {
                             // 将异常的栈信息发送到服务器
                             reportError(e);
                         }
+                        long execEndTime = System.nanoTime();
+                        XBridgeMetrics.getInstance().recordCall(
+                                entry.getExtName(), action, true,
+                                execStartTime - startTime,
+                                execEndTime - execStartTime);
                         if (Status.NO_RESULT.ordinal() != result.getStatus()) {
                             ctx.sendExtensionResult(result);
                         }
 
                     }
                 });
+                if (!accepted) {
+                    // 该扩展等待执行的调用过多 直接返回错误 避免无限制地堆积任务
+                    ctx.sendExtensionResult(new XExtensionResult(
+                            XExtensionResult.Status.ERROR, entry.getExtName()
+                                    + " is busy, too many pending calls"));
+                }
                 return EMPTY_STRING;
             } else {
                 // 处理同步执行业务
+                long execStartTime = System.nanoTime();
                 result = extension.exec(action, args, ctx);
+                long execEndTime = System.nanoTime();
+                XBridgeMetrics.getInstance().recordCall(entry.getExtName(),
+                        action, false, execStartTime - startTime,
+                        execEndTime - execStartTime);
                 if (Status.NO_RESULT.ordinal() == result.getStatus()) {
                     return EMPTY_STRING;
                 }
@@ -165,7 +198,49 @@ public class XExtensionManager {
      *            ams扩展对象
      */
     public void registerExtension(String extName, XExtension extension) {
-        mExtensionMap.put(extName, extension);
+        registerExtension(new XExtensionEntry(extName, extension.getClass()
+                .getName()), extension);
+    }
+
+    /**
+     * 注册扩展对象及其配置信息
+     *
+     * @param entry
+     *            扩展的配置信息
+     * @param extension
+     *            扩展对象
+     */
+    private void registerExtension(XExtensionEntry entry, XExtension extension) {
+        mExtensionMap.put(entry.getExtName(), extension);
+        mExtensionEntries.put(entry.getExtName(), entry);
+    }
+
+    /**
+     * 获取扩展对象，扩展还没有加载时创建并初始化
+     *
+     * @param service
+     *            扩展名
+     * @return 扩展对象，扩展没有配置或者创建失败时返回null
+     */
+    private XExtension getExtension(String service) {
+        XExtension extension = mExtensionMap.get(service);
+        if (null != extension) {
+            return extension;
+        }
+        XExtensionEntry entry = mExtensionEntries.get(service);
+        if (null == entry) {
+            return null;
+        }
+        synchronized (mLoadLock) {
+            extension = mExtensionMap.get(service);
+            if (null == extension && !mDestroyed) {
+                extension = createExtension(entry.getExtClassName());
+                if (null != extension) {
+                    mExtensionMap.put(service, extension);
+                }
+            }
+        }
+        return extension;
     }
 
     private XExtension createExtension(String className) {
@@ -191,7 +266,8 @@ public class XExtensionManager {
     }
 
     /**
-     * 加载扩展对象
+     * 加载扩展，只登记扩展的配置信息，扩展对象在第一次调用时才创建，
+     * 配置了preload的扩展（例如需要在init中监听系统事件的扩展）在这里直接创建
      */
     public void loadExtensions() {
         HashMap<String, XExtensionEntry> loadingExtensions = XConfiguration
@@ -199,52 +275,30 @@ public class XExtensionManager {
         Iterator<Entry<String, XExtensionEntry>> iter = loadingExtensions
                 .entrySet().iterator();
         while (iter.hasNext()) {
-            Entry<String, XExtensionEntry> entry = iter.next();
-            String extName = entry.getKey();
-            String className = entry.getValue().getExtClassName();
-            XExtension ext = createExtension(className);
-            if (null == ext) {
-                continue;
+            XExtensionEntry entry = iter.next().getValue();
+            mExtensionEntries.put(entry.getExtName(), entry);
+        }
+        iter = loadingExtensions.entrySet().iterator();
+        while (iter.hasNext()) {
+            XExtensionEntry entry = iter.next().getValue();
+            if (entry.isPreload()) {
+                getExtension(entry.getExtName());
             }
-            registerExtension(extName, ext);
         }
     }
 
     public void destroy() {
+        synchronized (mLoadLock) {
+            mDestroyed = true;
+        }
         Iterator<Entry<String, XExtension>> extensionIterator = mExtensionMap
                 .entrySet().iterator();
         while (extensionIterator.hasNext()) {
-            HashMap.Entry<String, XExtension> entry = (HashMap.Entry<String, XExtension>) extensionIterator
-                    .next();
+            Entry<String, XExtension> entry = extensionIterator.next();
             XExtension extension = (XExtension) entry.getValue();
             extension.destroy();
         }
-        shutdownAndAwaitTermination(mExecThreadPool);
-    }
-
-    /**
-     * 关闭线程池并等待退出
-     */
-    private void shutdownAndAwaitTermination(ExecutorService pool) {
-        pool.shutdown(); // Disable new tasks from being submitted
-        try {
-            // Wait a while for existing tasks to terminate
-            if (!pool.awaitTermination(THREAD_POOL_TERMINATION_TIMEOUT,
-                    TimeUnit.MILLISECONDS)) {
-                pool.shutdownNow(); // Cancel currently executing tasks
-                // Wait a while for tasks to respond to being cancelled
-                if (!pool.awaitTermination(THREAD_POOL_TERMINATION_TIMEOUT,
-                        TimeUnit.MILLISECONDS)) {
-                    XLog.d(CLASS_NAME, "Thread Pool did not terminate");
-                }
-
-            }
-        } catch (InterruptedException ie) {
-            // (Re-)Cancel if current thread also interrupted
-            pool.shutdownNow();
-            // Preserve interrupt status
-            Thread.currentThread().interrupt();
-        }
+        mExecutor.shutdown();
     }
 
     /**
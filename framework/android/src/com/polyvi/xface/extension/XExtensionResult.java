@@ -37,6 +37,8 @@ public class XExtensionResult {
 	private boolean mKeepCallBack;
 	/** < 该值用于通知js层是否保留js代码执行后的回调函数 */
 	private String mEncodedMessage;
+	/** < 二进制类型的结果数据，在发送给js时直接编码，不预先生成Base64字符串 */
+	private byte[] mBinaryData;
 
 	public static final int MESSAGE_TYPE_STRING = 1;
 	public static final int MESSAGE_TYPE_JSON = 2;
@@ -137,7 +139,7 @@ public class XExtensionResult {
 		this.mStatus = status.ordinal();
 		this.messageType = binaryString ? MESSAGE_TYPE_BINARYSTRING
 				: MESSAGE_TYPE_ARRAYBUFFER;
-		this.mEncodedMessage = XBase64.encodeToString(data, XBase64.NO_WRAP);
+		this.mBinaryData = data;
 	}
 
 	/**
@@ -147,11 +149,24 @@ public class XExtensionResult {
 	 */
 	public String getMessage() {
 		if (mEncodedMessage == null) {
-			mEncodedMessage = JSONObject.quote(mMessage);
+			if (mBinaryData != null) {
+				mEncodedMessage = XBase64.encodeToString(mBinaryData,
+						XBase64.NO_WRAP);
+			} else {
+				mEncodedMessage = JSONObject.quote(mMessage);
+			}
 		}
 		return this.mEncodedMessage;
 	}
 
+	/**
+	 * 如果 messageType 是 MESSAGE_TYPE_ARRAYBUFFER 或 MESSAGE_TYPE_BINARYSTRING,
+	 * 返回原始的二进制数据. 否则返回 null
+	 */
+	public byte[] getBinaryData() {
+		return mBinaryData;
+	}
+
 	/**
 	 * 如果 messageType == MESSAGE_TYPE_STRING, 返回消息字符串. 否则返回 null
 	 */
@@ -0,0 +1,327 @@
+/*
+ Copyright 2012-2013, Polyvi Inc. (http://polyvi.github.io/openxface)
+ This program is distributed under the terms of the GNU General Public License.
+
+ This file is part of xFace.
+
+ xFace is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ xFace is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with xFace.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.polyvi.xface.extension;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * 延迟解析的扩展参数数组
+ * 构造时只扫描一遍参数字符串，记录每个顶层元素的位置，元素在第一次被读取时才解析，
+ * 扩展没有读取的参数不会被解析成对象；修改数组或者转换成字符串时才解析全部元素
+ * 读取操作都经过{@link #get(int)}和{@link #opt(int)}，类型转换的规则与JSONArray一致
+ */
+class XLazyJSONArray extends JSONArray {
+
+    private static final int INITIAL_ELEMENT_CAPACITY = 8;
+
+    /** 参数字符串，全部元素解析后释放 */
+    private String mSource;
+
+    /** 每个顶层元素在参数字符串中的起止位置 */
+    private int[] mStarts;
+    private int[] mEnds;
+
+    /** 已经解析的元素，未解析的为null */
+    private Object[] mValues;
+
+    private int mLength;
+
+    /** 全部元素已经放入父类，之后所有操作都交给父类处理 */
+    private boolean mMaterialized;
+
+    /**
+     * @param source
+     *            js端传下来的参数，格式为json数组
+     * @throws JSONException
+     *             参数不是json数组时抛出
+     */
+    XLazyJSONArray(String source) throws JSONException {
+        mSource = source;
+        scan(source);
+    }
+
+    @Override
+    public int length() {
+        return mMaterialized ? super.length() : mLength;
+    }
+
+    @Override
+    public Object opt(int index) {
+        if (mMaterialized) {
+            return super.opt(index);
+        }
+        if (index < 0 || index >= mLength) {
+            return null;
+        }
+        try {
+            return valueAt(index);
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Object get(int index) throws JSONException {
+        if (mMaterialized) {
+            return super.get(index);
+        }
+        if (index < 0 || index >= mLength) {
+            throw new JSONException("Index " + index + " out of range [0.."
+                    + mLength + ")");
+        }
+        return valueAt(index);
+    }
+
+    @Override
+    public boolean isNull(int index) {
+        Object value = opt(index);
+        return null == value || JSONObject.NULL.equals(value);
+    }
+
+    @Override
+    public JSONArray put(boolean value) {
+        materialize();
+        return super.put(value);
+    }
+
+    @Override
+    public JSONArray put(double value) throws JSONException {
+        materialize();
+        return super.put(value);
+    }
+
+    @Override
+    public JSONArray put(int value) {
+        materialize();
+        return super.put(value);
+    }
+
+    @Override
+    public JSONArray put(long value) {
+        materialize();
+        return super.put(value);
+    }
+
+    @Override
+    public JSONArray put(Object value) {
+        materialize();
+        return super.put(value);
+    }
+
+    @Override
+    public JSONArray put(int index, boolean value) throws JSONException {
+        materialize();
+        return super.put(index, value);
+    }
+
+    @Override
+    public JSONArray put(int index, double value) throws JSONException {
+        materialize();
+        return super.put(index, value);
+    }
+
+    @Override
+    public JSONArray put(int index, int value) throws JSONException {
+        materialize();
+        return super.put(index, value);
+    }
+
+    @Override
+    public JSONArray put(int index, long value) throws JSONException {
+        materialize();
+        return super.put(index, value);
+    }
+
+    @Override
+    public JSONArray put(int index, Object value) throws JSONException {
+        materialize();
+        return super.put(index, value);
+    }
+
+    @Override
+    public String join(String separator) throws JSONException {
+        materialize();
+        return super.join(separator);
+    }
+
+    @Override
+    public String toString() {
+        materialize();
+        return super.toString();
+    }
+
+    @Override
+    public String toString(int indentSpaces) throws JSONException {
+        materialize();
+        return super.toString(indentSpaces);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        materialize();
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        materialize();
+        return super.hashCode();
+    }
+
+    /**
+     * 解析指定位置的元素，解析结果会被缓存
+     */
+    private Object valueAt(int index) throws JSONException {
+        Object value = mValues[index];
+        if (null == value) {
+            value = new JSONTokener(mSource.substring(mStarts[index],
+                    mEnds[index])).nextValue();
+            mValues[index] = value;
+        }
+        return value;
+    }
+
+    /**
+     * 解析全部元素并放入父类
+     */
+    private void materialize() {
+        if (mMaterialized) {
+            return;
+        }
+        for (int i = 0; i < mLength; i++) {
+            Object value;
+            try {
+                value = valueAt(i);
+            } catch (JSONException e) {
+                value = JSONObject.NULL;
+            }
+            super.put(value);
+        }
+        mMaterialized = true;
+        mSource = null;
+        mStarts = null;
+        mEnds = null;
+        mValues = null;
+    }
+
+    /**
+     * 扫描参数字符串，记录每个顶层元素的起止位置，只检查字符串、括号的配对，不解析元素
+     */
+    private void scan(String source) throws JSONException {
+        int len = null == source ? 0 : source.length();
+        int pos = skipWhitespace(source, 0, len);
+        if (pos >= len || source.charAt(pos) != '[') {
+            throw new JSONException("Value " + source
+                    + " cannot be converted to JSONArray");
+        }
+        mStarts = new int[INITIAL_ELEMENT_CAPACITY];
+        mEnds = new int[INITIAL_ELEMENT_CAPACITY];
+        pos = skipWhitespace(source, pos + 1, len);
+        if (pos < len && source.charAt(pos) == ']') {
+            mValues = new Object[0];
+            return;
+        }
+        int depth = 0;
+        int start = pos;
+        boolean inString = false;
+        for (; pos < len; pos++) {
+            char c = source.charAt(pos);
+            if (inString) {
+                if (c == '\\') {
+                    pos++;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            switch (c) {
+            case '"':
+                inString = true;
+                break;
+            case '[':
+            case '{':
+                depth++;
+                break;
+            case '}':
+                depth--;
+                break;
+            case ']':
+                if (depth == 0) {
+                    addElement(source, start, pos);
+                    mValues = new Object[mLength];
+                    return;
+                }
+                depth--;
+                break;
+            case ',':
+                if (depth == 0) {
+                    addElement(source, start, pos);
+                    start = pos + 1;
+                }
+                break;
+            default:
+                break;
+            }
+            if (depth < 0) {
+                break;
+            }
+        }
+        throw new JSONException("Unterminated array in " + source);
+    }
+
+    private void addElement(String source, int start, int end)
+            throws JSONException {
+        while (start < end && isWhitespace(source.charAt(start))) {
+            start++;
+        }
+        while (end > start && isWhitespace(source.charAt(end - 1))) {
+            end--;
+        }
+        if (start == end) {
+            throw new JSONException("Empty element in " + source);
+        }
+        if (mLength == mStarts.length) {
+            int[] starts = new int[mLength * 2];
+            int[] ends = new int[mLength * 2];
+            System.arraycopy(mStarts, 0, starts, 0, mLength);
+            System.arraycopy(mEnds, 0, ends, 0, mLength);
+            mStarts = starts;
+            mEnds = ends;
+        }
+        mStarts[mLength] = start;
+        mEnds[mLength] = end;
+        mLength++;
+    }
+
+    private static int skipWhitespace(String source, int pos, int len) {
+        while (pos < len && isWhitespace(source.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ Copyright 2012-2013, Polyvi Inc. (http://polyvi.github.io/openxface)
+ This program is distributed under the terms of the GNU General Public License.
+
+ This file is part of xFace.
+
+ xFace is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ xFace is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with xFace.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package com.polyvi.xface.extension;
+
+/**
+ * 传输进度事件的节流策略
+ * 距离上一次发送超过指定的时间间隔，或者进度增加超过指定的百分比时才发送进度，
+ * 传输完成时的进度总是发送；时间间隔和百分比都为0时每次都发送
+ * 默认策略从config.xml的ProgressInterval和ProgressStep读取，每个传输任务使用一个实例
+ */
+public class XProgressThrottle {
+
+    /** 默认的发送间隔(毫秒) */
+    public static final int DEFAULT_INTERVAL = 100;
+
+    /** 默认的进度步长(百分比) */
+    public static final int DEFAULT_STEP = 1;
+
+    private static volatile int sInterval = DEFAULT_INTERVAL;
+    private static volatile int sStep = DEFAULT_STEP;
+
+    private final int mInterval;
+    private final int mStep;
+
+    /** 上一次发送的时间和进度 */
+    private long mLastTime;
+    private long mLastLoaded = -1;
+
+    /**
+     * 使用默认策略创建节流器
+     */
+    public XProgressThrottle() {
+        this(sInterval, sStep);
+    }
+
+    /**
+     * @param interval
+     *            发送进度的最小时间间隔(毫秒)，为0时不按时间发送
+     * @param step
+     *            发送进度的最小进度增量(百分比)，为0时不按百分比发送
+     */
+    public XProgressThrottle(int interval, int step) {
+        mInterval = Math.max(0, interval);
+        mStep = Math.max(0, step);
+    }
+
+    /**
+     * 设置默认策略，对之后创建的节流器生效
+     */
+    public static void setDefaultPolicy(int interval, int step) {
+        sInterval = Math.max(0, interval);
+        sStep = Math.max(0, step);
+    }
+
+    /**
+     * 判断当前进度是否需要发送，返回true时记为已发送
+     *
+     * @param loaded
+     *            已传输的大小
+     * @param total
+     *            总大小，未知时传入不大于0的值
+     */
+    public synchronized boolean shouldNotify(long loaded, long total) {
+        if (loaded == mLastLoaded) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        boolean notify = (0 == mInterval && 0 == mStep)
+                || (total > 0 && loaded >= total)
+                || (mInterval > 0 && now - mLastTime >= mInterval)
+                || (mStep > 0 && total > 0 && (loaded - Math.max(0, mLastLoaded)) * 100 >= mStep * total);
+        if (notify) {
+            mLastTime = now;
+            mLastLoaded = loaded;
+        }
+        return notify;
+    }
+
+    /**
+     * 重新开始计算，用于暂停后继续传输
+     */
+    public synchronized void reset() {
+        mLastTime = 0;
+        mLastLoaded = -1;
+    }
+}
@@ -49,6 +49,8 @@ public class XSecurityExt extends XExtension {
     private static final String COMMAND_ENCRYPT_FILE = "encryptFile";
     private static final String COMMAND_DECRYPT_FILE = "decryptFile";
     private static final String COMMAND_DIGEST = "digest";
+    private static final String COMMAND_ENCRYPT_BATCH = "encryptBatch";
+    private static final String COMMAND_DECRYPT_BATCH = "decryptBatch";
 
     /** 加解密过程中的错误 */
     private static final int FILE_NOT_FOUND_ERR = 1;
@@ -72,6 +74,9 @@ public class XSecurityExt extends XExtension {
     private static final String KEY_CRYPT_ALGORITHM = "CryptAlgorithm";
     private static final String KEY_ENCODE_DATA_TYPE = "EncodeDataType";
     private static final String KEY_ENCODE_KEY_TYPE = "EncodeKeyType";
+    /** 文件加解密进度的属性名称 */
+    private static final String TAG_LOADED = "loaded";
+    private static final String TAG_TOTAL = "total";
 
     /**加解密工具类*/
     XCryptor mCryptor = new XCryptor();
@@ -97,12 +102,20 @@ public class XSecurityExt extends XExtension {
                 result = decrypt(args.getString(0), args.getString(1), args.optJSONObject(2));
             } else if (action.equals(COMMAND_ENCRYPT_FILE)) {
                 result = encryptFile(mWebContext, args.getString(0), args.getString(1),
-                        args.getString(2));
+                        args.getString(2), callbackCtx);
             } else if (action.equals(COMMAND_DECRYPT_FILE)) {
                 result = decryptFile(mWebContext, args.getString(0), args.getString(1),
-                        args.getString(2));
+                        args.getString(2), callbackCtx);
             } else if (action.equals(COMMAND_DIGEST)) {
                 result = digest(args.getString(0));
+            } else if (action.equals(COMMAND_ENCRYPT_BATCH)) {
+                return new XExtensionResult(status, cryptBatch(
+                        args.getString(0), args.getJSONArray(1),
+                        args.optJSONObject(2), true));
+            } else if (action.equals(COMMAND_DECRYPT_BATCH)) {
+                return new XExtensionResult(status, cryptBatch(
+                        args.getString(0), args.getJSONArray(1),
+                        args.optJSONObject(2), false));
             } else {
                 status = XExtensionResult.Status.INVALID_ACTION;
             }
@@ -177,6 +190,32 @@ public class XSecurityExt extends XExtension {
         }
     }
 
+    /**
+     * 使用同一个密钥和配置选项批量加解密，一次桥接调用处理多条数据
+     * 任意一条数据加解密失败时整批失败
+     *
+     * @param sKey
+     *            密钥
+     * @param sourceData
+     *            需要加解密的数据数组
+     * @param options
+     *            加解密配置选项
+     * @param isEncrypt
+     *            标示加密还是解密，true：加密，false：解密。
+     * @return 与输入顺序一致的加解密结果数组
+     */
+    private JSONArray cryptBatch(String sKey, JSONArray sourceData,
+            JSONObject options, boolean isEncrypt) throws XCryptionException,
+            JSONException {
+        JSONArray results = new JSONArray();
+        for (int i = 0; i < sourceData.length(); i++) {
+            String data = sourceData.getString(i);
+            results.put(isEncrypt ? encrypt(sKey, data, options) : decrypt(
+                    sKey, data, options));
+        }
+        return results;
+    }
+
     /**
      * 对称加密文件并返回
      *
@@ -188,14 +227,18 @@ public class XSecurityExt extends XExtension {
      *            需要加密的文件的路径（只支持相对路径）
      * @param targetFilePath
      *            经过加密得到的文件的路径
+     * @param callbackCtx
+     *            回调上下文环境，用于发送加密进度
      * @return 加密后文件的相对路径
      * @throws XCryptionException
      * @throws FileNotFoundException
      */
     private String encryptFile(XIWebContext webContext, String sKey,
-            String sourceFilePath, String targetFilePath)
-            throws FileNotFoundException, XCryptionException {
-        return doFileCrypt(webContext, sKey, sourceFilePath, targetFilePath, true);
+            String sourceFilePath, String targetFilePath,
+            XCallbackContext callbackCtx) throws FileNotFoundException,
+            XCryptionException {
+        return doFileCrypt(webContext, sKey, sourceFilePath, targetFilePath,
+                true, callbackCtx);
     }
 
     /**
@@ -263,18 +306,23 @@ public class XSecurityExt extends XExtension {
      *            需要解密的文件的路径(只支持相对路径)
      * @param targetFilePath
      *            经过解密得到的文件的路径
+     * @param callbackCtx
+     *            回调上下文环境，用于发送解密进度
      * @return 解密后文件的相对路径
      * @throws FileNotFoundException
      */
     private String decryptFile(XIWebContext webContext, String sKey,
-            String sourceFilePath, String targetFilePath)
-            throws XCryptionException, FileNotFoundException {
-        return doFileCrypt(webContext, sKey, sourceFilePath, targetFilePath, false);
+            String sourceFilePath, String targetFilePath,
+            XCallbackContext callbackCtx) throws XCryptionException,
+            FileNotFoundException {
+        return doFileCrypt(webContext, sKey, sourceFilePath, targetFilePath,
+                false, callbackCtx);
     }
 
     private String doFileCrypt(XIWebContext webContext, String sKey,
-            String sourceFilePath, String targetFilePath, boolean isEncrypt)
-            throws XCryptionException, FileNotFoundException {
+            String sourceFilePath, String targetFilePath, boolean isEncrypt,
+            XCallbackContext callbackCtx) throws XCryptionException,
+            FileNotFoundException {
         // 检查要加解密的key为空
         if (XStringUtils.isEmptyString(sKey)) {
             XLog.e(CLASS_NAME, KEY_EMPTY_ERROR);
@@ -311,9 +359,10 @@ public class XSecurityExt extends XExtension {
             throw new FileNotFoundException();
         }
         byte[] keyBytes = getBytesEncode(ENCODE_TYPE_STRING, sKey);
+        XCryptor.XCryptListener listener = new CryptProgress(callbackCtx);
         if( isEncrypt ? mCryptor.encryptFileForDES(keyBytes, absSourceFilePath,
-                absTargetFilePath) : mCryptor.decryptFileForDES(keyBytes, absSourceFilePath,
-                        absTargetFilePath)){
+                absTargetFilePath, listener) : mCryptor.decryptFileForDES(keyBytes, absSourceFilePath,
+                        absTargetFilePath, listener)){
             return targetFilePath;
         }
         throw new XCryptionException(CRYPTION_ERROR);
@@ -363,4 +412,34 @@ public class XSecurityExt extends XExtension {
             return keyString.getBytes();
         }
     }
+
+    /**
+     * 将文件加解密进度以{loaded:n,total:n}的形式发送给js，按照默认的节流策略发送
+     */
+    private static class CryptProgress implements XCryptor.XCryptListener {
+        private final XCallbackContext mCallbackCtx;
+        private final XProgressThrottle mThrottle = new XProgressThrottle();
+
+        CryptProgress(XCallbackContext callbackCtx) {
+            mCallbackCtx = callbackCtx;
+        }
+
+        @Override
+        public void onProgress(long processed, long total) {
+            if (!mThrottle.shouldNotify(processed, total)) {
+                return;
+            }
+            try {
+                JSONObject progress = new JSONObject();
+                progress.put(TAG_LOADED, processed);
+                progress.put(TAG_TOTAL, total);
+                XExtensionResult result = new XExtensionResult(
+                        XExtensionResult.Status.PROGRESS_CHANGING, progress);
+                result.setKeepCallback(true);
+                mCallbackCtx.sendExtensionResult(result);
+            } catch (JSONException e) {
+                XLog.e(CLASS_NAME, e.getMessage());
+            }
+        }
+    }
 }
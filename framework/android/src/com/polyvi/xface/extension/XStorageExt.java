@@ -24,6 +24,13 @@ package com.polyvi.xface.extension;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -31,13 +38,26 @@ import org.json.JSONObject;
 
 import com.polyvi.xface.extension.XExtensionResult.Status;
 import com.polyvi.xface.plugin.api.XIWebContext;
+import com.polyvi.xface.util.XBase64;
 import com.polyvi.xface.util.XFileUtils;
 import com.polyvi.xface.util.XLog;
 
+import android.annotation.TargetApi;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
-
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+
+/**
+ * 数据库扩展
+ * 打开数据库是同步的，SQL语句在专用的数据库线程中按照提交顺序执行，不阻塞js桥接线程；
+ * 同一个js事务中连续提交的语句通过executeBatch一次提交，在一个SQLite事务中执行；
+ * 打开的数据库在应用关闭前一直保持连接，使用WAL日志模式，并缓存编译过的增删改语句
+ * executeSqlPaged按页返回查询结果，每页为{columns:[...],rows:[[...],...],offset:n}，
+ * 列名只在第一页中返回，数值、null保持原有类型，blob编码为{blob:"base64"}，
+ * 全部结果返回后发送{rowCount:n,truncated:bool}
+ */
 public class XStorageExt extends XExtension {
 
     private static final String CLASS_NAME = XStorageExt.class.getSimpleName();
@@ -46,6 +66,20 @@ public class XStorageExt extends XExtension {
 
     private static final String COMMAND_EXECUTE_SQL = "executeSql";
 
+    private static final String COMMAND_EXECUTE_BATCH = "executeBatch";
+
+    private static final String COMMAND_EXECUTE_SQL_PAGED = "executeSqlPaged";
+
+    private static final String TAG_COLUMNS = "columns";
+    private static final String TAG_ROWS = "rows";
+    private static final String TAG_OFFSET = "offset";
+    private static final String TAG_BLOB = "blob";
+    private static final String TAG_ROW_COUNT = "rowCount";
+    private static final String TAG_TRUNCATED = "truncated";
+
+    /** 分页查询默认的每页行数 */
+    private static final int DEFAULT_PAGE_SIZE = 500;
+
     private static final String DDL_COMMAND_ALTER = "alter";
 
     private static final String DDL_COMMAND_CREATE = "create";
@@ -54,16 +88,36 @@ public class XStorageExt extends XExtension {
 
     private static final String DDL_COMMAND_TRUNCATE = "truncate";
 
-    private SQLiteDatabase mMyDb = null; /**<Database object*/
+    /** 可以编译后重复执行的语句 */
+    private static final String[] DML_COMMANDS = { "insert", "update",
+            "delete", "replace" };
+
+    private static final String JS_STORAGE_MODULE = "xFace.require('xFace/extension/android/storage')";
+
+    /** 每个数据库缓存的编译语句数 */
+    private static final int STATEMENT_CACHE_SIZE = 32;
+
+    private static final int WAL_API_LEVEL = 11;
+
+    private static final int CURSOR_TYPE_API_LEVEL = 11;
 
     private static final String DB_DIR_NAME = "database";
 
+    /** 所有应用共享的数据库线程，保证语句按照提交顺序执行 */
+    private static ThreadPoolExecutor sDbExecutor;
+
+    /** 已经打开的数据库 数据库路径 -> 数据库 */
+    private final HashMap<String, Database> mDatabases = new HashMap<String, Database>();
+
+    private Database mMyDb = null; /**<Database object*/
+
     @Override
     public void sendAsyncResult(String result) {
     }
 
     @Override
     public boolean isAsync(String action) {
+        // SQL语句由数据库线程执行，桥接线程只负责提交
         return false;
     }
 
@@ -79,18 +133,25 @@ public class XStorageExt extends XExtension {
                 }
             } else if(COMMAND_EXECUTE_SQL.equals(action)){
                 status = Status.NO_RESULT;
-                String[] params = null;
-                if(args.isNull(1)){
-                    params = new String[0];
-                }else{
-                    JSONArray paramJsonArray = args.getJSONArray(1);
-                    int len = paramJsonArray.length();
-                    params = new String[len];
-                    for (int i = 0; i < len; i++) {
-                        params[i] = paramJsonArray.getString(i);
-                    }
+                Statement[] statements = { new Statement(args.getString(0),
+                        getParams(args, 1), args.getString(2)) };
+                submit(statements, false);
+            } else if (COMMAND_EXECUTE_BATCH.equals(action)) {
+                status = Status.NO_RESULT;
+                JSONArray batch = args.getJSONArray(0);
+                Statement[] statements = new Statement[batch.length()];
+                for (int i = 0; i < statements.length; i++) {
+                    JSONArray item = batch.getJSONArray(i);
+                    statements[i] = new Statement(item.getString(0),
+                            getParams(item, 1), item.getString(2));
                 }
-                executeSql(args.getString(0), params, args.getString(2), callbackCtx);
+                submit(statements, true);
+            } else if (COMMAND_EXECUTE_SQL_PAGED.equals(action)) {
+                status = Status.NO_RESULT;
+                int pageSize = args.optInt(2, DEFAULT_PAGE_SIZE);
+                submitPaged(args.getString(0), getParams(args, 1),
+                        pageSize > 0 ? pageSize : DEFAULT_PAGE_SIZE,
+                        args.optInt(3, 0), callbackCtx);
             }
             return new XExtensionResult(status);
         }catch(JSONException e){
@@ -98,17 +159,56 @@ public class XStorageExt extends XExtension {
         }
     }
 
+    @Override
+    public void onAppClosed() {
+        closeDatabases();
+    }
+
+    @Override
+    public void destroy() {
+        closeDatabases();
+    }
+
+    /**
+     * 获取数据库线程
+     */
+    private static synchronized ThreadPoolExecutor getDbExecutor() {
+        if (null == sDbExecutor) {
+            sDbExecutor = new ThreadPoolExecutor(1, 1, 0L,
+                    TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            return new Thread(r, "xface-storage");
+                        }
+                    });
+        }
+        return sDbExecutor;
+    }
+
+    /**
+     * 解析SQL语句的参数
+     */
+    private String[] getParams(JSONArray args, int index) throws JSONException {
+        if (args.isNull(index)) {
+            return new String[0];
+        }
+        JSONArray paramJsonArray = args.getJSONArray(index);
+        int len = paramJsonArray.length();
+        String[] params = new String[len];
+        for (int i = 0; i < len; i++) {
+            params[i] = paramJsonArray.getString(i);
+        }
+        return params;
+    }
+
     /**
-     * 打开数据库.
+     * 打开数据库，已经打开的数据库直接复用
      *
      * @param db
      *            数据库名
      */
     private boolean openDatabase(XIWebContext webContext, String db) {
-        if (null != mMyDb) {
-            mMyDb.close();
-        }
-
         File dbDir = new File(webContext.getApplication().getDataDir(),DB_DIR_NAME);
         if(!dbDir.exists()){
             dbDir.mkdirs();
@@ -122,46 +222,319 @@ public class XStorageExt extends XExtension {
                 XLog.e(CLASS_NAME, dbPath);
                 isValidDbPath = false;
             } else {
-                mMyDb = SQLiteDatabase.openOrCreateDatabase(dbPath, null);
+                synchronized (mDatabases) {
+                    Database database = mDatabases.get(dbPath);
+                    if (null == database) {
+                        database = new Database(SQLiteDatabase
+                                .openOrCreateDatabase(dbPath, null));
+                        mDatabases.put(dbPath, database);
+                    }
+                    mMyDb = database;
+                }
             }
         } catch (IOException e) {
             isValidDbPath = false;
             XLog.e(CLASS_NAME, e.toString());
+        } catch (SQLiteException e) {
+            isValidDbPath = false;
+            XLog.e(CLASS_NAME, e.toString());
         }
         return isValidDbPath;
     }
 
     /**
-     * 执行SQL语句.
+     * 关闭所有打开的数据库，已经提交的语句执行完成后才关闭
+     */
+    private void closeDatabases() {
+        final Database[] databases;
+        synchronized (mDatabases) {
+            databases = mDatabases.values().toArray(
+                    new Database[mDatabases.size()]);
+            mDatabases.clear();
+            mMyDb = null;
+        }
+        if (databases.length == 0) {
+            return;
+        }
+        getDbExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Database database : databases) {
+                    database.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * 将SQL语句提交到数据库线程，语句在提交时所在的数据库上执行
+     *
+     * @param statements
+     *            要执行的语句
+     * @param inTransaction
+     *            是否在一个SQLite事务中执行
+     */
+    private void submit(final Statement[] statements,
+            final boolean inTransaction) {
+        final Database database;
+        synchronized (mDatabases) {
+            database = mMyDb;
+        }
+        getDbExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                String jsScript;
+                if (null == database) {
+                    jsScript = failQueries("database is not open", statements, 0);
+                } else {
+                    try {
+                        jsScript = executeSql(database, statements, inTransaction);
+                    } catch (RuntimeException ex) {
+                        // 保证js总能收到回调
+                        XLog.e(CLASS_NAME, "Storage.executeSql(): Error=" + ex);
+                        jsScript = failQueries(String.valueOf(ex.getMessage()),
+                                statements, 0);
+                    }
+                }
+                mWebContext.sendJavascript(jsScript);
+            }
+        });
+    }
+
+    /**
+     * 将分页查询提交到数据库线程
      *
      * @param query
-     *            SQL查询语句
+     *            查询语句
      * @param params
-     *            SQL查询语句的参数
-     * @param tx_id
-     *            事务 id
+     *            查询语句的参数
+     * @param pageSize
+     *            每页的行数
+     * @param limit
+     *            最多返回的行数，不大于0时不限制
      * @param callbackCtx
      *            回调上下文环境
      */
-    private void executeSql(String query, String[] params,
-            String tx_id, XCallbackContext callbackCtx) {
+    private void submitPaged(final String query, final String[] params,
+            final int pageSize, final int limit,
+            final XCallbackContext callbackCtx) {
+        final Database database;
+        synchronized (mDatabases) {
+            database = mMyDb;
+        }
+        getDbExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (null == database) {
+                    callbackCtx.error("database is not open");
+                    return;
+                }
+                try {
+                    queryPaged(database.mDb, query, params, pageSize, limit,
+                            callbackCtx);
+                } catch (SQLiteException ex) {
+                    XLog.e(CLASS_NAME, "Storage.executeSqlPaged(): Error="
+                            + ex.getMessage());
+                    callbackCtx.error(ex.getMessage());
+                } catch (IllegalStateException ex) {
+                    callbackCtx.error(ex.getMessage());
+                } catch (JSONException ex) {
+                    callbackCtx.error(ex.getMessage());
+                } catch (RuntimeException ex) {
+                    XLog.e(CLASS_NAME, "Storage.executeSqlPaged(): Error=" + ex);
+                    callbackCtx.error(String.valueOf(ex.getMessage()));
+                }
+            }
+        });
+    }
+
+    /**
+     * 按页读取查询结果，游标只保留当前窗口的数据，每页读取完成后立即发送给js
+     */
+    private void queryPaged(SQLiteDatabase db, String query, String[] params,
+            int pageSize, int limit, XCallbackContext callbackCtx)
+            throws JSONException {
+        Cursor cursor = db.rawQuery(query, params);
         try {
-            if (isDDL(query)) {
-                mMyDb.execSQL(query);
-                String jsScript = "xFace.require('xFace/extension/android/storage').completeQuery('"
-                + tx_id + "', '');";
-                mWebContext.getApplication().loadJavascript(jsScript);
-            } else {
-                Cursor myCursor = mMyDb.rawQuery(query, params);
-                processResults(myCursor, tx_id, callbackCtx);
-                myCursor.close();
+            int colCount = cursor.getColumnCount();
+            JSONArray columns = new JSONArray();
+            for (int i = 0; i < colCount; i++) {
+                columns.put(cursor.getColumnName(i));
+            }
+            int rowCount = 0;
+            int offset = 0;
+            boolean truncated = false;
+            JSONArray rows = new JSONArray();
+            while (cursor.moveToNext()) {
+                if (limit > 0 && rowCount >= limit) {
+                    truncated = true;
+                    break;
+                }
+                JSONArray row = new JSONArray();
+                for (int i = 0; i < colCount; i++) {
+                    row.put(getValue(cursor, i));
+                }
+                rows.put(row);
+                rowCount++;
+                if (rows.length() >= pageSize) {
+                    sendPage(callbackCtx, offset == 0 ? columns : null, rows,
+                            offset);
+                    offset = rowCount;
+                    rows = new JSONArray();
+                }
+            }
+            if (rows.length() > 0 || offset == 0) {
+                sendPage(callbackCtx, offset == 0 ? columns : null, rows,
+                        offset);
+            }
+            JSONObject result = new JSONObject();
+            result.put(TAG_ROW_COUNT, rowCount);
+            result.put(TAG_TRUNCATED, truncated);
+            callbackCtx.success(result);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void sendPage(XCallbackContext callbackCtx, JSONArray columns,
+            JSONArray rows, int offset) throws JSONException {
+        JSONObject page = new JSONObject();
+        if (null != columns) {
+            page.put(TAG_COLUMNS, columns);
+        }
+        page.put(TAG_ROWS, rows);
+        page.put(TAG_OFFSET, offset);
+        XExtensionResult result = new XExtensionResult(
+                Status.PROGRESS_CHANGING, page);
+        result.setKeepCallback(true);
+        callbackCtx.sendExtensionResult(result);
+    }
+
+    /**
+     * 按照列的类型读取值，数值和null保持原有类型，blob编码为{blob:"base64"}
+     */
+    @TargetApi(11)
+    private Object getValue(Cursor cursor, int index) throws JSONException {
+        if (Build.VERSION.SDK_INT < CURSOR_TYPE_API_LEVEL) {
+            return cursor.isNull(index) ? JSONObject.NULL : cursor
+                    .getString(index);
+        }
+        switch (cursor.getType(index)) {
+        case Cursor.FIELD_TYPE_NULL:
+            return JSONObject.NULL;
+        case Cursor.FIELD_TYPE_INTEGER:
+            return cursor.getLong(index);
+        case Cursor.FIELD_TYPE_FLOAT:
+            return cursor.getDouble(index);
+        case Cursor.FIELD_TYPE_BLOB:
+            JSONObject blob = new JSONObject();
+            blob.put(TAG_BLOB, XBase64.encodeToString(cursor.getBlob(index),
+                    XBase64.NO_WRAP));
+            return blob;
+        default:
+            return cursor.getString(index);
+        }
+    }
+
+    /**
+     * 执行SQL语句.
+     *
+     * @param database
+     *            语句所在的数据库
+     * @param statements
+     *            SQL语句
+     * @param inTransaction
+     *            是否在一个SQLite事务中执行，任何一条语句失败时回滚整个事务
+     * @return 通知js执行结果的脚本
+     */
+    private String executeSql(Database database, Statement[] statements,
+            boolean inTransaction) {
+        StringBuilder jsScript = new StringBuilder();
+        SQLiteDatabase db = database.mDb;
+        int current = 0;
+        try {
+            if (inTransaction) {
+                db.beginTransaction();
+            }
+            try {
+                for (; current < statements.length; current++) {
+                    Statement statement = statements[current];
+                    String result = executeStatement(database, statement);
+                    jsScript.append(JS_STORAGE_MODULE).append(".completeQuery('")
+                            .append(statement.mId).append("', ").append(result)
+                            .append(");");
+                }
+                if (inTransaction) {
+                    db.setTransactionSuccessful();
+                }
+            } finally {
+                if (inTransaction) {
+                    db.endTransaction();
+                }
             }
         } catch (SQLiteException ex) {
             XLog.e(CLASS_NAME, "Storage.executeSql(): Error=" + ex.getMessage());
-            String jsScript = "xFace.require('xFace/extension/android/storage').failQuery('"
-                    + ex.getMessage() + "','" + tx_id + "');";
-            callbackCtx.sendExtensionResult(jsScript);
+            if (inTransaction) {
+                // 事务已经回滚，之前已经执行的语句也要通知js失败
+                jsScript.setLength(0);
+                current = 0;
+            }
+            jsScript.append(failQueries(ex.getMessage(), statements, current));
+        } catch (IllegalStateException ex) {
+            // 数据库已经关闭
+            XLog.e(CLASS_NAME, "Storage.executeSql(): Error=" + ex.getMessage());
+            jsScript.setLength(0);
+            jsScript.append(failQueries(ex.getMessage(), statements, 0));
+        }
+        return jsScript.toString();
+    }
+
+    /**
+     * 执行一条SQL语句
+     *
+     * @return 语句的结果，数据定义语言返回空串，其它语句返回结果行的json数组
+     */
+    private String executeStatement(Database database, Statement statement) {
+        String query = statement.mQuery;
+        if (isDDL(query)) {
+            database.mDb.execSQL(query);
+            // 表结构改变后编译过的语句需要重新编译
+            database.clearStatements();
+            return "''";
+        }
+        if (isDML(query)) {
+            SQLiteStatement compiled = database.getStatement(query);
+            compiled.clearBindings();
+            String[] params = statement.mParams;
+            for (int i = 0; i < params.length; i++) {
+                compiled.bindString(i + 1, params[i]);
+            }
+            compiled.execute();
+            return "[]";
+        }
+        Cursor myCursor = database.mDb.rawQuery(query, statement.mParams);
+        try {
+            return processResults(myCursor);
+        } finally {
+            myCursor.close();
+        }
+    }
+
+    private static String failQuery(String reason, String tx_id) {
+        return JS_STORAGE_MODULE + ".failQuery(" + JSONObject.quote(reason)
+                + ",'" + tx_id + "');";
+    }
+
+    /**
+     * 通知js从from开始的所有语句执行失败
+     */
+    private static String failQueries(String reason, Statement[] statements,
+            int from) {
+        StringBuilder jsScript = new StringBuilder();
+        for (int i = from; i < statements.length; i++) {
+            jsScript.append(failQuery(reason, statements[i].mId));
         }
+        return jsScript.toString();
     }
 
     /**
@@ -171,43 +544,55 @@ public class XStorageExt extends XExtension {
      * @return true 如果是数据定义语言, false 不是数据定义语言（数据控制语言）
      */
     private boolean isDDL(String query) {
-        String cmd = query.toLowerCase();
-        if (cmd.startsWith(DDL_COMMAND_ALTER)
-                || cmd.startsWith(DDL_COMMAND_CREATE)
-                || cmd.startsWith(DDL_COMMAND_DROP)
-                || cmd.startsWith(DDL_COMMAND_TRUNCATE)) {
-            return true;
+        return startsWithKeyword(query, DDL_COMMAND_ALTER)
+                || startsWithKeyword(query, DDL_COMMAND_CREATE)
+                || startsWithKeyword(query, DDL_COMMAND_DROP)
+                || startsWithKeyword(query, DDL_COMMAND_TRUNCATE);
+    }
+
+    /**
+     * 检查SQL语句是否是没有结果集的增删改语句
+     */
+    private boolean isDML(String query) {
+        for (String command : DML_COMMANDS) {
+            if (startsWithKeyword(query, command)) {
+                return true;
+            }
         }
         return false;
     }
 
+    private static boolean startsWithKeyword(String query, String keyword) {
+        int start = 0;
+        while (start < query.length()
+                && Character.isWhitespace(query.charAt(start))) {
+            start++;
+        }
+        return query.regionMatches(true, start, keyword, 0, keyword.length());
+    }
+
     /**
      * 处理查询结果.
      *
      * @param cur
      *            查询结果的游标
-     * @param tx_id
-     *            事务 id
-     * @param callbackCtx
-     *            回调上下文环境
+     * @return 结果行的json数组
      */
-    private void processResults(Cursor cur, String tx_id, XCallbackContext callbackCtx) {
+    private String processResults(Cursor cur) {
 
         String result = "[]";
 
         if (cur.moveToFirst()) {
             JSONArray fullresult = new JSONArray();
-            String key = "";
-            String value = "";
             int colCount = cur.getColumnCount();
+            // 列名只需要读取一次
+            String[] keys = cur.getColumnNames();
 
             do {
                 JSONObject row = new JSONObject();
                 try {
                     for (int i = 0; i < colCount; ++i) {
-                        key = cur.getColumnName(i);
-                        value = cur.getString(i);
-                        row.put(key, value);
+                        row.put(keys[i], cur.getString(i));
                     }
                     fullresult.put(row);
 
@@ -220,8 +605,78 @@ public class XStorageExt extends XExtension {
             result = fullresult.toString();
         }
 
-        String jsScript = "xFace.require('xFace/extension/android/storage').completeQuery('"
-                + tx_id + "', " + result + ");";
-        mWebContext.getApplication().loadJavascript(jsScript);
+        return result;
+    }
+
+    /**
+     * 要执行的SQL语句
+     */
+    private static class Statement {
+        final String mQuery;
+        final String[] mParams;
+        /** js端的查询id */
+        final String mId;
+
+        Statement(String query, String[] params, String id) {
+            mQuery = query;
+            mParams = params;
+            mId = id;
+        }
+    }
+
+    /**
+     * 打开的数据库和它的编译语句缓存，编译语句只在数据库线程中使用
+     */
+    private static class Database {
+        final SQLiteDatabase mDb;
+        private final LinkedHashMap<String, SQLiteStatement> mStatements = new LinkedHashMap<String, SQLiteStatement>(
+                16, 0.75f, true);
+
+        Database(SQLiteDatabase db) {
+            mDb = db;
+            enableWal(db);
+        }
+
+        /**
+         * 开启WAL日志模式，读操作不会被写操作阻塞，大量写入时减少fsync
+         */
+        @TargetApi(11)
+        private static void enableWal(SQLiteDatabase db) {
+            if (Build.VERSION.SDK_INT < WAL_API_LEVEL) {
+                return;
+            }
+            try {
+                db.enableWriteAheadLogging();
+            } catch (IllegalStateException e) {
+                XLog.w(CLASS_NAME, "Failed to enable WAL: " + e.getMessage());
+            }
+        }
+
+        SQLiteStatement getStatement(String sql) {
+            SQLiteStatement statement = mStatements.get(sql);
+            if (null == statement) {
+                statement = mDb.compileStatement(sql);
+                mStatements.put(sql, statement);
+                if (mStatements.size() > STATEMENT_CACHE_SIZE) {
+                    Iterator<SQLiteStatement> iter = mStatements.values()
+                            .iterator();
+                    iter.next().close();
+                    iter.remove();
+                }
+            }
+            return statement;
+        }
+
+        void clearStatements() {
+            for (SQLiteStatement statement : mStatements.values()) {
+                statement.close();
+            }
+            mStatements.clear();
+        }
+
+        void close() {
+            clearStatements();
+            mDb.close();
+        }
     }
 }
@@ -93,41 +93,80 @@ public class XTelephonyExt extends XExtension {
     }
 
     @Override
-    public XExtensionResult exec(String action,
-            JSONArray args, XCallbackContext callbackCtx) throws JSONException {
-        XExtensionResult.Status status = XExtensionResult.Status.OK;
-        String result = "";
-        try {
-            if (action.equals(COMMAND_DELETE_ALL_CALL_RECORDS)) {
+    protected void registerActions() {
+        registerAction(COMMAND_DELETE_ALL_CALL_RECORDS, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws JSONException {
                 boolean delAllSuccess = deleteAllCallRecords(args.getString(0));
-                return new XExtensionResult(status, delAllSuccess);
-            } else if (action.equals(COMMAND_DELETE_CALL_RECORD)) {
+                return new XExtensionResult(Status.OK, delAllSuccess);
+            }
+        });
+        registerAction(COMMAND_DELETE_CALL_RECORD, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws JSONException {
                 boolean delSuccess = deleteCallRecord(args.getString(0),
                         args.getLong(1));
-                return new XExtensionResult(status, delSuccess);
-            } else if (action.equals(COMMAND_FIND_CALL_RECORDS)) {
+                return new XExtensionResult(Status.OK, delSuccess);
+            }
+        });
+        registerAction(COMMAND_FIND_CALL_RECORDS, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws JSONException {
                 JSONArray matchedCallRecord = findCallRecords(
                         args.getJSONObject(0), args.getInt(1), args.getInt(2));
-                return new XExtensionResult(status, matchedCallRecord);
-            } else if (action.equals(COMMAND_GET_CALL_RECORD)) {
+                return new XExtensionResult(Status.OK, matchedCallRecord);
+            }
+        });
+        registerAction(COMMAND_GET_CALL_RECORD, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws JSONException {
                 JSONObject callRecord = getCallRecord(args.getString(0),
                         args.getInt(1));
-                return new XExtensionResult(status, callRecord);
-            } else if (action.equals(COMMAND_GET_CALL_RECORD_COUNT)) {
+                return new XExtensionResult(Status.OK, callRecord);
+            }
+        });
+        registerAction(COMMAND_GET_CALL_RECORD_COUNT, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws JSONException {
                 int callCount = getCallRecordCount(args.getString(0));
-                return new XExtensionResult(status, callCount);
-            } else if (action.equals(COMMAND_INITIATE_VOICE_CALL)) {
-                boolean isCallSuccess = false;
+                return new XExtensionResult(Status.OK, callCount);
+            }
+        });
+        registerAction(COMMAND_INITIATE_VOICE_CALL, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws JSONException {
+                Status status = Status.OK;
                 boolean mobileNetAccessible = isSimCardAvailable(getContext());
-                isCallSuccess = initiateVoiceCall(args.getString(0));
+                boolean isCallSuccess = initiateVoiceCall(args.getString(0));
                 if ( !mobileNetAccessible || !isCallSuccess) {
                     status = Status.ERROR;
                 }
-                return new XExtensionResult(status, result);
+                return new XExtensionResult(status, "");
             }
-            return new XExtensionResult(status, result);
+        });
+    }
+
+    @Override
+    public XExtensionResult exec(String action,
+            JSONArray args, XCallbackContext callbackCtx) throws JSONException {
+        String result = "";
+        XActionHandler handler = getActionHandler(action);
+        if (null == handler) {
+            return new XExtensionResult(Status.OK, result);
+        }
+        try {
+            return handler.handle(args, callbackCtx);
         } catch (JSONException e) {
             return new XExtensionResult(XExtensionResult.Status.ERROR, result);
+        } catch (Exception e) {
+            // 处理器只会抛出JSONException，其它异常交由扩展管理器处理
+            throw new RuntimeException(e);
         }
     }
 
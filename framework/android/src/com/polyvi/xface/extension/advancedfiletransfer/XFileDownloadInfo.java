@@ -21,32 +21,68 @@
 
 package com.polyvi.xface.extension.advancedfiletransfer;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /** 该类用于记录下载的具体信息（包括下载的地址，下载文件的总大小以及下载完成了的大小,
- *  这些数据将记录到配置文件中用于断点续传）*/
+ *  这些数据将记录到配置文件中用于断点续传）
+ *  文件被划分为一个或多个分段并发下载，每个分段单独记录已下载的大小*/
 public class XFileDownloadInfo {
 
     /** 要下载的文件总大小 */
     private int mTotalSize;
 
-    /** 已下载的大小 */
-    private int mCompleteSize;
-
     /** 下载地址 */
     private String mUrl;
 
+    /** 文件的分段，至少有一个 */
+    private List<Segment> mSegments;
+
+    /**
+     * 创建只有一个分段的下载信息
+     */
     public XFileDownloadInfo(int totalSize, int completeSize, String url) {
-        super();
         mTotalSize = totalSize;
-        mCompleteSize = completeSize;
         mUrl = url;
+        mSegments = new ArrayList<Segment>(1);
+        mSegments.add(new Segment(0, totalSize, completeSize));
     }
 
-    public int getCompleteSize() {
-        return mCompleteSize;
+    /**
+     * 创建下载信息，文件被平均划分为segmentCount个分段
+     */
+    public XFileDownloadInfo(int totalSize, String url, int segmentCount) {
+        mTotalSize = totalSize;
+        mUrl = url;
+        int count = Math.max(1, segmentCount);
+        mSegments = new ArrayList<Segment>(count);
+        int segmentSize = totalSize / count;
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            int end = (i == count - 1) ? totalSize : start + segmentSize;
+            mSegments.add(new Segment(start, end, 0));
+            start = end;
+        }
+    }
+
+    /**
+     * 使用已经记录的分段创建下载信息
+     */
+    public XFileDownloadInfo(int totalSize, String url, List<Segment> segments) {
+        mTotalSize = totalSize;
+        mUrl = url;
+        mSegments = segments;
     }
 
-    public void setCompleteSize(int completeSize) {
-        mCompleteSize = completeSize;
+    /**
+     * 获取所有分段已下载的大小之和
+     */
+    public int getCompleteSize() {
+        int completeSize = 0;
+        for (Segment segment : mSegments) {
+            completeSize += segment.getCompleteSize();
+        }
+        return completeSize;
     }
 
     public String getUrl() {
@@ -65,13 +101,66 @@ public class XFileDownloadInfo {
         mTotalSize = totalSize;
     }
 
+    public List<Segment> getSegments() {
+        return mSegments;
+    }
+
     public boolean isDownloadCompleted() {
-		return mTotalSize == mCompleteSize;
-	}
+        for (Segment segment : mSegments) {
+            if (!segment.isCompleted()) {
+                return false;
+            }
+        }
+        return true;
+    }
 
     @Override
     public String toString() {
         return "DownloadInfo [mTotalSize=" + mTotalSize + ", mCompeleteSize="
-                + mCompleteSize + ", mUrl=" + mUrl + "]";
+                + getCompleteSize() + ", mSegments=" + mSegments.size()
+                + ", mUrl=" + mUrl + "]";
+    }
+
+    /**
+     * 文件的一个分段，范围为[start, end)，由一个连接下载
+     */
+    public static class Segment {
+        private final int mStart;
+        private final int mEnd;
+        /** 已下载的大小，只由下载该分段的线程修改 */
+        private volatile int mCompleteSize;
+
+        public Segment(int start, int end, int completeSize) {
+            mStart = start;
+            mEnd = end;
+            mCompleteSize = Math.min(completeSize, end - start);
+        }
+
+        public int getStart() {
+            return mStart;
+        }
+
+        public int getEnd() {
+            return mEnd;
+        }
+
+        public int getCompleteSize() {
+            return mCompleteSize;
+        }
+
+        public void setCompleteSize(int completeSize) {
+            mCompleteSize = completeSize;
+        }
+
+        /**
+         * 获取下一个要下载的字节在文件中的位置
+         */
+        public int getPosition() {
+            return mStart + mCompleteSize;
+        }
+
+        public boolean isCompleted() {
+            return getPosition() >= mEnd;
+        }
     }
 }
@@ -27,6 +27,14 @@ import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -39,9 +47,15 @@ import com.polyvi.xface.app.XApplication;
 import com.polyvi.xface.extension.XCallbackContext;
 import com.polyvi.xface.extension.XExtensionContext;
 import com.polyvi.xface.extension.XExtensionResult;
+import com.polyvi.xface.extension.XProgressThrottle;
 import com.polyvi.xface.util.XFileUtils;
 import com.polyvi.xface.util.XLog;
 
+/**
+ * 文件下载器，支持断点续传
+ * 服务器支持Range请求且文件较大时，文件被划分为多个分段，在共享的下载线程池中并发下载，
+ * 每个分段使用位置写入临时文件，定时将数据刷到磁盘并记录每个分段的进度，续传时每个分段从各自的进度继续
+ */
 public class XFileDownloader implements XIFileTransferListener, XIFileTransfer {
 
     private static final String CLASS_NAME = XFileDownloader.class.getSimpleName();
@@ -51,7 +65,8 @@ public class XFileDownloader implements XIFileTransferListener, XIFileTransfer {
     private static final int INIT = 1;
     private static final int DOWNLOADING = 2;
     private static final int PAUSE = 3;
-    private int mState = INIT;
+    /** 下载状态，分段线程不加锁读取 */
+    private volatile int mState = INIT;
 
     private static final int CONNECTION_ERR = 3;
 
@@ -73,6 +88,24 @@ public class XFileDownloader implements XIFileTransferListener, XIFileTransfer {
     /**定义下载重连时间为1秒*/
     private static final int RETRY_INTERVAL = 1000;
 
+    /**每个分段的最小大小，小于两个分段大小的文件只使用一个连接下载*/
+    private static final int MIN_SEGMENT_SIZE = 512 * SIZE_KB;
+
+    /**每个文件最多同时使用的连接数*/
+    private static final int MAX_SEGMENTS = 4;
+
+    /**所有下载任务共享的下载线程数*/
+    private static final int POOL_SIZE = 6;
+
+    /**每个连接的读缓冲区的最大大小*/
+    private static final int MAX_BUFFER_SIZE = 64 * SIZE_KB;
+
+    /**将数据刷到磁盘并记录分段进度的时间间隔(毫秒)*/
+    private static final int SYNC_INTERVAL = 1000;
+
+    /**所有下载任务共享的下载线程池*/
+    private static ExecutorService sDownloadPool;
+
     /**定义下载缓冲区大小*/
     private int mBufferSize;
 
@@ -101,6 +134,30 @@ public class XFileDownloader implements XIFileTransferListener, XIFileTransfer {
 
     private CookieSyncManager mCookieSyncManager;
 
+    /** 下载的临时文件，所有分段共用 */
+    private RandomAccessFile mTempFile;
+    private FileChannel mTempChannel;
+
+    /** 还没有结束的分段数 */
+    private int mRunningSegments;
+
+    /** 是否有分段下载失败 */
+    private boolean mFailed;
+
+    /** 暂停后分段还没有全部结束时收到的续传请求，所有分段结束后再开始续传 */
+    private XCallbackContext mPendingResume;
+
+    /** 上一次记录进度的时间 */
+    private long mLastSyncTime;
+
+    private final Object mSyncLock = new Object();
+
+    /** 进度事件的节流器 */
+    private final XProgressThrottle mProgressThrottle = new XProgressThrottle();
+
+    /** 复用的进度数据 */
+    private final JSONObject mProgress = new JSONObject();
+
     public XFileDownloader(Context context,String url, String localFilePath, XExtensionContext extensionContext,
             XApplication app, XFileTransferRecorder recorder, XFileTransferManager manager) {
         init(context,url, localFilePath, extensionContext, app, recorder, manager);
@@ -118,6 +175,25 @@ public class XFileDownloader implements XIFileTransferListener, XIFileTransfer {
         mCookieSyncManager = CookieSyncManager.createInstance(mContext);
     }
 
+    /**
+     * 获取所有下载任务共享的下载线程池
+     */
+    private static synchronized ExecutorService getDownloadPool() {
+        if (null == sDownloadPool) {
+            sDownloadPool = Executors.newFixedThreadPool(POOL_SIZE,
+                    new ThreadFactory() {
+                        private final AtomicInteger mCount = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            return new Thread(r, "xface-download-"
+                                    + mCount.incrementAndGet());
+                        }
+                    });
+        }
+        return sDownloadPool;
+    }
+
     /**
      * 初始化下载信息(如果是第一次下载，执行创建本地文件，获取文件的总大小以及在配置文件中添加该条记录，
      * 如果不是第一次下载，则从配置文件中取出已经下载了的信息，完成断点续传)
@@ -137,8 +213,11 @@ public class XFileDownloader implements XIFileTransferListener, XIFileTransfer {
                     if (HttpURLConnection.HTTP_OK == connection.getResponseCode()) {
                         totalSize = connection.getContentLength();
                         if (-1 != totalSize) {
-                            mDownloadInfo = new XFileDownloadInfo(totalSize, 0,
-                                    mUrl);
+                            // 服务器支持Range请求时才能分段下载
+                            boolean acceptRanges = "bytes".equalsIgnoreCase(connection
+                                    .getHeaderField("Accept-Ranges"));
+                            mDownloadInfo = new XFileDownloadInfo(totalSize, mUrl,
+                                    acceptRanges ? getSegmentCount(totalSize) : 1);
                             // 保存mDownloadInfo中的数据到配置文件
                             mFileTransferRecorder.saveDownloadInfo(mDownloadInfo);
                         } else {
@@ -162,9 +241,19 @@ public class XFileDownloader implements XIFileTransferListener, XIFileTransfer {
                 // 得到配置文件中已有的url的下载器的具体信息
                 mDownloadInfo = mFileTransferRecorder.getDownloadInfo(mUrl);
                 totalSize = mDownloadInfo.getTotalSize();
-                mDownloadInfo.setCompleteSize(getCompleteSize(mLocalFilePath + TEMP_FILE_SUFFIX));
+                List<XFileDownloadInfo.Segment> segments = mDownloadInfo.getSegments();
+                if (1 == segments.size()) {
+                    // 只有一个分段时数据是顺序写入的，已下载的大小就是临时文件的大小
+                    segments.get(0).setCompleteSize(Math.max(0,
+                            getCompleteSize(mLocalFilePath + TEMP_FILE_SUFFIX)));
+                } else if (!new File(mLocalFilePath + TEMP_FILE_SUFFIX).exists()) {
+                    // 临时文件已经被删除，所有分段重新下载
+                    for (XFileDownloadInfo.Segment segment : segments) {
+                        segment.setCompleteSize(0);
+                    }
+                }
             }
-            mBufferSize = getSingleTransferLength(totalSize);
+            mBufferSize = Math.min(getSingleTransferLength(totalSize), MAX_BUFFER_SIZE);
     }
 
     /**
@@ -174,97 +263,267 @@ public class XFileDownloader implements XIFileTransferListener, XIFileTransfer {
         return !mFileTransferRecorder.hasDownloadInfo(url);
     }
 
+    /**
+     * 根据文件大小计算分段数，每个分段不小于MIN_SEGMENT_SIZE，最多MAX_SEGMENTS个分段
+     */
+    private int getSegmentCount(int totalSize) {
+        return Math.max(1, Math.min(MAX_SEGMENTS, totalSize / MIN_SEGMENT_SIZE));
+    }
+
     @Override
     public void transfer(XCallbackContext callbackCtx) {
-        initDownloadInfo();
-        if (mState == DOWNLOADING) {
-            return;
+        synchronized (this) {
+            if (mState == DOWNLOADING) {
+                // 正在下载，不能重复开始
+                sendError(callbackCtx, CONNECTION_ERR);
+                return;
+            }
+            if (mRunningSegments > 0) {
+                // 暂停后上一次下载的分段还没有全部结束，等所有分段结束后再续传
+                mPendingResume = callbackCtx;
+                return;
+            }
+            mState = DOWNLOADING;
         }
         mCallbackCtx = callbackCtx;
+        initDownloadInfo();
         if (null == mDownloadInfo) {
             onError(CONNECTION_ERR);
-        } else {
-            setState(DOWNLOADING);
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    HttpURLConnection connection = null;
-                    RandomAccessFile randomAccessFile = null;
-                    InputStream is = null;
-                    int retry = RETRY;
-                    //TODO:以后重连次数可能从配置文件中读取
-                    do {
-                        int completeSize = mDownloadInfo.getCompleteSize();
+            return;
+        }
+        List<XFileDownloadInfo.Segment> pending = new ArrayList<XFileDownloadInfo.Segment>();
+        for (XFileDownloadInfo.Segment segment : mDownloadInfo.getSegments()) {
+            if (!segment.isCompleted()) {
+                pending.add(segment);
+            }
+        }
+        try {
+            openTempFile(mDownloadInfo.getSegments().size() > 1);
+        } catch (IOException e) {
+            XLog.e(CLASS_NAME, e.getMessage());
+            onError(CONNECTION_ERR);
+            return;
+        }
+        synchronized (this) {
+            if (mState != DOWNLOADING) {
+                // 初始化期间被暂停
+                closeTempFile();
+                return;
+            }
+            mFailed = false;
+            mRunningSegments = pending.size();
+            mProgressThrottle.reset();
+        }
+        if (pending.isEmpty()) {
+            finishDownload();
+            return;
+        }
+        for (XFileDownloadInfo.Segment segment : pending) {
+            getDownloadPool().execute(new SegmentTask(segment));
+        }
+    }
+
+    /**
+     * 打开下载的临时文件
+     *
+     * @param preallocate
+     *            是否按照文件总大小预先分配临时文件，分段下载时各分段写入不同的位置
+     */
+    private void openTempFile(boolean preallocate) throws IOException {
+        // 文件未下载成功先加个.temp标示
+        mTempFile = new RandomAccessFile(mLocalFilePath + TEMP_FILE_SUFFIX, "rw");
+        if (preallocate && mTempFile.length() < mDownloadInfo.getTotalSize()) {
+            mTempFile.setLength(mDownloadInfo.getTotalSize());
+        }
+        mTempChannel = mTempFile.getChannel();
+        mLastSyncTime = System.currentTimeMillis();
+    }
+
+    private void closeTempFile() {
+        try {
+            if (null != mTempFile) {
+                mTempFile.close();
+            }
+        } catch (IOException e) {
+            XLog.e(CLASS_NAME, e.getMessage());
+        }
+        mTempFile = null;
+        mTempChannel = null;
+    }
+
+    /**
+     * 将已写入的数据刷到磁盘并记录每个分段的进度，记录的进度不会超过已经刷到磁盘的数据
+     *
+     * @param force
+     *            为false时距离上一次记录不到SYNC_INTERVAL则直接返回
+     */
+    private void syncProgress(boolean force) {
+        synchronized (mSyncLock) {
+            long now = System.currentTimeMillis();
+            if (!force && now - mLastSyncTime < SYNC_INTERVAL) {
+                return;
+            }
+            mLastSyncTime = now;
+            // 先记下当前的进度再刷盘，刷盘期间写入的数据留到下一次记录
+            List<XFileDownloadInfo.Segment> snapshot = new ArrayList<XFileDownloadInfo.Segment>();
+            for (XFileDownloadInfo.Segment segment : mDownloadInfo.getSegments()) {
+                snapshot.add(new XFileDownloadInfo.Segment(segment.getStart(),
+                        segment.getEnd(), segment.getCompleteSize()));
+            }
+            try {
+                mTempChannel.force(false);
+            } catch (IOException e) {
+                XLog.e(CLASS_NAME, e.getMessage());
+                return;
+            }
+            mFileTransferRecorder.updateDownloadInfo(new XFileDownloadInfo(
+                    mDownloadInfo.getTotalSize(), mUrl, snapshot));
+        }
+    }
+
+    /**
+     * 一个分段结束（完成、暂停或者失败），最后一个结束的分段负责收尾
+     *
+     * @param failed
+     *            分段是否下载失败
+     */
+    private void onSegmentFinished(boolean failed) {
+        synchronized (this) {
+            if (failed) {
+                mFailed = true;
+                // 停止其它分段的下载
+                mState = INIT;
+            }
+            if (--mRunningSegments > 0) {
+                return;
+            }
+        }
+        finishDownload();
+    }
+
+    /**
+     * 所有分段都结束后，保存进度并关闭临时文件，全部下载完成时回调成功，有分段失败时回调失败
+     */
+    private void finishDownload() {
+        syncProgress(true);
+        closeTempFile();
+        boolean failed;
+        XCallbackContext resume;
+        synchronized (this) {
+            failed = mFailed;
+            resume = mPendingResume;
+            mPendingResume = null;
+        }
+        boolean completed = mDownloadInfo.isDownloadCompleted();
+        if (null != resume && (completed || failed)) {
+            // 等待续传的调用者接收最终结果
+            mCallbackCtx = resume;
+        }
+        if (completed) {
+            // 文件下载成功后去掉.temp标示
+            renameFile(mLocalFilePath + TEMP_FILE_SUFFIX, mLocalFilePath);
+            onSuccess();
+        } else if (failed) {
+            onError(CONNECTION_ERR);
+        } else if (null != resume) {
+            transfer(resume);
+        }
+    }
+
+    /**
+     * 下载一个分段的任务，网络异常时重试
+     */
+    private class SegmentTask implements Runnable {
+        private final XFileDownloadInfo.Segment mSegment;
+
+        SegmentTask(XFileDownloadInfo.Segment segment) {
+            mSegment = segment;
+        }
+
+        @Override
+        public void run() {
+            boolean writeFailed = false;
+            int retry = RETRY;
+            //TODO:以后重连次数可能从配置文件中读取
+            do {
+                if (DOWNLOADING != mState) {
+                    // 排队期间已经被暂停，不再建立连接
+                    break;
+                }
+                HttpURLConnection connection = null;
+                InputStream is = null;
+                try {
+                    URL url = new URL(mUrl);
+                    connection = (HttpURLConnection) url.openConnection();
+                    connection.setConnectTimeout(TIME_OUT_MILLISECOND);
+                    connection.setRequestMethod("GET");
+                    // 设置范围，格式为Range：bytes x-y;
+                    connection.setRequestProperty("Range", "bytes="
+                            + mSegment.getPosition() + "-" + (mSegment.getEnd() - 1));
+                    //设置cookie
+                    setCookieProperty(connection, mUrl);
+                    if (mSegment.getPosition() > 0
+                            && HttpURLConnection.HTTP_PARTIAL != connection.getResponseCode()) {
+                        throw new IOException("Server does not support range request");
+                    }
+                    // 将要下载的数据写到临时文件中该分段对应的位置
+                    is = connection.getInputStream();
+                    byte[] buffer = new byte[mBufferSize];
+                    int length = -1;
+                    while (DOWNLOADING == mState && !mSegment.isCompleted()
+                            && (length = is.read(buffer, 0, Math.min(buffer.length,
+                                    mSegment.getEnd() - mSegment.getPosition()))) != -1) {
                         try {
-                            URL url = new URL(mUrl);
-                            connection = (HttpURLConnection) url
-                                    .openConnection();
-                            connection.setConnectTimeout(TIME_OUT_MILLISECOND);
-                            connection.setRequestMethod("GET");
-                            // 设置范围，格式为Range：bytes x-;
-                            connection.setRequestProperty("Range", "bytes="
-                                    + completeSize + "-");
-                            //设置cookie
-                            setCookieProperty(connection,mUrl);
-                            // 文件未下载成功先加个.temp标示
-                            randomAccessFile = new RandomAccessFile(
-                                    mLocalFilePath + TEMP_FILE_SUFFIX, "rwd");
-                            randomAccessFile.seek(completeSize);
-                            // 将要下载的文件写到保存在保存路径下的文件中
-                            is = connection.getInputStream();
-                            byte[] buffer = new byte[mBufferSize];
-                            int length = -1;
-                            while ((length = is.read(buffer)) != -1) {
-                                try {
-                                    randomAccessFile.write(buffer, 0, length);
-                                } catch (Exception e) {
-                                    retry = -1;
-                                    break;
-                                }
-                                completeSize += length;
-                                onProgressUpdated(completeSize, 0);
-                                if (PAUSE == mState) {
-                                    break;
-                                }
-                            }
-                            if (mDownloadInfo.isDownloadCompleted()) {
-                                // 文件下载成功后去掉.temp标示
-                                renameFile(mLocalFilePath + TEMP_FILE_SUFFIX,
-                                        mLocalFilePath);
-                                onSuccess();
-                                break;
-                            }
+                            write(buffer, length, mSegment.getPosition());
                         } catch (IOException e) {
-                            if (retry <= 0) {
-                                onError(CONNECTION_ERR);
-                                XLog.e(CLASS_NAME, e.getMessage());
-                            }
-                            // 网络异常,睡1秒超时再连接
-                            try {
-                                Thread.sleep(RETRY_INTERVAL);
-                            } catch (InterruptedException ex) {
-                                XLog.e(CLASS_NAME,"sleep be interrupted",ex);
-                            }
-                        } finally {
-                            try {
-                                if (null != is) {
-                                    is.close();
-                                }
-                                if (null != randomAccessFile) {
-                                    // new URL可能报异常，这种情况下randomAccessFile为null
-                                    randomAccessFile.close();
-                                }
-                                if (null != connection) {
-                                    // new URL可能报异常，这种情况下connection为null
-                                    connection.disconnect();
-                                }
-                            } catch (IOException e) {
-                                XLog.e(CLASS_NAME, e.getMessage());
-                            }
+                            XLog.e(CLASS_NAME, e.getMessage());
+                            writeFailed = true;
+                            break;
+                        }
+                        mSegment.setCompleteSize(mSegment.getCompleteSize() + length);
+                        onProgressUpdated(mDownloadInfo.getCompleteSize(), 0);
+                        syncProgress(false);
+                    }
+                    if (writeFailed || mSegment.isCompleted() || DOWNLOADING != mState) {
+                        break;
+                    }
+                } catch (IOException e) {
+                    XLog.e(CLASS_NAME, e.getMessage());
+                    if (retry > 0) {
+                        // 网络异常,睡1秒超时再连接
+                        try {
+                            Thread.sleep(RETRY_INTERVAL);
+                        } catch (InterruptedException ex) {
+                            XLog.e(CLASS_NAME, "sleep be interrupted", ex);
                         }
-                    }while ((DOWNLOADING == mState) && (0 < retry--));
+                    }
+                } finally {
+                    try {
+                        if (null != is) {
+                            is.close();
+                        }
+                    } catch (IOException e) {
+                        XLog.e(CLASS_NAME, e.getMessage());
+                    }
+                    if (null != connection) {
+                        // new URL可能报异常，这种情况下connection为null
+                        connection.disconnect();
+                    }
                 }
-            }).start();
+            } while ((DOWNLOADING == mState) && (0 < retry--));
+            onSegmentFinished(writeFailed
+                    || (!mSegment.isCompleted() && DOWNLOADING == mState));
+        }
+
+        /**
+         * 使用位置写入将数据写到临时文件，多个分段可以同时写入
+         */
+        private void write(byte[] buffer, int length, long position)
+                throws IOException {
+            ByteBuffer data = ByteBuffer.wrap(buffer, 0, length);
+            while (data.hasRemaining()) {
+                position += mTempChannel.write(data, position);
+            }
         }
     }
 
@@ -294,6 +553,13 @@ public class XFileDownloader implements XIFileTransferListener, XIFileTransfer {
     @Override
     public void onError(int errorCode) {
         setState(INIT);
+        sendError(mCallbackCtx, errorCode);
+    }
+
+    /**
+     * 向js回调下载失败
+     */
+    private void sendError(XCallbackContext callbackCtx, int errorCode) {
         String fullPath = null;
         String workspace = mApp.getWorkSpace();
         if(mLocalFilePath.equals(workspace)) {
@@ -311,20 +577,22 @@ public class XFileDownloader implements XIFileTransferListener, XIFileTransfer {
             XLog.e(CLASS_NAME, e.getMessage());
         }
 
-        mCallbackCtx.error(error);
+        callbackCtx.error(error);
     }
 
     @Override
-    public void onProgressUpdated(int completeSize, long totalSize) {
-        mDownloadInfo.setCompleteSize(completeSize);
-        JSONObject jsonObj = new JSONObject();
+    public synchronized void onProgressUpdated(int completeSize, long totalSize) {
+        if (!mProgressThrottle.shouldNotify(completeSize, mDownloadInfo.getTotalSize())) {
+            return;
+        }
         try {
-            jsonObj.put("loaded", completeSize);
-            jsonObj.put("total", mDownloadInfo.getTotalSize());
+            mProgress.put("loaded", completeSize);
+            mProgress.put("total", mDownloadInfo.getTotalSize());
         } catch (JSONException e) {
             XLog.e(CLASS_NAME, e.getMessage());
         }
-        XExtensionResult result = new XExtensionResult(XExtensionResult.Status.PROGRESS_CHANGING, jsonObj);
+        // 进度数据在构造结果时已经编码，可以复用
+        XExtensionResult result = new XExtensionResult(XExtensionResult.Status.PROGRESS_CHANGING, mProgress);
         result.setKeepCallback(true);
         mCallbackCtx.sendExtensionResult(result);
     }
@@ -24,9 +24,13 @@ package com.polyvi.xface.extension.advancedfiletransfer;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
 
 import com.polyvi.xface.plugin.api.XIWebContext;
 import com.polyvi.xface.util.XLog;
@@ -43,6 +47,9 @@ public class XFileTransferRecorder {
     private static final String CONFIG_FILE_TAG_TOTAL_SIZE = "totalSize";
     private static final String CONFIG_FILE_TAG_COMPLETE_SIZE = "completeSize";
     private static final String CONFIG_FILE_TAG_SOURCE_ID = "sourceid";
+    private static final String CONFIG_FILE_TAG_SEGMENT = "segment";
+    private static final String CONFIG_FILE_TAG_START = "start";
+    private static final String CONFIG_FILE_TAG_END = "end";
 
     /** 配置文件xml内容对应的Document对象 */
     private Document mDocument;
@@ -92,6 +99,7 @@ public class XFileTransferRecorder {
             downloadElement.setAttribute(CONFIG_FILE_TAG_ID, info.getUrl());
             downloadElement.setAttribute(CONFIG_FILE_TAG_COMPLETE_SIZE, String.valueOf(info.getCompleteSize()));
             downloadElement.setAttribute(CONFIG_FILE_TAG_TOTAL_SIZE, String.valueOf(info.getTotalSize()));
+            writeSegments(downloadElement, info);
 
             XXmlUtils.saveDocToFile(mDocument, mConfigPath,false);
         }
@@ -106,9 +114,16 @@ public class XFileTransferRecorder {
         if(null != mDocument) {
             Element downloadElement = mDocument.getElementById(url);
             if (downloadElement != null) {
-                info = new XFileDownloadInfo(Integer.parseInt(downloadElement
-                        .getAttribute(CONFIG_FILE_TAG_TOTAL_SIZE)), Integer.parseInt(downloadElement
-                        .getAttribute(CONFIG_FILE_TAG_COMPLETE_SIZE)), url);
+                int totalSize = Integer.parseInt(downloadElement
+                        .getAttribute(CONFIG_FILE_TAG_TOTAL_SIZE));
+                List<XFileDownloadInfo.Segment> segments = readSegments(downloadElement);
+                if (segments.isEmpty()) {
+                    // 没有分段记录的旧数据，整个文件作为一个分段
+                    info = new XFileDownloadInfo(totalSize, Integer.parseInt(downloadElement
+                            .getAttribute(CONFIG_FILE_TAG_COMPLETE_SIZE)), url);
+                } else {
+                    info = new XFileDownloadInfo(totalSize, url, segments);
+                }
             }
         }
         return info;
@@ -128,6 +143,58 @@ public class XFileTransferRecorder {
         }
     }
 
+    /**
+     * 更新配置文件中的下载信息，包括每个分段已下载的大小
+     */
+    public synchronized void updateDownloadInfo(XFileDownloadInfo info) {
+        if(null != mDocument) {
+            Element downloadElement = mDocument.getElementById(info.getUrl());
+            if (downloadElement != null) {
+                downloadElement.setAttribute(CONFIG_FILE_TAG_COMPLETE_SIZE,
+                        String.valueOf(info.getCompleteSize()));
+                writeSegments(downloadElement, info);
+            }
+            XXmlUtils.saveDocToFile(mDocument, mConfigPath,false);
+        }
+    }
+
+    /**
+     * 将下载信息的分段写入download元素，替换原有的分段
+     */
+    private void writeSegments(Element downloadElement, XFileDownloadInfo info) {
+        NodeList nodes = downloadElement.getElementsByTagName(CONFIG_FILE_TAG_SEGMENT);
+        for (int i = nodes.getLength() - 1; i >= 0; i--) {
+            downloadElement.removeChild(nodes.item(i));
+        }
+        for (XFileDownloadInfo.Segment segment : info.getSegments()) {
+            Element segmentElement = mDocument.createElement(CONFIG_FILE_TAG_SEGMENT);
+            segmentElement.setAttribute(CONFIG_FILE_TAG_START, String.valueOf(segment.getStart()));
+            segmentElement.setAttribute(CONFIG_FILE_TAG_END, String.valueOf(segment.getEnd()));
+            segmentElement.setAttribute(CONFIG_FILE_TAG_COMPLETE_SIZE,
+                    String.valueOf(segment.getCompleteSize()));
+            downloadElement.appendChild(segmentElement);
+        }
+    }
+
+    /**
+     * 从download元素中读取分段记录
+     */
+    private List<XFileDownloadInfo.Segment> readSegments(Element downloadElement) {
+        List<XFileDownloadInfo.Segment> segments = new ArrayList<XFileDownloadInfo.Segment>();
+        NodeList nodes = downloadElement.getElementsByTagName(CONFIG_FILE_TAG_SEGMENT);
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Node node = nodes.item(i);
+            if (node instanceof Element) {
+                Element segmentElement = (Element) node;
+                segments.add(new XFileDownloadInfo.Segment(
+                        Integer.parseInt(segmentElement.getAttribute(CONFIG_FILE_TAG_START)),
+                        Integer.parseInt(segmentElement.getAttribute(CONFIG_FILE_TAG_END)),
+                        Integer.parseInt(segmentElement.getAttribute(CONFIG_FILE_TAG_COMPLETE_SIZE))));
+            }
+        }
+        return segments;
+    }
+
     /**
      * 下载完成后删除配置文件中的数据
      */
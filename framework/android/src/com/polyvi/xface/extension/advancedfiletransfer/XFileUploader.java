@@ -39,6 +39,7 @@ import com.polyvi.xface.extension.XCallbackContext;
 import com.polyvi.xface.extension.XExtensionContext;
 import com.polyvi.xface.extension.XExtensionResult;
 import com.polyvi.xface.extension.XExtensionResult.Status;
+import com.polyvi.xface.extension.XProgressThrottle;
 import com.polyvi.xface.plugin.api.XIWebContext;
 import com.polyvi.xface.util.XLog;
 import com.polyvi.xface.util.XPathResolver;
@@ -126,6 +127,12 @@ public class XFileUploader implements XIFileTransfer, XIFileTransferListener {
     /** 上传管理器 */
     private XFileTransferManager mFileTransferManager;
 
+    /** 进度事件的节流器 */
+    private final XProgressThrottle mProgressThrottle = new XProgressThrottle();
+
+    /** 复用的进度数据 */
+    private final JSONObject mProgress = new JSONObject();
+
     public XFileUploader(String filePath, String server,
             XExtensionContext extensionContext, XIWebContext webContext,
             XFileTransferRecorder recorder, XFileTransferManager manager) {
@@ -171,16 +178,19 @@ public class XFileUploader implements XIFileTransfer, XIFileTransferListener {
     // TODO:下面代码以后会调整
     @Override
     public void onProgressUpdated(int completeSize, long totalSize) {
-        JSONObject jsonObj = new JSONObject();
+        if (!mProgressThrottle.shouldNotify(completeSize, totalSize)) {
+            return;
+        }
         Status status = Status.PROGRESS_CHANGING;
         try {
-            jsonObj.put("loaded", completeSize);
-            jsonObj.put("total", totalSize);
+            mProgress.put("loaded", completeSize);
+            mProgress.put("total", totalSize);
         } catch (JSONException e) {
             status = Status.JSON_EXCEPTION;
             XLog.e(CLASS_NAME, e.getMessage());
         }
-        XExtensionResult result = new XExtensionResult(status, jsonObj);
+        // 进度数据在构造结果时已经编码，可以复用
+        XExtensionResult result = new XExtensionResult(status, mProgress);
         result.setKeepCallback(true);
         mCallbackCtx.sendExtensionResult(result);
     }
@@ -527,6 +537,7 @@ public class XFileUploader implements XIFileTransfer, XIFileTransferListener {
 		}
 		mCallbackCtx = callbackCtx;
 		setState(UPLOADING);
+		mProgressThrottle.reset();
 		new Thread(new Runnable() {
 			@Override
 			public void run() {
@@ -124,6 +124,20 @@ public interface XFile {
     public abstract byte[] readAsBinary(String appWorkSpace, String filePath,int start,int ends)
             throws FileNotFoundException, IOException, XInvalidModificationException;
 
+    /**
+     * 分块读取文件的二进制数据，每读取一块回调一次监听器，不会把整个文件读入内存
+     * @param appWorkSpace  当前应用工作目录
+     * @param filePath      要读取的文件的路径
+     * @param start         slice块的起始位置
+     * @param end           slice块的结束位置
+     * @param chunkSize     每一块的字节数
+     * @param listener      接收每一块数据的监听器
+     * @throws FileNotFoundException,IOException,XInvalidModificationException
+     */
+    public abstract void readInChunks(String appWorkSpace, String filePath, int start, int end,
+            int chunkSize, XFileChunkListener listener)
+            throws FileNotFoundException, IOException, XInvalidModificationException;
+
     /**
      * 获取指定文件夹中的文件流对象数组
      * @param appWorkSpace 当前应用工作目录
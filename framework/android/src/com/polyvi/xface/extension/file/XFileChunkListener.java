@@ -0,0 +1,44 @@
+/*
+ Copyright 2012-2013, Polyvi Inc. (http://polyvi.github.io/openxface)
+ This program is distributed under the terms of the GNU General Public License.
+
+ This file is part of xFace.
+
+ xFace is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ xFace is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with xFace.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.polyvi.xface.extension.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 分块读取文件时，接收每一块数据的监听器
+ */
+public interface XFileChunkListener {
+
+    /**
+     * 读取到一块数据
+     *
+     * @param chunk
+     *            读取到的数据，位于position和limit之间，回调返回后缓冲区会被复用
+     * @param loaded
+     *            包括本块在内已经读取的字节数
+     * @param total
+     *            需要读取的总字节数
+     * @throws IOException
+     *             抛出异常时停止读取
+     */
+    void onChunk(ByteBuffer chunk, long loaded, long total) throws IOException;
+}
@@ -0,0 +1,245 @@
+/*
+ Copyright 2012-2013, Polyvi Inc. (http://polyvi.github.io/openxface)
+ This program is distributed under the terms of the GNU General Public License.
+
+ This file is part of xFace.
+
+ xFace is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ xFace is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with xFace.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.polyvi.xface.extension.file;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.polyvi.xface.extension.XCallbackContext;
+import com.polyvi.xface.extension.XExtensionResult;
+
+/**
+ * 将分块读取的文件数据发送给js
+ * 第一块数据之前发送{loaded:0,total:n}，之后每一块以PROGRESS_CHANGING结果发送：
+ * 文本为{data:"...",loaded:n,total:n}，二进制数据直接以ArrayBuffer发送；
+ * 全部读取完成后发送OK结果{loaded:n,total:n}
+ * 文本按照指定编码解码，块边界处不完整的多字节字符留到下一块解码
+ * 设置了读取id时，js每处理完一块需要确认一次，未确认的块达到WINDOW_SIZE时读取线程等待，
+ * 避免js处理不过来时数据块堆积在native到js的消息队列中
+ */
+class XFileChunkSender implements XFileChunkListener {
+
+    private static final String TAG_DATA = "data";
+    private static final String TAG_LOADED = "loaded";
+    private static final String TAG_TOTAL = "total";
+
+    /** 最多允许未确认的块数 */
+    private static final int WINDOW_SIZE = 4;
+
+    /** 等待js确认的超时时间（毫秒），超时认为js已不再接收数据 */
+    private static final long ACK_TIMEOUT = 30 * 1000;
+
+    private final XCallbackContext mCallbackCtx;
+
+    /** 文本的解码器，为null表示发送二进制数据 */
+    private final CharsetDecoder mDecoder;
+
+    /** 上一块末尾没有解码的字节 */
+    private ByteBuffer mPending;
+
+    private long mLoaded;
+    private long mTotal;
+    private boolean mStarted;
+
+    /** 是否需要js确认，为false时不限制未确认的块数 */
+    private final boolean mAcked;
+
+    /** 已发送但js未确认的块数 */
+    private int mInFlight;
+
+    /** js是否已中止读取 */
+    private boolean mCancelled;
+
+    /**
+     * @param callbackCtx
+     *            回调上下文环境
+     * @param encoding
+     *            文本的编码，为null时发送二进制数据
+     * @param acked
+     *            js是否会通过{@link #ack()}确认收到的每一块
+     * @throws UnsupportedEncodingException
+     *             不支持指定的编码时抛出
+     */
+    XFileChunkSender(XCallbackContext callbackCtx, String encoding,
+            boolean acked) throws UnsupportedEncodingException {
+        mCallbackCtx = callbackCtx;
+        mAcked = acked;
+        if (null == encoding) {
+            mDecoder = null;
+            return;
+        }
+        try {
+            mDecoder = Charset.forName(encoding).newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        } catch (IllegalArgumentException e) {
+            throw new UnsupportedEncodingException(encoding);
+        }
+    }
+
+    @Override
+    public void onChunk(ByteBuffer chunk, long loaded, long total)
+            throws IOException {
+        mLoaded = loaded;
+        mTotal = total;
+        try {
+            if (!mStarted) {
+                mStarted = true;
+                sendProgress(progress(0));
+            }
+            waitForWindow();
+            if (null == mDecoder) {
+                byte[] data = new byte[chunk.remaining()];
+                chunk.get(data);
+                sendChunk(new XExtensionResult(
+                        XExtensionResult.Status.PROGRESS_CHANGING, data));
+                return;
+            }
+            ByteBuffer in = chunk;
+            if (null != mPending) {
+                in = ByteBuffer.allocate(mPending.remaining() + chunk.remaining());
+                in.put(mPending).put(chunk);
+                in.flip();
+                mPending = null;
+            }
+            String text = decode(in, false);
+            if (in.hasRemaining()) {
+                // chunk在回调返回后会被复用，需要复制
+                mPending = ByteBuffer.allocate(in.remaining());
+                mPending.put(in);
+                mPending.flip();
+            }
+            JSONObject obj = progress(loaded);
+            obj.put(TAG_DATA, text);
+            sendChunk(new XExtensionResult(
+                    XExtensionResult.Status.PROGRESS_CHANGING, obj));
+        } catch (JSONException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * js处理完一块数据
+     */
+    synchronized void ack() {
+        if (mInFlight > 0) {
+            mInFlight--;
+        }
+        notifyAll();
+    }
+
+    /**
+     * js中止了读取，读取线程在发送下一块之前结束
+     */
+    synchronized void cancel() {
+        mCancelled = true;
+        notifyAll();
+    }
+
+    /**
+     * 未确认的块数达到WINDOW_SIZE时等待js确认
+     *
+     * @throws IOException
+     *             js中止了读取、等待超时或者线程被中断时抛出
+     */
+    private synchronized void waitForWindow() throws IOException {
+        long deadline = System.currentTimeMillis() + ACK_TIMEOUT;
+        while (!mCancelled && mAcked && mInFlight >= WINDOW_SIZE) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new IOException("chunk ack timeout");
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("chunk read interrupted");
+            }
+        }
+        if (mCancelled) {
+            throw new IOException("chunk read cancelled");
+        }
+    }
+
+    private void sendChunk(XExtensionResult result) {
+        if (mAcked) {
+            synchronized (this) {
+                mInFlight++;
+            }
+        }
+        sendProgress(result);
+    }
+
+    /**
+     * 全部数据读取完成，发送剩余的文本和最终的结果
+     */
+    void finish() throws JSONException {
+        if (null != mDecoder) {
+            ByteBuffer in = null == mPending ? ByteBuffer.allocate(0)
+                    : mPending;
+            mPending = null;
+            String text = decode(in, true);
+            if (text.length() > 0) {
+                JSONObject obj = progress(mLoaded);
+                obj.put(TAG_DATA, text);
+                sendChunk(new XExtensionResult(
+                        XExtensionResult.Status.PROGRESS_CHANGING, obj));
+            }
+        }
+        mCallbackCtx.success(progress(mLoaded));
+    }
+
+    private String decode(ByteBuffer in, boolean endOfInput) {
+        CharBuffer out = CharBuffer.allocate((int) (in.remaining() * mDecoder
+                .maxCharsPerByte()) + 1);
+        mDecoder.decode(in, out, endOfInput);
+        if (endOfInput) {
+            mDecoder.flush(out);
+        }
+        out.flip();
+        return out.toString();
+    }
+
+    private JSONObject progress(long loaded) throws JSONException {
+        JSONObject obj = new JSONObject();
+        obj.put(TAG_LOADED, loaded);
+        obj.put(TAG_TOTAL, mTotal);
+        return obj;
+    }
+
+    private void sendProgress(JSONObject obj) {
+        sendProgress(new XExtensionResult(
+                XExtensionResult.Status.PROGRESS_CHANGING, obj));
+    }
+
+    private void sendProgress(XExtensionResult result) {
+        result.setKeepCallback(true);
+        mCallbackCtx.sendExtensionResult(result);
+    }
+}
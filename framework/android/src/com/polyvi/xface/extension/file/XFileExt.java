@@ -26,6 +26,8 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -70,6 +72,7 @@ public class XFileExt extends XExtension {
     private static final String COMMAND_READENTRIES = "readEntries";
     private static final String COMMAND_RESOLVELOCALFILESYSTEMURI = "resolveLocalFileSystemURI";
     private static final String COMMAND_GETMETADATA = "getMetadata";
+    private static final String COMMAND_ACK_CHUNK = "ackChunk";
 
     private static final int NOT_FOUND_ERR = 1;
     private static final int SECURITY_ERR = 2;
@@ -90,6 +93,9 @@ public class XFileExt extends XExtension {
 
     private XFile mFile;
 
+    /** 正在分块读取的文件，key为js传入的读取id */
+    private final Map<String, XFileChunkSender> mChunkReads = new ConcurrentHashMap<String, XFileChunkSender>();
+
     @Override
     public void init(XExtensionContext extensionContext, XIWebContext webContext) {
         super.init(extensionContext, webContext);
@@ -105,107 +111,202 @@ public class XFileExt extends XExtension {
     public void sendAsyncResult(String result) {
     }
 
+    /**
+     * 只有读写文件内容以及复制、移动、递归删除等耗时的行为受并发数限制，
+     * 获取文件、目录和元数据等行为不排在这些行为之后
+     */
+    @Override
+    public boolean isLaneLimited(String action) {
+        return COMMAND_WRITE.equals(action) || COMMAND_TRUNCATE.equals(action)
+                || COMMAND_COPYTO.equals(action)
+                || COMMAND_MOVETO.equals(action)
+                || COMMAND_REMOVERECURSIVELY.equals(action)
+                || COMMAND_READ_AS_TEXT.equals(action)
+                || COMMAND_READ_AS_DATA_URL.equals(action)
+                || COMMAND_READ_AS_ARRAY_BUFFER.equals(action)
+                || COMMAND_READ_AS_BINARY_STRING.equals(action);
+    }
+
     @Override
     public boolean isAsync(String action) {
-        return true;
+        // ackChunk只唤醒等待确认的读取线程，同步执行，不排在其他文件操作之后
+        return !COMMAND_ACK_CHUNK.equals(action);
     }
 
     @Override
-    public XExtensionResult exec(String action, JSONArray args,
-            XCallbackContext callbackCtx) throws JSONException{
-        XExtensionResult.Status status = XExtensionResult.Status.OK;
-        String appWorkSpace = mWebContext.getWorkSpace();
-        String result = "";
-        int errorType = 0;
-        try{
-            if(action.equals(COMMAND_WRITE)) {
-                long size = write(appWorkSpace, args.getString(0), args.getString(1), args.getInt(2));
-                return new XExtensionResult(status, size);
+    protected void registerActions() {
+        registerAction(COMMAND_WRITE, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws Exception {
+                long size = write(mWebContext.getWorkSpace(), args.getString(0), args.getString(1), args.getInt(2));
+                return new XExtensionResult(XExtensionResult.Status.OK, size);
             }
-            else if(action.equals(COMMAND_TRUNCATE)) {
-                long size = truncateFile(appWorkSpace, args.getString(0), args.getLong(1));
-                return new XExtensionResult(status, size);
+        });
+        registerAction(COMMAND_TRUNCATE, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws Exception {
+                long size = truncateFile(mWebContext.getWorkSpace(), args.getString(0), args.getLong(1));
+                return new XExtensionResult(XExtensionResult.Status.OK, size);
             }
-            else if (action.equals(COMMAND_GETFILE)) {
-                JSONObject obj = getFile(appWorkSpace, args.getString(0), args.getString(1), args.optJSONObject(2), false);
-                return new XExtensionResult(status, obj);
+        });
+        registerAction(COMMAND_GETFILE, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws Exception {
+                JSONObject obj = getFile(mWebContext.getWorkSpace(), args.getString(0), args.getString(1), args.optJSONObject(2), false);
+                return new XExtensionResult(XExtensionResult.Status.OK, obj);
             }
-            else if(action.equals(COMMAND_GETFILEMETADATA)) {
-                JSONObject obj = getFileMetadata(appWorkSpace, args.getString(0));
-                return new XExtensionResult(status, obj);
+        });
+        registerAction(COMMAND_GETFILEMETADATA, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws Exception {
+                JSONObject obj = getFileMetadata(mWebContext.getWorkSpace(), args.getString(0));
+                return new XExtensionResult(XExtensionResult.Status.OK, obj);
             }
-            else if(action.equals(COMMAND_COPYTO)) {
-                JSONObject obj = transferTo(appWorkSpace, args.getString(0), args.getString(1), args.optString(2), false);
-                return new XExtensionResult(status, obj);
+        });
+        registerAction(COMMAND_COPYTO, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws Exception {
+                JSONObject obj = transferTo(mWebContext.getWorkSpace(), args.getString(0), args.getString(1), args.optString(2), false);
+                return new XExtensionResult(XExtensionResult.Status.OK, obj);
             }
-            else if(action.equals(COMMAND_MOVETO)) {
-                JSONObject obj = transferTo(appWorkSpace, args.getString(0), args.getString(1), args.optString(2), true);
-                return new XExtensionResult(status, obj);
+        });
+        registerAction(COMMAND_MOVETO, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws Exception {
+                JSONObject obj = transferTo(mWebContext.getWorkSpace(), args.getString(0), args.getString(1), args.optString(2), true);
+                return new XExtensionResult(XExtensionResult.Status.OK, obj);
             }
-            else if(action.equals(COMMAND_REMOVE)) {
-                boolean success = remove(appWorkSpace, args.getString(0));
-                return new XExtensionResult(status, success);
+        });
+        registerAction(COMMAND_REMOVE, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws Exception {
+                boolean success = remove(mWebContext.getWorkSpace(), args.getString(0));
+                return new XExtensionResult(XExtensionResult.Status.OK, success);
             }
-            else if(action.equals(COMMAND_REQUESTFILESYSTEM)) {
-                long size = args.optLong(1);
-                //TODO:当请求的size不为0时我们需要判断该size是否超出了SD卡或者内存的大小，
+        });
+        registerAction(COMMAND_REQUESTFILESYSTEM, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws Exception {
+                //TODO:当请求的size(args[1])不为0时我们需要判断该size是否超出了SD卡或者内存的大小，
                 //如果超出要抛出QUOTA_EXCEEDED_ERR异常
-                JSONObject obj = requestFileSystem(appWorkSpace, args.getInt(0));
-                return new XExtensionResult(status, obj);
+                JSONObject obj = requestFileSystem(mWebContext.getWorkSpace(), args.getInt(0));
+                return new XExtensionResult(XExtensionResult.Status.OK, obj);
             }
-            else if(action.equals(COMMAND_GETDIRECTORY)) {
-                JSONObject obj = getFile(appWorkSpace, args.getString(0), args.getString(1), args.optJSONObject(2), true);
-                return new XExtensionResult(status, obj);
+        });
+        registerAction(COMMAND_GETDIRECTORY, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws Exception {
+                JSONObject obj = getFile(mWebContext.getWorkSpace(), args.getString(0), args.getString(1), args.optJSONObject(2), true);
+                return new XExtensionResult(XExtensionResult.Status.OK, obj);
             }
-            else if(action.equals(COMMAND_GETPARENT)) {
-                JSONObject obj = getParent(appWorkSpace, args.getString(0));
-                return new XExtensionResult(status, obj);
+        });
+        registerAction(COMMAND_GETPARENT, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws Exception {
+                JSONObject obj = getParent(mWebContext.getWorkSpace(), args.getString(0));
+                return new XExtensionResult(XExtensionResult.Status.OK, obj);
             }
-            else if(action.equals(COMMAND_REMOVERECURSIVELY)) {
-                boolean success = removeRecursively(appWorkSpace, args.getString(0));
+        });
+        registerAction(COMMAND_REMOVERECURSIVELY, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws Exception {
+                boolean success = removeRecursively(mWebContext.getWorkSpace(), args.getString(0));
                 if(success) {
-                    return new XExtensionResult(status);
+                    return new XExtensionResult(XExtensionResult.Status.OK);
                 } else {
                     return new XExtensionResult(XExtensionResult.Status.ERROR, NO_MODIFICATION_ALLOWED_ERR);
                 }
             }
-            else if(action.equals(COMMAND_READ_AS_TEXT)) {
-                String filePath = args.getString(0);
-                String encoding = args.getString(1);
-                int start= args.getInt(2);
-                int end = args.getInt(3);
-                readFileAs(appWorkSpace,filePath, encoding ,start,end, callbackCtx, XExtensionResult.MESSAGE_TYPE_STRING);
+        });
+        registerAction(COMMAND_READ_AS_TEXT, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws Exception {
+                return readFileAs(args, args.getString(1), callbackCtx, XExtensionResult.MESSAGE_TYPE_STRING, args.optInt(4));
             }
-            else if(action.equals(COMMAND_READ_AS_DATA_URL)) {
-                String filePath = args.getString(0);
-                int start= args.getInt(2);
-                int end = args.getInt(3);
-                readFileAs(appWorkSpace,filePath, null , start,end, callbackCtx, -1);
+        });
+        registerAction(COMMAND_READ_AS_DATA_URL, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws Exception {
+                return readFileAs(args, null, callbackCtx, -1, 0);
             }
-            else if(action.equals(COMMAND_READ_AS_ARRAY_BUFFER)) {
-                String filePath = args.getString(0);
-                int start= args.getInt(2);
-                int end = args.getInt(3);
-                readFileAs(appWorkSpace,filePath, null , start,end, callbackCtx, XExtensionResult.MESSAGE_TYPE_ARRAYBUFFER);
+        });
+        registerAction(COMMAND_READ_AS_ARRAY_BUFFER, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws Exception {
+                return readFileAs(args, null, callbackCtx, XExtensionResult.MESSAGE_TYPE_ARRAYBUFFER, args.optInt(4));
             }
-            else if(action.equals(COMMAND_READ_AS_BINARY_STRING)) {
-                String filePath = args.getString(0);
-                int start= args.getInt(2);
-                int end = args.getInt(3);
-                readFileAs(appWorkSpace,filePath, null ,  start,end, callbackCtx,XExtensionResult.MESSAGE_TYPE_BINARYSTRING);
+        });
+        registerAction(COMMAND_READ_AS_BINARY_STRING, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws Exception {
+                return readFileAs(args, null, callbackCtx, XExtensionResult.MESSAGE_TYPE_BINARYSTRING, 0);
             }
-            else if(action.equals(COMMAND_READENTRIES)) {
-                JSONArray array = readEntries(appWorkSpace, args.getString(0));
-                return new XExtensionResult(status, array);
+        });
+        registerAction(COMMAND_READENTRIES, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws Exception {
+                JSONArray array = readEntries(mWebContext.getWorkSpace(), args.getString(0));
+                return new XExtensionResult(XExtensionResult.Status.OK, array);
             }
-            else if(action.equals(COMMAND_RESOLVELOCALFILESYSTEMURI)) {
-                JSONObject obj = resolveLocalFileSystemURI(appWorkSpace, args.getString(0));
-                return new XExtensionResult(status, obj);
+        });
+        registerAction(COMMAND_RESOLVELOCALFILESYSTEMURI, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws Exception {
+                JSONObject obj = resolveLocalFileSystemURI(mWebContext.getWorkSpace(), args.getString(0));
+                return new XExtensionResult(XExtensionResult.Status.OK, obj);
             }
-            else if(action.equals(COMMAND_GETMETADATA)) {
-                return new XExtensionResult(status, getMetadata(appWorkSpace, args.getString(0)));
+        });
+        registerAction(COMMAND_GETMETADATA, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws Exception {
+                return new XExtensionResult(XExtensionResult.Status.OK, getMetadata(mWebContext.getWorkSpace(), args.getString(0)));
             }
-            return new XExtensionResult(status, result);
+        });
+        registerAction(COMMAND_ACK_CHUNK, new XActionHandler() {
+            @Override
+            public XExtensionResult handle(JSONArray args,
+                    XCallbackContext callbackCtx) throws Exception {
+                XFileChunkSender sender = mChunkReads.get(args.getString(0));
+                if (null != sender) {
+                    if (args.optBoolean(1)) {
+                        sender.cancel();
+                    } else {
+                        sender.ack();
+                    }
+                }
+                return new XExtensionResult(XExtensionResult.Status.OK);
+            }
+        });
+    }
+
+    @Override
+    public XExtensionResult exec(String action, JSONArray args,
+            XCallbackContext callbackCtx) throws JSONException{
+        XActionHandler handler = getActionHandler(action);
+        if (null == handler) {
+            return new XExtensionResult(XExtensionResult.Status.OK, "");
+        }
+        int errorType = 0;
+        try{
+            return handler.handle(args, callbackCtx);
             }catch (FileNotFoundException e) {
                 errorType = NOT_FOUND_ERR;
             }catch (MalformedURLException e) {
@@ -228,6 +329,29 @@ public class XFileExt extends XExtension {
             return new XExtensionResult(XExtensionResult.Status.ERROR, errorType);
     }
 
+    /**
+     * 读取文件内容的各个行为共用的参数解析，参数依次为文件路径、编码、起始位置、结束位置、分块大小、分块读取的id
+     *
+     * @param args          行为的参数
+     * @param encoding      返回的Sting数据编码，仅readAsText使用
+     * @param callbackCtx   回调函数
+     * @param resultType    返回的数据类型
+     * @param chunkSize     分块读取时每一块的字节数，0表示一次读取整个文件块
+     * @return              结果已通过callbackCtx返回，这里返回空的结果
+     */
+    private XExtensionResult readFileAs(JSONArray args, String encoding,
+            XCallbackContext callbackCtx, int resultType, int chunkSize) throws JSONException {
+        String filePath = args.getString(0);
+        int start = args.getInt(2);
+        int end = args.getInt(3);
+        if (chunkSize > 0) {
+            readFileInChunks(mWebContext.getWorkSpace(), filePath, encoding, start, end, chunkSize, args.optString(5), callbackCtx);
+        } else {
+            readFileAs(mWebContext.getWorkSpace(), filePath, encoding, start, end, callbackCtx, resultType);
+        }
+        return new XExtensionResult(XExtensionResult.Status.OK, "");
+    }
+
     /**
      * 创建或者查找一个文件（夹）.
      * 接口使用方式DirectoryEntry.getFile(fileName, {create: true, exclusive: false}, win, fail);
@@ -443,6 +567,47 @@ public class XFileExt extends XExtension {
         callbackContext.error(errorType);
     }
 
+    /**
+     * 分块读取文件内容，每读取一块就以PROGRESS_CHANGING结果回调给js，全部读取完成后回调OK结果，
+     * 整个文件不会同时保存在内存中
+     *
+     * @param appWorkSpace      当前应用工作目录
+     * @param filePath          要读取的文件的路径
+     * @param encoding          文本的编码，为null时以ArrayBuffer的形式返回每一块数据
+     * @param start             slice块的起始位置
+     * @param end               slice块的结束位置
+     * @param chunkSize         每一块的字节数
+     * @param readId            读取id，js通过ackChunk确认每一块，为空时不等待确认
+     * @param callbackContext   回调函数
+     */
+    private void readFileInChunks(String appWorkSpace, String filePath, String encoding,
+            int start, int end, int chunkSize, String readId, XCallbackContext callbackContext) {
+        int errorType = 0;
+        boolean acked = readId.length() > 0;
+        try {
+            XFileChunkSender sender = new XFileChunkSender(callbackContext, encoding, acked);
+            if (acked) {
+                mChunkReads.put(readId, sender);
+            }
+            mFile.readInChunks(appWorkSpace, filePath, start, end, chunkSize, sender);
+            sender.finish();
+            return;
+        } catch (FileNotFoundException e) {
+            errorType = NOT_FOUND_ERR;
+        } catch (IOException e) {
+            errorType = INVALID_MODIFICATION_ERR;
+        } catch (XInvalidModificationException e) {
+            errorType = INVALID_MODIFICATION_ERR;
+        } catch (Exception e) {
+            errorType = TYPE_MISMATCH_ERR;
+        } finally {
+            if (acked) {
+                mChunkReads.remove(readId);
+            }
+        }
+        callbackContext.error(errorType);
+    }
+
     /**
      * 获取指定文件夹中的所有文件实体
      * @param appWorkSpace 当前应用工作目录
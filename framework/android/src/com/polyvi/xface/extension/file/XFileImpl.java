@@ -22,16 +22,14 @@
 
 package com.polyvi.xface.extension.file;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URLDecoder;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
 import android.content.Context;
@@ -47,11 +45,10 @@ import com.polyvi.xface.util.XPathResolver;
 
 public class XFileImpl implements XFile {
 
-    private static final int DEFAULT_BUFFER_SIZE = 1024;
-    private static final int DEFAULT_READ_SIZE = 1000;
     private static final String ENCODING_TYPE = "UTF-8";
     private static final String FILE_SCHEME = "file";
 
+    private static final String IO_EXCEPTION_SLICE_TOO_LARGE = "file slice is too large to read at once";
     private static final String ENCODING_EXCEPTION_NAME_CONTAINS_COLON = "This file has a : in its name";
     private static final String FILE_EXISTS_EXCEPTION_CREATE_OR_EXCLUSIVE_FAILS = "create/exclusive fails";
     private static final String FILE_EXISTS_EXCEPTION_CREATE_FAILS = "create fails";
@@ -417,31 +414,90 @@ public class XFileImpl implements XFile {
     @Override
     public byte[] readAsBinary(String appWorkSpace, String filePath, int start, int end)
              throws FileNotFoundException, IOException, XInvalidModificationException{
+        File file = getFileToRead(appWorkSpace, filePath);
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            long fileLength = file.length();
+            long length = getFileSliceLength(start, end, fileLength);
+            if (length <= 0) {
+                return new byte[0];
+            }
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException(IO_EXCEPTION_SLICE_TOO_LARGE);
+            }
+            // 按照slice块的长度一次分配，直接从指定位置读入，不需要中间缓冲区和skip
+            byte[] content = new byte[(int) length];
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            long position = getAbosolutePosition(start, fileLength);
+            if (!readFully(inputStream.getChannel(), buffer, position)) {
+                // 读取过程中文件变短了，只返回实际读到的数据
+                byte[] ret = new byte[buffer.position()];
+                System.arraycopy(content, 0, ret, 0, ret.length);
+                return ret;
+            }
+            return content;
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    @Override
+    public void readInChunks(String appWorkSpace, String filePath, int start, int end,
+            int chunkSize, XFileChunkListener listener)
+            throws FileNotFoundException, IOException, XInvalidModificationException {
+        File file = getFileToRead(appWorkSpace, filePath);
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            FileChannel channel = inputStream.getChannel();
+            long fileLength = file.length();
+            long total = Math.max(getFileSliceLength(start, end, fileLength), 0);
+            long position = getAbosolutePosition(start, fileLength);
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(Math.min(chunkSize, total), 1));
+            long loaded = 0;
+            while (loaded < total) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), total - loaded));
+                boolean complete = readFully(channel, buffer, position + loaded);
+                buffer.flip();
+                loaded += buffer.remaining();
+                if (buffer.hasRemaining()) {
+                    listener.onChunk(buffer, loaded, total);
+                }
+                if (!complete) {
+                    break;
+                }
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * 检查要读取的文件是否在应用的工作目录中
+     */
+    private File getFileToRead(String appWorkSpace, String filePath)
+            throws IOException, XInvalidModificationException {
         File file = new File(appWorkSpace, filePath);
         if(!XFileUtils.isFileAncestorOf(appWorkSpace, file.getCanonicalPath())) {
             throw new XInvalidModificationException(INVALID_MODIFICATION_EXCEPTION_NOT_IN_ROOT_DIR);
         }
-        /**要读取的文件长度*/
-        long length = file.length();
-        byte[] bytes = new byte[DEFAULT_READ_SIZE];
-        InputStream inputStream = new FileInputStream(file.getAbsolutePath());
-        BufferedInputStream bis = new BufferedInputStream(inputStream, DEFAULT_BUFFER_SIZE);
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        length = getFileSliceLength(start, end, file.length());
-        int numRead = 0;
-        long abosoluteStart = getAbosolutePosition(start, file.length());
-        if (abosoluteStart > 0) {
-            bis.skip(abosoluteStart);
-        }
-        while (length > 0 && (numRead = bis.read(bytes, 0, (int)Math.min(DEFAULT_READ_SIZE, length))) >= 0) {
-            length -= numRead;
-            bos.write(bytes, 0, numRead);
-        }
-        byte[] content = bos.toByteArray();
-        inputStream.close();
-        bis.close();
-        bos.close();
-        return content;
+        return file;
+    }
+
+    /**
+     * 从指定位置开始读满缓冲区，使用位置读取，不改变通道的当前位置
+     * @return 读满返回true，到达文件结尾返回false
+     */
+    private boolean readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            int numRead = channel.read(buffer, position + buffer.position() - start);
+            if (numRead < 0) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
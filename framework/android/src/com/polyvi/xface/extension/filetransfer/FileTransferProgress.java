@@ -30,6 +30,7 @@ public class FileTransferProgress {
     private boolean lengthAvailable = false;  // 标示是否知道文件总大小
     private long loaded = 0;                  // 已经传输的字节
     private long total = 0;                   // 文件总字节数
+    private final JSONObject json = new JSONObject(); // 复用的进度数据，结果构造时已编码
 
     public boolean isLengthAvailable() {
         return lengthAvailable;
@@ -56,9 +57,9 @@ public class FileTransferProgress {
     }
 
     public JSONObject toJSONObject() throws JSONException {
-        return new JSONObject(
-                "{loaded:" + loaded +
-                ",total:" + total +
-                ",lengthAvailable:" + (lengthAvailable ? "true" : "false") + "}");
+        json.put("loaded", loaded);
+        json.put("total", total);
+        json.put("lengthAvailable", lengthAvailable);
+        return json;
     }
 }
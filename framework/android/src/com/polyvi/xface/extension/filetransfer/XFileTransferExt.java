@@ -61,6 +61,7 @@ import com.polyvi.xface.extension.XCallbackContext;
 import com.polyvi.xface.extension.XExtension;
 import com.polyvi.xface.extension.XExtensionContext;
 import com.polyvi.xface.extension.XExtensionResult;
+import com.polyvi.xface.extension.XProgressThrottle;
 import com.polyvi.xface.plugin.api.XIWebContext;
 import com.polyvi.xface.util.XConstant;
 import com.polyvi.xface.util.XFileUtils;
@@ -125,7 +126,8 @@ public class XFileTransferExt extends XExtension {
 
     @Override
     public boolean isAsync(String action) {
-        return true;
+        // abort只设置标记，同步执行，不排在受并发数限制的传输之后
+        return !COMMAND_ABORT.equals(action);
     }
 
     @Override
@@ -208,9 +210,12 @@ public class XFileTransferExt extends XExtension {
             long totalBytes = 0;
 
             FileTransferProgress progress = new FileTransferProgress();
-            if (connection.getContentEncoding() == null) {
+            XProgressThrottle throttle = new XProgressThrottle();
+            // 分块传输时没有Content-Length，总大小未知
+            int contentLength = connection.getContentLength();
+            if (connection.getContentEncoding() == null && contentLength > 0) {
                 progress.setLengthComputable(true);
-                progress.setTotal(connection.getContentLength());
+                progress.setTotal(contentLength);
             }
 
             FileOutputStream outputStream = new FileOutputStream(file);
@@ -220,9 +225,7 @@ public class XFileTransferExt extends XExtension {
                 if (objectId != null) {
                     //只有js层传送过来一个object ID我们才会更新进度回调
                     progress.setLoaded(totalBytes);
-                    XExtensionResult progressResult = new XExtensionResult(XExtensionResult.Status.OK, progress.toJSONObject());
-                    progressResult.setKeepCallback(true);
-                    callbackCtx.sendExtensionResult(progressResult);
+                    sendProgress(callbackCtx, progress, throttle);
                 }
                 synchronized (abortTriggered) {
                     if (objectId != null && abortTriggered.contains(objectId)) {
@@ -231,6 +234,15 @@ public class XFileTransferExt extends XExtension {
                     }
                 }
             }
+            if (objectId != null
+                    && (!progress.isLengthAvailable() || totalBytes != progress.getTotal())) {
+                // 总大小未知或者与实际大小不符时，节流器不会把最后一块当作完成，
+                // 最后的进度在传输结束后不经节流发送
+                progress.setLengthComputable(true);
+                progress.setLoaded(totalBytes);
+                progress.setTotal(totalBytes);
+                sendProgress(callbackCtx, progress, null);
+            }
             outputStream.close();
             inputStream.close();
             XLog.d(CLASS_NAME, "Saved file: " + target);
@@ -338,6 +350,7 @@ public class XFileTransferExt extends XExtension {
             dos.writeBytes(midParams);
             XFileUploadResult result = new XFileUploadResult();
             FileTransferProgress progress = new FileTransferProgress();
+            XProgressThrottle throttle = new XProgressThrottle();
             int bytesAvailable = fileInputStream.available();
             int bufferSize = Math.min(bytesAvailable, maxBufferSize);
             byte[] buffer = new byte[bufferSize];
@@ -356,9 +369,7 @@ public class XFileTransferExt extends XExtension {
                     XLog.d(CLASS_NAME, "total="+bytesAvailable);
                     progress.setLoaded(totalBytes);
                     progress.setLengthComputable(true);
-                    XExtensionResult progressResult = new XExtensionResult(XExtensionResult.Status.OK, progress.toJSONObject());
-                    progressResult.setKeepCallback(true);
-                    callbackCtx.sendExtensionResult(progressResult);
+                    sendProgress(callbackCtx, progress, throttle);
                 }
                 synchronized (abortTriggered) {
                     if (objectId != null && abortTriggered.contains(objectId)) {
@@ -655,6 +666,25 @@ public class XFileTransferExt extends XExtension {
         }
     }
 
+    /**
+     * 发送传输进度
+     * @param callbackCtx  回调上下文环境
+     * @param progress     当前的进度
+     * @param throttle     进度事件的节流器，为null时直接发送
+     */
+    private void sendProgress(XCallbackContext callbackCtx,
+            FileTransferProgress progress, XProgressThrottle throttle)
+            throws JSONException {
+        if (null != throttle
+                && !throttle.shouldNotify(progress.getLoaded(),
+                        progress.isLengthAvailable() ? progress.getTotal() : 0)) {
+            return;
+        }
+        XExtensionResult progressResult = new XExtensionResult(XExtensionResult.Status.OK, progress.toJSONObject());
+        progressResult.setKeepCallback(true);
+        callbackCtx.sendExtensionResult(progressResult);
+    }
+
     /**
      * 检查连接是否成功
      *
@@ -35,12 +35,16 @@ public class XAjaxRequestListener {
 
 	private static final int ON_ABORT = 0;
 	private static final int ON_ERROR = 1;
+	private static final int ON_PROGRESS = 2;
 	private static final String TAG_PROGRESS_EVENT_TYPE = "eventType";
 
 	private static final String TAG_READYSTATE = "readyState";
 	private static final String TAG_STATUS = "status";
 	private static final String TAG_RESPONSE_TEXT = "responseText";
 	private static final String TAG_HEADERS = "headers";
+	private static final String TAG_LOADED = "loaded";
+	private static final String TAG_TOTAL = "total";
+	private static final String TAG_RESPONSE_FILE = "responseFile";
 
 	private XCallbackContext mCallbackContext; // 回调上下文 执行js
 	private XIAjaxDataInterface mDataInterface;
@@ -77,6 +81,37 @@ public class XAjaxRequestListener {
 		sendSuccessJSMessage();
 	}
 
+	/**
+	 * 响应体接收进度 调用该回调函数 对应js onprogress事件
+	 */
+	public void onProgress() {
+		try {
+			JSONObject jsonObj = new JSONObject();
+			jsonObj.put(TAG_PROGRESS_EVENT_TYPE, ON_PROGRESS);
+			jsonObj.put(TAG_READYSTATE, mDataInterface.getReadyState());
+			jsonObj.put(TAG_LOADED, mDataInterface.getLoaded());
+			jsonObj.put(TAG_TOTAL, mDataInterface.getTotal());
+			XExtensionResult result = new XExtensionResult(
+					XExtensionResult.Status.OK, jsonObj);
+			result.setKeepCallback(true);
+			mCallbackContext.sendExtensionResult(result);
+		} catch (JSONException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * 二进制响应体接收完成 在DONE状态之前以ArrayBuffer发送给js
+	 *
+	 * @param data
+	 */
+	public void onBinaryResponse(byte[] data) {
+		XExtensionResult result = new XExtensionResult(
+				XExtensionResult.Status.OK, data);
+		result.setKeepCallback(true);
+		mCallbackContext.sendExtensionResult(result);
+	}
+
 	/**
 	 * ajax网络异常 调用该回调函数
 	 * 
@@ -134,6 +169,12 @@ public class XAjaxRequestListener {
 		jsonObj.put(TAG_RESPONSE_TEXT, mDataInterface.getResponseText());
 		jsonObj.put(TAG_READYSTATE, mDataInterface.getReadyState());
 		jsonObj.put(TAG_STATUS, mDataInterface.getStatus());
+		jsonObj.put(TAG_LOADED, mDataInterface.getLoaded());
+		jsonObj.put(TAG_TOTAL, mDataInterface.getTotal());
+		String responseFile = mDataInterface.getResponseFile();
+		if (null != responseFile) {
+			jsonObj.put(TAG_RESPONSE_FILE, responseFile);
+		}
 		return jsonObj;
 	}
 
@@ -54,4 +54,22 @@ public interface XIAjaxDataInterface {
      * @return
      */
     public Header[] getAllResponseHeader();
+
+    /**
+     * 获得已接收的响应体大小
+     * @return
+     */
+    public long getLoaded();
+
+    /**
+     * 获得响应体的总大小，未知时返回-1
+     * @return
+     */
+    public long getTotal();
+
+    /**
+     * 获得响应体过大时写入的临时文件，相对于应用工作空间的路径，响应体在内存中时返回null
+     * @return
+     */
+    public String getResponseFile();
 }
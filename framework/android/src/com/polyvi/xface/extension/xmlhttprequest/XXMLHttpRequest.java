@@ -21,6 +21,7 @@
 
 package com.polyvi.xface.extension.xmlhttprequest;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.Map;
@@ -36,7 +37,10 @@ import android.webkit.CookieManager;
 import android.webkit.CookieSyncManager;
 
 import com.polyvi.xface.http.XAsyncHttpResponseHandler;
+import com.polyvi.xface.http.XHttpCache;
+import com.polyvi.xface.http.XHttpEngine;
 import com.polyvi.xface.http.XHttpWorker;
+import com.polyvi.xface.http.XResponseBody;
 
 /**
  * 参照W3C规范 实现的ajax请求对象
@@ -50,6 +54,15 @@ public class XXMLHttpRequest extends XAsyncHttpResponseHandler implements
     private static final String POST = "POST";
 
     private static String[] SupportMethods = { GET, POST };
+
+    /** 响应类型：文本和二进制 */
+    private static final String RESPONSE_TYPE_ARRAY_BUFFER = "arraybuffer";
+
+    /** 响应体过大时临时文件所在的目录，相对于应用工作空间 */
+    private static final String SPILL_DIR_NAME = ".xhr";
+
+    /** http响应缓存的目录，相对于应用工作空间 */
+    private static final String CACHE_DIR_NAME = ".xhr" + File.separator + "cache";
     /*
                   状态                           名称                                        描述
         0       UNSEND               初始化状态, XMLHttpRequest 对象已创建或已被 abort() 方法重置；
@@ -74,14 +87,24 @@ public class XXMLHttpRequest extends XAsyncHttpResponseHandler implements
     private int mHttpStatusCode;// http状态码
     private String mResponseText; // 响应文本
     private Header[] mResponseHeaders; // 响应头部
+    private boolean mArrayBuffer; // 是否以二进制返回响应体
+    private volatile XResponseBody mResponseBody; // 正在接收的响应体
+    private String mResponseFile; // 响应体过大时写入的临时文件，相对于工作空间的路径
+    private long mLoaded; // 已接收的响应体大小
+    private long mTotal = -1; // 响应体的总大小，未知时为-1
 
     private Context mContext;
+    private String mWorkSpace;
 
-    public XXMLHttpRequest(Context context) {
+    public XXMLHttpRequest(Context context, String workSpace) {
         super();
         mRequestHeaders = new ConcurrentHashMap<String, String>();
         mContext = context;
+        mWorkSpace = workSpace;
         mNetWork = new XHttpWorker();
+        mNetWork.setPriority(XHttpEngine.Priority.INTERACTIVE);
+        mNetWork.setCache(XHttpCache.getInstance(new File(workSpace,
+                CACHE_DIR_NAME)));
         mResponseText = "";
         mState = State.UNSEND;
 
@@ -114,13 +137,23 @@ public class XXMLHttpRequest extends XAsyncHttpResponseHandler implements
 
     }
 
-    public void send(String data) throws XAjaxException {
+    /**
+     * 发送请求
+     *
+     * @param data
+     *            post的数据
+     * @param responseType
+     *            响应类型，为arraybuffer时响应体以二进制返回，否则以文本返回
+     */
+    public void send(String data, String responseType) throws XAjaxException {
         // FIXME:暂时不支持二进制的发送
         if (mState != State.OPENED) {
             throw new XAjaxException(XAjaxException.ErrorCode.INVALID_STATE_ERR);
         }
 
         mPostData = data;
+        mArrayBuffer = RESPONSE_TYPE_ARRAY_BUFFER.equals(responseType);
+        mResponseBody = new XResponseBody(new File(mWorkSpace, SPILL_DIR_NAME));
         mError = false;
         doRequest();
     }
@@ -155,6 +188,13 @@ public class XXMLHttpRequest extends XAsyncHttpResponseHandler implements
        
     }
 
+    /**
+     * 取消未完成的请求，不派发任何事件
+     */
+    void cancel() {
+        internalAbort();
+    }
+
     /**
      * 设置ajax请求监听器
      *
@@ -193,6 +233,17 @@ public class XXMLHttpRequest extends XAsyncHttpResponseHandler implements
         }
     }
 
+    /**
+     * ajax状态前进到newState，当前状态已经不早于newState时不做处理
+     *
+     * @param newState
+     */
+    private void advanceState(State newState) {
+        if (newState.ordinal() > mState.ordinal()) {
+            changeState(newState);
+        }
+    }
+
     /**
      * 发生网络错误
      */
@@ -293,6 +344,14 @@ public class XXMLHttpRequest extends XAsyncHttpResponseHandler implements
         mResponseHeaders = null;
         mResponseText = "";
         mHttpStatusCode = 0;
+        mLoaded = 0;
+        mTotal = -1;
+        mResponseFile = null;
+        XResponseBody body = mResponseBody;
+        mResponseBody = null;
+        if (null != body) {
+            body.release();
+        }
     }
 
     /**
@@ -341,19 +400,101 @@ public class XXMLHttpRequest extends XAsyncHttpResponseHandler implements
         return mResponseHeaders;
     }
 
+    @Override
+    public long getLoaded() {
+        return mLoaded;
+    }
+
+    @Override
+    public long getTotal() {
+        return mTotal;
+    }
+
+    @Override
+    public String getResponseFile() {
+        return mResponseFile;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return true;
+    }
+
+    @Override
+    public void onHeadersReceived(int statusCode, Header[] headers) {
+        if (mError) {
+            return;
+        }
+        mHttpStatusCode = statusCode;
+        mResponseHeaders = headers;
+        this.advanceState(State.HEADERS_RECEIVED);
+    }
+
+    @Override
+    public void onProgress(long loaded, long total) {
+        if (mError) {
+            return;
+        }
+        mLoaded = loaded;
+        mTotal = total;
+        if (mState != State.LOADING) {
+            this.changeState(State.LOADING);
+        } else if (null != mListener) {
+            mListener.onProgress();
+        }
+    }
+
+    @Override
+    protected boolean onBodyData(byte[] buffer, int length) throws IOException {
+        XResponseBody body = mResponseBody;
+        if (mError || null == body) {
+            return false;
+        }
+        // 请求被中止时响应体已经释放，停止读取
+        return body.write(buffer, length);
+    }
+
+    @Override
+    protected String onBodyEnd(String charset) throws IOException {
+        XResponseBody body = mResponseBody;
+        if (null == body) {
+            return null;
+        }
+        body.finish();
+        // 二进制和写入临时文件的响应体不转换为文本
+        if (mArrayBuffer || body.isSpilled()) {
+            return "";
+        }
+        return body.toString(charset);
+    }
+
     @Override
     public void onSuccess(int statusCode, Header[] headers, String content) {
         // 如果已经出错 则不再处理
         if (mError) {
             return;
         }
-        // FIXME:底层的数据是一次性返回的 无需考虑多次接收数据
-        this.changeState(State.HEADERS_RECEIVED);
         mHttpStatusCode = statusCode;
-        mResponseText = content;
+        mResponseText = null == content ? "" : content;
         mResponseHeaders = headers;
-        this.changeState(State.LOADING);
-        this.changeState(State.DONE);
+        XResponseBody body = mResponseBody;
+        if (null != body) {
+            File file = body.getFile();
+            if (null != file) {
+                mResponseFile = File.separator + SPILL_DIR_NAME
+                        + File.separator + file.getName();
+            } else {
+                if (mArrayBuffer && null != mListener) {
+                    mListener.onBinaryResponse(body.toByteArray());
+                }
+                // 内存中的响应体已经交给js，不再保留
+                body.release();
+            }
+        }
+        // 流式接收时已经进入过HEADERS_RECEIVED和LOADING，状态只能前进不能回退
+        this.advanceState(State.HEADERS_RECEIVED);
+        this.advanceState(State.LOADING);
+        this.advanceState(State.DONE);
     }
 
     @Override
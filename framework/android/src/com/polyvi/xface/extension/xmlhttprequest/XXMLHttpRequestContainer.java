@@ -37,9 +37,16 @@ public class XXMLHttpRequestContainer {
      */
     private ConcurrentHashMap<String, XXMLHttpRequest> mAjaxMap = new ConcurrentHashMap<String, XXMLHttpRequest>();
     private Context mContext;
+    private String mWorkSpace;
 
-    public XXMLHttpRequestContainer(Context context) {
+    /**
+     * @param context
+     * @param workSpace
+     *            应用的工作空间，响应体过大时写入其中的临时文件
+     */
+    public XXMLHttpRequestContainer(Context context, String workSpace) {
         mContext = context;
+        mWorkSpace = workSpace;
     }
 
     /**
@@ -53,6 +60,8 @@ public class XXMLHttpRequestContainer {
             Entry<String, XXMLHttpRequest> e = entry.next();
             XXMLHttpRequest xhr = e.getValue();
             xhr.setRequestListener(null);
+            // 请求在共享的线程池中执行，需要取消未完成的请求
+            xhr.cancel();
         }
         //清除所有的ajax对象
         mAjaxMap.clear();
@@ -65,7 +74,7 @@ public class XXMLHttpRequestContainer {
      */
     public XXMLHttpRequest getXMLRequestObj(String id) {
         if (!mAjaxMap.containsKey(id)) {
-            XXMLHttpRequest xhr = new XXMLHttpRequest(mContext);
+            XXMLHttpRequest xhr = new XXMLHttpRequest(mContext, mWorkSpace);
             mAjaxMap.put(id, xhr);
         }
         return mAjaxMap.get(id);
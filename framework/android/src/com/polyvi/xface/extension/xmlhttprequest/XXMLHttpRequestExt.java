@@ -45,7 +45,7 @@ public class XXMLHttpRequestExt extends XExtension {
     public void init(XExtensionContext extensionContext, XIWebContext webContext) {
         super.init(extensionContext, webContext);
         mAjaxContainer = new XXMLHttpRequestContainer(extensionContext
-                .getSystemContext().getContext());
+                .getSystemContext().getContext(), webContext.getWorkSpace());
     }
 
     @Override
@@ -76,7 +76,8 @@ public class XXMLHttpRequestExt extends XExtension {
                 request.open(method, url);
             } else if (action.equals(COMMAND_SEND)) {
                 String data = args.getString(1);
-                request.send(data);
+                String responseType = args.optString(2, "");
+                request.send(data, responseType);
             } else if (action.equals(COMMAND_ABORT)) {
                 request.abort();
             } else if (action.equals(COMMAND_SET_REQUEST_HEADER)) {
@@ -98,4 +99,14 @@ public class XXMLHttpRequestExt extends XExtension {
         mAjaxContainer.removeAllRequestObj();
     }
 
+    @Override
+    public void onAppClosed() {
+        mAjaxContainer.removeAllRequestObj();
+    }
+
+    @Override
+    public void destroy() {
+        mAjaxContainer.removeAllRequestObj();
+    }
+
 }
@@ -25,7 +25,11 @@ import java.io.IOException;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
+import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.impl.client.AbstractHttpClient;
@@ -33,17 +37,32 @@ import org.apache.http.protocol.HttpContext;
 
 public class XAsyncHttpRequest implements Runnable {
 
+    private static final String METHOD_GET = "GET";
+    private static final String METHOD_HEAD = "HEAD";
+
     private final AbstractHttpClient mClient;
     private final HttpContext mContext;
     private final HttpUriRequest mRequest;
     private final XAsyncHttpResponseHandler mResponseHandler;
+    private final XHttpCache mCache;
 
     public XAsyncHttpRequest(AbstractHttpClient client, HttpContext contex,
             HttpUriRequest request, XAsyncHttpResponseHandler handler) {
+        this(client, contex, request, handler, null);
+    }
+
+    /**
+     * @param cache
+     *            响应缓存，为null时不使用缓存
+     */
+    public XAsyncHttpRequest(AbstractHttpClient client, HttpContext contex,
+            HttpUriRequest request, XAsyncHttpResponseHandler handler,
+            XHttpCache cache) {
         this.mClient = client;
         this.mContext = contex;
         this.mRequest = request;
         this.mResponseHandler = handler;
+        this.mCache = cache;
     }
 
     @Override
@@ -57,27 +76,77 @@ public class XAsyncHttpRequest implements Runnable {
     private void makeRequest() {
         //FIXME:支持重连
         try {
-            HttpResponse response = mClient.execute(mRequest, mContext);
-            mResponseHandler.sendResponseMessage(response);
-            return;
-        } catch (UnknownHostException e) {
-            e.printStackTrace();
+            deliver(execute());
+        } catch (Exception e) {
+            deliverFailure(e);
+        }
+    }
+
+    /**
+     * 执行请求，有缓存时先查询缓存
+     */
+    HttpResponse execute() throws IOException {
+        return (null == mCache) ? mClient.execute(mRequest, mContext)
+                : mCache.execute(mClient, mRequest, mContext);
+    }
+
+    /**
+     * 将响应交给处理器
+     */
+    void deliver(HttpResponse response) {
+        mResponseHandler.sendResponseMessage(response);
+    }
+
+    /**
+     * 将请求失败的原因交给处理器
+     */
+    void deliverFailure(Throwable e) {
+        e.printStackTrace();
+        if (e instanceof UnknownHostException) {
             mResponseHandler.sendFailureMessage(e, "can't resolve host");
-            return;
-        } catch (SocketException e) {
-            e.printStackTrace();
-            mResponseHandler.sendFailureMessage(e, "socket exception");
-            return;
-        } catch (SocketTimeoutException e) {
-            e.printStackTrace();
+        } else if (e instanceof SocketTimeoutException) {
             mResponseHandler.sendFailureMessage(e, "socket time out");
-            return;
-        } catch (IOException e) {
-            e.printStackTrace();
+        } else if (e instanceof SocketException) {
+            mResponseHandler.sendFailureMessage(e, "socket exception");
+        } else if (e instanceof IOException) {
             mResponseHandler.sendFailureMessage(e, "IOException");
-            return;
-        } catch(Exception e) {
-            e.printStackTrace();
+        } else {
+            mResponseHandler.sendFailureMessage(e, e.getMessage());
+        }
+    }
+
+    /**
+     * 中断正在进行的网络读写
+     */
+    void abort() {
+        mRequest.abort();
+    }
+
+    /**
+     * 获取合并相同请求使用的key，只有异步的GET和HEAD请求可以合并，key由方法、url和所有的请求头部组成；
+     * cookie和认证信息都在请求头部中（XHR发送前从webview的CookieManager取出cookie放入Cookie头部），
+     * 头部相同的请求可以共享响应，不能合并的请求返回null
+     */
+    String getCoalesceKey() {
+        if (!mResponseHandler.isAsync()) {
+            // 同步请求的调用者在deliver返回后才读取响应体，不能共享临时的响应体
+            return null;
+        }
+        String method = mRequest.getMethod();
+        if (!METHOD_GET.equalsIgnoreCase(method)
+                && !METHOD_HEAD.equalsIgnoreCase(method)) {
+            return null;
+        }
+        List<String> headers = new ArrayList<String>();
+        for (Header header : mRequest.getAllHeaders()) {
+            headers.add(header.getName().toLowerCase() + ":" + header.getValue());
+        }
+        Collections.sort(headers);
+        StringBuilder key = new StringBuilder(method.toUpperCase());
+        key.append(' ').append(mRequest.getURI());
+        for (String header : headers) {
+            key.append('\n').append(header);
         }
+        return key.toString();
     }
 }
@@ -22,6 +22,7 @@
 package com.polyvi.xface.http;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
@@ -31,6 +32,7 @@ import org.apache.http.client.HttpResponseException;
 import org.apache.http.entity.BufferedHttpEntity;
 import org.apache.http.util.EntityUtils;
 
+import com.polyvi.xface.extension.XProgressThrottle;
 import com.polyvi.xface.util.XLog;
 
 import android.os.Handler;
@@ -39,12 +41,22 @@ import android.os.Message;
 
 /**
  * http响应体处理器
- *
+ * 默认一次性读取整个响应体后回调onSuccess；子类重载isStreaming返回true时使用流式模式：
+ * 收到头部后立即回调onHeadersReceived，响应体分块交给onBodyData处理，读取过程中回调onProgress
  */
 public class XAsyncHttpResponseHandler {
 
+    private static final String CLASS_NAME = XAsyncHttpResponseHandler.class
+            .getSimpleName();
+
     protected static final int SUCCESS_MESSAGE = 0;
     protected static final int FAILURE_MESSAGE = 1;
+    protected static final int HEADERS_MESSAGE = 2;
+    protected static final int PROGRESS_MESSAGE = 3;
+
+    /** 流式模式下每次读取响应体的缓冲区大小 */
+    private static final int STREAM_BUFFER_SIZE = 8 * 1024;
+    private static final String DEFAULT_CHARSET = "UTF-8";
 
     private   static Handler mHandler;
 
@@ -75,6 +87,17 @@ public class XAsyncHttpResponseHandler {
         case FAILURE_MESSAGE:
             response = (Object[]) msg.obj;
             onFailure((Throwable) response[0], (String) response[1]);
+            break;
+        case HEADERS_MESSAGE:
+            response = (Object[]) msg.obj;
+            onHeadersReceived(((Integer) response[0]).intValue(),
+                    (Header[]) response[1]);
+            break;
+        case PROGRESS_MESSAGE:
+            response = (Object[]) msg.obj;
+            onProgress(((Long) response[0]).longValue(),
+                    ((Long) response[1]).longValue());
+            break;
         }
     }
 
@@ -84,6 +107,10 @@ public class XAsyncHttpResponseHandler {
      * @param response
      */
     public void sendResponseMessage(HttpResponse response) {
+        if (isStreaming()) {
+            sendStreamingResponse(response);
+            return;
+        }
         StatusLine status = response.getStatusLine();
         String responseBody = null;
         HttpEntity entity = null;
@@ -108,6 +135,121 @@ public class XAsyncHttpResponseHandler {
 
     }
 
+    /**
+     * 流式模式下发送http response消息，在请求线程中分块读取响应体
+     *
+     * @param response
+     */
+    private void sendStreamingResponse(HttpResponse response) {
+        StatusLine status = response.getStatusLine();
+        sendMessage(obtainMessage(HEADERS_MESSAGE, new Object[] {
+                Integer.valueOf(status.getStatusCode()), response.getAllHeaders() }));
+        HttpEntity entity = response.getEntity();
+        String charset = null;
+        if (null != entity) {
+            charset = EntityUtils.getContentCharSet(entity);
+            long total = entity.getContentLength();
+            long loaded = 0;
+            XProgressThrottle throttle = new XProgressThrottle();
+            InputStream is = null;
+            try {
+                is = entity.getContent();
+                byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+                int length;
+                while ((length = is.read(buffer)) != -1) {
+                    loaded += length;
+                    if (!onBodyData(buffer, length)) {
+                        // 请求已经被取消
+                        return;
+                    }
+                    if (throttle.shouldNotify(loaded, total)) {
+                        sendMessage(obtainMessage(PROGRESS_MESSAGE, new Object[] {
+                                Long.valueOf(loaded), Long.valueOf(total) }));
+                    }
+                }
+            } catch (IOException e) {
+                sendFailureMessage(e, null);
+                return;
+            } finally {
+                if (null != is) {
+                    try {
+                        is.close();
+                    } catch (IOException e) {
+                        XLog.e(CLASS_NAME, e.getMessage());
+                    }
+                }
+            }
+        }
+        String responseBody;
+        try {
+            responseBody = onBodyEnd(null == charset ? DEFAULT_CHARSET : charset);
+        } catch (IOException e) {
+            sendFailureMessage(e, null);
+            return;
+        }
+        if (status.getStatusCode() >= 300) {
+            sendFailureMessage(new HttpResponseException(
+                    status.getStatusCode(), status.getReasonPhrase()),
+                    responseBody);
+        } else {
+            sendSuccessMessage(status.getStatusCode(),
+                    response.getAllHeaders(), responseBody);
+        }
+    }
+
+    /**
+     * 是否使用流式模式处理响应体 子类可以重载
+     */
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * 流式模式下收到响应头部的回调 子类可以重载
+     *
+     * @param statusCode
+     * @param headers
+     */
+    public void onHeadersReceived(int statusCode, Header[] headers) {
+
+    }
+
+    /**
+     * 流式模式下响应体的读取进度回调 子类可以重载
+     *
+     * @param loaded
+     *            已接收的字节数
+     * @param total
+     *            响应体的总字节数，未知时为-1
+     */
+    public void onProgress(long loaded, long total) {
+
+    }
+
+    /**
+     * 流式模式下在请求线程中处理一块响应体数据 子类可以重载
+     *
+     * @param buffer
+     *            数据缓冲区，返回后会被复用
+     * @param length
+     *            数据长度
+     * @return 返回false停止读取
+     */
+    protected boolean onBodyData(byte[] buffer, int length) throws IOException {
+        return true;
+    }
+
+    /**
+     * 流式模式下响应体读取完成的回调 子类可以重载
+     *
+     * @param charset
+     *            响应体的编码
+     * @return 作为响应内容传给onSuccess或者onFailure
+     */
+    protected String onBodyEnd(String charset) throws IOException {
+        return null;
+    }
+
     /**
      * 成功回调 子类可以重载
      *
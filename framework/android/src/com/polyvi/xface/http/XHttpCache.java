@@ -0,0 +1,893 @@
+
+/*
+ Copyright 2012-2013, Polyvi Inc. (http://polyvi.github.io/openxface)
+ This program is distributed under the terms of the GNU General Public License.
+
+ This file is part of xFace.
+
+ xFace is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ xFace is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with xFace.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.polyvi.xface.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.FileEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.polyvi.xface.util.XFileUtils;
+import com.polyvi.xface.util.XLog;
+import com.polyvi.xface.util.XStringUtils;
+
+/**
+ * http响应缓存，每个应用工作空间一个实例
+ * 只缓存GET请求的200响应，遵循Cache-Control(max-age/no-cache/no-store)、Expires以及Last-Modified的启发式有效期；
+ * 过期的响应带上If-None-Match/If-Modified-Since重新验证，服务器返回304时使用缓存的响应体
+ * 响应体保存在磁盘上，所有缓存项按照最近使用的顺序淘汰，总大小不超过上限；较小的响应体同时缓存在内存中
+ * 缓存的响应体是解压后的数据，因此保存的头部中去掉了Content-Encoding
+ */
+public class XHttpCache {
+
+    private static final String CLASS_NAME = XHttpCache.class.getSimpleName();
+
+    /** 每个应用的磁盘缓存上限 */
+    public static final long DEFAULT_MAX_SIZE = 10 * 1024 * 1024;
+
+    /** 内存中缓存的响应体的总大小上限和单个响应体的大小上限 */
+    private static final int MAX_MEMORY_SIZE = 1024 * 1024;
+    private static final int MAX_MEMORY_ENTRY_SIZE = 64 * 1024;
+
+    /** 启发式有效期的上限 */
+    private static final long MAX_HEURISTIC_LIFETIME = 24 * 60 * 60 * 1000L;
+
+    private static final String META_SUFFIX = ".meta";
+    private static final String BODY_SUFFIX = ".body";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final String HEADER_PRAGMA = "Pragma";
+    private static final String HEADER_EXPIRES = "Expires";
+    private static final String HEADER_DATE = "Date";
+    private static final String HEADER_AGE = "Age";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_VARY = "Vary";
+    private static final String HEADER_AUTHORIZATION = "Authorization";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+    private static final String HEADER_CONTENT_TYPE = "Content-Type";
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String DIRECTIVE_NO_CACHE = "no-cache";
+    private static final String DIRECTIVE_NO_STORE = "no-store";
+    private static final String DIRECTIVE_MAX_AGE = "max-age";
+    private static final String DIRECTIVE_MUST_REVALIDATE = "must-revalidate";
+    private static final String METHOD_GET = "GET";
+
+    private static final String TAG_URL = "url";
+    private static final String TAG_HEADERS = "headers";
+    private static final String TAG_STORED = "stored";
+    private static final String TAG_EXPIRES = "expires";
+    private static final String TAG_SIZE = "size";
+
+    private static final HashMap<String, XHttpCache> sCaches = new HashMap<String, XHttpCache>();
+
+    /** 用于生成临时文件名 */
+    private static final AtomicInteger sTempSequence = new AtomicInteger();
+
+    private final File mDir;
+    private final long mMaxSize;
+
+    /** 所有缓存项，按照访问顺序排列，key为url的md5 */
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>(
+            16, 0.75f, true);
+
+    /** 内存中缓存的响应体 */
+    private final LinkedHashMap<String, byte[]> mMemory = new LinkedHashMap<String, byte[]>(
+            16, 0.75f, true);
+    private int mMemorySize;
+
+    private long mSize;
+    private boolean mLoaded;
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mRevalidations = new AtomicLong();
+    private final AtomicLong mStores = new AtomicLong();
+    private final AtomicLong mEvictions = new AtomicLong();
+
+    private XHttpCache(File dir, long maxSize) {
+        mDir = dir;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * 获取指定目录对应的缓存，同一个目录只有一个实例
+     *
+     * @param dir
+     *            缓存目录，一般位于应用的工作空间下
+     */
+    public static XHttpCache getInstance(File dir) {
+        synchronized (sCaches) {
+            String path = dir.getAbsolutePath();
+            XHttpCache cache = sCaches.get(path);
+            if (null == cache) {
+                cache = new XHttpCache(dir, DEFAULT_MAX_SIZE);
+                sCaches.put(path, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * 通过缓存执行请求，缓存有效时不访问网络
+     */
+    public HttpResponse execute(HttpClient client, HttpUriRequest request,
+            HttpContext context) throws IOException {
+        String url = request.getURI().toString();
+        String key = keyOf(url);
+        if (!METHOD_GET.equalsIgnoreCase(request.getMethod())) {
+            // 其它请求可能修改了服务器上的资源
+            remove(key);
+            return client.execute(request, context);
+        }
+        if (request.containsHeader(HEADER_AUTHORIZATION)) {
+            return client.execute(request, context);
+        }
+        boolean noCache = hasDirective(request.getHeaders(HEADER_CACHE_CONTROL), DIRECTIVE_NO_CACHE)
+                || hasDirective(request.getHeaders(HEADER_PRAGMA), DIRECTIVE_NO_CACHE);
+        Entry entry = get(key);
+        if (null != entry && !noCache
+                && entry.mExpires > System.currentTimeMillis()) {
+            HttpResponse cached = createResponse(key, entry);
+            if (null != cached) {
+                mHits.incrementAndGet();
+                return cached;
+            }
+            remove(key);
+            entry = null;
+        }
+        boolean conditional = false;
+        if (null != entry) {
+            String etag = entry.getHeader(HEADER_ETAG);
+            String lastModified = entry.getHeader(HEADER_LAST_MODIFIED);
+            if (null != etag && !request.containsHeader(HEADER_IF_NONE_MATCH)) {
+                request.addHeader(HEADER_IF_NONE_MATCH, etag);
+                conditional = true;
+            }
+            if (null != lastModified
+                    && !request.containsHeader(HEADER_IF_MODIFIED_SINCE)) {
+                request.addHeader(HEADER_IF_MODIFIED_SINCE, lastModified);
+                conditional = true;
+            }
+        }
+        long requestTime = System.currentTimeMillis();
+        HttpResponse response = client.execute(request, context);
+        int statusCode = response.getStatusLine().getStatusCode();
+        if (conditional && HttpStatus.SC_NOT_MODIFIED == statusCode) {
+            HttpEntity entity = response.getEntity();
+            if (null != entity) {
+                entity.consumeContent();
+            }
+            Entry updated = entry.revalidate(response.getAllHeaders(),
+                    requestTime);
+            HttpResponse cached = createResponse(key, updated);
+            if (null != cached) {
+                update(key, updated);
+                mRevalidations.incrementAndGet();
+                return cached;
+            }
+            // 响应体已经丢失，不带条件重新请求
+            remove(key);
+            request.removeHeaders(HEADER_IF_NONE_MATCH);
+            request.removeHeaders(HEADER_IF_MODIFIED_SINCE);
+            response = client.execute(request, context);
+            statusCode = response.getStatusLine().getStatusCode();
+        }
+        mMisses.incrementAndGet();
+        if (HttpStatus.SC_OK != statusCode) {
+            return response;
+        }
+        if (!isCacheable(request, response)) {
+            remove(key);
+            return response;
+        }
+        HttpEntity entity = response.getEntity();
+        if (null != entity) {
+            response.setEntity(new CachingEntity(entity, key, new Entry(url,
+                    storedHeaders(response.getAllHeaders()), requestTime)));
+        }
+        return response;
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear() {
+        ensureLoaded();
+        Iterator<String> iter = mEntries.keySet().iterator();
+        while (iter.hasNext()) {
+            deleteFiles(iter.next());
+        }
+        mEntries.clear();
+        mMemory.clear();
+        mMemorySize = 0;
+        mSize = 0;
+    }
+
+    public long getHitCount() {
+        return mHits.get();
+    }
+
+    public long getMissCount() {
+        return mMisses.get();
+    }
+
+    public long getRevalidationCount() {
+        return mRevalidations.get();
+    }
+
+    /**
+     * 将缓存的统计数据转换为json对象，格式为：
+     * {"hits":n,"misses":n,"revalidations":n,"stores":n,"evictions":n,"entries":n,"size":n}
+     */
+    public synchronized JSONObject toJSON() throws JSONException {
+        ensureLoaded();
+        JSONObject obj = new JSONObject();
+        obj.put("hits", mHits.get());
+        obj.put("misses", mMisses.get());
+        obj.put("revalidations", mRevalidations.get());
+        obj.put("stores", mStores.get());
+        obj.put("evictions", mEvictions.get());
+        obj.put("entries", mEntries.size());
+        obj.put("size", mSize);
+        return obj;
+    }
+
+    private synchronized Entry get(String key) {
+        ensureLoaded();
+        return mEntries.get(key);
+    }
+
+    private synchronized void remove(String key) {
+        ensureLoaded();
+        Entry entry = mEntries.remove(key);
+        if (null != entry) {
+            mSize -= entry.mSize;
+            removeFromMemory(key);
+            deleteFiles(key);
+        }
+    }
+
+    /**
+     * 重新验证后更新缓存项的头部和有效期，响应体不变
+     */
+    private synchronized void update(String key, Entry entry) {
+        if (!mEntries.containsKey(key)) {
+            return;
+        }
+        try {
+            writeMeta(key, entry);
+            mEntries.put(key, entry);
+        } catch (IOException e) {
+            XLog.e(CLASS_NAME, e.getMessage());
+        }
+    }
+
+    /**
+     * 响应体写入临时文件完成后加入缓存
+     */
+    private synchronized void commit(String key, Entry entry, File temp) {
+        ensureLoaded();
+        remove(key);
+        File body = bodyFile(key);
+        if (!temp.renameTo(body)) {
+            temp.delete();
+            return;
+        }
+        try {
+            writeMeta(key, entry);
+        } catch (IOException e) {
+            XLog.e(CLASS_NAME, e.getMessage());
+            body.delete();
+            return;
+        }
+        mEntries.put(key, entry);
+        mSize += entry.mSize;
+        mStores.incrementAndGet();
+        trimToSize();
+    }
+
+    /**
+     * 淘汰最久没有使用的缓存项，直到总大小不超过上限
+     */
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Entry>> iter = mEntries.entrySet()
+                .iterator();
+        while (mSize > mMaxSize && iter.hasNext()) {
+            Map.Entry<String, Entry> eldest = iter.next();
+            iter.remove();
+            mSize -= eldest.getValue().mSize;
+            removeFromMemory(eldest.getKey());
+            deleteFiles(eldest.getKey());
+            mEvictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * 第一次使用时从磁盘加载所有缓存项，删除残留的临时文件
+     */
+    private void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        File[] files = mDir.listFiles();
+        if (null == files) {
+            return;
+        }
+        List<Entry> entries = new ArrayList<Entry>();
+        List<String> keys = new ArrayList<String>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                file.delete();
+            } else if (name.endsWith(META_SUFFIX)) {
+                String key = name.substring(0,
+                        name.length() - META_SUFFIX.length());
+                Entry entry = readMeta(file);
+                if (null == entry || !bodyFile(key).exists()) {
+                    deleteFiles(key);
+                    continue;
+                }
+                // 按照保存时间插入，近似恢复访问顺序
+                int index = 0;
+                while (index < entries.size()
+                        && entries.get(index).mStored <= entry.mStored) {
+                    index++;
+                }
+                entries.add(index, entry);
+                keys.add(index, key);
+            }
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            mEntries.put(keys.get(i), entries.get(i));
+            mSize += entries.get(i).mSize;
+        }
+        trimToSize();
+    }
+
+    /**
+     * 用缓存的响应体构造响应，响应体文件丢失时返回null
+     */
+    private HttpResponse createResponse(String key, Entry entry) {
+        HttpEntity entity;
+        byte[] data;
+        synchronized (this) {
+            data = mMemory.get(key);
+        }
+        String contentType = entry.getHeader(HEADER_CONTENT_TYPE);
+        if (null != data) {
+            ByteArrayEntity bytes = new ByteArrayEntity(data);
+            bytes.setContentType(contentType);
+            entity = bytes;
+        } else {
+            File body = bodyFile(key);
+            if (!body.exists()) {
+                return null;
+            }
+            if (body.length() <= MAX_MEMORY_ENTRY_SIZE) {
+                data = readSmallFile(body);
+            }
+            if (null != data) {
+                putInMemory(key, data);
+                ByteArrayEntity bytes = new ByteArrayEntity(data);
+                bytes.setContentType(contentType);
+                entity = bytes;
+            } else {
+                entity = new FileEntity(body, contentType);
+            }
+        }
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1,
+                HttpStatus.SC_OK, "OK");
+        for (String[] header : entry.mHeaders) {
+            response.addHeader(header[0], header[1]);
+        }
+        response.setHeader(HEADER_CONTENT_LENGTH,
+                String.valueOf(entity.getContentLength()));
+        response.setEntity(entity);
+        return response;
+    }
+
+    private synchronized void putInMemory(String key, byte[] data) {
+        removeFromMemory(key);
+        mMemory.put(key, data);
+        mMemorySize += data.length;
+        Iterator<Map.Entry<String, byte[]>> iter = mMemory.entrySet()
+                .iterator();
+        while (mMemorySize > MAX_MEMORY_SIZE && iter.hasNext()) {
+            mMemorySize -= iter.next().getValue().length;
+            iter.remove();
+        }
+    }
+
+    private void removeFromMemory(String key) {
+        byte[] data = mMemory.remove(key);
+        if (null != data) {
+            mMemorySize -= data.length;
+        }
+    }
+
+    private static byte[] readSmallFile(File file) {
+        InputStream is = null;
+        try {
+            is = new FileInputStream(file);
+            byte[] data = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < data.length) {
+                int read = is.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    return null;
+                }
+                offset += read;
+            }
+            return data;
+        } catch (IOException e) {
+            XLog.e(CLASS_NAME, e.getMessage());
+            return null;
+        } finally {
+            if (null != is) {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    XLog.e(CLASS_NAME, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 判断响应是否可以缓存：请求和响应都没有no-store，响应没有Vary(Accept-Encoding除外)，
+     * 并且有有效期或者验证器
+     */
+    private static boolean isCacheable(HttpUriRequest request,
+            HttpResponse response) {
+        if (hasDirective(request.getHeaders(HEADER_CACHE_CONTROL), DIRECTIVE_NO_STORE)
+                || hasDirective(response.getHeaders(HEADER_CACHE_CONTROL), DIRECTIVE_NO_STORE)) {
+            return false;
+        }
+        for (Header vary : response.getHeaders(HEADER_VARY)) {
+            for (HeaderElement element : vary.getElements()) {
+                if (!HEADER_ACCEPT_ENCODING.equalsIgnoreCase(element.getName())) {
+                    return false;
+                }
+            }
+        }
+        return response.containsHeader(HEADER_ETAG)
+                || response.containsHeader(HEADER_LAST_MODIFIED)
+                || response.containsHeader(HEADER_EXPIRES)
+                || null != getDirective(response.getHeaders(HEADER_CACHE_CONTROL), DIRECTIVE_MAX_AGE);
+    }
+
+    /**
+     * 需要保存的头部，响应体已经解压并且长度以缓存文件为准
+     */
+    private static List<String[]> storedHeaders(Header[] headers) {
+        List<String[]> stored = new ArrayList<String[]>();
+        for (Header header : headers) {
+            String name = header.getName();
+            if (HEADER_CONTENT_ENCODING.equalsIgnoreCase(name)
+                    || HEADER_CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                continue;
+            }
+            stored.add(new String[] { name, header.getValue() });
+        }
+        return stored;
+    }
+
+    private static boolean hasDirective(Header[] headers, String name) {
+        return null != getDirective(headers, name);
+    }
+
+    /**
+     * 获取Cache-Control等头部中的指令，没有该指令时返回null，指令没有值时返回空字符串
+     */
+    private static String getDirective(Header[] headers, String name) {
+        for (Header header : headers) {
+            for (HeaderElement element : header.getElements()) {
+                if (name.equalsIgnoreCase(element.getName())) {
+                    return null == element.getValue() ? "" : element.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static long parseDate(String value) {
+        if (null == value) {
+            return -1;
+        }
+        try {
+            Date date = DateUtils.parseDate(value);
+            return date.getTime();
+        } catch (DateParseException e) {
+            return -1;
+        }
+    }
+
+    private static long parseSeconds(String value) {
+        if (null == value) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String keyOf(String url) {
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            return XStringUtils.hexEncode(md5.digest(url.getBytes("UTF-8")));
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(url.hashCode());
+        } catch (UnsupportedEncodingException e) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+
+    private File bodyFile(String key) {
+        return new File(mDir, key + BODY_SUFFIX);
+    }
+
+    private File metaFile(String key) {
+        return new File(mDir, key + META_SUFFIX);
+    }
+
+    private void deleteFiles(String key) {
+        bodyFile(key).delete();
+        metaFile(key).delete();
+    }
+
+    private void writeMeta(String key, Entry entry) throws IOException {
+        try {
+            if (!XFileUtils.writeFileByString(metaFile(key).getAbsolutePath(),
+                    entry.toJSON().toString())) {
+                throw new IOException("Cannot write cache meta " + key);
+            }
+        } catch (JSONException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    private static Entry readMeta(File file) {
+        String content = XFileUtils.readFileContent(file.getAbsolutePath());
+        if (null == content) {
+            return null;
+        }
+        try {
+            return Entry.fromJSON(new JSONObject(content));
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 缓存项的元数据
+     */
+    private static class Entry {
+        final String mUrl;
+        final List<String[]> mHeaders;
+
+        /** 收到响应的时间 */
+        final long mStored;
+
+        /** 过期时间 */
+        final long mExpires;
+
+        /** 响应体大小 */
+        long mSize;
+
+        Entry(String url, List<String[]> headers, long stored) {
+            this(url, headers, stored, computeExpires(headers, stored), 0);
+        }
+
+        private Entry(String url, List<String[]> headers, long stored,
+                long expires, long size) {
+            mUrl = url;
+            mHeaders = headers;
+            mStored = stored;
+            mExpires = expires;
+            mSize = size;
+        }
+
+        String getHeader(String name) {
+            for (String[] header : mHeaders) {
+                if (name.equalsIgnoreCase(header[0])) {
+                    return header[1];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 用304响应中的头部更新缓存项，返回新的缓存项
+         */
+        Entry revalidate(Header[] headers, long stored) {
+            List<String[]> merged = new ArrayList<String[]>(mHeaders);
+            for (String[] header : storedHeaders(headers)) {
+                Iterator<String[]> iter = merged.iterator();
+                while (iter.hasNext()) {
+                    if (iter.next()[0].equalsIgnoreCase(header[0])) {
+                        iter.remove();
+                    }
+                }
+            }
+            merged.addAll(storedHeaders(headers));
+            return new Entry(mUrl, merged, stored,
+                    computeExpires(merged, stored), mSize);
+        }
+
+        /**
+         * 根据max-age、Expires或者Last-Modified计算过期时间，
+         * no-cache和must-revalidate的响应每次都需要重新验证
+         */
+        private static long computeExpires(List<String[]> headers, long stored) {
+            long date = stored;
+            long lastModified = -1;
+            long expires = -1;
+            long maxAge = -1;
+            long age = 0;
+            for (String[] header : headers) {
+                String name = header[0];
+                if (HEADER_CACHE_CONTROL.equalsIgnoreCase(name)
+                        || HEADER_PRAGMA.equalsIgnoreCase(name)) {
+                    String value = header[1].toLowerCase();
+                    if (value.contains(DIRECTIVE_NO_CACHE)
+                            || value.contains(DIRECTIVE_MUST_REVALIDATE)) {
+                        return 0;
+                    }
+                    int index = value.indexOf(DIRECTIVE_MAX_AGE + "=");
+                    if (index >= 0) {
+                        int start = index + DIRECTIVE_MAX_AGE.length() + 1;
+                        int end = start;
+                        while (end < value.length()
+                                && Character.isDigit(value.charAt(end))) {
+                            end++;
+                        }
+                        maxAge = parseSeconds(value.substring(start, end));
+                    }
+                } else if (HEADER_DATE.equalsIgnoreCase(name)) {
+                    long parsed = parseDate(header[1]);
+                    if (parsed > 0) {
+                        date = parsed;
+                    }
+                } else if (HEADER_EXPIRES.equalsIgnoreCase(name)) {
+                    // 无效的Expires表示已经过期
+                    expires = Math.max(0, parseDate(header[1]));
+                } else if (HEADER_LAST_MODIFIED.equalsIgnoreCase(name)) {
+                    lastModified = parseDate(header[1]);
+                } else if (HEADER_AGE.equalsIgnoreCase(name)) {
+                    age = Math.max(0, parseSeconds(header[1]));
+                }
+            }
+            if (maxAge >= 0) {
+                return stored + (maxAge - age) * 1000;
+            }
+            if (expires >= 0) {
+                return stored + (expires - date);
+            }
+            if (lastModified > 0 && date > lastModified) {
+                return stored + Math.min((date - lastModified) / 10,
+                        MAX_HEURISTIC_LIFETIME);
+            }
+            return 0;
+        }
+
+        JSONObject toJSON() throws JSONException {
+            JSONObject obj = new JSONObject();
+            obj.put(TAG_URL, mUrl);
+            obj.put(TAG_STORED, mStored);
+            obj.put(TAG_EXPIRES, mExpires);
+            obj.put(TAG_SIZE, mSize);
+            JSONArray headers = new JSONArray();
+            for (String[] header : mHeaders) {
+                JSONArray pair = new JSONArray();
+                pair.put(header[0]);
+                pair.put(header[1]);
+                headers.put(pair);
+            }
+            obj.put(TAG_HEADERS, headers);
+            return obj;
+        }
+
+        static Entry fromJSON(JSONObject obj) throws JSONException {
+            JSONArray array = obj.getJSONArray(TAG_HEADERS);
+            List<String[]> headers = new ArrayList<String[]>();
+            for (int i = 0; i < array.length(); i++) {
+                JSONArray pair = array.getJSONArray(i);
+                headers.add(new String[] { pair.getString(0), pair.getString(1) });
+            }
+            return new Entry(obj.getString(TAG_URL), headers,
+                    obj.getLong(TAG_STORED), obj.getLong(TAG_EXPIRES),
+                    obj.getLong(TAG_SIZE));
+        }
+    }
+
+    /**
+     * 读取响应体的同时写入缓存的临时文件，读取到末尾时加入缓存，
+     * 中途关闭或者超过缓存上限时放弃缓存
+     */
+    private class CachingEntity extends HttpEntityWrapper {
+        private final String mKey;
+        private final Entry mEntry;
+
+        CachingEntity(HttpEntity wrapped, String key, Entry entry) {
+            super(wrapped);
+            mKey = key;
+            mEntry = entry;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new TeeInputStream(wrappedEntity.getContent());
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            InputStream in = getContent();
+            try {
+                byte[] buffer = new byte[4096];
+                int length;
+                while ((length = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, length);
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        private class TeeInputStream extends FilterInputStream {
+            private File mTemp;
+            private OutputStream mOut;
+            private long mWritten;
+
+            TeeInputStream(InputStream in) {
+                super(in);
+                if (!mDir.exists() && !mDir.mkdirs()) {
+                    return;
+                }
+                mTemp = new File(mDir, mKey + "-"
+                        + sTempSequence.incrementAndGet() + TEMP_SUFFIX);
+                try {
+                    mOut = new FileOutputStream(mTemp);
+                } catch (IOException e) {
+                    XLog.e(CLASS_NAME, e.getMessage());
+                    abandon();
+                }
+            }
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                int length = read(one, 0, 1);
+                return length == -1 ? -1 : (one[0] & 0xff);
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int count)
+                    throws IOException {
+                int length;
+                try {
+                    length = super.read(buffer, offset, count);
+                } catch (IOException e) {
+                    abandon();
+                    throw e;
+                }
+                if (length == -1) {
+                    finish();
+                } else if (null != mOut) {
+                    mWritten += length;
+                    // 单个响应体不超过缓存上限的1/8
+                    if (mWritten > mMaxSize / 8) {
+                        abandon();
+                    } else {
+                        try {
+                            mOut.write(buffer, offset, length);
+                        } catch (IOException e) {
+                            XLog.e(CLASS_NAME, e.getMessage());
+                            abandon();
+                        }
+                    }
+                }
+                return length;
+            }
+
+            @Override
+            public void close() throws IOException {
+                // 没有读到末尾就关闭时响应体不完整，不能缓存
+                abandon();
+                super.close();
+            }
+
+            private void finish() {
+                if (null == mOut) {
+                    return;
+                }
+                try {
+                    mOut.close();
+                } catch (IOException e) {
+                    XLog.e(CLASS_NAME, e.getMessage());
+                    abandon();
+                    return;
+                }
+                mOut = null;
+                mEntry.mSize = mWritten;
+                commit(mKey, mEntry, mTemp);
+                mTemp = null;
+            }
+
+            private void abandon() {
+                if (null != mOut) {
+                    try {
+                        mOut.close();
+                    } catch (IOException e) {
+                        XLog.e(CLASS_NAME, e.getMessage());
+                    }
+                    mOut = null;
+                }
+                if (null != mTemp) {
+                    mTemp.delete();
+                    mTemp = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,684 @@
+
+/*
+ Copyright 2012-2013, Polyvi Inc. (http://polyvi.github.io/openxface)
+ This program is distributed under the terms of the GNU General Public License.
+
+ This file is part of xFace.
+
+ xFace is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ xFace is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with xFace.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.polyvi.xface.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.HttpVersion;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.FileEntity;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.client.AbstractHttpClient;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.HttpContext;
+
+import com.polyvi.xface.ssl.XSSLSocketFactory;
+import com.polyvi.xface.util.XLog;
+
+/**
+ * 进程内共享的http引擎，单例
+ * 所有的XHttpWorker共用一个httpclient和连接池，连接在请求之间保持复用(keep-alive以及tls会话)，
+ * 请求在共享的有界线程池中执行；空闲的连接定时回收
+ * 请求分为交互、后台和统计三个优先级，每个优先级有独立的并发数限制，线程空闲时优先执行高优先级的请求；
+ * 相同的GET请求在执行过程中会被合并，只访问一次网络，响应分发给所有的调用者，较大的响应体通过临时文件分发
+ * 连接池的大小从config.xml的HttpMaxConnections和HttpMaxConnectionsPerRoute读取，
+ * 引擎在activity销毁时关闭，关闭后再次使用会重新创建
+ */
+public class XHttpEngine {
+
+    private static final String CLASS_NAME = XHttpEngine.class.getSimpleName();
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 20;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 6;
+    private static final int DEFAULT_SOCKET_TIMEOUT = 10 * 1000;
+    private static final int DEFAULT_SOCKET_BUFFER_SIZE = 8192;
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String ENCODING_GZIP = "gzip";
+
+    /** 空闲连接的保留时间，超过该时间的空闲连接会被关闭 */
+    private static final int IDLE_CONNECTION_TIMEOUT = 30 * 1000;
+
+    /** 回收空闲连接的检查间隔 */
+    private static final int EVICT_INTERVAL = 15 * 1000;
+
+    private static XHttpEngine sInstance;
+
+    private static int sMaxConnections = DEFAULT_MAX_CONNECTIONS;
+    private static int sMaxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+
+    /** 合并请求的响应体过大时临时文件所在的目录，为null时保存在内存中 */
+    private static File sSpillDir;
+
+    /** 请求的优先级 */
+    public enum Priority {
+        /** 应用的交互请求，例如ajax */
+        INTERACTIVE,
+        /** 后台请求，例如预加载和检查更新 */
+        BACKGROUND,
+        /** 统计上报 */
+        TELEMETRY
+    }
+
+    /** 用于保证同一优先级的请求按照提交顺序执行 */
+    private static final AtomicLong sSequence = new AtomicLong();
+
+    private final AbstractHttpClient mHttpClient;
+    private final ThreadPoolExecutor mDispatcher;
+    private final Timer mEvictTimer;
+
+    /** 每个优先级的执行通道 */
+    private final Lane[] mLanes;
+
+    /** 正在执行的可合并请求 合并key -> 请求 */
+    private final HashMap<String, Call> mInFlight = new HashMap<String, Call>();
+
+    /** 被合并的请求数 */
+    private final AtomicLong mCoalesced = new AtomicLong();
+
+    private XHttpEngine() {
+        mHttpClient = createHttpClient();
+        mLanes = new Lane[Priority.values().length];
+        mLanes[Priority.INTERACTIVE.ordinal()] = new Lane(sMaxConnections);
+        mLanes[Priority.BACKGROUND.ordinal()] = new Lane(Math.max(1, sMaxConnections / 2));
+        mLanes[Priority.TELEMETRY.ordinal()] = new Lane(Math.max(1, sMaxConnections / 4));
+        // 同时执行的请求数不超过连接池的大小，多余的请求按照优先级排队等待
+        mDispatcher = new ThreadPoolExecutor(sMaxConnections, sMaxConnections,
+                0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        return new Thread(r, "xface-http-"
+                                + mCount.incrementAndGet());
+                    }
+                });
+        mEvictTimer = new Timer("xface-http-evictor", true);
+        mEvictTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                evictIdleConnections();
+            }
+        }, EVICT_INTERVAL, EVICT_INTERVAL);
+    }
+
+    public static synchronized XHttpEngine getInstance() {
+        if (null == sInstance) {
+            sInstance = new XHttpEngine();
+        }
+        return sInstance;
+    }
+
+    /**
+     * 设置连接池的大小，在引擎创建之前调用才生效
+     *
+     * @param maxConnections
+     *            最大连接数，同时也是异步请求的最大并发数
+     * @param maxConnectionsPerRoute
+     *            每个主机的最大连接数
+     * @param spillDir
+     *            合并请求的响应体过大时临时文件所在的目录
+     */
+    public static synchronized void configure(int maxConnections,
+            int maxConnectionsPerRoute, File spillDir) {
+        sSpillDir = spillDir;
+        // 删除上次进程异常退出时残留的临时文件
+        File[] files = null == spillDir ? null : spillDir.listFiles();
+        if (null != files) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        sMaxConnections = Math.max(1, maxConnections);
+        sMaxConnectionsPerRoute = Math.max(1,
+                Math.min(maxConnectionsPerRoute, sMaxConnections));
+    }
+
+    /**
+     * 关闭引擎，取消排队的请求并关闭所有连接
+     */
+    public static synchronized void shutdown() {
+        if (null == sInstance) {
+            return;
+        }
+        sInstance.mEvictTimer.cancel();
+        List<Runnable> queued = sInstance.mDispatcher.shutdownNow();
+        sInstance.mHttpClient.getConnectionManager().shutdown();
+        sInstance.dropQueued(queued);
+        sInstance = null;
+    }
+
+    /**
+     * 将排队中没有机会执行的请求标记为取消，唤醒等待这些请求的同步调用者
+     */
+    private synchronized void dropQueued(List<Runnable> queued) {
+        for (Runnable runnable : queued) {
+            ((Call) runnable).mCancelled = true;
+        }
+        for (Lane lane : mLanes) {
+            for (Call call : lane.mWaiting) {
+                call.mCancelled = true;
+            }
+            lane.mWaiting.clear();
+        }
+        notifyAll();
+    }
+
+    /**
+     * 获取共享的httpclient
+     */
+    public AbstractHttpClient getHttpClient() {
+        return mHttpClient;
+    }
+
+    /**
+     * 提交异步请求，相同的GET请求正在执行时直接合并到该请求
+     *
+     * @param request
+     *            要执行的请求
+     * @param priority
+     *            请求的优先级
+     * @return 用于取消请求的对象
+     */
+    public Call enqueue(XAsyncHttpRequest request, Priority priority) {
+        Call call = new Call(request, priority);
+        synchronized (this) {
+            String key = request.getCoalesceKey();
+            if (null != key) {
+                Call leader = mInFlight.get(key);
+                if (null != leader && leader.addFollower(call)) {
+                    mCoalesced.incrementAndGet();
+                    return call;
+                }
+                call.mKey = key;
+                mInFlight.put(key, call);
+            }
+            Lane lane = mLanes[priority.ordinal()];
+            if (lane.mRunning >= lane.mMaxConcurrent) {
+                lane.mWaiting.add(call);
+                return call;
+            }
+            lane.mRunning++;
+        }
+        mDispatcher.execute(call);
+        return call;
+    }
+
+    /**
+     * 在对应优先级的通道中执行同步请求，阻塞到响应交给处理器为止
+     * 同步请求不参与合并，引擎关闭或者等待被中断时以失败结束
+     *
+     * @param request
+     *            要执行的请求
+     * @param priority
+     *            请求的优先级
+     */
+    public void execute(XAsyncHttpRequest request, Priority priority) {
+        Call call = enqueue(request, priority);
+        if (!call.await()) {
+            call.cancel();
+            request.deliverFailure(new IOException("request cancelled"));
+        }
+    }
+
+    /**
+     * 获取被合并的请求数
+     */
+    public long getCoalescedCount() {
+        return mCoalesced.get();
+    }
+
+    /**
+     * 请求结束后，从对应优先级的等待队列中取出下一个请求提交到线程池
+     */
+    private void onCallFinished(Call call) {
+        Call next;
+        synchronized (this) {
+            Lane lane = mLanes[call.mPriority.ordinal()];
+            next = lane.mWaiting.poll();
+            if (null == next) {
+                lane.mRunning--;
+                return;
+            }
+        }
+        try {
+            mDispatcher.execute(next);
+        } catch (RejectedExecutionException e) {
+            // 引擎已经关闭
+            dropQueued(Collections.<Runnable> singletonList(next));
+        }
+    }
+
+    /**
+     * 请求开始读取响应后不再接受合并
+     */
+    private synchronized List<Call> closeCoalescing(Call call) {
+        if (null != call.mKey && mInFlight.get(call.mKey) == call) {
+            mInFlight.remove(call.mKey);
+        }
+        List<Call> followers = call.mFollowers;
+        call.mFollowers = null;
+        return null == followers ? new ArrayList<Call>() : followers;
+    }
+
+    private static void consume(HttpResponse response) {
+        if (null == response || null == response.getEntity()) {
+            return;
+        }
+        try {
+            response.getEntity().consumeContent();
+        } catch (IOException e) {
+            XLog.e(CLASS_NAME, "Failed to consume response: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 缓冲共享的响应体，超过内存上限的部分写入临时文件
+     *
+     * @return 响应没有响应体时返回null
+     */
+    private static XResponseBody bufferBody(HttpResponse response)
+            throws IOException {
+        HttpEntity entity = response.getEntity();
+        if (null == entity) {
+            return null;
+        }
+        XResponseBody body = new XResponseBody(sSpillDir);
+        InputStream is = null;
+        try {
+            is = entity.getContent();
+            byte[] buffer = new byte[DEFAULT_SOCKET_BUFFER_SIZE];
+            int length;
+            while ((length = is.read(buffer)) != -1) {
+                body.write(buffer, length);
+            }
+            body.finish();
+        } catch (IOException e) {
+            body.release();
+            throw e;
+        } finally {
+            if (null != is) {
+                is.close();
+            }
+        }
+        return body;
+    }
+
+    /**
+     * 用缓冲的响应体复制一个响应，分发给合并的请求
+     *
+     * @param data
+     *            内存中的响应体，响应体写入临时文件时为null
+     */
+    private static HttpResponse copyResponse(HttpResponse response,
+            XResponseBody body, byte[] data) {
+        BasicHttpResponse copy = new BasicHttpResponse(response.getStatusLine());
+        copy.setHeaders(response.getAllHeaders());
+        if (null != body) {
+            AbstractHttpEntity entity = null == data ? new FileEntity(
+                    body.getFile(), null) : new ByteArrayEntity(data);
+            entity.setContentType(response.getEntity().getContentType());
+            copy.setEntity(entity);
+        }
+        return copy;
+    }
+
+    /**
+     * 单个优先级的执行通道
+     */
+    private static class Lane {
+        final int mMaxConcurrent;
+        final LinkedList<Call> mWaiting = new LinkedList<Call>();
+        int mRunning;
+
+        Lane(int maxConcurrent) {
+            mMaxConcurrent = maxConcurrent;
+        }
+    }
+
+    /**
+     * 提交到引擎的异步请求，可以在任意阶段取消：
+     * 排队中的请求直接从队列中移除，执行中的请求中断网络读写，
+     * 合并到其它请求的请求只是不再接收响应；有合并请求时取消不会中断网络，其它调用者仍然会收到响应
+     */
+    public class Call implements Runnable, Comparable<Call> {
+        private final XAsyncHttpRequest mRequest;
+        private final Priority mPriority;
+        private final long mSequence = sSequence.getAndIncrement();
+
+        /** 合并key，不可合并的请求为null */
+        private String mKey;
+
+        /** 合并到该请求的其它请求，开始分发响应后为null */
+        private List<Call> mFollowers = new ArrayList<Call>();
+
+        /** 该请求合并到的请求 */
+        private Call mLeader;
+
+        private boolean mStarted;
+        private boolean mCancelled;
+        private boolean mDone;
+
+        Call(XAsyncHttpRequest request, Priority priority) {
+            mRequest = request;
+            mPriority = priority;
+        }
+
+        /**
+         * 请求是否已经结束（完成或者取消）
+         */
+        public boolean isDone() {
+            synchronized (XHttpEngine.this) {
+                return mDone || mCancelled;
+            }
+        }
+
+        /**
+         * 取消请求
+         */
+        public void cancel() {
+            boolean abort = false;
+            synchronized (XHttpEngine.this) {
+                if (mCancelled || mDone) {
+                    return;
+                }
+                mCancelled = true;
+                if (null != mLeader) {
+                    if (null != mLeader.mFollowers) {
+                        mLeader.mFollowers.remove(this);
+                    }
+                    return;
+                }
+                boolean hasFollowers = null != mFollowers && !mFollowers.isEmpty();
+                if (hasFollowers) {
+                    // 其它调用者还在等待该请求的响应
+                    return;
+                }
+                if (null != mKey && mInFlight.get(mKey) == this) {
+                    mInFlight.remove(mKey);
+                }
+                XHttpEngine.this.notifyAll();
+                Lane lane = mLanes[mPriority.ordinal()];
+                if (lane.mWaiting.remove(this)) {
+                    return;
+                }
+                abort = mStarted;
+            }
+            if (abort) {
+                mRequest.abort();
+            } else if (mDispatcher.remove(this)) {
+                // 已经提交到线程池但还没有执行
+                onCallFinished(this);
+            }
+        }
+
+        /**
+         * 等待请求结束
+         *
+         * @return 响应或者失败已经交给处理器时返回true，请求被取消或者等待被中断时返回false
+         */
+        private boolean await() {
+            synchronized (XHttpEngine.this) {
+                while (!mDone && !mCancelled) {
+                    try {
+                        XHttpEngine.this.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+                return mDone;
+            }
+        }
+
+        /**
+         * 合并一个相同的请求，已经开始分发响应或者已经取消时返回false
+         */
+        private boolean addFollower(Call follower) {
+            if (null == mFollowers || mCancelled) {
+                return false;
+            }
+            mFollowers.add(follower);
+            follower.mLeader = this;
+            return true;
+        }
+
+        @Override
+        public void run() {
+            try {
+                synchronized (XHttpEngine.this) {
+                    if (mCancelled && (null == mFollowers || mFollowers.isEmpty())) {
+                        return;
+                    }
+                    mStarted = true;
+                }
+                execute();
+            } finally {
+                synchronized (XHttpEngine.this) {
+                    mDone = true;
+                    XHttpEngine.this.notifyAll();
+                }
+                onCallFinished(this);
+            }
+        }
+
+        private void execute() {
+            HttpResponse response = null;
+            Throwable error = null;
+            try {
+                response = mRequest.execute();
+            } catch (Exception e) {
+                error = e;
+            }
+            List<Call> targets = closeCoalescing(this);
+            boolean cancelled;
+            synchronized (XHttpEngine.this) {
+                cancelled = mCancelled;
+                for (Call follower : targets) {
+                    follower.mDone = true;
+                }
+                XHttpEngine.this.notifyAll();
+            }
+            if (!cancelled) {
+                targets.add(0, this);
+            }
+            if (targets.isEmpty()) {
+                // 没有调用者等待响应，释放连接
+                consume(response);
+                return;
+            }
+            if (null != error) {
+                for (Call target : targets) {
+                    target.mRequest.deliverFailure(error);
+                }
+                return;
+            }
+            if (targets.size() == 1 && targets.get(0) == this) {
+                mRequest.deliver(response);
+                return;
+            }
+            // 多个调用者共享响应，需要先缓冲响应体
+            XResponseBody body;
+            try {
+                body = bufferBody(response);
+            } catch (IOException e) {
+                for (Call target : targets) {
+                    target.mRequest.deliverFailure(e);
+                }
+                return;
+            }
+            // 调用者在deliver中读完响应体，全部分发后即可删除临时文件
+            try {
+                byte[] data = null == body || body.isSpilled() ? null : body
+                        .toByteArray();
+                for (Call target : targets) {
+                    target.mRequest.deliver(copyResponse(response, body, data));
+                }
+            } finally {
+                if (null != body) {
+                    body.release();
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(Call another) {
+            if (mPriority != another.mPriority) {
+                return mPriority.ordinal() < another.mPriority.ordinal() ? -1 : 1;
+            }
+            return mSequence < another.mSequence ? -1
+                    : (mSequence == another.mSequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * 关闭过期以及空闲时间过长的连接
+     */
+    private void evictIdleConnections() {
+        try {
+            ClientConnectionManager cm = mHttpClient.getConnectionManager();
+            cm.closeExpiredConnections();
+            cm.closeIdleConnections(IDLE_CONNECTION_TIMEOUT,
+                    TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            XLog.e(CLASS_NAME, "evict idle connections failed", e);
+        }
+    }
+
+    /**
+     * 创建共享的httpclient
+     */
+    private static AbstractHttpClient createHttpClient() {
+        BasicHttpParams httpParams = new BasicHttpParams();
+        ConnManagerParams.setTimeout(httpParams, DEFAULT_SOCKET_TIMEOUT);
+        ConnManagerParams.setMaxConnectionsPerRoute(httpParams,
+                new ConnPerRouteBean(sMaxConnectionsPerRoute));
+        ConnManagerParams.setMaxTotalConnections(httpParams, sMaxConnections);
+
+        HttpConnectionParams.setSoTimeout(httpParams, DEFAULT_SOCKET_TIMEOUT);
+        HttpConnectionParams.setConnectionTimeout(httpParams,
+                DEFAULT_SOCKET_TIMEOUT);
+        HttpConnectionParams.setTcpNoDelay(httpParams, true);
+        HttpConnectionParams.setSocketBufferSize(httpParams,
+                DEFAULT_SOCKET_BUFFER_SIZE);
+        // 复用连接前检查连接是否已经被服务器关闭
+        HttpConnectionParams.setStaleCheckingEnabled(httpParams, true);
+
+        HttpProtocolParams.setVersion(httpParams, HttpVersion.HTTP_1_1);
+        HttpProtocolParams.setUserAgent(httpParams, "xface");
+
+        SchemeRegistry schemeRegistry = new SchemeRegistry();
+        schemeRegistry.register(new Scheme("http", PlainSocketFactory
+                .getSocketFactory(), 80));
+        schemeRegistry.register(new Scheme("https", XSSLSocketFactory
+                .getSocketFactory(), 443));
+        schemeRegistry.register(new Scheme("https", XSSLSocketFactory
+                .getSocketFactory(), 8443));
+        ThreadSafeClientConnManager cm = new ThreadSafeClientConnManager(
+                httpParams, schemeRegistry);
+        DefaultHttpClient client = new DefaultHttpClient(cm, httpParams);
+        client.addRequestInterceptor(new HttpRequestInterceptor() {
+            @Override
+            public void process(HttpRequest request, HttpContext context) {
+                if (!request.containsHeader(HEADER_ACCEPT_ENCODING)) {
+                    request.addHeader(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+                }
+            }
+        });
+
+        client.addResponseInterceptor(new HttpResponseInterceptor() {
+            @Override
+            public void process(HttpResponse response, HttpContext context) {
+                final HttpEntity entity = response.getEntity();
+                if (entity == null) {
+                    return;
+                }
+                final Header encoding = entity.getContentEncoding();
+                if (encoding != null) {
+                    for (HeaderElement element : encoding.getElements()) {
+                        if (element.getName().equalsIgnoreCase(ENCODING_GZIP)) {
+                            response.setEntity(new InflatingEntity(response
+                                    .getEntity()));
+                            break;
+                        }
+                    }
+                }
+            }
+        });
+        return client;
+    }
+
+    /**
+     * 对于gzip数据客户端需要解压
+     */
+    private static class InflatingEntity extends HttpEntityWrapper {
+        public InflatingEntity(HttpEntity wrapped) {
+            super(wrapped);
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new GZIPInputStream(wrappedEntity.getContent());
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+    }
+}
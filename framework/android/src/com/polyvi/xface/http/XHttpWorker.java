@@ -22,147 +22,65 @@
 package com.polyvi.xface.http;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
-import java.lang.ref.WeakReference;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.regex.Pattern;
-import java.util.zip.GZIPInputStream;
 
 import org.apache.http.Header;
-import org.apache.http.HeaderElement;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpRequest;
-import org.apache.http.HttpRequestInterceptor;
-import org.apache.http.HttpResponse;
-import org.apache.http.HttpResponseInterceptor;
-import org.apache.http.HttpVersion;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.conn.params.ConnManagerParams;
-import org.apache.http.conn.params.ConnPerRouteBean;
-import org.apache.http.conn.scheme.PlainSocketFactory;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.conn.scheme.SchemeRegistry;
-import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.client.protocol.ClientContext;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.AbstractHttpClient;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpConnectionParams;
-import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.SyncBasicHttpContext;
 
-import com.polyvi.xface.ssl.XSSLSocketFactory;
 import com.polyvi.xface.util.XStringUtils;
 /**
  * 实现异步Http请求的封装
- *
+ * 连接池和线程池由{@link XHttpEngine}统一管理，worker只保存自己的请求头部、cookie和未完成的请求
  */
 public class XHttpWorker {
 
     /** 检查网络连接的间隔时间 */
     private static final int SERVER_CONNECT_TIMEOUT = 10000;
-    private static final int DEFAULT_MAX_CONNECTIONS = 10;
-    private static final int DEFAULT_SOCKET_TIMEOUT = 10 * 1000;
-    private static int maxConnections = DEFAULT_MAX_CONNECTIONS;
-    private static int socketTimeout = DEFAULT_SOCKET_TIMEOUT;
-    private static final int DEFAULT_SOCKET_BUFFER_SIZE = 8192;
-    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
-    private static final String ENCODING_GZIP = "gzip";
+
+    /** 服务器可用的检查结果的有效时间，有效期内不再重复检查 */
+    private static final int SERVER_ACCESSABLE_CACHE_TIME = 10000;
+
+    /** 最近检查为可用的服务器 url -> 检查时间 */
+    private static final HashMap<String, Long> sAccessableServers = new HashMap<String, Long>();
 
     /**url检测的正则表达式及错误信息*/
     private static final String TAG_URL_REGEX = "https?://([\\w]+\\.)+[\\w-]+(:\\d*)?(/[\\w-./?%&=]*)?$";
     private static final String TAG_URL_INVALID_MSG = "url is invalid";
 
-    private AbstractHttpClient mHttpClient;
     private HttpContext mHttpContext;
     private Map<String, String> mClientHeaderMap;
-    private ThreadPoolExecutor mThreadPool;
-    /**防止异步请求次数太多 导致内存紧张 通过弱引用存储任务对象*/
-    private List<WeakReference<Future<?>>> mRequestList = new LinkedList<WeakReference<Future<?>>>();
+    /**响应缓存，为null时不使用缓存*/
+    private XHttpCache mCache;
+    /**未完成的异步请求，提交新请求时清理已经完成的请求*/
+    private List<XHttpEngine.Call> mRequestList = new LinkedList<XHttpEngine.Call>();
+
+    /** 请求的优先级 */
+    private XHttpEngine.Priority mPriority = XHttpEngine.Priority.INTERACTIVE;
 
     public XHttpWorker() {
-        mThreadPool = (ThreadPoolExecutor) Executors.newCachedThreadPool();
         mClientHeaderMap = new HashMap<String, String>();
-        initHttpClient();
-    }
-
-    /**
-     * 初始化httpclient
-     */
-    private void initHttpClient() {
-        BasicHttpParams httpParams = new BasicHttpParams();
-        ConnManagerParams.setTimeout(httpParams, socketTimeout);
-        ConnManagerParams.setMaxConnectionsPerRoute(httpParams,
-                new ConnPerRouteBean(maxConnections));
-        ConnManagerParams.setMaxTotalConnections(httpParams,
-                DEFAULT_MAX_CONNECTIONS);
-
-        HttpConnectionParams.setSoTimeout(httpParams, socketTimeout);
-        HttpConnectionParams.setConnectionTimeout(httpParams, socketTimeout);
-        HttpConnectionParams.setTcpNoDelay(httpParams, true);
-        HttpConnectionParams.setSocketBufferSize(httpParams,
-                DEFAULT_SOCKET_BUFFER_SIZE);
-
-        HttpProtocolParams.setVersion(httpParams, HttpVersion.HTTP_1_1);
-        HttpProtocolParams.setUserAgent(httpParams, "xface");
-
-        SchemeRegistry schemeRegistry = new SchemeRegistry();
-        schemeRegistry.register(new Scheme("http", PlainSocketFactory
-                .getSocketFactory(), 80));
-        schemeRegistry.register(new Scheme("https", XSSLSocketFactory
-                .getSocketFactory(), 443));
-        schemeRegistry.register(new Scheme("https", XSSLSocketFactory
-                .getSocketFactory(), 8443));
-        ThreadSafeClientConnManager cm = new ThreadSafeClientConnManager(
-                httpParams, schemeRegistry);
-        mHttpClient = new DefaultHttpClient(cm, httpParams);
-        mHttpClient.addRequestInterceptor(new HttpRequestInterceptor() {
-            @Override
-            public void process(HttpRequest request, HttpContext context) {
-                if (!request.containsHeader(HEADER_ACCEPT_ENCODING)) {
-                    request.addHeader(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
-                }
-                for (String header : mClientHeaderMap.keySet()) {
-                    request.addHeader(header, mClientHeaderMap.get(header));
-                }
-            }
-        });
-
-        mHttpClient.addResponseInterceptor(new HttpResponseInterceptor() {
-            @Override
-            public void process(HttpResponse response, HttpContext context) {
-                final HttpEntity entity = response.getEntity();
-                if (entity == null) {
-                    return;
-                }
-                final Header encoding = entity.getContentEncoding();
-                if (encoding != null) {
-                    for (HeaderElement element : encoding.getElements()) {
-                        if (element.getName().equalsIgnoreCase(ENCODING_GZIP)) {
-                            response.setEntity(new InflatingEntity(response
-                                    .getEntity()));
-                            break;
-                        }
-                    }
-                }
-            }
-        });
         mHttpContext = new SyncBasicHttpContext(new BasicHttpContext());
+        // httpclient是所有应用共享的，cookie必须保存在每个worker自己的context中，不能使用httpclient默认的cookie store
+        mHttpContext.setAttribute(ClientContext.COOKIE_STORE,
+                new BasicCookieStore());
     }
 
     /**
@@ -299,16 +217,16 @@ public class XHttpWorker {
     }
 
     /**
-     * 取消请求
+     * 取消请求，排队中的请求直接移除，正在执行的请求中断网络读写
      *
      * @param mayInterruptIfRunning
      */
     public void cancelRequest(boolean mayInterruptIfRunning) {
-        for (WeakReference<Future<?>> requestRef : mRequestList) {
-            Future<?> request = requestRef.get();
-            if (request != null) {
-                request.cancel(mayInterruptIfRunning);
+        synchronized (mRequestList) {
+            for (XHttpEngine.Call call : mRequestList) {
+                call.cancel();
             }
+            mRequestList.clear();
         }
     }
 
@@ -335,13 +253,25 @@ public class XHttpWorker {
         if (contentType != null) {
             request.addHeader("Content-Type", contentType);
         }
+        for (String header : mClientHeaderMap.keySet()) {
+            request.addHeader(header, mClientHeaderMap.get(header));
+        }
+        XHttpEngine engine = XHttpEngine.getInstance();
+        XAsyncHttpRequest task = new XAsyncHttpRequest(engine.getHttpClient(),
+                mHttpContext, request, handler, mCache);
         if (handler.isAsync()) {
-            Future<?> task = mThreadPool.submit(new XAsyncHttpRequest(
-                    mHttpClient, mHttpContext, request, handler));
-            mRequestList.add(new WeakReference<Future<?>>(task));
+            XHttpEngine.Call call = engine.enqueue(task, mPriority);
+            synchronized (mRequestList) {
+                Iterator<XHttpEngine.Call> iter = mRequestList.iterator();
+                while (iter.hasNext()) {
+                    if (iter.next().isDone()) {
+                        iter.remove();
+                    }
+                }
+                mRequestList.add(call);
+            }
         } else {
-            new XAsyncHttpRequest(mHttpClient, mHttpContext, request, handler)
-                    .run();
+            engine.execute(task, mPriority);
         }
 
     }
@@ -362,6 +292,23 @@ public class XHttpWorker {
         return requestBase;
     }
 
+    /**
+     * 设置响应缓存，GET请求会优先使用缓存中有效的响应
+     *
+     * @param cache
+     *            为null时不使用缓存
+     */
+    public void setCache(XHttpCache cache) {
+        mCache = cache;
+    }
+
+    /**
+     * 设置之后提交的请求的优先级，默认为交互请求
+     */
+    public void setPriority(XHttpEngine.Priority priority) {
+        mPriority = priority;
+    }
+
     /**
      * 设置头部 这些头部会被增加所有的http请求中
      *
@@ -380,6 +327,13 @@ public class XHttpWorker {
      * @return
      */
     public static boolean isServerAccessable(String url) {
+        synchronized (sAccessableServers) {
+            Long checked = sAccessableServers.get(url);
+            if (null != checked
+                    && System.currentTimeMillis() - checked.longValue() < SERVER_ACCESSABLE_CACHE_TIME) {
+                return true;
+            }
+        }
         boolean usable = false;
         try {
             URL urlCon = new URL(url);
@@ -389,6 +343,10 @@ public class XHttpWorker {
             httpUrl.setReadTimeout(SERVER_CONNECT_TIMEOUT);
             if (httpUrl.getResponseCode() == HttpURLConnection.HTTP_OK) {
                 usable = true;
+                synchronized (sAccessableServers) {
+                    sAccessableServers.put(url,
+                            Long.valueOf(System.currentTimeMillis()));
+                }
                 return usable;
             }
         } catch (IOException e) {
@@ -398,25 +356,6 @@ public class XHttpWorker {
         return usable;
     }
 
-    /**
-     * 对于gzip数据客户端需要解压
-     */
-    private static class InflatingEntity extends HttpEntityWrapper {
-        public InflatingEntity(HttpEntity wrapped) {
-            super(wrapped);
-        }
-
-        @Override
-        public InputStream getContent() throws IOException {
-            return new GZIPInputStream(wrappedEntity.getContent());
-        }
-
-        @Override
-        public long getContentLength() {
-            return -1;
-        }
-    }
-
     /**
      * 检查url的合法性
      * @param url:要检测的url
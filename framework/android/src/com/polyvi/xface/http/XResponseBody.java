@@ -0,0 +1,144 @@
+
+/*
+ Copyright 2012-2013, Polyvi Inc. (http://polyvi.github.io/openxface)
+ This program is distributed under the terms of the GNU General Public License.
+
+ This file is part of xFace.
+
+ xFace is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ xFace is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with xFace.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.polyvi.xface.http;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * http响应体缓冲区
+ * 响应体不超过内存上限时保存在内存中，超过上限后已接收的数据和之后的数据都写入临时文件
+ */
+public class XResponseBody {
+
+    /** 保存在内存中的响应体的上限 */
+    public static final int MAX_MEMORY_SIZE = 4 * 1024 * 1024;
+
+    private static final String SPILL_FILE_PREFIX = "xhr";
+    private static final String SPILL_FILE_SUFFIX = ".tmp";
+
+    /** 临时文件所在的目录 */
+    private final File mSpillDir;
+
+    private ByteArrayOutputStream mMemory = new ByteArrayOutputStream();
+    private File mFile;
+    private OutputStream mFileStream;
+
+    /** 是否已经释放，释放后不再接收数据 */
+    private boolean mReleased;
+
+    /**
+     * @param spillDir
+     *            响应体过大时临时文件所在的目录，为null时全部保存在内存中
+     */
+    public XResponseBody(File spillDir) {
+        mSpillDir = spillDir;
+    }
+
+    /**
+     * 追加一块数据
+     *
+     * @return 已经释放时丢弃数据并返回false，例如请求被中止时仍在读取的数据
+     */
+    public synchronized boolean write(byte[] buffer, int length) throws IOException {
+        if (mReleased) {
+            return false;
+        }
+        if (null == mFileStream && null != mSpillDir
+                && mMemory.size() + length > MAX_MEMORY_SIZE) {
+            spill();
+        }
+        if (null != mFileStream) {
+            mFileStream.write(buffer, 0, length);
+        } else {
+            mMemory.write(buffer, 0, length);
+        }
+        return true;
+    }
+
+    /**
+     * 数据接收完毕，关闭临时文件
+     */
+    public synchronized void finish() throws IOException {
+        if (null != mFileStream) {
+            mFileStream.close();
+            mFileStream = null;
+        }
+    }
+
+    /**
+     * 响应体是否已经写入临时文件
+     */
+    public synchronized boolean isSpilled() {
+        return null != mFile;
+    }
+
+    /**
+     * 获取临时文件，响应体在内存中时返回null
+     */
+    public synchronized File getFile() {
+        return mFile;
+    }
+
+    public synchronized byte[] toByteArray() {
+        return mMemory.toByteArray();
+    }
+
+    public synchronized String toString(String charset) throws IOException {
+        return mMemory.toString(charset);
+    }
+
+    /**
+     * 释放内存并删除临时文件
+     */
+    public synchronized void release() {
+        mReleased = true;
+        mMemory = new ByteArrayOutputStream();
+        if (null != mFileStream) {
+            try {
+                mFileStream.close();
+            } catch (IOException e) {
+                // 临时文件马上会被删除，忽略关闭失败
+            }
+            mFileStream = null;
+        }
+        if (null != mFile) {
+            mFile.delete();
+            mFile = null;
+        }
+    }
+
+    private void spill() throws IOException {
+        if (!mSpillDir.exists() && !mSpillDir.mkdirs()) {
+            throw new IOException("Cannot create " + mSpillDir);
+        }
+        mFile = File.createTempFile(SPILL_FILE_PREFIX, SPILL_FILE_SUFFIX,
+                mSpillDir);
+        mFileStream = new BufferedOutputStream(new FileOutputStream(mFile));
+        mMemory.writeTo(mFileStream);
+        mMemory = new ByteArrayOutputStream();
+    }
+}
@@ -22,12 +22,10 @@
 package com.polyvi.xface.util;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 
 import android.content.Context;
 import android.content.Intent;
@@ -73,35 +71,35 @@ public class XAppUtils {
     public static XAppInfo getAppInfoFromAppPackage(String appPackagePath) {
         XAppInfo appInfo = null;
         File zipFile = new File(appPackagePath);
-        InputStream is = null;
-        try {
-            is = new FileInputStream(zipFile);
-            ZipInputStream zis = new ZipInputStream(is);
-            ZipEntry entry = null;
-            while ((entry = zis.getNextEntry()) != null) {
-                if (entry.isDirectory()) {
-                    continue;
-                } else if (XConstant.APP_CONFIG_FILE_NAME.equals(entry
-                        .getName())) {
-                    XAbstractAppConfigParser appConfigParser = XXmlOperatorFactory
-                            .createAppConfigParser();
-                    appConfigParser.setInput(zis);
-                    if (null != appConfigParser) {
-                        appInfo = appConfigParser.parseConfig();
-                    }
-                    break;
-                }
-            }
-            zis.close();
-            is.close();
-        } catch (FileNotFoundException e) {
+        if (!zipFile.exists()) {
             XLog.e(CLASS_NAME, "The zip file: " + appPackagePath
                     + "does not exist!");
-            e.printStackTrace();
             return null;
+        }
+        // 通过zip的中央目录直接定位配置文件，不需要解压之前的条目
+        ZipFile zip = null;
+        try {
+            zip = new ZipFile(zipFile);
+            ZipEntry entry = zip.getEntry(XConstant.APP_CONFIG_FILE_NAME);
+            if (null != entry && !entry.isDirectory()) {
+                InputStream is = zip.getInputStream(entry);
+                XAbstractAppConfigParser appConfigParser = XXmlOperatorFactory
+                        .createAppConfigParser();
+                appConfigParser.setInput(is);
+                appInfo = appConfigParser.parseConfig();
+                is.close();
+            }
         } catch (IOException e) {
             XLog.e(CLASS_NAME, "IOException in reading zip file!");
             e.printStackTrace();
+        } finally {
+            if (null != zip) {
+                try {
+                    zip.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
         }
         return appInfo;
     }
@@ -0,0 +1,336 @@
+
+/*
+ Copyright 2012-2013, Polyvi Inc. (http://polyvi.github.io/openxface)
+ This program is distributed under the terms of the GNU General Public License.
+
+ This file is part of xFace.
+
+ xFace is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ xFace is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with xFace.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.polyvi.xface.util;
+
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import android.util.Log;
+
+/**
+ * 异步log，调用线程只把log的原始参数放入预先分配的环形缓冲区，
+ * 拼接类名、String.format格式化以及写入各个{@link XLogSink}都在后台的log写线程中进行，
+ * 写线程每次取出一批log，全部写完后每个输出目标只flush一次
+ * 缓冲区满时丢弃新的log并计数，不会阻塞调用线程，丢弃的数量由写线程以WARN输出
+ * 格式化和输出目标的异常都在写线程中捕获，写线程意外退出时由下一条log重新启动
+ */
+final class XAsyncLogger implements Runnable {
+
+    private static final String CLASS_NAME = XAsyncLogger.class
+            .getSimpleName();
+
+    /** 环形缓冲区的默认容量 */
+    static final int DEFAULT_CAPACITY = 1024;
+
+    /** 写线程每批最多取出的log数 */
+    private static final int BATCH_SIZE = 64;
+
+    /** 关闭时等待写线程输出剩余log的最长时间(毫秒) */
+    private static final long CLOSE_TIMEOUT = 1000;
+
+    private static final String THREAD_NAME = "xface-log";
+
+    private final CopyOnWriteArrayList<XLogSink> mSinks = new CopyOnWriteArrayList<XLogSink>();
+
+    /** 环形缓冲区，以下字段都由this保护 */
+    private final Record[] mSlots;
+    private int mHead;
+    private int mCount;
+    private long mDropped;
+    private boolean mClosed;
+    private Thread mThread;
+
+    /** 写线程当前处理的一批log，和缓冲区交换槽位，不需要复制 */
+    private final Record[] mBatch = new Record[BATCH_SIZE];
+
+    /** 写线程已经报告过的丢弃数 */
+    private long mReportedDropped;
+
+    XAsyncLogger(int capacity) {
+        mSlots = new Record[capacity];
+        for (int i = 0; i < capacity; i++) {
+            mSlots[i] = new Record();
+        }
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            mBatch[i] = new Record();
+        }
+    }
+
+    void addSink(XLogSink sink) {
+        mSinks.addIfAbsent(sink);
+    }
+
+    void removeSink(XLogSink sink) {
+        mSinks.remove(sink);
+    }
+
+    /**
+     * 将一条log放入缓冲区，不做任何格式化
+     *
+     * @param level
+     *            log等级
+     * @param tag
+     *            log信息的tag名称
+     * @param className
+     *            打印log的类名，为null时不拼接类名
+     * @param message
+     *            log信息，args不为null时作为格式串
+     * @param args
+     *            格式化参数，可以为null
+     * @param tr
+     *            需要输出调用栈的异常，可以为null
+     * @return 已经关闭返回false；缓冲区满时丢弃该log，仍然返回true
+     */
+    boolean offer(int level, String tag, String className, String message,
+            Object[] args, Throwable tr) {
+        synchronized (this) {
+            if (mClosed) {
+                return false;
+            }
+            if (mCount == mSlots.length) {
+                mDropped++;
+                return true;
+            }
+            // 在锁内取时间，保证缓冲区中log的时间是递增的
+            mSlots[(mHead + mCount) % mSlots.length].set(level, tag,
+                    className, message, args, tr, System.currentTimeMillis());
+            if (0 == mCount++) {
+                notify();
+            }
+            if (null == mThread) {
+                startThread();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 启动写线程，调用时必须持有this的锁
+     */
+    private void startThread() {
+        mThread = new Thread(this, THREAD_NAME);
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * 被丢弃的log总数
+     */
+    synchronized long getDroppedCount() {
+        return mDropped;
+    }
+
+    /**
+     * 关闭log，等待写线程输出缓冲区中剩余的log后关闭所有输出目标
+     * 关闭之后{@link #offer}返回false
+     */
+    void close() {
+        Thread thread;
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            notify();
+            thread = mThread;
+        }
+        if (null == thread) {
+            closeSinks();
+            return;
+        }
+        try {
+            thread.join(CLOSE_TIMEOUT);
+            Thread next;
+            synchronized (this) {
+                next = mThread;
+            }
+            if (next != thread) {
+                // 关闭前写线程意外退出过
+                if (null == next) {
+                    closeSinks();
+                } else {
+                    next.join(CLOSE_TIMEOUT);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            drain();
+        } catch (Throwable e) {
+            Log.e(XLog.TAG_NAME, " [" + CLASS_NAME + "] log thread died", e);
+            synchronized (this) {
+                if (!mClosed) {
+                    // 还有log时立即重新启动写线程，否则由下一条log启动
+                    mThread = null;
+                    if (mCount > 0) {
+                        startThread();
+                    }
+                    return;
+                }
+            }
+        }
+        closeSinks();
+    }
+
+    /**
+     * 不断取出缓冲区中的log写入各个输出目标，关闭并且缓冲区为空时返回
+     */
+    private void drain() {
+        while (true) {
+            int n;
+            long dropped;
+            synchronized (this) {
+                while (0 == mCount && !mClosed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // 继续等待，只有关闭才退出
+                    }
+                }
+                if (0 == mCount) {
+                    break;
+                }
+                n = Math.min(mCount, BATCH_SIZE);
+                for (int i = 0; i < n; i++) {
+                    Record r = mSlots[mHead];
+                    mSlots[mHead] = mBatch[i];
+                    mBatch[i] = r;
+                    mHead = (mHead + 1) % mSlots.length;
+                }
+                mCount -= n;
+                dropped = mDropped;
+            }
+            if (dropped != mReportedDropped) {
+                // 使用本批第一条log的时间，保持输出的时间递增
+                dispatch(Log.WARN, XLog.TAG_NAME, CLASS_NAME, mBatch[0].mTime,
+                        " [" + CLASS_NAME + "] "
+                                + (dropped - mReportedDropped)
+                                + " log messages dropped");
+                mReportedDropped = dropped;
+            }
+            for (int i = 0; i < n; i++) {
+                Record r = mBatch[i];
+                String message;
+                try {
+                    message = r.format();
+                } catch (RuntimeException e) {
+                    // 参数的toString等抛出异常时只输出原始信息
+                    message = format(r.mClassName, String.valueOf(r.mMessage),
+                            null, null);
+                    Log.e(XLog.TAG_NAME, " [" + CLASS_NAME + "] format failed", e);
+                }
+                dispatch(r.mLevel, r.mTag, r.mClassName, r.mTime, message);
+                r.clear();
+            }
+            for (XLogSink sink : mSinks) {
+                try {
+                    sink.flush();
+                } catch (RuntimeException e) {
+                    Log.e(XLog.TAG_NAME, " [" + CLASS_NAME + "] flush failed", e);
+                }
+            }
+        }
+    }
+
+    private void dispatch(int level, String tag, String className, long time,
+            String message) {
+        for (XLogSink sink : mSinks) {
+            try {
+                sink.write(level, tag, className, time, message);
+            } catch (RuntimeException e) {
+                // 一个输出目标出错不影响其他目标和写线程
+                Log.e(XLog.TAG_NAME, " [" + CLASS_NAME + "] write failed", e);
+            }
+        }
+    }
+
+    private void closeSinks() {
+        for (XLogSink sink : mSinks) {
+            try {
+                sink.close();
+            } catch (RuntimeException e) {
+                Log.e(XLog.TAG_NAME, " [" + CLASS_NAME + "] close failed", e);
+            }
+        }
+    }
+
+    /**
+     * 格式化一条log：按照args格式化，拼接类名，附加异常的调用栈
+     */
+    static String format(String className, String message, Object[] args,
+            Throwable tr) {
+        if (null != args) {
+            try {
+                message = String.format(message, args);
+            } catch (RuntimeException e) {
+                message = message + " " + Arrays.toString(args);
+            }
+        }
+        if (null != className) {
+            message = " [" + className + "] " + message;
+        }
+        if (null != tr) {
+            message = message + "\n" + Log.getStackTraceString(tr);
+        }
+        return message;
+    }
+
+    /**
+     * 缓冲区中的一条log，只保存原始参数，由写线程格式化
+     */
+    private static class Record {
+        int mLevel;
+        String mTag;
+        String mClassName;
+        String mMessage;
+        Object[] mArgs;
+        Throwable mThrowable;
+        long mTime;
+
+        void set(int level, String tag, String className, String message,
+                Object[] args, Throwable tr, long time) {
+            mLevel = level;
+            mTag = tag;
+            mClassName = className;
+            mMessage = message;
+            mArgs = args;
+            mThrowable = tr;
+            mTime = time;
+        }
+
+        /**
+         * 释放引用的对象，避免缓冲区长时间持有调用方的参数
+         */
+        void clear() {
+            set(0, null, null, null, null, null, 0);
+        }
+
+        String format() {
+            return XAsyncLogger.format(mClassName, mMessage, mArgs, mThrowable);
+        }
+    }
+}
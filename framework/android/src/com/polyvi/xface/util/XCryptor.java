@@ -21,10 +21,16 @@
 
 package com.polyvi.xface.util;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.KeyFactory;
@@ -36,7 +42,10 @@ import java.security.interfaces.RSAPublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
 import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.AlgorithmParameterSpec;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -78,6 +87,50 @@ public class XCryptor {
     private static final String CRYPTION_ERROR = "Error:cryption error";
     private static final String OUT_OF_MEMORY_ERROR = "Error:out of memory error";
 
+    /** 文件流式加解密时每次读取的长度 */
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    /** 缓存的加解密上下文的最大数量 */
+    private static final int MAX_CACHED_CONTEXTS = 32;
+
+    /** 计算密钥指纹的摘要算法 */
+    private static final String KEY_FINGERPRINT_ALGORITHM = "SHA-1";
+
+    /**
+     * 加解密上下文的缓存，key为算法和密钥指纹，所有XCryptor实例共享
+     * 避免每次加解密都查找provider、解析密钥
+     */
+    private static final Map<String, CryptContext> sContextCache = new LinkedHashMap<String, CryptContext>(
+            16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CryptContext> eldest) {
+            return size() > MAX_CACHED_CONTEXTS;
+        }
+    };
+
+    /** 每个线程计算密钥指纹的摘要实例 */
+    private static final ThreadLocal<MessageDigest> sKeyDigest = new ThreadLocal<MessageDigest>();
+
+    /** 加解密文件时写入的临时文件的后缀，完成后重命名为目标文件 */
+    private static final String TEMP_FILE_SUFFIX = ".crypt.tmp";
+
+    /**
+     * 文件加解密的进度监听器
+     */
+    public interface XCryptListener {
+        /**
+         * 加解密进度改变，在加解密的线程中调用
+         *
+         * @param processed
+         *            已经处理的源文件字节数
+         * @param total
+         *            源文件的总字节数
+         */
+        void onProgress(long processed, long total);
+    }
+
     /**
      * md5算法
      *
@@ -192,16 +245,11 @@ public class XCryptor {
             throw new IllegalArgumentException();
         }
         byte[] encryptData = null;
+        CryptContext context = null;
+        boolean success = false;
         try {
-            X509EncodedKeySpec x509KeySpec = new X509EncodedKeySpec(publicKey);
-            KeyFactory keyFactory = KeyFactory.getInstance(RSA_ALGORITHM);
-            RSAPublicKey pubKey = (RSAPublicKey) keyFactory
-                    .generatePublic(x509KeySpec);
-            Cipher cipher = Cipher.getInstance(RSA_ALGORITHM);
-            if (null == cipher) {
-                throw new XCryptionException(CRYPTION_ERROR);
-            }
-            cipher.init(Cipher.ENCRYPT_MODE, pubKey);
+            context = getRSAContext(publicKey, true);
+            Cipher cipher = context.getCipher(Cipher.ENCRYPT_MODE);
             ByteBuffer rawBuffer = ByteBuffer.wrap(data);
             ByteBuffer encryptBuffer = ByteBuffer.allocate(data.length * 4);
             // 由于cipher.doFinal方法对加密的数组长度有要求，不能超过100位，故采取分段解密的方法
@@ -224,6 +272,7 @@ public class XCryptor {
             encryptData = new byte[encryptDataLen];
             encryptBuffer.position(0);
             encryptBuffer.get(encryptData, 0, encryptDataLen);
+            success = true;
         } catch (NoSuchAlgorithmException e) {
             XLog.e(CLASS_NAME, "encryptRSA : NoSuchAlgorithmException!");
             e.printStackTrace();
@@ -248,6 +297,14 @@ public class XCryptor {
             XLog.e(CLASS_NAME, "encryptRSA : NoSuchPaddingException!");
             e.printStackTrace();
             throw new XCryptionException(CRYPTION_ERROR);
+        } catch (GeneralSecurityException e) {
+            XLog.e(CLASS_NAME, "encryptRSA : GeneralSecurityException!");
+            e.printStackTrace();
+            throw new XCryptionException(CRYPTION_ERROR);
+        } finally {
+            if (!success && null != context) {
+                context.discardCipher(Cipher.ENCRYPT_MODE);
+            }
         }
         return encryptData;
     }
@@ -267,17 +324,11 @@ public class XCryptor {
             throw new IllegalArgumentException();
         }
         byte[] decryptData = null;
+        CryptContext context = null;
+        boolean success = false;
         try {
-            PKCS8EncodedKeySpec pkcs8KeySpec = new PKCS8EncodedKeySpec(
-                    privateKey);
-            KeyFactory keyFactory = KeyFactory.getInstance(RSA_ALGORITHM);
-            RSAPrivateKey priKey = (RSAPrivateKey) keyFactory
-                    .generatePrivate(pkcs8KeySpec);
-            Cipher cipher = instanceOfCipher(priKey);
-            if (null == cipher) {
-                throw new XCryptionException(CRYPTION_ERROR);
-            }
-            cipher.init(Cipher.ENCRYPT_MODE, priKey);
+            context = getRSAContext(privateKey, false);
+            Cipher cipher = context.getCipher(Cipher.ENCRYPT_MODE);
             ByteBuffer encryptBuffer = ByteBuffer.wrap(data);
             ByteBuffer decryptBuffer = ByteBuffer.allocate(data.length * 2);
             byte[] encryptPart = new byte[DECRYPT_PART_LENGTH];
@@ -298,6 +349,7 @@ public class XCryptor {
             }
             // 由于android平台doFinal方法问题，需要对生成出来的数组进行特殊处理
             decryptData = handleDoFinalBytes(decryptBuffer, decryptDataLen);
+            success = true;
         } catch (NoSuchAlgorithmException e) {
             XLog.e(CLASS_NAME, "decryptRAS : NoSuchAlgorithmException!");
             e.printStackTrace();
@@ -318,6 +370,14 @@ public class XCryptor {
             XLog.e(CLASS_NAME, "decryptRAS : BadPaddingException!");
             e.printStackTrace();
             throw new XCryptionException(CRYPTION_ERROR);
+        } catch (GeneralSecurityException e) {
+            XLog.e(CLASS_NAME, "decryptRAS : GeneralSecurityException!");
+            e.printStackTrace();
+            throw new XCryptionException(CRYPTION_ERROR);
+        } finally {
+            if (!success && null != context) {
+                context.discardCipher(Cipher.ENCRYPT_MODE);
+            }
         }
         return decryptData;
     }
@@ -440,11 +500,8 @@ public class XCryptor {
      */
     public byte[] encryptBytesForAES(byte[] byteContent, String key) {
         try {
-            SecretKeySpec secretKeySpec = initKeyForAES(key);
-            Cipher cipher = Cipher.getInstance(AES_ALGORITHM);// 创建密码器
-            cipher.init(Cipher.ENCRYPT_MODE, secretKeySpec);// 初始化
-            byte[] result = cipher.doFinal(byteContent);
-            return result;
+            return doFinal(getAESContext(key), Cipher.ENCRYPT_MODE,
+                    byteContent);
         } catch (Exception e) {
             e.printStackTrace();
             XLog.d(CLASS_NAME, e.getMessage());
@@ -462,15 +519,7 @@ public class XCryptor {
      * @return 成功返回true，失败返回false
      */
     public Boolean encryptFileForAES(String filePath, String key) {
-        byte[] contentBytes = XFileUtils.readBytesFromFile(filePath);
-        if (null == contentBytes) {
-            return false;
-        }
-        byte[] encryptContent = encryptBytesForAES(contentBytes, key);
-        if (null == encryptContent) {
-            return false;
-        }
-        return XFileUtils.writeFileByByte(filePath, encryptContent);
+        return cryptFileForAES(filePath, key, Cipher.ENCRYPT_MODE);
     }
 
     /**
@@ -484,11 +533,7 @@ public class XCryptor {
      */
     public byte[] decryptBytesForAES(byte[] content, String key) {
         try {
-            SecretKeySpec secretKeySpec = initKeyForAES(key);
-            Cipher cipher = Cipher.getInstance(AES_ALGORITHM);// 创建密码器
-            cipher.init(Cipher.DECRYPT_MODE, secretKeySpec);// 初始化
-            byte[] result = cipher.doFinal(content);
-            return result; // 解密
+            return doFinal(getAESContext(key), Cipher.DECRYPT_MODE, content);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -508,12 +553,21 @@ public class XCryptor {
         if (null == key) {
             return false;
         }
-        byte[] encryptContent = XFileUtils.readBytesFromFile(filePath);
-        byte[] fileContent = decryptBytesForAES(encryptContent, key);
-        if (null == encryptContent || null == fileContent) {
-            return false;
+        return cryptFileForAES(filePath, key, Cipher.DECRYPT_MODE);
+    }
+
+    /**
+     * 流式地对文件进行AES加解密，结果写回原文件
+     */
+    private boolean cryptFileForAES(String filePath, String key, int mode) {
+        try {
+            cryptFile(getAESContext(key), mode, filePath, filePath, null, null,
+                    null);
+            return true;
+        } catch (Exception e) {
+            XLog.e(CLASS_NAME, CRYPTION_ERROR + ": " + e.getMessage());
         }
-        return XFileUtils.writeFileByString(filePath, new String(fileContent));
+        return false;
     }
 
     /**
@@ -545,8 +599,23 @@ public class XCryptor {
     public boolean encryptFileForDES(byte[] key, String sourceFilePath,
             String targetFilePath) throws NullPointerException,
             XCryptionException {
+        return encryptFileForDES(key, sourceFilePath, targetFilePath, null);
+    }
+
+    /**
+     * 通过DES算法对文件加密，并通知加密进度
+     *
+     * @param listener
+     *            进度监听器，可以为null
+     * @return 成功返回true，失败返回false
+     * @throws XCryptionException
+     * @throws NullPointerException
+     */
+    public boolean encryptFileForDES(byte[] key, String sourceFilePath,
+            String targetFilePath, XCryptListener listener)
+            throws NullPointerException, XCryptionException {
         return cryptFile(DES_ALGORITHM, DES_ALGORITHM, key, sourceFilePath,
-                targetFilePath, true);
+                targetFilePath, true, listener);
     }
 
     /**
@@ -578,8 +647,23 @@ public class XCryptor {
     public boolean decryptFileForDES(byte[] key, String sourceFilePath,
             String targetFilePath) throws NullPointerException,
             XCryptionException {
+        return decryptFileForDES(key, sourceFilePath, targetFilePath, null);
+    }
+
+    /**
+     * 通过DES算法对文件解密，并通知解密进度
+     *
+     * @param listener
+     *            进度监听器，可以为null
+     * @return 成功返回true，失败返回false
+     * @throws XCryptionException
+     * @throws NullPointerException
+     */
+    public boolean decryptFileForDES(byte[] key, String sourceFilePath,
+            String targetFilePath, XCryptListener listener)
+            throws NullPointerException, XCryptionException {
         return cryptFile(DES_ALGORITHM, DES_ALGORITHM, key, sourceFilePath,
-                targetFilePath, false);
+                targetFilePath, false, listener);
     }
 
     /**
@@ -637,14 +721,11 @@ public class XCryptor {
             XLog.e(CLASS_NAME, DATA_EMPTY_ERROR);
             throw new NullPointerException(DATA_EMPTY_ERROR);
         }
+        CryptContext context = prepareConvertion(cryptAlogrithem,
+                keyAlogrithem, sKey);
         try {
-            Cipher cipher = prepareConvertion(cryptAlogrithem, keyAlogrithem,
-                    sKey, isEncrypt ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE);
-            if (null == cipher) {
-                XLog.e(CLASS_NAME, CRYPTION_ERROR);
-                throw new XCryptionException(CRYPTION_ERROR);
-            }
-            return cipher.doFinal(content);
+            return doFinal(context, isEncrypt ? Cipher.ENCRYPT_MODE
+                    : Cipher.DECRYPT_MODE, content);
         } catch (Exception e) {
             XLog.e(CLASS_NAME, CRYPTION_ERROR);
             throw new XCryptionException(CRYPTION_ERROR);
@@ -656,6 +737,7 @@ public class XCryptor {
 
     /**
      * 对称加解密文件操作并返回操作后的文件绝对路径
+     * 文件按块流式处理，内存占用与文件大小无关
      *
      * @param sKey
      *            密钥
@@ -665,77 +747,325 @@ public class XCryptor {
      *            经过解密得到的文件的绝对路径
      * @param isEncrypt
      *            标示加密还是解密，true：加密，false：解密。
+     * @param listener
+     *            进度监听器，可以为null
      * @return 解密后文件的绝对路径
      */
     private boolean cryptFile(String cryptAlogrithem, String keyAlogrithem,
             byte[] sKey, String sourceFilePath, String targetFilePath,
-            boolean isEncrypt) throws NullPointerException, XCryptionException {
+            boolean isEncrypt, XCryptListener listener)
+            throws NullPointerException, XCryptionException {
         // 检查要加解密的key为空
         if (null == sKey || XStringUtils.isEmptyString(new String(sKey))) {
             XLog.e(CLASS_NAME, KEY_EMPTY_ERROR);
             throw new NullPointerException(KEY_EMPTY_ERROR);
         }
+        CryptContext context = prepareConvertion(cryptAlogrithem,
+                keyAlogrithem, sKey);
         try {
-            // 从解密前文件读入数据到缓冲区
-            byte[] inOutb = XFileUtils.readBytesFromFile(sourceFilePath);
             // TODO:目前为了和服务器兼容，文件加解密有base64转码操作，以后考虑去掉。
-            if (!isEncrypt) {
-                inOutb = XBase64.decode(inOutb, XBase64.NO_WRAP);
-            }
-            // 解密缓冲区数据
-            byte[] result = cryptBytes(cryptAlogrithem, keyAlogrithem, inOutb,
-                    sKey, isEncrypt);
-            if (isEncrypt) {
-                result = XBase64.encode(result, XBase64.NO_WRAP);
-            }
-            // 把缓冲区数据写入解密后文件
-            return XFileUtils.writeFileByByte(targetFilePath, result);
+            XBase64.Coder decoder = isEncrypt ? null : new XBase64.Decoder(
+                    XBase64.NO_WRAP, null);
+            XBase64.Coder encoder = isEncrypt ? new XBase64.Encoder(
+                    XBase64.NO_WRAP, null) : null;
+            cryptFile(context, isEncrypt ? Cipher.ENCRYPT_MODE
+                    : Cipher.DECRYPT_MODE, sourceFilePath, targetFilePath,
+                    decoder, encoder, listener);
+            return true;
         } catch (Exception e) {
-            XLog.e(CLASS_NAME, CRYPTION_ERROR);
-            throw new XCryptionException(CRYPTION_ERROR);
-        } catch (OutOfMemoryError e) {
-            XLog.e(CLASS_NAME, OUT_OF_MEMORY_ERROR);
+            XLog.e(CLASS_NAME, CRYPTION_ERROR + ": " + e.getMessage());
             throw new XCryptionException(CRYPTION_ERROR);
         }
     }
 
     /**
-     * 为加解密转换做准备
+     * 流式加解密文件，先写入临时文件，成功后再重命名为目标文件，源文件和目标文件可以相同
      *
-     * @param sKey
-     *            密钥
+     * @param context
+     *            加解密上下文
      * @param mode
      *            加解密的模式：ENCRYPT_MODE 和 DECRYPT_MODE
-     * @return Cipher
+     * @param decoder
+     *            读入数据的base64解码器，为null时不解码
+     * @param encoder
+     *            写出数据的base64编码器，为null时不编码
+     * @param listener
+     *            进度监听器，可以为null
      */
-    private Cipher prepareConvertion(String cryptAlogrithem,
-            String keyAlogrithem, byte[] sKey, int mode)
-            throws XCryptionException {
+    private void cryptFile(CryptContext context, int mode,
+            String sourceFilePath, String targetFilePath,
+            XBase64.Coder decoder, XBase64.Coder encoder,
+            XCryptListener listener) throws IOException,
+            GeneralSecurityException {
+        Cipher cipher = context.getCipher(mode);
+        File source = new File(sourceFilePath);
+        File target = new File(targetFilePath);
+        File temp = new File(targetFilePath + TEMP_FILE_SUFFIX);
+        InputStream in = new FileInputStream(source);
+        boolean done = false;
+        try {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(
+                    temp), STREAM_BUFFER_SIZE);
+            try {
+                cryptStream(cipher, in, out, decoder, encoder, source.length(),
+                        listener);
+            } finally {
+                out.close();
+            }
+            done = true;
+        } finally {
+            in.close();
+            if (!done) {
+                // 中途失败的Cipher状态不确定，不再复用
+                context.discardCipher(mode);
+                temp.delete();
+            }
+        }
+        target.delete();
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("rename " + temp.getAbsolutePath()
+                    + " failed");
+        }
+    }
+    /**
+     * 按块读取输入流，依次经过解码、加解密、编码后写入输出流，各级缓冲区只在块变大时重新分配
+     */
+    private void cryptStream(Cipher cipher, InputStream in, OutputStream out,
+            XBase64.Coder decoder, XBase64.Coder encoder, long total,
+            XCryptListener listener) throws IOException,
+            GeneralSecurityException {
+        byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+        byte[] cipherOut = new byte[0];
+        long processed = 0;
+        int len;
+        while (-1 != (len = in.read(buffer))) {
+            byte[] data = buffer;
+            int dataLen = len;
+            if (null != decoder) {
+                data = decode(decoder, buffer, len, false);
+                dataLen = decoder.op;
+            }
+            cipherOut = ensureCapacity(cipherOut, cipher.getOutputSize(dataLen));
+            int outLen = cipher.update(data, 0, dataLen, cipherOut);
+            write(encoder, cipherOut, outLen, false, out);
+            processed += len;
+            if (null != listener) {
+                listener.onProgress(processed, total);
+            }
+        }
+        byte[] data = buffer;
+        int dataLen = 0;
+        if (null != decoder) {
+            data = decode(decoder, buffer, 0, true);
+            dataLen = decoder.op;
+        }
+        cipherOut = ensureCapacity(cipherOut, cipher.getOutputSize(dataLen));
+        int outLen = cipher.doFinal(data, 0, dataLen, cipherOut);
+        write(encoder, cipherOut, outLen, true, out);
+    }
+
+    private static byte[] decode(XBase64.Coder decoder, byte[] input, int len,
+            boolean finish) throws IOException {
+        decoder.output = ensureCapacity(decoder.output,
+                decoder.maxOutputSize(len));
+        if (!decoder.process(input, 0, len, finish)) {
+            throw new IOException("bad base-64");
+        }
+        return decoder.output;
+    }
+
+    private static void write(XBase64.Coder encoder, byte[] data, int len,
+            boolean finish, OutputStream out) throws IOException {
+        if (null == encoder) {
+            out.write(data, 0, len);
+            return;
+        }
+        encoder.output = ensureCapacity(encoder.output,
+                encoder.maxOutputSize(len));
+        encoder.process(data, 0, len, finish);
+        out.write(encoder.output, 0, encoder.op);
+    }
+
+    private static byte[] ensureCapacity(byte[] buffer, int size) {
+        return null != buffer && buffer.length >= size ? buffer
+                : new byte[size];
+    }
+
+    /**
+     * 为加解密转换做准备，获取缓存的加解密上下文
+     *
+     * @param sKey
+     *            密钥
+     * @return 加解密上下文
+     */
+    private CryptContext prepareConvertion(String cryptAlogrithem,
+            String keyAlogrithem, byte[] sKey) throws XCryptionException {
         // 检查要加解密的key为空
         if (null == sKey || XStringUtils.isEmptyString(new String(sKey))) {
             XLog.e(CLASS_NAME, KEY_EMPTY_ERROR);
             throw new NullPointerException(KEY_EMPTY_ERROR);
         }
-        Cipher cipher = null;
         try {
+            String cacheKey = cryptAlogrithem + ":" + fingerprint(sKey);
+            CryptContext context = getCachedContext(cacheKey);
+            if (null != context) {
+                return context;
+            }
             SecretKeyFactory keyFactory = SecretKeyFactory
                     .getInstance(keyAlogrithem);
-            byte[] keyData = sKey;
             KeySpec keySpec = keyAlogrithem == KEY_ALOGRITHEM ? new DESedeKeySpec(
-                    keyData) : new DESKeySpec(keyData);
+                    sKey) : new DESKeySpec(sKey);
             Key key = keyFactory.generateSecret(keySpec);
-            cipher = Cipher.getInstance(cryptAlogrithem);
-            if (keyAlogrithem == KEY_ALOGRITHEM) {
-                IvParameterSpec ivSpec = new IvParameterSpec(new byte[8]);
-                cipher.init(mode, key, ivSpec);
-            } else {
-                cipher.init(mode, key);
-            }
-
+            AlgorithmParameterSpec params = keyAlogrithem == KEY_ALOGRITHEM ? new IvParameterSpec(
+                    new byte[8]) : null;
+            return putCachedContext(cacheKey, new CryptContext(
+                    cryptAlogrithem, key, params));
         } catch (Exception e) {
             XLog.e(CLASS_NAME, CONVERTION_ERROR);
             throw new XCryptionException(CONVERTION_ERROR);
         }
-        return cipher;
+    }
+
+    /**
+     * 获取RSA公钥或私钥的加解密上下文
+     */
+    private CryptContext getRSAContext(byte[] keyData, boolean isPublic)
+            throws NoSuchAlgorithmException, InvalidKeySpecException {
+        String cacheKey = RSA_ALGORITHM + (isPublic ? "/public:" : "/private:")
+                + fingerprint(keyData);
+        CryptContext context = getCachedContext(cacheKey);
+        if (null != context) {
+            return context;
+        }
+        KeyFactory keyFactory = KeyFactory.getInstance(RSA_ALGORITHM);
+        Key key = isPublic ? (RSAPublicKey) keyFactory
+                .generatePublic(new X509EncodedKeySpec(keyData))
+                : (RSAPrivateKey) keyFactory
+                        .generatePrivate(new PKCS8EncodedKeySpec(keyData));
+        return putCachedContext(cacheKey, new CryptContext(RSA_ALGORITHM, key,
+                null));
+    }
+
+    /**
+     * 获取AES密钥的加解密上下文
+     */
+    private CryptContext getAESContext(String key)
+            throws NoSuchAlgorithmException {
+        if (null == key || key.length() == 0) {
+            throw new NullPointerException("key can't be null");
+        }
+        String cacheKey = AES_ALGORITHM + ":" + fingerprint(key.getBytes());
+        CryptContext context = getCachedContext(cacheKey);
+        if (null != context) {
+            return context;
+        }
+        return putCachedContext(cacheKey, new CryptContext(AES_ALGORITHM,
+                initKeyForAES(key), null));
+    }
+
+    /**
+     * 使用当前线程的Cipher一次完成加解密，失败时丢弃该Cipher
+     */
+    private byte[] doFinal(CryptContext context, int mode, byte[] content)
+            throws GeneralSecurityException {
+        Cipher cipher = context.getCipher(mode);
+        boolean success = false;
+        try {
+            byte[] result = cipher.doFinal(content);
+            success = true;
+            return result;
+        } finally {
+            if (!success) {
+                context.discardCipher(mode);
+            }
+        }
+    }
+
+    private static CryptContext getCachedContext(String cacheKey) {
+        synchronized (sContextCache) {
+            return sContextCache.get(cacheKey);
+        }
+    }
+
+    /**
+     * 缓存加解密上下文，其它线程已经缓存了相同的上下文时返回已缓存的
+     */
+    private static CryptContext putCachedContext(String cacheKey,
+            CryptContext context) {
+        synchronized (sContextCache) {
+            CryptContext cached = sContextCache.get(cacheKey);
+            if (null != cached) {
+                return cached;
+            }
+            sContextCache.put(cacheKey, context);
+            return context;
+        }
+    }
+
+    /**
+     * 计算密钥的指纹，缓存中不保存密钥的明文
+     */
+    private static String fingerprint(byte[] key)
+            throws NoSuchAlgorithmException {
+        MessageDigest digest = sKeyDigest.get();
+        if (null == digest) {
+            digest = MessageDigest.getInstance(KEY_FINGERPRINT_ALGORITHM);
+            sKeyDigest.set(digest);
+        }
+        return XStringUtils.hexEncode(digest.digest(key));
+    }
+
+    /**
+     * 一个算法和密钥对应的加解密上下文，密钥只解析一次
+     * Cipher不是线程安全的，每个线程每种模式使用各自已经初始化的Cipher；
+     * doFinal完成后Cipher恢复到初始化后的状态，可以直接复用
+     */
+    private static class CryptContext {
+        private final String mAlgorithm;
+        private final Key mKey;
+        private final AlgorithmParameterSpec mParams;
+
+        /** 当前线程的Cipher，下标0为加密，1为解密 */
+        private final ThreadLocal<Cipher[]> mCiphers = new ThreadLocal<Cipher[]>();
+
+        CryptContext(String algorithm, Key key, AlgorithmParameterSpec params) {
+            mAlgorithm = algorithm;
+            mKey = key;
+            mParams = params;
+        }
+
+        Cipher getCipher(int mode) throws GeneralSecurityException {
+            Cipher[] ciphers = mCiphers.get();
+            if (null == ciphers) {
+                ciphers = new Cipher[2];
+                mCiphers.set(ciphers);
+            }
+            int index = indexOf(mode);
+            if (null == ciphers[index]) {
+                Cipher cipher = Cipher.getInstance(mAlgorithm);
+                if (null == mParams) {
+                    cipher.init(mode, mKey);
+                } else {
+                    cipher.init(mode, mKey, mParams);
+                }
+                ciphers[index] = cipher;
+            }
+            return ciphers[index];
+        }
+
+        /**
+         * 丢弃当前线程的Cipher，用于加解密中途失败、Cipher状态不确定的情况
+         */
+        void discardCipher(int mode) {
+            Cipher[] ciphers = mCiphers.get();
+            if (null != ciphers) {
+                ciphers[indexOf(mode)] = null;
+            }
+        }
+
+        private static int indexOf(int mode) {
+            return Cipher.ENCRYPT_MODE == mode ? 0 : 1;
+        }
     }
 }
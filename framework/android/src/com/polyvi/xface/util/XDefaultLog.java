@@ -23,7 +23,7 @@ package com.polyvi.xface.util;
 
 import android.util.Log;
 
-public class XDefaultLog implements XILog {
+public class XDefaultLog implements XILog, XLogSink {
     /**
      * 以VERBOSE类型输出log等级高于xxLog的log信息.
      *
@@ -93,6 +93,16 @@ public class XDefaultLog implements XILog {
         Log.e(tag, s);
     }
 
+    @Override
+    public void write(int level, String tag, String className,
+            long time, String message) {
+        Log.println(level, tag, message);
+    }
+
+    @Override
+    public void flush() {
+    }
+
     /**
      * 关闭log
      */
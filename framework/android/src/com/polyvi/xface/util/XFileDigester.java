@@ -0,0 +1,196 @@
+
+/*
+ Copyright 2012-2013, Polyvi Inc. (http://polyvi.github.io/openxface)
+ This program is distributed under the terms of the GNU General Public License.
+
+ This file is part of xFace.
+
+ xFace is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ xFace is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with xFace.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.polyvi.xface.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 文件摘要计算，用于应用的完整性校验
+ * 每个文件以固定大小的缓冲区流式读入摘要，多个文件由共享的有界线程池并行计算
+ * 摘要用于防篡改校验，每次都重新读取文件计算，不缓存：文件的修改时间可以被恢复，
+ * 按照(路径, 大小, 修改时间)缓存的摘要不能发现被篡改的文件
+ */
+public class XFileDigester {
+
+    /** 默认的摘要算法 */
+    public static final String MD5 = "MD5";
+
+    /** 读取文件的缓冲区大小 */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** 计算线程数，取cpu核数且不超过4个 */
+    private static final int DIGEST_THREADS = Math.max(1,
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static ThreadPoolExecutor sDigestPool;
+
+    /** 每个计算线程的读缓冲区 */
+    private static final ThreadLocal<byte[]> sBuffer = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    private final String mAlgorithm;
+
+    /**
+     * @param algorithm
+     *            摘要算法
+     */
+    public XFileDigester(String algorithm) {
+        mAlgorithm = algorithm;
+    }
+
+    private static synchronized ThreadPoolExecutor getDigestPool() {
+        if (null == sDigestPool) {
+            sDigestPool = new ThreadPoolExecutor(DIGEST_THREADS,
+                    DIGEST_THREADS, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private final AtomicInteger mCount = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            return new Thread(r, "xface-digest-"
+                                    + mCount.incrementAndGet());
+                        }
+                    });
+        }
+        return sDigestPool;
+    }
+
+    /**
+     * 并行计算一组文件的摘要
+     *
+     * @param files
+     *            需要计算摘要的文件
+     * @return 文件绝对路径 -> 十六进制摘要，顺序与输入一致
+     * @throws IOException
+     *             读取文件失败时抛出
+     */
+    public Map<String, String> digest(final List<File> files) throws IOException {
+        final String[] digests = new String[files.size()];
+        final AtomicInteger next = new AtomicInteger();
+        int workers = Math.min(DIGEST_THREADS, files.size());
+        List<Future<?>> futures = new ArrayList<Future<?>>(workers);
+        for (int i = 0; i < workers; i++) {
+            futures.add(getDigestPool().submit(new Runnable() {
+                @Override
+                public void run() {
+                    int index;
+                    try {
+                        while ((index = next.getAndIncrement()) < digests.length) {
+                            digests[index] = digestFile(files.get(index));
+                        }
+                    } catch (IOException e) {
+                        // 让其它线程尽快结束
+                        next.set(digests.length);
+                        throw new RuntimeException(e);
+                    }
+                }
+            }));
+        }
+        waitFor(futures, next, digests.length);
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        for (int i = 0; i < digests.length; i++) {
+            result.put(files.get(i).getAbsolutePath(), digests[i]);
+        }
+        return result;
+    }
+
+    /**
+     * 以固定大小的缓冲区流式计算一个文件的摘要
+     *
+     * @return 十六进制摘要
+     */
+    public String digestFile(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(mAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(mAlgorithm + " not supported");
+        }
+        byte[] buffer = sBuffer.get();
+        InputStream in = new FileInputStream(file);
+        try {
+            int len;
+            while (-1 != (len = in.read(buffer))) {
+                digest.update(buffer, 0, len);
+            }
+        } finally {
+            in.close();
+        }
+        return toLowerHex(digest.digest());
+    }
+
+    /**
+     * 转换为小写的十六进制串，与{@link XCryptor#calMD5Value}的结果一致，
+     * 应用转移时保存的md5值由calMD5Value计算
+     */
+    private static String toLowerHex(byte[] data) {
+        StringBuilder sb = new StringBuilder(data.length * 2);
+        for (byte b : data) {
+            int val = b & 0xff;
+            if (val < 16) {
+                sb.append('0');
+            }
+            sb.append(Integer.toHexString(val));
+        }
+        return sb.toString();
+    }
+
+    private void waitFor(List<Future<?>> futures, AtomicInteger next, int count)
+            throws IOException {
+        IOException failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                next.set(count);
+                failure = new IOException("digest interrupted");
+            } catch (ExecutionException e) {
+                if (null == failure) {
+                    failure = new IOException(e.getCause().getMessage());
+                }
+            }
+        }
+        if (null != failure) {
+            throw failure;
+        }
+    }
+}
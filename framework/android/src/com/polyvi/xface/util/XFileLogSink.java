@@ -0,0 +1,166 @@
+
+/*
+ Copyright 2012-2013, Polyvi Inc. (http://polyvi.github.io/openxface)
+ This program is distributed under the terms of the GNU General Public License.
+
+ This file is part of xFace.
+
+ xFace is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ xFace is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with xFace.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.polyvi.xface.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import android.util.Log;
+
+/**
+ * 将log写入文件的输出目标，文件超过指定大小后滚动：
+ * xface.log重命名为xface.log.1，原来的xface.log.1重命名为xface.log.2，依此类推，超过备份数的文件被删除
+ * 每行的格式为：月-日 时:分:秒.毫秒 等级/tag: 信息
+ */
+public class XFileLogSink implements XLogSink {
+
+    private static final String CLASS_NAME = XFileLogSink.class
+            .getSimpleName();
+
+    /** log文件名 */
+    public static final String LOG_FILE_NAME = "xface.log";
+
+    /** 单个log文件的最大长度(字符数) */
+    private static final long MAX_FILE_SIZE = 1024 * 1024;
+
+    /** 保留的历史文件个数 */
+    private static final int MAX_BACKUPS = 2;
+
+    private static final int WRITER_BUFFER_SIZE = 8 * 1024;
+
+    /** 按照log等级索引的等级标识，与android.util.Log的取值对应 */
+    private static final String LEVEL_CHARS = "??VDIWE";
+
+    private final File mDir;
+    private final SimpleDateFormat mDateFormat = new SimpleDateFormat(
+            "MM-dd HH:mm:ss.SSS", Locale.US);
+    private final Date mDate = new Date();
+    private final StringBuilder mLine = new StringBuilder();
+    private BufferedWriter mWriter;
+    private long mSize;
+
+    /**
+     * @param dirPath
+     *            log文件所在的目录，不存在时创建
+     */
+    public XFileLogSink(String dirPath) {
+        mDir = new File(dirPath);
+    }
+
+    @Override
+    public void write(int level, String tag, String className,
+            long time, String message) {
+        if (null == mWriter && !open()) {
+            return;
+        }
+        mDate.setTime(time);
+        mLine.setLength(0);
+        mLine.append(mDateFormat.format(mDate)).append(' ')
+                .append(levelChar(level)).append('/').append(tag)
+                .append(':').append(message).append('\n');
+        try {
+            mWriter.append(mLine);
+            mSize += mLine.length();
+            if (mSize >= MAX_FILE_SIZE) {
+                roll();
+            }
+        } catch (IOException e) {
+            // 不能再经过XLog，否则会重新进入写线程
+            Log.e(XLog.TAG_NAME, " [" + CLASS_NAME
+                    + "] write log file failed: " + e.getMessage());
+            closeWriter();
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (null == mWriter) {
+            return;
+        }
+        try {
+            mWriter.flush();
+        } catch (IOException e) {
+            closeWriter();
+        }
+    }
+
+    @Override
+    public void close() {
+        closeWriter();
+    }
+
+    private boolean open() {
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            return false;
+        }
+        File file = new File(mDir, LOG_FILE_NAME);
+        try {
+            mWriter = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(file, true), "UTF-8"),
+                    WRITER_BUFFER_SIZE);
+            mSize = file.length();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 关闭当前文件，依次重命名历史文件后重新打开
+     */
+    private void roll() {
+        closeWriter();
+        File oldest = new File(mDir, LOG_FILE_NAME + "." + MAX_BACKUPS);
+        oldest.delete();
+        for (int i = MAX_BACKUPS - 1; i >= 0; i--) {
+            String name = 0 == i ? LOG_FILE_NAME : LOG_FILE_NAME + "." + i;
+            File src = new File(mDir, name);
+            if (src.exists()) {
+                src.renameTo(new File(mDir, LOG_FILE_NAME + "." + (i + 1)));
+            }
+        }
+        open();
+    }
+
+    private void closeWriter() {
+        if (null == mWriter) {
+            return;
+        }
+        try {
+            mWriter.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        mWriter = null;
+    }
+
+    private static char levelChar(int level) {
+        return level >= 0 && level < LEVEL_CHARS.length() ? LEVEL_CHARS
+                .charAt(level) : '?';
+    }
+}
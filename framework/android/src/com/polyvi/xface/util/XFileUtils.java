@@ -434,9 +434,45 @@ public class XFileUtils {
      * @return 是否成功
      */
     public static boolean unzipFile(String targetPath, String zipFilePath) {
+        return unzipFile(targetPath, zipFilePath, null);
+    }
+
+    /**
+     * 解压zip文件，并通知解压进度
+     *
+     * @param targetPath
+     *            解压的目标路径
+     * @param zipFilePath
+     *            zip包路径
+     * @param listener
+     *            解压进度监听器，可以为null
+     *
+     * @return 是否成功
+     */
+    public static boolean unzipFile(String targetPath, String zipFilePath,
+            XZipper.XUnzipListener listener) {
+        return unzipFile(targetPath, zipFilePath, null, listener);
+    }
+
+    /**
+     * 解压zip文件中被过滤器接受的条目，并通知解压进度
+     *
+     * @param targetPath
+     *            解压的目标路径
+     * @param zipFilePath
+     *            zip包路径
+     * @param filter
+     *            条目过滤器，为null时解压所有条目
+     * @param listener
+     *            解压进度监听器，可以为null
+     *
+     * @return 是否成功
+     */
+    public static boolean unzipFile(String targetPath, String zipFilePath,
+            XZipper.XEntryFilter filter, XZipper.XUnzipListener listener) {
         try {
             XZipper zipper = new XZipper();
-            zipper.unzipFile(targetPath, zipFilePath);
+            zipper.unzipFile(targetPath, zipFilePath, filter, listener);
             return true;
         } catch (FileNotFoundException e) {
             XLog.e(CLASS_NAME, "The zip file: " + zipFilePath
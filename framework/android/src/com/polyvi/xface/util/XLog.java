@@ -39,19 +39,6 @@ public class XLog {
 
     private static final String TAG_DEBUG = "DEBUG";
 
-    /**
-     * 构造输出log信息
-     *
-     * @param className
-     *            打印log的class名称
-     * @param info
-     *            用户输出log
-     * @return
-     */
-    private static String constructLogMessage(String className, String info) {
-        return " [" + className + "] " + info;
-    }
-
     /**
      * 以VERBOSE类型输出log等级高于xxLog的log信息.
      *
@@ -62,7 +49,7 @@ public class XLog {
      */
     public static void v(String className, String s) {
         if (isEnable(Log.VERBOSE)) {
-            XLogController.d(TAG_NAME, s);
+            XLogController.log(Log.VERBOSE, TAG_NAME, className, s, null, null);
         }
     }
 
@@ -76,7 +63,7 @@ public class XLog {
      */
     public static void d(String className, String s) {
         if (isEnable(Log.DEBUG)) {
-            XLogController.d(TAG_NAME, constructLogMessage(className, s));
+            XLogController.log(Log.DEBUG, TAG_NAME, className, s, null, null);
         }
     }
 
@@ -91,7 +78,7 @@ public class XLog {
      */
     public static void i(String className, String s) {
         if (isEnable(Log.INFO)) {
-            XLogController.i(TAG_NAME, constructLogMessage(className, s));
+            XLogController.log(Log.INFO, TAG_NAME, className, s, null, null);
         }
     }
 
@@ -106,7 +93,7 @@ public class XLog {
      */
     public static void w(String className, String s) {
         if (isEnable(Log.WARN)) {
-            XLogController.w(TAG_NAME, constructLogMessage(className, s));
+            XLogController.log(Log.WARN, TAG_NAME, className, s, null, null);
         }
     }
 
@@ -121,7 +108,7 @@ public class XLog {
      */
     public static void e(String className, String s) {
         if (isEnable(Log.ERROR)) {
-            XLogController.e(TAG_NAME, constructLogMessage(className, s));
+            XLogController.log(Log.ERROR, TAG_NAME, className, s, null, null);
         }
     }
 
@@ -138,7 +125,7 @@ public class XLog {
      */
     public static void v(String className, String s, Throwable e) {
         if (isEnable(Log.VERBOSE)) {
-            XLogController.v(TAG_NAME, constructLogMessage(className, s));
+            XLogController.log(Log.VERBOSE, TAG_NAME, className, s, null, e);
         }
     }
 
@@ -155,7 +142,7 @@ public class XLog {
      */
     public static void d(String className, String s, Throwable e) {
         if (isEnable(Log.DEBUG)) {
-            XLogController.d(TAG_NAME, constructLogMessage(className, s));
+            XLogController.log(Log.DEBUG, TAG_NAME, className, s, null, e);
         }
     }
 
@@ -172,7 +159,7 @@ public class XLog {
      */
     public static void i(String className, String s, Throwable e) {
         if (isEnable(Log.INFO)) {
-            XLogController.i(TAG_NAME, constructLogMessage(className, s));
+            XLogController.log(Log.INFO, TAG_NAME, className, s, null, e);
         }
     }
 
@@ -189,7 +176,7 @@ public class XLog {
      */
     public static void w(String className, String s, Throwable e) {
         if (isEnable(Log.WARN)) {
-            XLogController.w(TAG_NAME, constructLogMessage(className, s));
+            XLogController.log(Log.WARN, TAG_NAME, className, s, null, e);
         }
     }
 
@@ -206,7 +193,7 @@ public class XLog {
      */
     public static void e(String className, String s, Throwable e) {
         if (isEnable(Log.ERROR)) {
-            XLogController.e(TAG_NAME, constructLogMessage(className, s));
+            XLogController.log(Log.ERROR, TAG_NAME, className, s, null, e);
         }
     }
 
@@ -223,8 +210,7 @@ public class XLog {
      */
     public static void v(String className, String s, Object... args) {
         if (isEnable(Log.VERBOSE)) {
-            XLogController.v(TAG_NAME,
-                    constructLogMessage(className, String.format(s, args)));
+            XLogController.log(Log.VERBOSE, TAG_NAME, className, s, args, null);
         }
     }
 
@@ -241,8 +227,7 @@ public class XLog {
      */
     public static void d(String className, String s, Object... args) {
         if (isEnable(Log.DEBUG)) {
-            XLogController.d(TAG_NAME,
-                    constructLogMessage(className, String.format(s, args)));
+            XLogController.log(Log.DEBUG, TAG_NAME, className, s, args, null);
         }
     }
 
@@ -259,8 +244,7 @@ public class XLog {
      */
     public static void i(String className, String s, Object... args) {
         if (isEnable(Log.INFO)) {
-            XLogController.i(TAG_NAME,
-                    constructLogMessage(className, String.format(s, args)));
+            XLogController.log(Log.INFO, TAG_NAME, className, s, args, null);
         }
     }
 
@@ -277,8 +261,7 @@ public class XLog {
      */
     public static void w(String className, String s, Object... args) {
         if (isEnable(Log.WARN)) {
-            XLogController.w(TAG_NAME,
-                    constructLogMessage(className, String.format(s, args)));
+            XLogController.log(Log.WARN, TAG_NAME, className, s, args, null);
         }
     }
 
@@ -295,8 +278,7 @@ public class XLog {
      */
     public static void e(String className, String s, Object... args) {
         if (isEnable(Log.ERROR)) {
-            XLogController.e(TAG_NAME,
-                    constructLogMessage(className, String.format(s, args)));
+            XLogController.log(Log.ERROR, TAG_NAME, className, s, args, null);
         }
     }
 
@@ -21,12 +21,26 @@
 
 package com.polyvi.xface.util;
 
+import android.util.Log;
 
-
+/**
+ * log的分发，所有log经过{@link XAsyncLogger}在后台线程中写入各个输出目标，
+ * 默认输出到logcat，设置了ip时同时输出到socketlog，设置了{@link XLogStore}时同时持久化，
+ * 也可以通过{@link #addSink}添加其他输出目标
+ */
 public class XLogController {
     private static XDefaultLog mDefaultLog = new XDefaultLog();
     public static XSocketLog mSocketLog;
 
+    private static final XAsyncLogger sLogger = new XAsyncLogger(
+            XAsyncLogger.DEFAULT_CAPACITY);
+
+    private static XLogStore sLogStore;
+
+    static {
+        sLogger.addSink(mDefaultLog);
+    }
+
     /**
      * 如果有debug.xml这个配置文件，并且设置了ip则调用此构造函数
      * @param hostIP
@@ -34,6 +48,103 @@ public class XLogController {
     public static void setIP(String hostIP)
     {
         mSocketLog = new XSocketLog(hostIP);
+        sLogger.addSink(mSocketLog);
+    }
+
+    /**
+     * socketlog连接失败时调用，不再向其输出log
+     */
+    static void detachSocketLog(XSocketLog socketLog)
+    {
+        sLogger.removeSink(socketLog);
+        if(mSocketLog == socketLog)
+        {
+            mSocketLog = null;
+        }
+    }
+
+    /**
+     * 添加log的输出目标
+     *
+     * @param sink
+     *            log的输出目标
+     */
+    public static void addSink(XLogSink sink)
+    {
+        sLogger.addSink(sink);
+    }
+
+    /**
+     * 移除log的输出目标
+     *
+     * @param sink
+     *            log的输出目标
+     */
+    public static void removeSink(XLogSink sink)
+    {
+        sLogger.removeSink(sink);
+    }
+
+    /**
+     * 设置持久化的log存储，替换之前设置的存储
+     *
+     * @param store
+     *            log存储，为null时不再持久化log
+     */
+    public static synchronized void setLogStore(XLogStore store)
+    {
+        if(null != sLogStore)
+        {
+            sLogger.removeSink(sLogStore);
+        }
+        sLogStore = store;
+        if(null != store)
+        {
+            sLogger.addSink(store);
+        }
+    }
+
+    /**
+     * 获取持久化的log存储，没有设置时返回null
+     */
+    public static synchronized XLogStore getLogStore()
+    {
+        return sLogStore;
+    }
+
+    /**
+     * 缓冲区满时被丢弃的log总数
+     */
+    public static long getDroppedCount()
+    {
+        return sLogger.getDroppedCount();
+    }
+
+    /**
+     * 输出一条log，格式化在写线程中进行
+     *
+     * @param level
+     *            log等级
+     * @param tag
+     *            log信息的tag名称
+     * @param className
+     *            打印log的类名，为null时不拼接类名
+     * @param s
+     *            需要输出的log信息，args不为null时作为格式串
+     * @param args
+     *            格式化参数，可以为null
+     * @param tr
+     *            需要输出调用栈的异常，可以为null
+     */
+    static void log(int level, String tag, String className, String s,
+            Object[] args, Throwable tr)
+    {
+        if(!sLogger.offer(level, tag, className, s, args, tr))
+        {
+            // log已经关闭，直接输出到logcat
+            mDefaultLog.write(level, tag, className, System.currentTimeMillis(),
+                    XAsyncLogger.format(className, s, args, tr));
+        }
     }
 
     /**
@@ -46,11 +157,7 @@ public class XLogController {
      */
     public static void v(String tag, String s)
     {
-        mDefaultLog.v(tag, s);
-        if(null != mSocketLog)
-        {
-            mSocketLog.v(tag, s);
-        }
+        log(Log.VERBOSE, tag, null, s, null, null);
     }
 
     /**
@@ -63,11 +170,7 @@ public class XLogController {
      */
     public static void d(String tag, String s)
     {
-        mDefaultLog.d(tag, s);
-        if(null != mSocketLog)
-        {
-            mSocketLog.d(tag, s);
-        }
+        log(Log.DEBUG, tag, null, s, null, null);
     }
 
     /**
@@ -81,11 +184,7 @@ public class XLogController {
      */
     public static void i(String tag, String s)
     {
-        mDefaultLog.i(tag, s);
-        if(null != mSocketLog)
-        {
-            mSocketLog.i(tag, s);
-        }
+        log(Log.INFO, tag, null, s, null, null);
     }
 
     /**
@@ -100,11 +199,7 @@ public class XLogController {
      */
     public static void w(String tag, String s)
     {
-        mDefaultLog.w(tag, s);
-        if(null != mSocketLog)
-        {
-            mSocketLog.w(tag, s);
-        }
+        log(Log.WARN, tag, null, s, null, null);
     }
 
     /**
@@ -117,20 +212,15 @@ public class XLogController {
      */
     public static void e(String tag, String s)
     {
-        mDefaultLog.e(tag, s);
-        if(null != mSocketLog)
-        {
-            mSocketLog.e(tag, s);
-        }
+        log(Log.ERROR, tag, null, s, null, null);
     }
 
     /**
-     * 关闭log
+     * 关闭log，输出缓冲区中剩余的log后关闭所有输出目标
      */
     public static void close()
     {
-        if(null != mSocketLog)
-            mSocketLog.close();
+        sLogger.close();
     }
 
 }
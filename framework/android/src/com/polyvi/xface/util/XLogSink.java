@@ -0,0 +1,56 @@
+
+/*
+ Copyright 2012-2013, Polyvi Inc. (http://polyvi.github.io/openxface)
+ This program is distributed under the terms of the GNU General Public License.
+
+ This file is part of xFace.
+
+ xFace is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ xFace is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with xFace.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.polyvi.xface.util;
+
+/**
+ * log的输出目标，由后台的log写线程调用，同一时刻只有一个线程调用
+ * 每次取出一批log后逐条调用{@link #write}，整批写完后调用一次{@link #flush}
+ */
+public interface XLogSink {
+
+    /**
+     * 写入一条log，可以只写入缓冲区
+     *
+     * @param level
+     *            log等级，取值同android.util.Log
+     * @param tag
+     *            log信息的tag名称
+     * @param className
+     *            打印log的类名，没有时为null
+     * @param time
+     *            产生log的时间(毫秒)
+     * @param message
+     *            格式化后的log信息，已经拼接了类名
+     */
+    public void write(int level, String tag, String className, long time,
+            String message);
+
+    /**
+     * 一批log写完后调用，将缓冲区中的数据真正输出
+     */
+    public void flush();
+
+    /**
+     * 关闭log
+     */
+    public void close();
+}
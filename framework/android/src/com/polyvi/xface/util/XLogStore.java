@@ -0,0 +1,690 @@
+
+/*
+ Copyright 2012-2013, Polyvi Inc. (http://polyvi.github.io/openxface)
+ This program is distributed under the terms of the GNU General Public License.
+
+ This file is part of xFace.
+
+ xFace is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ xFace is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with xFace.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.polyvi.xface.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import android.util.Log;
+
+/**
+ * 持久化的二进制log存储，作为{@link XLogSink}由log写线程写入，不占用调用log的线程
+ * log按时间顺序追加到若干固定大小的段文件中，段文件通过内存映射写入，进程崩溃时已写入的log不会丢失；
+ * 段文件写满后切换到新的段，所有段文件的总大小超过上限或者超过最大保存时间的段被删除；
+ * 记录的时间不早于前一条记录，系统时间被调回时沿用前一条记录的时间，保证段内按时间有序
+ * 每个段在内存中维护时间范围、包含的log等级和tag集合，以及稀疏的时间索引，
+ * 查询时跳过不可能包含结果的段，并在段内从最近的索引点开始读取；
+ * 段切换时索引写入同名的.idx文件，启动时直接加载，最新的段重新扫描
+ *
+ * 段文件格式：magic(4) version(4) 之后为连续的记录，长度为0表示结束
+ * 记录格式：长度(4，不含自身) 时间(8) 等级(1) tag长度(2) tag(UTF-8) 信息(UTF-8)
+ * 记录的tag为打印log的类名，没有类名时为log的tag
+ */
+public class XLogStore implements XLogSink {
+
+    private static final String CLASS_NAME = XLogStore.class.getSimpleName();
+
+    private static final String SEGMENT_SUFFIX = ".xlog";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    /** "XFLG" */
+    private static final int MAGIC = 0x58464c47;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    /** 记录的固定部分：长度(4) 时间(8) 等级(1) tag长度(2) */
+    private static final int RECORD_HEADER_SIZE = 15;
+
+    /** 默认的段文件大小 */
+    public static final int DEFAULT_SEGMENT_SIZE = 256 * 1024;
+
+    /** 默认的所有段文件总大小的上限 */
+    public static final long DEFAULT_MAX_BYTES = 4L * 1024 * 1024;
+
+    /** 默认的最长保存时间(毫秒) */
+    public static final long DEFAULT_MAX_AGE = 7L * 24 * 60 * 60 * 1000;
+
+    /** 单条log信息和tag的最大字节数，超过的部分被截断 */
+    private static final int MAX_MESSAGE_BYTES = 8 * 1024;
+    private static final int MAX_TAG_BYTES = 255;
+
+    /** 每隔多少条记录建立一个时间索引点 */
+    private static final int INDEX_INTERVAL = 32;
+
+    private static final String CHARSET = "UTF-8";
+
+    private final File mDir;
+    private final int mSegmentSize;
+    private final long mMaxBytes;
+    private final long mMaxAge;
+
+    /** 按时间从旧到新排列，最后一个是正在写入的段 */
+    private final ArrayList<Segment> mSegments = new ArrayList<Segment>();
+    private Segment mActive;
+    private MappedByteBuffer mBuffer;
+    private boolean mOpened;
+
+    /** 最后一条记录的时间 */
+    private long mLastTime = Long.MIN_VALUE;
+
+    /**
+     * @param dirPath
+     *            段文件所在的目录，不存在时创建
+     */
+    public XLogStore(String dirPath) {
+        this(dirPath, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_BYTES, DEFAULT_MAX_AGE);
+    }
+
+    /**
+     * @param dirPath
+     *            段文件所在的目录，不存在时创建
+     * @param segmentSize
+     *            段文件的大小(字节)
+     * @param maxBytes
+     *            所有段文件总大小的上限(字节)，至少保留正在写入的段
+     * @param maxAge
+     *            log最长保存时间(毫秒)
+     */
+    public XLogStore(String dirPath, int segmentSize, long maxBytes,
+            long maxAge) {
+        mDir = new File(dirPath);
+        mSegmentSize = segmentSize;
+        mMaxBytes = maxBytes;
+        mMaxAge = maxAge;
+    }
+
+    @Override
+    public synchronized void write(int level, String tag, String className,
+            long time, String message) {
+        if (!ensureOpen()) {
+            return;
+        }
+        String recordTag = tag;
+        if (null != className) {
+            recordTag = className;
+            // 存储时去掉拼接的类名，读取时由tag给出
+            String prefix = " [" + className + "] ";
+            if (message.startsWith(prefix)) {
+                message = message.substring(prefix.length());
+            }
+        }
+        byte[] tagBytes = encode(recordTag, MAX_TAG_BYTES);
+        byte[] msgBytes = encode(message, MAX_MESSAGE_BYTES);
+        int size = RECORD_HEADER_SIZE + tagBytes.length + msgBytes.length;
+        if (size > mSegmentSize - HEADER_SIZE) {
+            return;
+        }
+        // 段内的时间索引依赖记录按时间有序
+        time = Math.max(time, mLastTime);
+        if (mActive.mEnd + size > mSegmentSize) {
+            if (!roll(time)) {
+                return;
+            }
+        }
+        int pos = mActive.mEnd;
+        mBuffer.position(pos + 4);
+        mBuffer.putLong(time);
+        mBuffer.put((byte) level);
+        mBuffer.putShort((short) tagBytes.length);
+        mBuffer.put(tagBytes);
+        mBuffer.put(msgBytes);
+        // 最后写长度，进程在写入过程中退出时这条记录被视为不存在
+        mBuffer.putInt(pos, size - 4);
+        mActive.add(time, level, recordTag, pos);
+        mActive.mEnd = pos + size;
+        mLastTime = time;
+    }
+
+    /**
+     * 映射的内存由系统写回文件，进程退出也不会丢失，这里不做强制同步，避免频繁的磁盘io
+     */
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public synchronized void close() {
+        if (null != mActive) {
+            saveIndex(mActive);
+        }
+        mSegments.clear();
+        mActive = null;
+        mBuffer = null;
+        mOpened = false;
+    }
+
+    /**
+     * 查询log，返回满足条件的最近limit条，按时间从旧到新排列
+     *
+     * @param since
+     *            起始时间(毫秒，含)
+     * @param until
+     *            结束时间(毫秒，含)
+     * @param minLevel
+     *            最低的log等级，取值同android.util.Log
+     * @param tag
+     *            log的tag，即打印log的类名，为null时不限
+     * @param limit
+     *            最多返回的条数
+     * @return 查询结果，出错时返回空列表
+     */
+    public synchronized List<Entry> query(long since, long until,
+            int minLevel, String tag, int limit) {
+        List<Entry> result = new ArrayList<Entry>();
+        if (limit <= 0 || !ensureOpen()) {
+            return result;
+        }
+        // 从最新的段向前查找，直到找够limit条
+        ArrayList<List<Entry>> parts = new ArrayList<List<Entry>>();
+        int total = 0;
+        for (int i = mSegments.size() - 1; i >= 0 && total < limit; i--) {
+            Segment seg = mSegments.get(i);
+            if (seg.mCount > 0 && seg.mMaxTime < since) {
+                break;
+            }
+            if (!seg.mayContain(since, until, minLevel, tag)) {
+                continue;
+            }
+            List<Entry> entries;
+            try {
+                entries = read(seg, since, until, minLevel, tag);
+            } catch (IOException e) {
+                Log.e(XLog.TAG_NAME, " [" + CLASS_NAME + "] read "
+                        + seg.mFile.getName() + " failed: " + e.getMessage());
+                continue;
+            }
+            if (entries.size() > limit - total) {
+                entries = entries.subList(entries.size() - (limit - total),
+                        entries.size());
+            }
+            parts.add(entries);
+            total += entries.size();
+        }
+        for (int i = parts.size() - 1; i >= 0; i--) {
+            result.addAll(parts.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * 第一次使用时加载已有的段，最新的段继续用于写入
+     *
+     * @return 可以写入返回true
+     */
+    private boolean ensureOpen() {
+        if (mOpened) {
+            return null != mActive;
+        }
+        mOpened = true;
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            return false;
+        }
+        File[] files = mDir.listFiles();
+        ArrayList<File> segmentFiles = new ArrayList<File>();
+        if (null != files) {
+            for (File file : files) {
+                if (file.getName().endsWith(SEGMENT_SUFFIX)) {
+                    segmentFiles.add(file);
+                }
+            }
+        }
+        Collections.sort(segmentFiles);
+        for (int i = 0; i < segmentFiles.size(); i++) {
+            File file = segmentFiles.get(i);
+            boolean last = i == segmentFiles.size() - 1;
+            try {
+                Segment seg = last ? null : loadIndex(file);
+                if (null == seg) {
+                    seg = new Segment(file);
+                    scan(map(file, false), seg);
+                }
+                mSegments.add(seg);
+                if (seg.mCount > 0) {
+                    mLastTime = Math.max(mLastTime, seg.mMaxTime);
+                }
+                if (last && file.length() == mSegmentSize) {
+                    mBuffer = map(file, true);
+                    mActive = seg;
+                    clearTail(mBuffer, seg.mEnd);
+                }
+            } catch (IOException e) {
+                deleteSegment(file);
+            }
+        }
+        if (null == mActive) {
+            return roll(System.currentTimeMillis());
+        }
+        prune(System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * 保存当前段的索引并创建新的段，然后删除超出限制的段
+     */
+    private boolean roll(long time) {
+        if (null != mActive) {
+            saveIndex(mActive);
+        }
+        mActive = null;
+        mBuffer = null;
+        long seq = mSegments.isEmpty() ? 0 : sequenceOf(mSegments.get(mSegments
+                .size() - 1).mFile) + 1;
+        File file = new File(mDir, segmentName(seq));
+        while (file.exists()) {
+            file = new File(mDir, segmentName(++seq));
+        }
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(mSegmentSize);
+                mBuffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                        0, mSegmentSize);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            Log.e(XLog.TAG_NAME, " [" + CLASS_NAME + "] create "
+                    + file.getName() + " failed: " + e.getMessage());
+            file.delete();
+            return false;
+        }
+        mBuffer.putInt(0, MAGIC);
+        mBuffer.putInt(4, VERSION);
+        mActive = new Segment(file);
+        mActive.mEnd = HEADER_SIZE;
+        mSegments.add(mActive);
+        prune(time);
+        return true;
+    }
+
+    /**
+     * 将段中数据结束位置之后的内容清零，
+     * 进程在写入过程中退出时，未完成的记录可能残留在结束位置之后，后续写入的短记录不能完全覆盖，
+     * 残留的数据会在下一次扫描时被当作记录
+     */
+    private static void clearTail(ByteBuffer buf, int end) {
+        for (int pos = end; pos < buf.limit(); pos++) {
+            if (0 != buf.get(pos)) {
+                buf.put(pos, (byte) 0);
+            }
+        }
+    }
+
+    /**
+     * 删除使总大小超过上限以及超过最长保存时间的段，正在写入的段除外
+     */
+    private void prune(long now) {
+        long total = 0;
+        for (Segment seg : mSegments) {
+            total += seg.mFile.length();
+        }
+        while (mSegments.size() > 1) {
+            Segment oldest = mSegments.get(0);
+            if (oldest == mActive) {
+                break;
+            }
+            boolean expired = oldest.mCount == 0
+                    || oldest.mMaxTime < now - mMaxAge;
+            if (total <= mMaxBytes && !expired) {
+                break;
+            }
+            total -= oldest.mFile.length();
+            mSegments.remove(0);
+            deleteSegment(oldest.mFile);
+        }
+    }
+
+    private List<Entry> read(Segment seg, long since, long until,
+            int minLevel, String tag) throws IOException {
+        ByteBuffer buf = seg == mActive ? mBuffer.duplicate() : map(seg.mFile,
+                false);
+        List<Entry> entries = new ArrayList<Entry>();
+        int pos = seg.seek(since);
+        while (pos < seg.mEnd) {
+            int len = buf.getInt(pos);
+            long time = buf.getLong(pos + 4);
+            int level = buf.get(pos + 12);
+            int tagLen = buf.getShort(pos + 13) & 0xffff;
+            int next = pos + 4 + len;
+            if (time > until) {
+                break;
+            }
+            if (time >= since && level >= minLevel) {
+                String recordTag = decode(buf, pos + RECORD_HEADER_SIZE,
+                        tagLen);
+                if (null == tag || tag.equals(recordTag)) {
+                    int msgPos = pos + RECORD_HEADER_SIZE + tagLen;
+                    entries.add(new Entry(time, level, recordTag, decode(buf,
+                            msgPos, next - msgPos)));
+                }
+            }
+            pos = next;
+        }
+        return entries;
+    }
+
+    /**
+     * 扫描段文件中的记录，建立段的索引，遇到长度为0或者不完整的记录时结束
+     */
+    private static void scan(ByteBuffer buf, Segment seg) throws IOException {
+        if (buf.limit() < HEADER_SIZE || buf.getInt(0) != MAGIC
+                || buf.getInt(4) != VERSION) {
+            throw new IOException("bad log segment " + seg.mFile.getName());
+        }
+        int pos = HEADER_SIZE;
+        while (pos + RECORD_HEADER_SIZE <= buf.limit()) {
+            int len = buf.getInt(pos);
+            if (len < RECORD_HEADER_SIZE - 4 || len > buf.limit() - pos - 4) {
+                break;
+            }
+            int tagLen = buf.getShort(pos + 13) & 0xffff;
+            if (tagLen > len - (RECORD_HEADER_SIZE - 4)) {
+                break;
+            }
+            seg.add(buf.getLong(pos + 4), buf.get(pos + 12),
+                    decode(buf, pos + RECORD_HEADER_SIZE, tagLen), pos);
+            pos += 4 + len;
+        }
+        seg.mEnd = pos;
+    }
+
+    /**
+     * 将段的索引写入.idx文件，先写临时文件再重命名
+     */
+    private void saveIndex(Segment seg) {
+        File file = indexFile(seg.mFile);
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmp)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(seg.mEnd);
+            out.writeInt(seg.mCount);
+            out.writeLong(seg.mMinTime);
+            out.writeLong(seg.mMaxTime);
+            out.writeInt(seg.mLevelMask);
+            out.writeInt(seg.mTags.size());
+            for (String tag : seg.mTags) {
+                out.writeUTF(tag);
+            }
+            out.writeInt(seg.mPointCount);
+            for (int i = 0; i < seg.mPointCount; i++) {
+                out.writeLong(seg.mPointTimes[i]);
+                out.writeInt(seg.mPointOffsets[i]);
+            }
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+            }
+        } catch (IOException e) {
+            tmp.delete();
+        } finally {
+            if (null != out) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * 加载段的索引，没有索引文件或者索引文件损坏时返回null
+     */
+    private Segment loadIndex(File segmentFile) {
+        File file = indexFile(segmentFile);
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            Segment seg = new Segment(segmentFile);
+            seg.mEnd = in.readInt();
+            seg.mCount = in.readInt();
+            seg.mMinTime = in.readLong();
+            seg.mMaxTime = in.readLong();
+            seg.mLevelMask = in.readInt();
+            for (int n = in.readInt(); n > 0; n--) {
+                seg.mTags.add(in.readUTF());
+            }
+            for (int n = in.readInt(); n > 0; n--) {
+                seg.addPoint(in.readLong(), in.readInt());
+            }
+            return seg;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (null != in) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private static MappedByteBuffer map(File file, boolean writable)
+            throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw"
+                : "r");
+        try {
+            // 映射建立后不依赖于文件通道，可以直接关闭
+            return raf.getChannel().map(
+                    writable ? FileChannel.MapMode.READ_WRITE
+                            : FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void deleteSegment(File file) {
+        file.delete();
+        indexFile(file).delete();
+    }
+
+    private static File indexFile(File segmentFile) {
+        String name = segmentFile.getName();
+        return new File(segmentFile.getParentFile(), name.substring(0,
+                name.length() - SEGMENT_SUFFIX.length())
+                + INDEX_SUFFIX);
+    }
+
+    /**
+     * 段文件以递增的序号命名，补齐位数使文件名的顺序与创建顺序一致，不受系统时间调整的影响
+     */
+    private static String segmentName(long seq) {
+        String name = Long.toString(seq);
+        StringBuilder sb = new StringBuilder();
+        for (int i = name.length(); i < 16; i++) {
+            sb.append('0');
+        }
+        return sb.append(name).append(SEGMENT_SUFFIX).toString();
+    }
+
+    private static long sequenceOf(File segmentFile) {
+        String name = segmentFile.getName();
+        try {
+            return Long.parseLong(name.substring(0, name.length()
+                    - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static byte[] encode(String s, int maxBytes) {
+        byte[] bytes;
+        try {
+            bytes = s.getBytes(CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            bytes = s.getBytes();
+        }
+        if (bytes.length <= maxBytes) {
+            return bytes;
+        }
+        byte[] truncated = new byte[maxBytes];
+        System.arraycopy(bytes, 0, truncated, 0, maxBytes);
+        return truncated;
+    }
+
+    private static String decode(ByteBuffer buf, int pos, int len) {
+        byte[] bytes = new byte[len];
+        ByteBuffer src = buf.duplicate();
+        src.position(pos);
+        src.get(bytes);
+        try {
+            return new String(bytes, CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            return new String(bytes);
+        }
+    }
+
+    /**
+     * 一条查询结果
+     */
+    public static class Entry {
+        private final long mTime;
+        private final int mLevel;
+        private final String mTag;
+        private final String mMessage;
+
+        Entry(long time, int level, String tag, String message) {
+            mTime = time;
+            mLevel = level;
+            mTag = tag;
+            mMessage = message;
+        }
+
+        public long getTime() {
+            return mTime;
+        }
+
+        public int getLevel() {
+            return mLevel;
+        }
+
+        public String getTag() {
+            return mTag;
+        }
+
+        public String getMessage() {
+            return mMessage;
+        }
+    }
+
+    /**
+     * 段的内存索引
+     */
+    private static class Segment {
+        final File mFile;
+        /** 数据结束的位置，即下一条记录写入的位置 */
+        int mEnd = HEADER_SIZE;
+        int mCount;
+        long mMinTime = Long.MAX_VALUE;
+        long mMaxTime = Long.MIN_VALUE;
+        /** 包含的log等级，第level位为1表示包含该等级 */
+        int mLevelMask;
+        final HashSet<String> mTags = new HashSet<String>();
+        /** 稀疏的时间索引：每INDEX_INTERVAL条记录的时间和位置 */
+        long[] mPointTimes = new long[16];
+        int[] mPointOffsets = new int[16];
+        int mPointCount;
+
+        Segment(File file) {
+            mFile = file;
+        }
+
+        void add(long time, int level, String tag, int offset) {
+            if (0 == mCount % INDEX_INTERVAL) {
+                addPoint(time, offset);
+            }
+            mCount++;
+            mMinTime = Math.min(mMinTime, time);
+            mMaxTime = Math.max(mMaxTime, time);
+            mLevelMask |= 1 << (level & 31);
+            mTags.add(tag);
+        }
+
+        void addPoint(long time, int offset) {
+            if (mPointCount == mPointTimes.length) {
+                long[] times = new long[mPointCount * 2];
+                int[] offsets = new int[mPointCount * 2];
+                System.arraycopy(mPointTimes, 0, times, 0, mPointCount);
+                System.arraycopy(mPointOffsets, 0, offsets, 0, mPointCount);
+                mPointTimes = times;
+                mPointOffsets = offsets;
+            }
+            mPointTimes[mPointCount] = time;
+            mPointOffsets[mPointCount] = offset;
+            mPointCount++;
+        }
+
+        boolean mayContain(long since, long until, int minLevel, String tag) {
+            return mCount > 0 && mMaxTime >= since && mMinTime <= until
+                    && 0 != (mLevelMask >>> Math.max(0, minLevel))
+                    && (null == tag || mTags.contains(tag));
+        }
+
+        /**
+         * 二分查找时间早于since的最后一个索引点，从该点开始读取
+         */
+        int seek(long since) {
+            int lo = 0;
+            int hi = mPointCount - 1;
+            int found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (mPointTimes[mid] < since) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found < 0 ? HEADER_SIZE : mPointOffsets[found];
+        }
+    }
+}
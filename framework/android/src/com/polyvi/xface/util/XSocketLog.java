@@ -29,7 +29,7 @@ import java.net.Socket;
 
 import android.util.Log;
 
-public class XSocketLog implements XILog {
+public class XSocketLog implements XILog, XLogSink {
     private static final String VERBOSE = "verbose:";
     private static final String DEBUG = "debug:";
     private static final String INFO = "info:";
@@ -37,7 +37,8 @@ public class XSocketLog implements XILog {
     private static final String EEROR = "error:";
     private static final String CLOSESIGNAL = "close_signal";
     private Socket mSocket;
-    private BufferedWriter mWriter;
+    /** 连接成功后由连接线程赋值 */
+    private volatile BufferedWriter mWriter;
     private String mHost;
 
     /** debug.xml中的tag标签 */
@@ -72,7 +73,7 @@ public class XSocketLog implements XILog {
                     mWriter = new BufferedWriter(new OutputStreamWriter(mSocket
                             .getOutputStream()));
                 } catch (IOException e) {
-                    XLogController.mSocketLog = null;
+                    XLogController.detachSocketLog(XSocketLog.this);
                     Log.d("xface",
                             "please check the hostip in debug.xml or start xFace_console.exe first!");
                 }
@@ -182,6 +183,50 @@ public class XSocketLog implements XILog {
         }
     }
 
+    /**
+     * 由log写线程调用，只写入缓冲区，整批写完后在{@link #flush}中发送
+     */
+    @Override
+    public void write(int level, String tag, String className,
+            long time, String message) {
+        BufferedWriter writer = mWriter;
+        if (null != writer) {
+            try {
+                writer.write(prefixOf(level) + tag
+                        + message.replace("\n", " ") + "\n");
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        BufferedWriter writer = mWriter;
+        if (null != writer) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static String prefixOf(int level) {
+        switch (level) {
+        case Log.VERBOSE:
+            return VERBOSE;
+        case Log.DEBUG:
+            return DEBUG;
+        case Log.INFO:
+            return INFO;
+        case Log.WARN:
+            return WARN;
+        default:
+            return EEROR;
+        }
+    }
+
     /**
      * 关闭log
      */
@@ -21,13 +21,29 @@
 
 package com.polyvi.xface.util;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
@@ -35,11 +51,63 @@ import android.content.Context;
 
 /**
  * zip压缩解压缩的类，以后可以在类中扩展带密码的加压解压的方法。
+ * 解压zip文件时读取zip的中央目录，由共享的有界线程池并行解压各个文件
  * */
 public class XZipper {
 
     private static final String CLASS_NAME = XZipper.class.getSimpleName();
 
+    /** 解压时的读写缓冲区大小 */
+    private static final int UNZIP_BUFFER_SIZE = 64 * 1024;
+
+    /** 解压线程数，解压同时消耗cpu和io，取cpu核数且不超过4个 */
+    private static final int UNZIP_THREADS = Math.max(1,
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static ThreadPoolExecutor sUnzipPool;
+
+    /**
+     * 解压进度监听器
+     */
+    public interface XUnzipListener {
+        /**
+         * 解压进度更新，在解压线程中回调
+         *
+         * @param extracted
+         *            已经解压的字节数
+         * @param total
+         *            解压后的总字节数
+         */
+        void onProgress(long extracted, long total);
+    }
+
+    /**
+     * 解压时的条目过滤器
+     */
+    public interface XEntryFilter {
+        /**
+         * @return 需要解压该条目时返回true
+         */
+        boolean accept(ZipEntry entry);
+    }
+
+    private static synchronized ThreadPoolExecutor getUnzipPool() {
+        if (null == sUnzipPool) {
+            sUnzipPool = new ThreadPoolExecutor(UNZIP_THREADS, UNZIP_THREADS,
+                    0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private final AtomicInteger mCount = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            return new Thread(r, "xface-unzip-"
+                                    + mCount.incrementAndGet());
+                        }
+                    });
+        }
+        return sUnzipPool;
+    }
+
     /**
      * 对目录或文件进行zip压缩
      *
@@ -198,13 +266,164 @@ public class XZipper {
      */
     public void unzipFile(String targetPath, String zipFilePath)
             throws FileNotFoundException, IOException {
-        File zipFile = new File(zipFilePath);
+        unzipFile(targetPath, zipFilePath, null);
+    }
 
-        InputStream is = null;
-        is = new FileInputStream(zipFile);
-        if(!unzipFileFromStream(targetPath, is)) {
-            throw new IOException();
+    /**
+     * 解压zip文件，先根据中央目录创建所有目录，再由多个线程并行解压文件，
+     * 每个线程使用独立的ZipFile，较大的文件先解压
+     *
+     * @param targetPath
+     *            解压的目标路径
+     * @param zipFilePath
+     *            zip包路径
+     * @param listener
+     *            解压进度监听器，可以为null
+     */
+    public void unzipFile(String targetPath, String zipFilePath,
+            XUnzipListener listener) throws FileNotFoundException, IOException {
+        unzipFile(targetPath, zipFilePath, null, listener);
+    }
+
+    /**
+     * 解压zip文件中被过滤器接受的文件
+     *
+     * @param targetPath
+     *            解压的目标路径
+     * @param zipFilePath
+     *            zip包路径
+     * @param filter
+     *            条目过滤器，为null时解压所有文件
+     * @param listener
+     *            解压进度监听器，可以为null
+     */
+    public void unzipFile(String targetPath, final String zipFilePath,
+            XEntryFilter filter, final XUnzipListener listener)
+            throws FileNotFoundException, IOException {
+        File zip = new File(zipFilePath);
+        if (!zip.exists()) {
+            throw new FileNotFoundException(zipFilePath);
+        }
+        final File targetDir = new File(targetPath);
+        if (!targetDir.exists()) {
+            targetDir.mkdirs();
+        }
+        final List<ZipEntry> entries = new ArrayList<ZipEntry>();
+        long total = 0;
+        ZipFile zipFile = new ZipFile(zip);
+        try {
+            Enumeration<? extends ZipEntry> e = zipFile.entries();
+            while (e.hasMoreElements()) {
+                ZipEntry entry = e.nextElement();
+                if (null != filter && !filter.accept(entry)) {
+                    continue;
+                }
+                File file = getEntryFile(targetDir, entry);
+                if (entry.isDirectory()) {
+                    file.mkdirs();
+                    continue;
+                }
+                file.getParentFile().mkdirs();
+                entries.add(entry);
+                total += Math.max(0, entry.getSize());
+            }
+        } finally {
+            zipFile.close();
+        }
+        // 较大的文件先解压，避免最后只剩一个线程在解压大文件
+        Collections.sort(entries, new Comparator<ZipEntry>() {
+            @Override
+            public int compare(ZipEntry lhs, ZipEntry rhs) {
+                long l = lhs.getSize();
+                long r = rhs.getSize();
+                return l > r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        final long totalSize = total;
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicLong extracted = new AtomicLong();
+        int workers = Math.min(UNZIP_THREADS, entries.size());
+        List<Future<?>> futures = new ArrayList<Future<?>>(workers);
+        ThreadPoolExecutor pool = getUnzipPool();
+        for (int i = 0; i < workers; i++) {
+            futures.add(pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        extractEntries(zipFilePath, targetDir, entries, next,
+                                extracted, totalSize, listener);
+                    } catch (IOException e) {
+                        // 让其它线程尽快结束
+                        next.set(entries.size());
+                        throw new RuntimeException(e);
+                    }
+                }
+            }));
+        }
+        IOException failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                next.set(entries.size());
+                failure = new IOException("unzip interrupted");
+            } catch (ExecutionException e) {
+                if (null == failure) {
+                    failure = new IOException(e.getCause().getMessage());
+                }
+            }
+        }
+        if (null != failure) {
+            throw failure;
+        }
+    }
+
+    /**
+     * 解压线程的执行体，从共享的序号中取出下一个要解压的文件
+     */
+    private void extractEntries(String zipFilePath, File targetDir,
+            List<ZipEntry> entries, AtomicInteger next, AtomicLong extracted,
+            long total, XUnzipListener listener) throws IOException {
+        ZipFile zipFile = new ZipFile(zipFilePath);
+        byte[] buffer = new byte[UNZIP_BUFFER_SIZE];
+        try {
+            int index;
+            while ((index = next.getAndIncrement()) < entries.size()) {
+                ZipEntry entry = entries.get(index);
+                InputStream in = zipFile.getInputStream(entry);
+                OutputStream out = new BufferedOutputStream(
+                        new FileOutputStream(getEntryFile(targetDir, entry)),
+                        UNZIP_BUFFER_SIZE);
+                try {
+                    int len;
+                    while (-1 != (len = in.read(buffer))) {
+                        out.write(buffer, 0, len);
+                        long done = extracted.addAndGet(len);
+                        if (null != listener) {
+                            listener.onProgress(done, total);
+                        }
+                    }
+                } finally {
+                    in.close();
+                    out.close();
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    /**
+     * 获取zip条目对应的目标文件，拒绝指向目标目录之外的条目
+     */
+    private static File getEntryFile(File targetDir, ZipEntry entry)
+            throws IOException {
+        String name = entry.getName();
+        if (name.startsWith("/") || name.startsWith("../")
+                || name.contains("/../") || name.endsWith("/..")) {
+            throw new IOException("Invalid zip entry: " + name);
         }
+        return new File(targetDir, name);
     }
 
     /**
@@ -241,6 +460,7 @@ public class XZipper {
 
         ZipInputStream zis = new ZipInputStream(is);
         ZipEntry entry = null;
+        byte buffer[] = new byte[UNZIP_BUFFER_SIZE];
         while (null != (entry = zis.getNextEntry())) {
             String zipFileName = entry.getName();
             if (entry.isDirectory()) {
@@ -258,9 +478,10 @@ public class XZipper {
                     parent.mkdirs();
                 }
 
-                FileOutputStream fos = null;
+                OutputStream fos = null;
                 try {
-                    fos = new FileOutputStream(file);
+                    fos = new BufferedOutputStream(new FileOutputStream(file),
+                            UNZIP_BUFFER_SIZE);
                 } catch (FileNotFoundException e) {
                     XLog.d(CLASS_NAME,
                             "Can't write file: " + file.getAbsolutePath());
@@ -268,7 +489,6 @@ public class XZipper {
                     return false;
                 }
                 int readLen = 0;
-                byte buffer[] = new byte[XConstant.BUFFER_LEN];
                 while (-1 != (readLen = zis.read(buffer))) {
                     fos.write(buffer, 0, readLen);
                 }
@@ -0,0 +1,388 @@
+
+/*
+ Copyright 2012-2013, Polyvi Inc. (http://polyvi.github.io/openxface)
+ This program is distributed under the terms of the GNU General Public License.
+
+ This file is part of xFace.
+
+ xFace is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ xFace is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with xFace.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.polyvi.xface.view;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import android.content.Context;
+import android.net.Uri;
+import android.webkit.WebResourceResponse;
+
+import com.polyvi.xface.util.XConstant;
+import com.polyvi.xface.util.XFileUtils;
+import com.polyvi.xface.util.XLog;
+
+/**
+ * 由本地代码提供的应用资源服务，供WebView的shouldInterceptRequest使用，单例
+ * 负责应用目录、工作空间下的文件和assets中的文件：按照扩展名确定MIME类型，
+ * 存在预先压缩的同名.gz文件时读取压缩文件并解压，是否存在.gz文件的检查结果被记住，不在每次请求时重复检查；
+ * 不知道文本资源的编码，编码交给WebView判断；
+ * 较小的资源（xface.js、css、图标等）解码后保存在有大小限制的LRU内存缓存中，文件资源以修改时间和长度校验缓存，
+ * 重复打开应用和页面跳转时不需要再从存储中读取
+ * 音视频资源交给WebView自己加载，以便支持Range请求
+ */
+public class XLocalResourceServer {
+
+    private static final String CLASS_NAME = XLocalResourceServer.class
+            .getSimpleName();
+
+    /** 内存缓存的总大小 */
+    private static final int MAX_CACHE_SIZE = 2 * 1024 * 1024;
+
+    /** 可以放入内存缓存的单个资源的最大大小 */
+    private static final int MAX_ENTRY_SIZE = 128 * 1024;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /** 记住检查结果的文件数 */
+    private static final int MAX_PROBES = 512;
+
+    private static final String GZIP_SUFFIX = ".gz";
+
+    /** 部分系统版本的MimeTypeMap无法识别的常用网页资源类型 */
+    private static final HashMap<String, String> DEFAULT_MIME_TYPES = new HashMap<String, String>();
+    static {
+        DEFAULT_MIME_TYPES.put("js", "text/javascript");
+        DEFAULT_MIME_TYPES.put("css", "text/css");
+        DEFAULT_MIME_TYPES.put("html", "text/html");
+        DEFAULT_MIME_TYPES.put("htm", "text/html");
+        DEFAULT_MIME_TYPES.put("json", "application/json");
+        DEFAULT_MIME_TYPES.put("svg", "image/svg+xml");
+        DEFAULT_MIME_TYPES.put("woff", "application/font-woff");
+    }
+
+    private static XLocalResourceServer sInstance;
+
+    /** 内存缓存 资源的url（不含参数） -> 资源 */
+    private final LinkedHashMap<String, Resource> mCache = new LinkedHashMap<String, Resource>(
+            16, 0.75f, true);
+    private int mCacheSize;
+
+    /** 文件的检查结果 文件路径（不含.gz） -> 实际读取的文件 */
+    private final LinkedHashMap<String, Probe> mProbes = new LinkedHashMap<String, Probe>(
+            16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Probe> eldest) {
+            return size() > MAX_PROBES;
+        }
+    };
+
+    /** 没有.gz文件的assets，assets在安装包中不会改变 */
+    private final HashSet<String> mPlainAssets = new HashSet<String>();
+
+    private XLocalResourceServer() {
+    }
+
+    public static synchronized XLocalResourceServer getInstance() {
+        if (null == sInstance) {
+            sInstance = new XLocalResourceServer();
+        }
+        return sInstance;
+    }
+
+    /**
+     * 提供url对应的本地资源
+     *
+     * @param context
+     *            用于访问assets
+     * @param url
+     *            WebView请求的url
+     * @param roots
+     *            允许提供的文件所在的目录（绝对路径），不在这些目录下的文件交给WebView处理
+     * @return 资源的响应，不是本地资源、资源不存在或者应该交给WebView处理时返回null
+     */
+    public WebResourceResponse serve(Context context, String url,
+            String[] roots) {
+        String key = stripParams(url);
+        boolean isAsset = key.startsWith(XConstant.ASSERT_PROTACAL);
+        if (!isAsset && !key.startsWith(XConstant.FILE_SCHEME)) {
+            return null;
+        }
+        String mimeType = getMimeType(key);
+        if (null == mimeType || mimeType.startsWith("audio/")
+                || mimeType.startsWith("video/")) {
+            return null;
+        }
+        String path = Uri.decode(key.substring(isAsset ? XConstant.ASSERT_PROTACAL
+                .length() : XConstant.FILE_SCHEME.length()));
+        if (path.contains("..")) {
+            return null;
+        }
+        try {
+            InputStream data = isAsset ? openAsset(context, key, path)
+                    : openFile(key, path, roots);
+            if (null == data) {
+                return null;
+            }
+            return new WebResourceResponse(mimeType, null, data);
+        } catch (IOException e) {
+            XLog.d(CLASS_NAME, "Failed to serve " + url + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 清空内存缓存
+     */
+    public synchronized void clear() {
+        mCache.clear();
+        mCacheSize = 0;
+        mProbes.clear();
+        mPlainAssets.clear();
+    }
+
+    private InputStream openAsset(Context context, String key, String path)
+            throws IOException {
+        Resource cached = getCached(key, 0, 0);
+        if (null != cached) {
+            return new ByteArrayInputStream(cached.mData);
+        }
+        InputStream in = null;
+        boolean plain;
+        synchronized (this) {
+            plain = mPlainAssets.contains(path);
+        }
+        if (!plain) {
+            try {
+                in = new GZIPInputStream(context.getAssets().open(
+                        path + GZIP_SUFFIX));
+            } catch (IOException e) {
+                synchronized (this) {
+                    mPlainAssets.add(path);
+                }
+            }
+        }
+        if (null == in) {
+            in = context.getAssets().open(path);
+        }
+        // assets在安装包中不会改变，不需要校验
+        return readAndCache(key, in, 0, 0);
+    }
+
+    private InputStream openFile(String key, String path, String[] roots)
+            throws IOException {
+        if (!isUnderRoots(path, roots)) {
+            return null;
+        }
+        Probe probe = probeFile(path);
+        if (null == probe) {
+            return null;
+        }
+        long lastModified = probe.mLastModified;
+        long length = probe.mLength;
+        Resource cached = getCached(key, lastModified, length);
+        if (null != cached) {
+            return new ByteArrayInputStream(cached.mData);
+        }
+        InputStream in = new FileInputStream(probe.getFile(path));
+        if (probe.mGzipped) {
+            in = new GZIPInputStream(in);
+        } else if (length > MAX_ENTRY_SIZE) {
+            return in;
+        }
+        return readAndCache(key, in, lastModified, length);
+    }
+
+    /**
+     * 确定文件资源实际读取的文件，上一次的结果对应的文件没有改变时直接使用，不再检查.gz文件是否存在
+     *
+     * @return 文件不存在时返回null
+     */
+    private Probe probeFile(String path) {
+        Probe probe;
+        synchronized (this) {
+            probe = mProbes.get(path);
+        }
+        if (null != probe) {
+            File file = probe.getFile(path);
+            if (file.lastModified() == probe.mLastModified
+                    && file.length() == probe.mLength) {
+                return probe;
+            }
+        }
+        File gzip = new File(path + GZIP_SUFFIX);
+        boolean gzipped = gzip.isFile();
+        File file = gzipped ? gzip : new File(path);
+        long lastModified = file.lastModified();
+        synchronized (this) {
+            if (0 == lastModified) {
+                mProbes.remove(path);
+                return null;
+            }
+            probe = new Probe(gzipped, lastModified, file.length());
+            mProbes.put(path, probe);
+        }
+        return probe;
+    }
+
+    /**
+     * 读取资源，不超过MAX_ENTRY_SIZE的资源读完后放入缓存，
+     * 较大的资源返回已读取的部分和剩余的流拼接成的流
+     */
+    private InputStream readAndCache(String key, InputStream in,
+            long lastModified, long length) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int len;
+        try {
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+                if (out.size() > MAX_ENTRY_SIZE) {
+                    return new SequenceInputStream(new ByteArrayInputStream(
+                            out.toByteArray()), in);
+                }
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        in.close();
+        byte[] data = out.toByteArray();
+        putCached(key, new Resource(data, lastModified, length));
+        return new ByteArrayInputStream(data);
+    }
+
+    private synchronized Resource getCached(String key, long lastModified,
+            long length) {
+        Resource resource = mCache.get(key);
+        if (null == resource) {
+            return null;
+        }
+        if (resource.mLastModified != lastModified || resource.mLength != length) {
+            mCache.remove(key);
+            mCacheSize -= resource.mData.length;
+            return null;
+        }
+        return resource;
+    }
+
+    private synchronized void putCached(String key, Resource resource) {
+        Resource old = mCache.put(key, resource);
+        if (null != old) {
+            mCacheSize -= old.mData.length;
+        }
+        mCacheSize += resource.mData.length;
+        Iterator<Resource> iter = mCache.values().iterator();
+        while (mCacheSize > MAX_CACHE_SIZE && iter.hasNext()) {
+            mCacheSize -= iter.next().mData.length;
+            iter.remove();
+        }
+    }
+
+    private static boolean isUnderRoots(String path, String[] roots) {
+        if (null == roots) {
+            return false;
+        }
+        for (String root : roots) {
+            if (null == root || root.length() == 0 || !path.startsWith(root)) {
+                continue;
+            }
+            if (root.endsWith(File.separator) || path.length() == root.length()
+                    || path.startsWith(File.separator, root.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 去掉url中的参数和锚点
+     */
+    private static String stripParams(String url) {
+        int end = url.length();
+        int query = url.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+        int hash = url.indexOf('#');
+        if (hash >= 0 && hash < end) {
+            end = hash;
+        }
+        return url.substring(0, end);
+    }
+
+    /**
+     * 获取资源的MIME类型，系统无法识别的常用网页资源使用内置的类型
+     */
+    private static String getMimeType(String url) {
+        String mimeType = XFileUtils.getMimeType(url);
+        if (null != mimeType) {
+            return mimeType;
+        }
+        int dot = url.lastIndexOf('.');
+        if (dot < 0 || dot < url.lastIndexOf('/')) {
+            return null;
+        }
+        return DEFAULT_MIME_TYPES.get(url.substring(dot + 1).toLowerCase());
+    }
+
+    /**
+     * 文件资源的检查结果
+     */
+    private static class Probe {
+        /** 是否读取.gz文件 */
+        final boolean mGzipped;
+        /** 实际读取的文件的修改时间和长度 */
+        final long mLastModified;
+        final long mLength;
+
+        Probe(boolean gzipped, long lastModified, long length) {
+            mGzipped = gzipped;
+            mLastModified = lastModified;
+            mLength = length;
+        }
+
+        File getFile(String path) {
+            return new File(mGzipped ? path + GZIP_SUFFIX : path);
+        }
+    }
+
+    /**
+     * 内存中缓存的资源
+     */
+    private static class Resource {
+        final byte[] mData;
+        /** 文件的修改时间和长度，assets为0 */
+        final long mLastModified;
+        final long mLength;
+
+        Resource(byte[] data, long lastModified, long length) {
+            mData = data;
+            mLastModified = lastModified;
+            mLength = length;
+        }
+    }
+}
@@ -23,8 +23,6 @@
 package com.polyvi.xface.view;
 
 import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
@@ -46,6 +44,7 @@ import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
 import android.webkit.WebViewClientClassicExt;
 
+import com.polyvi.xface.app.XApplication;
 import com.polyvi.xface.app.XWhiteList;
 import com.polyvi.xface.core.XConfiguration;
 import com.polyvi.xface.core.XISystemContext;
@@ -68,7 +67,6 @@ public class XWebViewClient extends WebViewClientClassicExt {
     private XInputScaleHandler mInputScaleHandler;
     /** < 用来处理input框获得焦点自动变大的问题 */
     private XISystemContext mSystemContext;
-    private String[] URL_PARAMS_TAG = { "#", "?" };
     private static final String XFACE_EXEC_URL_PREFIX = "http://xface_exec/";
 
     public XWebViewClient(XISystemContext systemContext, XAppWebView appWebView) {
@@ -253,26 +251,16 @@ public class XWebViewClient extends WebViewClientClassicExt {
                 && (null != whiteList && !whiteList.isUrlWhiteListed(url))) {
             return getWhitelistResponse();
         }
-        if (url.indexOf(XConstant.ASSERT_PROTACAL) == 0) {
-            for (int i = 0; i < URL_PARAMS_TAG.length; i++) {
-                if (url.contains(URL_PARAMS_TAG[i])) {
-                    String filePath = url.substring(
-                            XConstant.ASSERT_PROTACAL.length(), url.length());
-                    filePath = filePath.substring(0,
-                            filePath.indexOf(URL_PARAMS_TAG[i]));
-                    try {
-                        InputStream is = mSystemContext.getContext()
-                                .getAssets().open(filePath);
-                        WebResourceResponse wr = new WebResourceResponse(
-                                "text/javascript", "utf-8", is);
-                        return wr;
-                    } catch (IOException e) {
-                        return null;
-                    }
-                }
-            }
-        }
-        return null;
+        /** 应用目录、工作空间和assets中的资源由本地资源服务提供 */
+        XApplication app = mWebAppView.getOwnerApp();
+        String srcRoot = app.getAppInfo().getSrcRoot();
+        String[] roots = {
+                app.getIntalledDir(),
+                app.getWorkSpace(),
+                (null != srcRoot && srcRoot.startsWith(XConstant.FILE_SCHEME)) ? srcRoot
+                        .substring(XConstant.FILE_SCHEME.length()) : null };
+        return XLocalResourceServer.getInstance().serve(
+                mSystemContext.getContext(), url, roots);
     }
 
     /**
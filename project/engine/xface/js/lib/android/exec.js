@@ -57,7 +57,9 @@ var xFace = require('xFace'),
     jsToNativeBridgeMode, //set lazily
     nativeToJsBridgeMode = nativeToJsModes.ONLINE_EVENT,
     pollEnabled = false,
-    messagesFromNative = [];
+    messagesFromNative = [],
+    // 分块传输中尚未接收完的二进制数据, key为callbackId
+    pendingBinaryChunks = {};
 
 function androidExec(success, fail, statusChanged, service, action, args) {
     if (jsToNativeBridgeMode === undefined) {
@@ -128,6 +130,9 @@ function hookOnlineApis() {
 hookOnlineApis();
 
 androidExec.jsToNativeModes = jsToNativeModes;
+androidExec.appendBinaryChunk = appendBinaryChunk;
+androidExec.takeBinary = takeBinary;
+androidExec.pollOnce = pollOnce;
 androidExec.nativeToJsModes = nativeToJsModes;
 
 androidExec.setJsToNativeBridgeMode = function(mode) {
@@ -158,6 +163,43 @@ androidExec.setNativeToJsBridgeMode = function(mode) {
 };
 
 
+/**
+ * 缓存native端分块发送的二进制数据
+ * @param {String} callbackId   回调id
+ * @param {String} data         base64编码的分块数据
+ */
+function appendBinaryChunk(callbackId, data) {
+    var chunks = pendingBinaryChunks[callbackId];
+    if (!chunks) {
+        chunks = pendingBinaryChunks[callbackId] = [];
+    }
+    chunks.push(window.atob(data));
+}
+
+/**
+ * 取出完整的二进制数据(包括之前缓存的分块)
+ * @param {String} callbackId       回调id
+ * @param {String} data             base64编码的最后一个分块
+ * @param {Boolean} asArrayBuffer   是否转换为ArrayBuffer, 否则返回binary string
+ */
+function takeBinary(callbackId, data, asArrayBuffer) {
+    var bytes = window.atob(data),
+        chunks = pendingBinaryChunks[callbackId];
+    if (chunks) {
+        chunks.push(bytes);
+        bytes = chunks.join('');
+        delete pendingBinaryChunks[callbackId];
+    }
+    if (!asArrayBuffer) {
+        return bytes;
+    }
+    var arraybuffer = new Uint8Array(bytes.length);
+    for (var i = 0; i < bytes.length; i++) {
+        arraybuffer[i] = bytes.charCodeAt(i);
+    }
+    return arraybuffer.buffer;
+}
+
 function processMessage(message) {
     try {
         //console.log("processMessage  Message: " + message);
@@ -183,16 +225,14 @@ function processMessage(message) {
                 payload = null;
             } else if (payloadKind == 'n') {
                 payload = +message.slice(nextSpaceIdx + 2);
+            } else if (payloadKind == 'C') {
+                // 二进制数据的中间分块, 等最后一个分块到达后再回调
+                appendBinaryChunk(callbackId, message.slice(nextSpaceIdx + 2));
+                return;
             } else if (payloadKind == 'A') {
-                var data = message.slice(nextSpaceIdx + 2);
-                var bytes = window.atob(data);
-                var arraybuffer = new Uint8Array(bytes.length);
-                for (var i = 0; i < bytes.length; i++) {
-                    arraybuffer[i] = bytes.charCodeAt(i);
-                }
-                payload = arraybuffer.buffer;
+                payload = takeBinary(callbackId, message.slice(nextSpaceIdx + 2), true);
             } else if (payloadKind == 'S') {
-                payload = window.atob(message.slice(nextSpaceIdx + 2));
+                payload = takeBinary(callbackId, message.slice(nextSpaceIdx + 2), false);
             } else {
                 payload = JSON.parse(message.slice(nextSpaceIdx + 1));
             }
@@ -72,6 +72,8 @@ function completeQuery(id, data) {
                 var r = new DroidDB_Result();
                 r.rows.resultSet = data;
                 r.rows.length = data.length;
+                // 回调中执行的语句合并为一批提交
+                tx.beginBatch();
                 try {
                     if (typeof query.successCallback === 'function') {
                         query.successCallback(query.tx, r);
@@ -79,6 +81,7 @@ function completeQuery(id, data) {
                 } catch (ex) {
                     console.log("executeSql error calling user success callback: "+ex);
                 }
+                tx.flushBatch();
 
                 tx.queryComplete(id);
             }
@@ -164,6 +167,29 @@ var DroidDB_Tx = function() {
 
     // 查询列表
     this.queryList = {};
+
+    // 等待批量提交的语句，为null时语句立即提交
+    this.pendingStatements = null;
+};
+
+/**
+ * 开始收集语句，之后执行的语句在flushBatch时一次提交，在一个SQLite事务中执行
+ */
+DroidDB_Tx.prototype.beginBatch = function() {
+    if (!this.pendingStatements) {
+        this.pendingStatements = [];
+    }
+};
+
+/**
+ * 提交收集的语句
+ */
+DroidDB_Tx.prototype.flushBatch = function() {
+    var statements = this.pendingStatements;
+    this.pendingStatements = null;
+    if (statements && statements.length > 0) {
+        exec(null, null, null, "Storage", "executeBatch", [statements]);
+    }
 };
 
 /**
@@ -231,7 +257,86 @@ DroidDB_Tx.prototype.executeSql = function(sql, params, successCallback, errorCa
     query.successCallback = successCallback;
     query.errorCallback = errorCallback;
 
-    exec(null, null, null, "Storage", "executeSql", [sql, params, query.id]);
+    if (this.pendingStatements) {
+        this.pendingStatements.push([sql, params, query.id]);
+    } else {
+        exec(null, null, null, "Storage", "executeSql", [sql, params, query.id]);
+    }
+};
+
+/**
+ * 分页执行查询语句，查询结果按页返回，适用于结果行数很多的查询（Android）
+ * 每页的结果为{columns:[列名], rows:[[值,...],...], offset:该页第一行的序号}，
+ * 数值和null保持原有类型，blob的值为{blob:"base64编码的数据"}
+ *
+ * @method executeSqlPaged
+ * @param sql {String}                  待执行的查询语句
+ * @param params {Array}                查询语句的参数
+ * @param pageCallback {Function}       每一页结果的回调函数，参数为(tx, page)
+ * @param successCallback {Function}    全部结果返回后的回调函数，参数为(tx, {rowCount:返回的行数, truncated:是否因为limit截断})
+ * @param errorCallback {Function}      失败回调函数
+ * @param [options] {Object}            可选参数，pageSize为每页的行数（默认500），limit为最多返回的行数（默认不限制）
+ * @since 3.1.0
+ */
+DroidDB_Tx.prototype.executeSqlPaged = function(sql, params, pageCallback, successCallback, errorCallback, options) {
+    argscheck.checkArgs('sAfFFO', 'storage.executeSqlPaged', arguments);
+    if (typeof params === 'undefined' || params === null) {
+        params = [];
+    }
+    options = options || {};
+
+    // 保证与之前收集的语句按顺序执行
+    var batching = this.pendingStatements !== null;
+    this.flushBatch();
+
+    var query = new DroidDB_Query(this);
+    delete queryQueue[query.id];
+    var tx = this;
+    var columns = null;
+    var onPage = function(page) {
+        if (page.columns) {
+            columns = page.columns;
+        }
+        page.columns = columns;
+        try {
+            pageCallback(tx, page);
+        } catch (ex) {
+            console.log("executeSqlPaged error calling user page callback: " + ex);
+        }
+    };
+    var win = function(result) {
+        if (!tx.queryList[query.id]) {
+            return;
+        }
+        tx.beginBatch();
+        try {
+            if (typeof successCallback === 'function') {
+                successCallback(tx, result);
+            }
+        } catch (ex) {
+            console.log("executeSqlPaged error calling user success callback: " + ex);
+        }
+        tx.flushBatch();
+        tx.queryComplete(query.id);
+    };
+    var fail = function(reason) {
+        if (!tx.queryList[query.id]) {
+            return;
+        }
+        try {
+            if (typeof errorCallback === 'function') {
+                errorCallback(tx, reason);
+            }
+        } catch (ex) {
+            console.log("executeSqlPaged error calling user error callback: " + ex);
+        }
+        tx.queryFailed(query.id, reason);
+    };
+    exec(win, fail, onPage, "Storage", "executeSqlPaged",
+            [sql, params, options.pageSize || 0, options.limit || 0]);
+    if (batching) {
+        this.beginBatch();
+    }
 };
 
 var DatabaseShell = function() {
@@ -250,9 +355,13 @@ DatabaseShell.prototype.transaction = function(process, errorCallback, successCa
     var tx = new DroidDB_Tx();
     tx.successCallback = successCallback;
     tx.errorCallback = errorCallback;
+    tx.beginBatch();
     try {
         process(tx);
+        tx.flushBatch();
     } catch (e) {
+        // 事务函数出错时丢弃还没有提交的语句
+        tx.pendingStatements = null;
         console.log("Transaction error: "+e);
         if (tx.errorCallback) {
             try {
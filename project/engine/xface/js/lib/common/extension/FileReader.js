@@ -26,6 +26,7 @@
 
 var argscheck = require('xFace/argscheck'),
     exec = require('xFace/exec'),
+    utils = require('xFace/utils'),
     FileError = require('xFace/extension/FileError'),
     ProgressEvent = require('xFace/extension/ProgressEvent');
 
@@ -107,6 +108,29 @@ var FileReader = function() {
      */
     this.error = null;
 
+    /**
+     * 分块读取时每一块的字节数，大于0时readAsText和readAsArrayBuffer以分块方式读取文件（Android）<br/>
+     * 分块读取时每读取一块就调用一次onprogress，evt.target.result为当前块的内容（文本或ArrayBuffer），
+     * evt.loaded和evt.total为已读取和总的字节数；读取完成后调用onload和onloadend，此时result为null。
+     * 适用于读取不能一次放入内存的大文件
+     * @example
+        var reader = new FileReader();
+        reader.chunkSize = 64 * 1024;
+        reader.onprogress = function(evt) {
+            if (evt.target.result) {
+                console.log(evt.loaded + "/" + evt.total);
+                processChunk(evt.target.result);
+            }
+        };
+        reader.readAsText(file);
+     * @property chunkSize
+     * @default 0
+     * @type Number
+     * @platform Android
+     * @since 3.1.0
+     */
+    this.chunkSize = 0;
+
     /**
      * 文件读取开始时调用该通知回调函数（Android，iOS, WP8）<br/>
      * 参数描述：<br/>
@@ -314,6 +338,10 @@ FileReader.prototype.readAsText = function(file, encoding) {
     var me = this;
     var execArgs = [this.fileName,enc];
     execArgs.push(file.start,file.end);
+    if (this.chunkSize > 0) {
+        readInChunks(this, "readAsText", execArgs);
+        return;
+    }
     exec(
         function(r) {
             if (me.readyState === FileReader.DONE) {
@@ -378,7 +406,7 @@ FileReader.prototype.readAsDataURL = function(file) {
         this.onloadstart(new ProgressEvent("loadstart", {target:this}));
     }
     var me = this;
-    var execArgs = [this.fileName];
+    var execArgs = [this.fileName, null];
     execArgs.push(file.start,file.end);
     exec(
         function(r) {
@@ -430,8 +458,9 @@ FileReader.prototype.readAsDataURL = function(file) {
  */
 FileReader.prototype.readAsBinaryString = function(file) {
     argscheck.checkArgs('o', 'FileReader.readAsBinaryString', arguments);
+    prepareRead(this, file);
     var me = this;
-    var execArgs = [this.fileName, file.start, file.end];
+    var execArgs = [this.fileName, null, file.start, file.end];
     // Read file
     exec(
         // Success callback
@@ -471,7 +500,7 @@ FileReader.prototype.readAsBinaryString = function(file) {
             if (typeof me.onloadend === "function") {
                 me.onloadend(new ProgressEvent("loadend", {target:me}));
             }
-        }, "File", "readAsBinaryString", execArgs);
+        }, null, "File", "readAsBinaryString", execArgs);
 };
 
 /**
@@ -493,8 +522,13 @@ FileReader.prototype.readAsBinaryString = function(file) {
  */
 FileReader.prototype.readAsArrayBuffer = function(file) {
     argscheck.checkArgs('o', 'FileReader.readAsArrayBuffer', arguments);
+    prepareRead(this, file);
     var me = this;
-    var execArgs = [this.fileName, file.start, file.end];
+    var execArgs = [this.fileName, null, file.start, file.end];
+    if (this.chunkSize > 0) {
+        readInChunks(this, "readAsArrayBuffer", execArgs);
+        return;
+    }
     // Read file
     exec(
         // Success callback
@@ -534,7 +568,93 @@ FileReader.prototype.readAsArrayBuffer = function(file) {
             if (typeof me.onloadend === "function") {
                 me.onloadend(new ProgressEvent("loadend", {target:me}));
             }
-        }, "File", "readAsArrayBuffer", execArgs);
+        }, null, "File", "readAsArrayBuffer", execArgs);
 };
 
+/**
+ * 记录要读取的文件并进入LOADING状态
+ */
+function prepareRead(reader, file) {
+    if (typeof file.fullPath === "undefined") {
+        reader.fileName = file;
+    } else {
+        reader.fileName = file.fullPath;
+    }
+    if (reader.readyState == FileReader.LOADING) {
+        throw new FileError(FileError.INVALID_STATE_ERR);
+    }
+    reader.readyState = FileReader.LOADING;
+    if (typeof reader.onloadstart === "function") {
+        reader.onloadstart(new ProgressEvent("loadstart", {target:reader}));
+    }
+}
+
+/**
+ * 分块读取文件，native每读取一块发送一次进度结果：
+ * 文本为{data:..., loaded:n, total:n}，二进制为ArrayBuffer，第一块之前发送{loaded:0, total:n}
+ * 每处理完一块通过ackChunk确认，native未确认的块数达到上限时暂停读取；读取被中止时通知native停止读取
+ */
+function readInChunks(reader, action, execArgs) {
+    var loaded = 0,
+        total = 0,
+        readId = utils.createUUID();
+    execArgs[4] = reader.chunkSize;
+    execArgs[5] = readId;
+    exec(
+        function(r) {
+            if (reader.readyState === FileReader.DONE) {
+                return;
+            }
+            reader.readyState = FileReader.DONE;
+            reader.result = null;
+            if (typeof reader.onload === "function") {
+                reader.onload(new ProgressEvent("load", {target:reader, loaded:r.loaded, total:r.total}));
+            }
+            if (typeof reader.onloadend === "function") {
+                reader.onloadend(new ProgressEvent("loadend", {target:reader, loaded:r.loaded, total:r.total}));
+            }
+        },
+        function(e) {
+            if (reader.readyState === FileReader.DONE) {
+                return;
+            }
+            reader.readyState = FileReader.DONE;
+            reader.result = null;
+            reader.error = new FileError(e);
+            if (typeof reader.onerror === "function") {
+                reader.onerror(new ProgressEvent("error", {target:reader}));
+            }
+            if (typeof reader.onloadend === "function") {
+                reader.onloadend(new ProgressEvent("loadend", {target:reader}));
+            }
+        },
+        function(chunk) {
+            var isData = chunk instanceof ArrayBuffer || typeof chunk.data !== "undefined";
+            if (reader.readyState === FileReader.DONE) {
+                if (isData) {
+                    exec(null, null, null, "File", "ackChunk", [readId, true]);
+                }
+                return;
+            }
+            if (chunk instanceof ArrayBuffer) {
+                loaded += chunk.byteLength;
+                reader.result = chunk;
+            } else {
+                loaded = chunk.loaded;
+                total = chunk.total;
+                reader.result = isData ? chunk.data : null;
+            }
+            try {
+                if (typeof reader.onprogress === "function") {
+                    reader.onprogress(new ProgressEvent("progress", {target:reader, loaded:loaded, total:total}));
+                }
+            } finally {
+                if (isData) {
+                    exec(null, null, null, "File", "ackChunk", [readId, false]);
+                }
+            }
+        },
+        "File", action, execArgs);
+}
+
 module.exports = FileReader;
\ No newline at end of file
@@ -115,6 +115,70 @@ Security.prototype.decrypt = function(key, encryptedText, successCallback, error
     exec(successCallback, errorCallback, null, "Security", "decrypt", [key, encryptedText, options]);
 };
 
+/**
+ * 使用同一个密钥批量加密多条明文，一次调用返回所有密文，适合大量短数据的加密（Android）<br/>
+ * @example
+        xFace.Security.encryptBatch(key, ["name", "phone", "address"], success, error);
+        function success(encryptedTexts) {
+            alert("encrypted count:" + encryptedTexts.length);
+        }
+        function error(errorcode) {
+            alert("Encrypt error:" + errorcode);
+        }
+ * @method encryptBatch
+ * @param {String} key 密钥，长度必须大于或等于8个字符
+ * @param {Array} plainTexts 需要加密的明文数组
+ * @param {Function} [successCallback] 成功回调函数
+ * @param {Array} successCallback.encryptedTexts 与明文顺序一致的密文数组
+ * @param {Function} [errorCallback]  失败回调函数，任意一条明文加密失败时调用
+ * @param {String} errorCallback.errorCode 该参数用于返回加密错误码，与encrypt相同
+ * @param {SecurityOptions} [options] 封装加解密配置选项，对所有明文生效
+ * @platform Android
+ * @since 3.1.0
+ */
+Security.prototype.encryptBatch = function(key, plainTexts, successCallback, errorCallback, options){
+    argscheck.checkArgs('sAFFO', 'xFace.Security.encryptBatch', arguments);
+    if(key.length < 8){
+        if(errorCallback) {
+            errorCallback("Wrong parameter of encryptBatch! key length is less than 8");
+        }
+        return;
+    }
+    exec(successCallback, errorCallback, null, "Security", "encryptBatch", [key, plainTexts, options]);
+};
+
+/**
+ * 使用同一个密钥批量解密多条密文，一次调用返回所有明文（Android）<br/>
+ * @example
+        xFace.Security.decryptBatch(key, encryptedTexts, success, error);
+        function success(plainTexts) {
+            alert("decrypted count:" + plainTexts.length);
+        }
+        function error(errorcode) {
+            alert("Decrypt error:" + errorcode);
+        }
+ * @method decryptBatch
+ * @param {String} key 密钥，长度必须大于或等于8个字符
+ * @param {Array} encryptedTexts 需要解密的密文数组
+ * @param {Function} [successCallback] 成功回调函数
+ * @param {Array} successCallback.plainTexts 与密文顺序一致的明文数组
+ * @param {Function} [errorCallback]  失败回调函数，任意一条密文解密失败时调用
+ * @param {String} errorCallback.errorCode 该参数用于返回解密错误码，与decrypt相同
+ * @param {SecurityOptions} [options] 封装加解密配置选项，对所有密文生效
+ * @platform Android
+ * @since 3.1.0
+ */
+Security.prototype.decryptBatch = function(key, encryptedTexts, successCallback, errorCallback, options){
+    argscheck.checkArgs('sAFFO', 'xFace.Security.decryptBatch', arguments);
+    if(key.length < 8){
+        if(errorCallback) {
+            errorCallback("Wrong parameter of decryptBatch! key length is less than 8");
+        }
+        return;
+    }
+    exec(successCallback, errorCallback, null, "Security", "decryptBatch", [key, encryptedTexts, options]);
+};
+
 /**
  * 根据传入的密钥加密文件，并返回新生成加密文件的路径（Android，iOS, WP8）<br/>
  * @example
@@ -135,21 +199,23 @@ Security.prototype.decrypt = function(key, encryptedText, successCallback, error
  * @param {String} successCallback.path 该参数用于返回新生成加密文件的路径
  * @param {Function} [errorCallback]  失败回调函数
  * @param {String} errorCallback.errorCode 该参数用于返回加密错误码
+ * @param {Function} [progressCallback] 加密进度回调函数，文件按块处理，处理过程中多次调用（Android）
+ * @param {Object} progressCallback.progress 进度对象，loaded为已处理的源文件字节数，total为源文件的总字节数
  * <ul>返回的加密错误码具体说明：</ul>
  * <ul>1:   文件找不到错误</ul>
  * <ul>2:   加密路径错误</ul>
  * <ul>3:   加密过程出错</ul>
  * @platform Android, iOS, WP8
  */
-Security.prototype.encryptFile = function(key, sourceFilePath, targetFilePath, successCallback, errorCallback){
-    argscheck.checkArgs('sssFF', 'xFace.Security.decrypt', arguments);
+Security.prototype.encryptFile = function(key, sourceFilePath, targetFilePath, successCallback, errorCallback, progressCallback){
+    argscheck.checkArgs('sssFFF', 'xFace.Security.decrypt', arguments);
     if(key.length < 8){
         if(errorCallback) {
             errorCallback("Wrong parameter of encryptFile! key length is less than 8");
         }
         return;
     }
-    exec(successCallback, errorCallback, null, "Security", "encryptFile", [key, sourceFilePath,targetFilePath]);
+    exec(successCallback, errorCallback, progressCallback, "Security", "encryptFile", [key, sourceFilePath,targetFilePath]);
 };
 
 /**
@@ -172,21 +238,23 @@ Security.prototype.encryptFile = function(key, sourceFilePath, targetFilePath, s
  * @param {String} successCallback.path 该参数用于返回新生成解密文件的路径
  * @param {Function} [errorCallback]  失败回调函数
  * @param {String} errorCallback.errorCode 该参数用于返回解密错误码
+ * @param {Function} [progressCallback] 解密进度回调函数，文件按块处理，处理过程中多次调用（Android）
+ * @param {Object} progressCallback.progress 进度对象，loaded为已处理的源文件字节数，total为源文件的总字节数
  * <ul>返回的解密错误码具体说明：</ul>
  * <ul>1:   文件找不到错误</ul>
  * <ul>2:   加密路径错误</ul>
  * <ul>3:   加密过程出错</ul>
  * @platform Android, iOS, WP8
  */
-Security.prototype.decryptFile = function(key, sourceFilePath, targetFilePath, successCallback, errorCallback){
-    argscheck.checkArgs('sssFF', 'xFace.Security.decrypt', arguments);
+Security.prototype.decryptFile = function(key, sourceFilePath, targetFilePath, successCallback, errorCallback, progressCallback){
+    argscheck.checkArgs('sssFFF', 'xFace.Security.decrypt', arguments);
     if(key.length < 8) {
         if(errorCallback) {
             errorCallback("Wrong parameter of decryptFile! key length is less than 8");
         }
         return;
     }
-    exec(successCallback, errorCallback, null, "Security", "decryptFile", [key, sourceFilePath,targetFilePath]);
+    exec(successCallback, errorCallback, progressCallback, "Security", "decryptFile", [key, sourceFilePath,targetFilePath]);
 };
 
 /**
@@ -47,6 +47,43 @@ var XMLHttpRequest = function()
      */
    this.onabort = null;
 
+   /**
+     * 接收响应体的过程中调用的句柄函数，参数为{loaded: 已接收的字节数, total: 总字节数(未知时为-1), lengthComputable: 是否知道总字节数}（Android）<br/>
+     * @property onprogress
+     * @type Function
+     * @platform Android
+     * @since 3.1.0
+     */
+   this.onprogress = null;
+
+    /**
+      * 响应体的类型，在调用send之前设置，取值为""、"text"或者"arraybuffer"，默认为文本（Android）<br/>
+      * @property responseType
+      * @type String
+      * @platform Android
+      * @since 3.1.0
+      */
+    this.responseType = "";
+
+    /**
+      * 响应体，responseType为"arraybuffer"时为ArrayBuffer，否则与responseText相同，readyState为4时才有效（Android）<br/>
+      * @property response
+      * @type ArrayBuffer|String
+      * @platform Android
+      * @since 3.1.0
+      */
+    this.response = null;
+
+    /**
+      * 响应体过大时不会放入responseText和response，而是写入应用工作空间下的临时文件，该属性为临时文件的路径，
+      * 可以通过文件接口读取；再次调用open或者abort后临时文件会被删除（Android）<br/>
+      * @property responseFile
+      * @type String
+      * @platform Android
+      * @since 3.1.0
+      */
+    this.responseFile = null;
+
     /**
       * HTTP 请求的状态.当一个 XMLHttpRequest 初次创建时，这个属性的值从 0 开始，直到接收到完整的 HTTP 响应，这个值增加到 4（Android，iOS）<br/>
         状态                           名称                                        描述<br/>
@@ -82,14 +119,36 @@ var XMLHttpRequest = function()
     this.id = utils.createUUID(); // 这里通过uuid标示每个ajax对象
     this.headers = null;
     var me = this;
+    var binaryResponse = null;
     this.success =function(result){
+        if(result instanceof ArrayBuffer){
+            // 二进制响应体在DONE状态之前单独发送
+            binaryResponse = result;
+            return;
+        }
+        if(result.eventType === 2){
+            if(typeof me.onprogress === "function"){
+                me.onprogress({loaded: result.loaded, total: result.total, lengthComputable: result.total >= 0});
+            }
+            return;
+        }
+        me.readyState = result.readyState;
+        me.status = result.status;
+        me.responseText = result.responseText;
+        me.headers = result.headers;
+        me.responseFile = result.responseFile || null;
+        if(me.readyState == 4){
+            me.response = me.responseType === "arraybuffer" ? binaryResponse : me.responseText;
+            binaryResponse = null;
+        } else {
+            me.response = null;
+        }
         if(typeof me.onreadystatechange === "function" ){
-            me.readyState = result.readyState;
-            me.status = result.status;
-            me.responseText = result.responseText;
-            me.headers = result.headers;
             me.onreadystatechange();
         }
+        if(me.readyState == 3 && typeof me.onprogress === "function"){
+            me.onprogress({loaded: result.loaded, total: result.total, lengthComputable: result.total >= 0});
+        }
     };
     this.failure = function(result){
         me.readyState = result.readyState;
@@ -197,7 +256,7 @@ XMLHttpRequest.prototype.open = function(method, url){
   */
 XMLHttpRequest.prototype.send = function(data){
     argscheck.checkArgs('S', 'XMLHttpRequest', 'send', arguments);
-    exec(null, null, null,'XMLHttpRequest', 'send', [this.id, data]);
+    exec(null, null, null,'XMLHttpRequest', 'send', [this.id, data, this.responseType]);
 };
 
 /**
@@ -80,6 +80,8 @@ var AMS = function(){
  * @param {Object} statusChangedCallback.status 安装过程状态，包含如下属性:
  * @param {Number} statusChangedCallback.status.type 指示当前状态是install，uninstall，或update，参考{{#crossLink "AmsOperationType"}}{{/crossLink}}
  * @param {Number} statusChangedCallback.status.progress 安装过程状态码，具体值可参考{{#crossLink "AmsState"}}{{/crossLink}}
+ * @param {Number} [statusChangedCallback.status.loaded] 解压安装包的过程中已经解压的字节数（Android，since 3.1.0）
+ * @param {Number} [statusChangedCallback.status.total] 解压安装包的过程中解压后的总字节数（Android，since 3.1.0）
  * @platform Android, iOS, WP8
  * @since 3.0.0
  */
@@ -311,7 +313,10 @@ AMS.prototype.listPresetAppPackages = function(successCallback, errorCallback)
  * @param {Function} [statusChangedCallback]  更新过程的状态回调函数
  * @param {Object} statusChangedCallback.status 更新过程状态，包含如下属性:
  * @param {Number} statusChangedCallback.status.type 指示当前状态是install，uninstall，或update，参考{{#crossLink "AmsOperationType"}}{{/crossLink}}
- * @param {Number} statusChangedCallback.status.progress 安装过程状态码，具体值可参考{{#crossLink "AmsState"}}{{/crossLink}}@platform Android, iOS
+ * @param {Number} statusChangedCallback.status.progress 安装过程状态码，具体值可参考{{#crossLink "AmsState"}}{{/crossLink}}
+ * @param {Number} [statusChangedCallback.status.loaded] 解压安装包的过程中已经解压的字节数（Android，since 3.1.0）
+ * @param {Number} [statusChangedCallback.status.total] 解压安装包的过程中解压后的总字节数（Android，since 3.1.0）
+ * @platform Android, iOS
  * @since 3.0.0
  * @platform Android, iOS, WP8
  */
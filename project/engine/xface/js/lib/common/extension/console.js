@@ -149,4 +149,41 @@ DebugConsole.prototype.error = function(message) {
         this.winConsole.error(message);
 };
 
+/**
+ * 从设备上持久化的log中查询log，返回满足条件的最近若干条，按时间从旧到新排列（Android）<br/>
+ * 需要在config.xml中开启LogStore，js的log以"xface-js/应用id"作为tag保存
+ * @example
+        // 查询应用app1最近10分钟的错误log
+        console.getLogs(success, error, {
+            since: new Date().getTime() - 10 * 60 * 1000,
+            level: "ERROR",
+            tag: "xface-js/app1"
+        });
+        function success(logs) {
+            for (var i = 0; i < logs.length; i++) {
+                alert(new Date(logs[i].time) + " " + logs[i].level + " " + logs[i].message);
+            }
+        }
+        function error(message) {
+            alert("getLogs error:" + message);
+        }
+ * @method getLogs
+ * @param {Function} successCallback 成功回调函数
+ * @param {Array} successCallback.logs log数组，每一项为{time:时间(毫秒), level:等级, tag:tag, message:log信息}
+ * @param {Function} [errorCallback] 失败回调函数，没有开启LogStore时调用
+ * @param {String} errorCallback.message 错误信息
+ * @param {Object} [options] 查询条件，都可以省略
+ * @param {Number} [options.since] 起始时间(毫秒)
+ * @param {Number} [options.until] 结束时间(毫秒)
+ * @param {String} [options.level] 最低的log等级，可能的值（"VERBOSE", "DEBUG", "INFO", "WARN", "ERROR"）
+ * @param {String} [options.tag] 打印log的类名，只有portal应用可以指定，其它应用只能查询自己的js log
+ * @param {Number} [options.limit=500] 最多返回的条数
+ * @platform Android
+ * @since 3.1.0
+ */
+DebugConsole.prototype.getLogs = function(successCallback, errorCallback, options) {
+    argscheck.checkArgs('fFO', 'console.getLogs', arguments);
+    exec(successCallback, errorCallback, null, 'Console', 'getLogs', [options || {}]);
+};
+
 module.exports = new DebugConsole();
\ No newline at end of file